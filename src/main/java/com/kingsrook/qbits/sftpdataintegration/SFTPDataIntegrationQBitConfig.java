@@ -56,6 +56,56 @@ public class SFTPDataIntegrationQBitConfig implements QBitConfig
 
    private String schedulerName;
 
+   private Boolean streamImportFileContents;
+
+   private Integer importFileSyncMaxConcurrentRuns;
+
+   private Integer maxConcurrentSessionsPerSFTPHost;
+
+   private Boolean useSFTPSessionPool;
+
+   private Integer sftpSessionPoolIdleTimeoutSeconds;
+
+   private Long importFileSyncMaxBytesInFlight;
+
+   private Boolean useImportedSourcePathIndex;
+
+   private Integer importFileStagingThreads;
+
+   private Integer importFileBulkLoadThreads;
+
+   private Integer importFileBulkLoadMaxConcurrentPerTable;
+
+   private Map<String, Integer> importFileBulkLoadMaxConcurrentByTable;
+
+   private Boolean useImportFileLeases;
+
+   private Integer importFileLeaseSeconds;
+
+   private Integer importFileBulkLoadChunkRows;
+
+   private Integer importFileBulkLoadChunkThreads;
+
+   private Integer importFileBulkLoadCoalesceMaxFiles;
+
+   private Long importFileBulkLoadCoalesceMaxBytes;
+
+   private Boolean validateStagedFilesBeforeBulkLoad;
+
+   private Boolean convertStagedSpreadsheetsToCsv;
+
+   private Long decompressMaxExpandedBytes;
+
+   private Integer decompressMaxArchiveEntries;
+
+   private Integer decompressMaxCompressionRatio;
+
+   private Integer exportRenderThreads;
+
+   private Integer exportMaxConcurrentPerSFTPConnection;
+
+   private Boolean streamExportsToDestination;
+
 
 
    /***************************************************************************
@@ -364,4 +414,778 @@ public class SFTPDataIntegrationQBitConfig implements QBitConfig
    }
 
 
+
+   /*******************************************************************************
+    ** Getter for streamImportFileContents
+    *******************************************************************************/
+   public Boolean getStreamImportFileContents()
+   {
+      return (this.streamImportFileContents);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for streamImportFileContents
+    *******************************************************************************/
+   public void setStreamImportFileContents(Boolean streamImportFileContents)
+   {
+      this.streamImportFileContents = streamImportFileContents;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for streamImportFileContents
+    *******************************************************************************/
+   public SFTPDataIntegrationQBitConfig withStreamImportFileContents(Boolean streamImportFileContents)
+   {
+      this.streamImportFileContents = streamImportFileContents;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for importFileSyncMaxConcurrentRuns
+    *******************************************************************************/
+   public Integer getImportFileSyncMaxConcurrentRuns()
+   {
+      return (this.importFileSyncMaxConcurrentRuns);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for importFileSyncMaxConcurrentRuns
+    *******************************************************************************/
+   public void setImportFileSyncMaxConcurrentRuns(Integer importFileSyncMaxConcurrentRuns)
+   {
+      this.importFileSyncMaxConcurrentRuns = importFileSyncMaxConcurrentRuns;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for importFileSyncMaxConcurrentRuns
+    *******************************************************************************/
+   public SFTPDataIntegrationQBitConfig withImportFileSyncMaxConcurrentRuns(Integer importFileSyncMaxConcurrentRuns)
+   {
+      this.importFileSyncMaxConcurrentRuns = importFileSyncMaxConcurrentRuns;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for maxConcurrentSessionsPerSFTPHost
+    *******************************************************************************/
+   public Integer getMaxConcurrentSessionsPerSFTPHost()
+   {
+      return (this.maxConcurrentSessionsPerSFTPHost);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for maxConcurrentSessionsPerSFTPHost
+    *******************************************************************************/
+   public void setMaxConcurrentSessionsPerSFTPHost(Integer maxConcurrentSessionsPerSFTPHost)
+   {
+      this.maxConcurrentSessionsPerSFTPHost = maxConcurrentSessionsPerSFTPHost;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for maxConcurrentSessionsPerSFTPHost
+    *******************************************************************************/
+   public SFTPDataIntegrationQBitConfig withMaxConcurrentSessionsPerSFTPHost(Integer maxConcurrentSessionsPerSFTPHost)
+   {
+      this.maxConcurrentSessionsPerSFTPHost = maxConcurrentSessionsPerSFTPHost;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for useSFTPSessionPool
+    *******************************************************************************/
+   public Boolean getUseSFTPSessionPool()
+   {
+      return (this.useSFTPSessionPool);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for useSFTPSessionPool
+    *******************************************************************************/
+   public void setUseSFTPSessionPool(Boolean useSFTPSessionPool)
+   {
+      this.useSFTPSessionPool = useSFTPSessionPool;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for useSFTPSessionPool
+    *******************************************************************************/
+   public SFTPDataIntegrationQBitConfig withUseSFTPSessionPool(Boolean useSFTPSessionPool)
+   {
+      this.useSFTPSessionPool = useSFTPSessionPool;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for sftpSessionPoolIdleTimeoutSeconds
+    *******************************************************************************/
+   public Integer getSftpSessionPoolIdleTimeoutSeconds()
+   {
+      return (this.sftpSessionPoolIdleTimeoutSeconds);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for sftpSessionPoolIdleTimeoutSeconds
+    *******************************************************************************/
+   public void setSftpSessionPoolIdleTimeoutSeconds(Integer sftpSessionPoolIdleTimeoutSeconds)
+   {
+      this.sftpSessionPoolIdleTimeoutSeconds = sftpSessionPoolIdleTimeoutSeconds;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for sftpSessionPoolIdleTimeoutSeconds
+    *******************************************************************************/
+   public SFTPDataIntegrationQBitConfig withSftpSessionPoolIdleTimeoutSeconds(Integer sftpSessionPoolIdleTimeoutSeconds)
+   {
+      this.sftpSessionPoolIdleTimeoutSeconds = sftpSessionPoolIdleTimeoutSeconds;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for importFileSyncMaxBytesInFlight
+    *******************************************************************************/
+   public Long getImportFileSyncMaxBytesInFlight()
+   {
+      return (this.importFileSyncMaxBytesInFlight);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for importFileSyncMaxBytesInFlight
+    *******************************************************************************/
+   public void setImportFileSyncMaxBytesInFlight(Long importFileSyncMaxBytesInFlight)
+   {
+      this.importFileSyncMaxBytesInFlight = importFileSyncMaxBytesInFlight;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for importFileSyncMaxBytesInFlight
+    *******************************************************************************/
+   public SFTPDataIntegrationQBitConfig withImportFileSyncMaxBytesInFlight(Long importFileSyncMaxBytesInFlight)
+   {
+      this.importFileSyncMaxBytesInFlight = importFileSyncMaxBytesInFlight;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for useImportedSourcePathIndex
+    *******************************************************************************/
+   public Boolean getUseImportedSourcePathIndex()
+   {
+      return (this.useImportedSourcePathIndex);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for useImportedSourcePathIndex
+    *******************************************************************************/
+   public void setUseImportedSourcePathIndex(Boolean useImportedSourcePathIndex)
+   {
+      this.useImportedSourcePathIndex = useImportedSourcePathIndex;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for useImportedSourcePathIndex
+    *******************************************************************************/
+   public SFTPDataIntegrationQBitConfig withUseImportedSourcePathIndex(Boolean useImportedSourcePathIndex)
+   {
+      this.useImportedSourcePathIndex = useImportedSourcePathIndex;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for importFileStagingThreads
+    *******************************************************************************/
+   public Integer getImportFileStagingThreads()
+   {
+      return (this.importFileStagingThreads);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for importFileStagingThreads
+    *******************************************************************************/
+   public void setImportFileStagingThreads(Integer importFileStagingThreads)
+   {
+      this.importFileStagingThreads = importFileStagingThreads;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for importFileStagingThreads
+    *******************************************************************************/
+   public SFTPDataIntegrationQBitConfig withImportFileStagingThreads(Integer importFileStagingThreads)
+   {
+      this.importFileStagingThreads = importFileStagingThreads;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for importFileBulkLoadThreads
+    *******************************************************************************/
+   public Integer getImportFileBulkLoadThreads()
+   {
+      return (this.importFileBulkLoadThreads);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for importFileBulkLoadThreads
+    *******************************************************************************/
+   public void setImportFileBulkLoadThreads(Integer importFileBulkLoadThreads)
+   {
+      this.importFileBulkLoadThreads = importFileBulkLoadThreads;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for importFileBulkLoadThreads
+    *******************************************************************************/
+   public SFTPDataIntegrationQBitConfig withImportFileBulkLoadThreads(Integer importFileBulkLoadThreads)
+   {
+      this.importFileBulkLoadThreads = importFileBulkLoadThreads;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for importFileBulkLoadMaxConcurrentPerTable
+    *******************************************************************************/
+   public Integer getImportFileBulkLoadMaxConcurrentPerTable()
+   {
+      return (this.importFileBulkLoadMaxConcurrentPerTable);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for importFileBulkLoadMaxConcurrentPerTable
+    *******************************************************************************/
+   public void setImportFileBulkLoadMaxConcurrentPerTable(Integer importFileBulkLoadMaxConcurrentPerTable)
+   {
+      this.importFileBulkLoadMaxConcurrentPerTable = importFileBulkLoadMaxConcurrentPerTable;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for importFileBulkLoadMaxConcurrentPerTable
+    *******************************************************************************/
+   public SFTPDataIntegrationQBitConfig withImportFileBulkLoadMaxConcurrentPerTable(Integer importFileBulkLoadMaxConcurrentPerTable)
+   {
+      this.importFileBulkLoadMaxConcurrentPerTable = importFileBulkLoadMaxConcurrentPerTable;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for importFileBulkLoadMaxConcurrentByTable
+    *******************************************************************************/
+   public Map<String, Integer> getImportFileBulkLoadMaxConcurrentByTable()
+   {
+      return (this.importFileBulkLoadMaxConcurrentByTable);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for importFileBulkLoadMaxConcurrentByTable
+    *******************************************************************************/
+   public void setImportFileBulkLoadMaxConcurrentByTable(Map<String, Integer> importFileBulkLoadMaxConcurrentByTable)
+   {
+      this.importFileBulkLoadMaxConcurrentByTable = importFileBulkLoadMaxConcurrentByTable;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for importFileBulkLoadMaxConcurrentByTable
+    *******************************************************************************/
+   public SFTPDataIntegrationQBitConfig withImportFileBulkLoadMaxConcurrentByTable(Map<String, Integer> importFileBulkLoadMaxConcurrentByTable)
+   {
+      this.importFileBulkLoadMaxConcurrentByTable = importFileBulkLoadMaxConcurrentByTable;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for useImportFileLeases
+    *******************************************************************************/
+   public Boolean getUseImportFileLeases()
+   {
+      return (this.useImportFileLeases);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for useImportFileLeases
+    *******************************************************************************/
+   public void setUseImportFileLeases(Boolean useImportFileLeases)
+   {
+      this.useImportFileLeases = useImportFileLeases;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for useImportFileLeases
+    *******************************************************************************/
+   public SFTPDataIntegrationQBitConfig withUseImportFileLeases(Boolean useImportFileLeases)
+   {
+      this.useImportFileLeases = useImportFileLeases;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for importFileLeaseSeconds
+    *******************************************************************************/
+   public Integer getImportFileLeaseSeconds()
+   {
+      return (this.importFileLeaseSeconds);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for importFileLeaseSeconds
+    *******************************************************************************/
+   public void setImportFileLeaseSeconds(Integer importFileLeaseSeconds)
+   {
+      this.importFileLeaseSeconds = importFileLeaseSeconds;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for importFileLeaseSeconds
+    *******************************************************************************/
+   public SFTPDataIntegrationQBitConfig withImportFileLeaseSeconds(Integer importFileLeaseSeconds)
+   {
+      this.importFileLeaseSeconds = importFileLeaseSeconds;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for importFileBulkLoadChunkRows
+    *******************************************************************************/
+   public Integer getImportFileBulkLoadChunkRows()
+   {
+      return (this.importFileBulkLoadChunkRows);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for importFileBulkLoadChunkRows
+    *******************************************************************************/
+   public void setImportFileBulkLoadChunkRows(Integer importFileBulkLoadChunkRows)
+   {
+      this.importFileBulkLoadChunkRows = importFileBulkLoadChunkRows;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for importFileBulkLoadChunkRows
+    *******************************************************************************/
+   public SFTPDataIntegrationQBitConfig withImportFileBulkLoadChunkRows(Integer importFileBulkLoadChunkRows)
+   {
+      this.importFileBulkLoadChunkRows = importFileBulkLoadChunkRows;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for importFileBulkLoadChunkThreads
+    *******************************************************************************/
+   public Integer getImportFileBulkLoadChunkThreads()
+   {
+      return (this.importFileBulkLoadChunkThreads);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for importFileBulkLoadChunkThreads
+    *******************************************************************************/
+   public void setImportFileBulkLoadChunkThreads(Integer importFileBulkLoadChunkThreads)
+   {
+      this.importFileBulkLoadChunkThreads = importFileBulkLoadChunkThreads;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for importFileBulkLoadChunkThreads
+    *******************************************************************************/
+   public SFTPDataIntegrationQBitConfig withImportFileBulkLoadChunkThreads(Integer importFileBulkLoadChunkThreads)
+   {
+      this.importFileBulkLoadChunkThreads = importFileBulkLoadChunkThreads;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for importFileBulkLoadCoalesceMaxFiles
+    *******************************************************************************/
+   public Integer getImportFileBulkLoadCoalesceMaxFiles()
+   {
+      return (this.importFileBulkLoadCoalesceMaxFiles);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for importFileBulkLoadCoalesceMaxFiles
+    *******************************************************************************/
+   public void setImportFileBulkLoadCoalesceMaxFiles(Integer importFileBulkLoadCoalesceMaxFiles)
+   {
+      this.importFileBulkLoadCoalesceMaxFiles = importFileBulkLoadCoalesceMaxFiles;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for importFileBulkLoadCoalesceMaxFiles
+    *******************************************************************************/
+   public SFTPDataIntegrationQBitConfig withImportFileBulkLoadCoalesceMaxFiles(Integer importFileBulkLoadCoalesceMaxFiles)
+   {
+      this.importFileBulkLoadCoalesceMaxFiles = importFileBulkLoadCoalesceMaxFiles;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for importFileBulkLoadCoalesceMaxBytes
+    *******************************************************************************/
+   public Long getImportFileBulkLoadCoalesceMaxBytes()
+   {
+      return (this.importFileBulkLoadCoalesceMaxBytes);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for importFileBulkLoadCoalesceMaxBytes
+    *******************************************************************************/
+   public void setImportFileBulkLoadCoalesceMaxBytes(Long importFileBulkLoadCoalesceMaxBytes)
+   {
+      this.importFileBulkLoadCoalesceMaxBytes = importFileBulkLoadCoalesceMaxBytes;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for importFileBulkLoadCoalesceMaxBytes
+    *******************************************************************************/
+   public SFTPDataIntegrationQBitConfig withImportFileBulkLoadCoalesceMaxBytes(Long importFileBulkLoadCoalesceMaxBytes)
+   {
+      this.importFileBulkLoadCoalesceMaxBytes = importFileBulkLoadCoalesceMaxBytes;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for validateStagedFilesBeforeBulkLoad
+    *******************************************************************************/
+   public Boolean getValidateStagedFilesBeforeBulkLoad()
+   {
+      return (this.validateStagedFilesBeforeBulkLoad);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for validateStagedFilesBeforeBulkLoad
+    *******************************************************************************/
+   public void setValidateStagedFilesBeforeBulkLoad(Boolean validateStagedFilesBeforeBulkLoad)
+   {
+      this.validateStagedFilesBeforeBulkLoad = validateStagedFilesBeforeBulkLoad;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for validateStagedFilesBeforeBulkLoad
+    *******************************************************************************/
+   public SFTPDataIntegrationQBitConfig withValidateStagedFilesBeforeBulkLoad(Boolean validateStagedFilesBeforeBulkLoad)
+   {
+      this.validateStagedFilesBeforeBulkLoad = validateStagedFilesBeforeBulkLoad;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for convertStagedSpreadsheetsToCsv
+    *******************************************************************************/
+   public Boolean getConvertStagedSpreadsheetsToCsv()
+   {
+      return (this.convertStagedSpreadsheetsToCsv);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for convertStagedSpreadsheetsToCsv
+    *******************************************************************************/
+   public void setConvertStagedSpreadsheetsToCsv(Boolean convertStagedSpreadsheetsToCsv)
+   {
+      this.convertStagedSpreadsheetsToCsv = convertStagedSpreadsheetsToCsv;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for convertStagedSpreadsheetsToCsv
+    *******************************************************************************/
+   public SFTPDataIntegrationQBitConfig withConvertStagedSpreadsheetsToCsv(Boolean convertStagedSpreadsheetsToCsv)
+   {
+      this.convertStagedSpreadsheetsToCsv = convertStagedSpreadsheetsToCsv;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for exportRenderThreads
+    *******************************************************************************/
+   public Integer getExportRenderThreads()
+   {
+      return (this.exportRenderThreads);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for exportRenderThreads
+    *******************************************************************************/
+   public void setExportRenderThreads(Integer exportRenderThreads)
+   {
+      this.exportRenderThreads = exportRenderThreads;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for exportRenderThreads
+    *******************************************************************************/
+   public SFTPDataIntegrationQBitConfig withExportRenderThreads(Integer exportRenderThreads)
+   {
+      this.exportRenderThreads = exportRenderThreads;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for exportMaxConcurrentPerSFTPConnection
+    *******************************************************************************/
+   public Integer getExportMaxConcurrentPerSFTPConnection()
+   {
+      return (this.exportMaxConcurrentPerSFTPConnection);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for exportMaxConcurrentPerSFTPConnection
+    *******************************************************************************/
+   public void setExportMaxConcurrentPerSFTPConnection(Integer exportMaxConcurrentPerSFTPConnection)
+   {
+      this.exportMaxConcurrentPerSFTPConnection = exportMaxConcurrentPerSFTPConnection;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for exportMaxConcurrentPerSFTPConnection
+    *******************************************************************************/
+   public SFTPDataIntegrationQBitConfig withExportMaxConcurrentPerSFTPConnection(Integer exportMaxConcurrentPerSFTPConnection)
+   {
+      this.exportMaxConcurrentPerSFTPConnection = exportMaxConcurrentPerSFTPConnection;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for streamExportsToDestination
+    *******************************************************************************/
+   public Boolean getStreamExportsToDestination()
+   {
+      return (this.streamExportsToDestination);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for streamExportsToDestination
+    *******************************************************************************/
+   public void setStreamExportsToDestination(Boolean streamExportsToDestination)
+   {
+      this.streamExportsToDestination = streamExportsToDestination;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for streamExportsToDestination
+    *******************************************************************************/
+   public SFTPDataIntegrationQBitConfig withStreamExportsToDestination(Boolean streamExportsToDestination)
+   {
+      this.streamExportsToDestination = streamExportsToDestination;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for decompressMaxExpandedBytes
+    *******************************************************************************/
+   public Long getDecompressMaxExpandedBytes()
+   {
+      return (this.decompressMaxExpandedBytes);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for decompressMaxExpandedBytes
+    *******************************************************************************/
+   public void setDecompressMaxExpandedBytes(Long decompressMaxExpandedBytes)
+   {
+      this.decompressMaxExpandedBytes = decompressMaxExpandedBytes;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for decompressMaxExpandedBytes
+    *******************************************************************************/
+   public SFTPDataIntegrationQBitConfig withDecompressMaxExpandedBytes(Long decompressMaxExpandedBytes)
+   {
+      this.decompressMaxExpandedBytes = decompressMaxExpandedBytes;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for decompressMaxArchiveEntries
+    *******************************************************************************/
+   public Integer getDecompressMaxArchiveEntries()
+   {
+      return (this.decompressMaxArchiveEntries);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for decompressMaxArchiveEntries
+    *******************************************************************************/
+   public void setDecompressMaxArchiveEntries(Integer decompressMaxArchiveEntries)
+   {
+      this.decompressMaxArchiveEntries = decompressMaxArchiveEntries;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for decompressMaxArchiveEntries
+    *******************************************************************************/
+   public SFTPDataIntegrationQBitConfig withDecompressMaxArchiveEntries(Integer decompressMaxArchiveEntries)
+   {
+      this.decompressMaxArchiveEntries = decompressMaxArchiveEntries;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for decompressMaxCompressionRatio
+    *******************************************************************************/
+   public Integer getDecompressMaxCompressionRatio()
+   {
+      return (this.decompressMaxCompressionRatio);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for decompressMaxCompressionRatio
+    *******************************************************************************/
+   public void setDecompressMaxCompressionRatio(Integer decompressMaxCompressionRatio)
+   {
+      this.decompressMaxCompressionRatio = decompressMaxCompressionRatio;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for decompressMaxCompressionRatio
+    *******************************************************************************/
+   public SFTPDataIntegrationQBitConfig withDecompressMaxCompressionRatio(Integer decompressMaxCompressionRatio)
+   {
+      this.decompressMaxCompressionRatio = decompressMaxCompressionRatio;
+      return (this);
+   }
+
 }
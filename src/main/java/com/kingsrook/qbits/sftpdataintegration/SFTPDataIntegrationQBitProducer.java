@@ -23,6 +23,7 @@ package com.kingsrook.qbits.sftpdataintegration;
 
 
 import java.util.List;
+import com.kingsrook.qbits.sftpdataintegration.utils.SFTPSessionPool;
 import com.kingsrook.qqq.backend.core.exceptions.QException;
 import com.kingsrook.qqq.backend.core.logging.QLogger;
 import com.kingsrook.qqq.backend.core.model.metadata.MetaDataProducerHelper;
@@ -30,6 +31,7 @@ import com.kingsrook.qqq.backend.core.model.metadata.MetaDataProducerInterface;
 import com.kingsrook.qqq.backend.core.model.metadata.QInstance;
 import com.kingsrook.qqq.backend.core.model.metadata.qbits.QBitMetaData;
 import com.kingsrook.qqq.backend.core.model.metadata.qbits.QBitProducer;
+import org.apache.commons.lang3.BooleanUtils;
 
 
 /*******************************************************************************
@@ -59,6 +61,15 @@ public class SFTPDataIntegrationQBitProducer implements QBitProducer
 
       List<MetaDataProducerInterface<?>> producers = MetaDataProducerHelper.findProducers(getClass().getPackageName());
       finishProducing(qInstance, qBitMetaData, sftpDataIntegrationQBitConfig, producers);
+
+      /////////////////////////////////////////////////////////////////////////
+      // the session pool is shared by the whole server - so set it up once, //
+      // here, rather than from the steps that borrow from it                //
+      /////////////////////////////////////////////////////////////////////////
+      if(sftpDataIntegrationQBitConfig != null && BooleanUtils.isTrue(sftpDataIntegrationQBitConfig.getUseSFTPSessionPool()))
+      {
+         SFTPSessionPool.getInstance().setIdleTimeoutSeconds(sftpDataIntegrationQBitConfig.getSftpSessionPoolIdleTimeoutSeconds());
+      }
    }
 
 
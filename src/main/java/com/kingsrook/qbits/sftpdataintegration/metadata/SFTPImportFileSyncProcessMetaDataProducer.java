@@ -99,13 +99,16 @@ public class SFTPImportFileSyncProcessMetaDataProducer extends QBitComponentMeta
 
       //////////////////////////////////////////////////////////////////////////////////
       // if the source-file table uses variants, set that variant data on the process //
+      // - running variants in parallel if the config allows more than 1 at a time.   //
+      // the extract step enforces the limits on concurrent runs (and SFTP sessions). //
       //////////////////////////////////////////////////////////////////////////////////
       QTableMetaData   sourceFileTable   = qInstance.getTable(sourceFileTableName);
       QBackendMetaData sourceFileBackend = qInstance.getBackend(sourceFileTable.getBackendName());
       if(sourceFileBackend.getUsesVariants())
       {
+         Integer maxConcurrentRuns = qBitConfig.getImportFileSyncMaxConcurrentRuns();
          processMetaData.withVariantBackend(sourceFileBackend.getName());
-         processMetaData.withVariantRunStrategy(VariantRunStrategy.SERIAL);
+         processMetaData.withVariantRunStrategy(maxConcurrentRuns != null && maxConcurrentRuns > 1 ? VariantRunStrategy.PARALLEL : VariantRunStrategy.SERIAL);
       }
 
       processMetaData.setProcessTracerCodeReference(getQBitConfig().getProcessTracerCodeReference());
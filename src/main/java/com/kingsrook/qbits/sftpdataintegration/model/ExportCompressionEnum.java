@@ -0,0 +1,228 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.sftpdataintegration.model;
+
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Objects;
+import java.util.zip.GZIPOutputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+import com.kingsrook.qqq.backend.core.model.metadata.possiblevalues.PossibleValueEnum;
+import com.kingsrook.qqq.backend.core.model.metadata.producers.annotations.QMetaDataProducingPossibleValueEnum;
+
+
+/*******************************************************************************
+ ** ExportCompressionEnum - possible value enum, of the ways an export's file
+ ** can be compressed (as it's rendered), and the extension each adds to the
+ ** file's name.
+ **
+ ** zstd needs the (optional) com.github.luben:zstd-jni library - applications
+ ** that want it must depend on it themselves.  without it, ZSTD can't be
+ ** selected on an export config, and wrapping a stream with it fails with an
+ ** error saying so.
+ *******************************************************************************/
+@QMetaDataProducingPossibleValueEnum
+public enum ExportCompressionEnum implements PossibleValueEnum<String>
+{
+   GZIP("gzip", "gzip", "gz"),
+   ZSTD("zstd", "Zstandard", "zst");
+
+   private final String id;
+   private final String label;
+   private final String extension;
+
+   public static final String NAME = "ExportCompressionEnum";
+
+   private static final int    GZIP_BUFFER_BYTES        = 64 * 1024;
+   private static final int    ZSTD_LEVEL               = 3;
+   private static final String ZSTD_OUTPUT_STREAM_CLASS = "com.github.luben.zstd.ZstdOutputStream";
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   ExportCompressionEnum(String id, String label, String extension)
+   {
+      this.id = id;
+      this.label = label;
+      this.extension = extension;
+   }
+
+
+
+   /*******************************************************************************
+    ** Get instance by id
+    **
+    *******************************************************************************/
+   public static ExportCompressionEnum getById(String id)
+   {
+      if(id == null)
+      {
+         return (null);
+      }
+
+      for(ExportCompressionEnum value : ExportCompressionEnum.values())
+      {
+         if(Objects.equals(value.id, id))
+         {
+            return (value);
+         }
+      }
+
+      return (null);
+   }
+
+
+
+   /***************************************************************************
+    ** wrap an output stream in a (streaming) encoder for this compression.
+    ** closing the returned stream finishes the encoding, and closes the
+    ** wrapped stream.
+    ***************************************************************************/
+   public OutputStream wrapOutputStream(OutputStream outputStream) throws IOException
+   {
+      return switch(this)
+      {
+         case GZIP -> new GZIPOutputStream(outputStream, GZIP_BUFFER_BYTES);
+         case ZSTD -> ZstdEncoder.wrapOutputStream(outputStream);
+      };
+   }
+
+
+
+   /***************************************************************************
+    ** whether this compression can be used - i.e., whatever library it needs
+    ** is on the classpath.
+    ***************************************************************************/
+   public boolean isAvailable()
+   {
+      return switch(this)
+      {
+         case GZIP -> true;
+         case ZSTD -> ZstdEncoder.isAvailable();
+      };
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for id
+    **
+    *******************************************************************************/
+   public String getId()
+   {
+      return id;
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for label
+    **
+    *******************************************************************************/
+   public String getLabel()
+   {
+      return label;
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for extension (without a leading dot)
+    **
+    *******************************************************************************/
+   public String getExtension()
+   {
+      return extension;
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Override
+   public String getPossibleValueId()
+   {
+      return (getId());
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Override
+   public String getPossibleValueLabel()
+   {
+      return (getLabel());
+   }
+
+
+
+   /***************************************************************************
+    ** the only place that references zstd-jni's classes - kept apart from the
+    ** enum, so that the enum (and gzip) work without that optional library.
+    ***************************************************************************/
+   private static class ZstdEncoder
+   {
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      private static boolean isAvailable()
+      {
+         try
+         {
+            Class.forName(ZSTD_OUTPUT_STREAM_CLASS, false, ExportCompressionEnum.class.getClassLoader());
+            return (true);
+         }
+         catch(ClassNotFoundException | LinkageError e)
+         {
+            return (false);
+         }
+      }
+
+
+
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      private static OutputStream wrapOutputStream(OutputStream outputStream) throws IOException
+      {
+         if(!isAvailable())
+         {
+            throw (new IOException("Zstandard compression requires the com.github.luben:zstd-jni library, which is not on the classpath"));
+         }
+
+         try
+         {
+            return (new ZstdOutputStream(outputStream, ZSTD_LEVEL));
+         }
+         catch(LinkageError e)
+         {
+            throw (new IOException("Zstandard compression is not usable (the zstd-jni native library could not be loaded)", e));
+         }
+      }
+   }
+}
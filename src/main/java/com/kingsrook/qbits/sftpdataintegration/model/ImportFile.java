@@ -22,6 +22,7 @@
 package com.kingsrook.qbits.sftpdataintegration.model;
 
 
+import java.math.BigDecimal;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
@@ -33,6 +34,7 @@ import com.kingsrook.qqq.backend.core.model.data.QRecordEntity;
 import com.kingsrook.qqq.backend.core.model.metadata.QInstance;
 import com.kingsrook.qqq.backend.core.model.metadata.code.QCodeReference;
 import com.kingsrook.qqq.backend.core.model.metadata.fields.AdornmentType;
+import com.kingsrook.qqq.backend.core.model.metadata.fields.DisplayFormat;
 import com.kingsrook.qqq.backend.core.model.metadata.fields.FieldAdornment;
 import com.kingsrook.qqq.backend.core.model.metadata.fields.ValueTooLongBehavior;
 import com.kingsrook.qqq.backend.core.model.metadata.layout.QIcon;
@@ -72,11 +74,13 @@ public class ImportFile extends QRecordEntity
             .withIcon(new QIcon().withName("upload_file"))
             .withRecordLabelFormat("%s / %s")
             .withRecordLabelFields("sftpImportConfigId", "sourcePath")
-            .withSection(SectionFactory.defaultT1("id", "sftpImportConfigId", "sourcePath"))
-            .withSection(SectionFactory.defaultT2("importFileStatusId", "savedBulkLoadProfileId", "stagedPath"))
+            .withSection(SectionFactory.defaultT1("id", "sftpImportConfigId", "sourcePath", "archiveEntryName"))
+            .withSection(SectionFactory.defaultT2("importFileStatusId", "validationMessage", "savedBulkLoadProfileId", "stagedPath", "parsedPath", "contentHash", "sourceFileDeletePending"))
+            .withSection(SectionFactory.customT2("bulkLoadMetrics", new QIcon("speed"), "stagedBytes", "bulkLoadRowsInserted", "bulkLoadRowsErrored", "bulkLoadMillis", "bulkLoadRowsPerSecond", "bulkLoadChunkRows", "bulkLoadChunksLoaded"))
             .withSection(SectionFactory.defaultT3("createDate", "modifyDate"));
 
          table.withCustomizer(TableCustomizers.POST_QUERY_RECORD, new QCodeReference(ImportFileCustomizer.class));
+         table.withCustomizer(TableCustomizers.POST_DELETE_RECORD, new QCodeReference(ImportFileCustomizer.class));
          table.getField("stagedPath").withFieldAdornment(new FieldAdornment()
             .withType(AdornmentType.FILE_DOWNLOAD)
             .withValue(AdornmentType.FileDownloadValues.FILE_NAME_FORMAT, "%s")
@@ -97,24 +101,60 @@ public class ImportFile extends QRecordEntity
    @QField(maxLength = 250, valueTooLongBehavior = ValueTooLongBehavior.ERROR)
    private String stagedPath;
 
+   @QField(maxLength = 250, valueTooLongBehavior = ValueTooLongBehavior.ERROR, isEditable = false)
+   private String parsedPath;
+
    @QField(possibleValueSourceName = SFTPImportConfig.TABLE_NAME, label = "SFTP Import Config")
    private Integer sftpImportConfigId;
 
    @QField(maxLength = 250, valueTooLongBehavior = ValueTooLongBehavior.TRUNCATE_ELLIPSIS)
    private String sourcePath;
 
+   @QField(maxLength = 250, valueTooLongBehavior = ValueTooLongBehavior.TRUNCATE_ELLIPSIS, isEditable = false)
+   private String archiveEntryName;
+
    @QField(possibleValueSourceName = SavedBulkLoadProfile.TABLE_NAME, label = "Bulk Load Profile")
    private Integer savedBulkLoadProfileId;
 
    @QField(possibleValueSourceName = ImportFileStatusEnum.NAME)
    private Integer importFileStatusId;
 
+   @QField(maxLength = 250, valueTooLongBehavior = ValueTooLongBehavior.TRUNCATE_ELLIPSIS, isEditable = false)
+   private String validationMessage;
+
    @QField(isEditable = false)
    private Instant createDate;
 
    @QField(isEditable = false)
    private Instant modifyDate;
 
+   @QField(maxLength = 64, valueTooLongBehavior = ValueTooLongBehavior.ERROR, isEditable = false)
+   private String contentHash;
+
+   @QField(isEditable = false)
+   private Boolean sourceFileDeletePending;
+
+   @QField(isEditable = false)
+   private Long stagedBytes;
+
+   @QField(isEditable = false)
+   private Integer bulkLoadRowsInserted;
+
+   @QField(isEditable = false)
+   private Integer bulkLoadRowsErrored;
+
+   @QField(isEditable = false)
+   private Long bulkLoadMillis;
+
+   @QField(isEditable = false, displayFormat = DisplayFormat.DECIMAL1_COMMAS)
+   private BigDecimal bulkLoadRowsPerSecond;
+
+   @QField(isEditable = false)
+   private Integer bulkLoadChunkRows;
+
+   @QField(isEditable = false)
+   private String bulkLoadChunksLoaded;
+
 
 
    /*******************************************************************************
@@ -382,4 +422,376 @@ public class ImportFile extends QRecordEntity
       return (this);
    }
 
+
+
+   /*******************************************************************************
+    ** Getter for contentHash
+    *******************************************************************************/
+   public String getContentHash()
+   {
+      return (this.contentHash);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for contentHash
+    *******************************************************************************/
+   public void setContentHash(String contentHash)
+   {
+      this.contentHash = contentHash;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for contentHash
+    *******************************************************************************/
+   public ImportFile withContentHash(String contentHash)
+   {
+      this.contentHash = contentHash;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for sourceFileDeletePending
+    *******************************************************************************/
+   public Boolean getSourceFileDeletePending()
+   {
+      return (this.sourceFileDeletePending);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for sourceFileDeletePending
+    *******************************************************************************/
+   public void setSourceFileDeletePending(Boolean sourceFileDeletePending)
+   {
+      this.sourceFileDeletePending = sourceFileDeletePending;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for sourceFileDeletePending
+    *******************************************************************************/
+   public ImportFile withSourceFileDeletePending(Boolean sourceFileDeletePending)
+   {
+      this.sourceFileDeletePending = sourceFileDeletePending;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for stagedBytes
+    *******************************************************************************/
+   public Long getStagedBytes()
+   {
+      return (this.stagedBytes);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for stagedBytes
+    *******************************************************************************/
+   public void setStagedBytes(Long stagedBytes)
+   {
+      this.stagedBytes = stagedBytes;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for stagedBytes
+    *******************************************************************************/
+   public ImportFile withStagedBytes(Long stagedBytes)
+   {
+      this.stagedBytes = stagedBytes;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for bulkLoadRowsInserted
+    *******************************************************************************/
+   public Integer getBulkLoadRowsInserted()
+   {
+      return (this.bulkLoadRowsInserted);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for bulkLoadRowsInserted
+    *******************************************************************************/
+   public void setBulkLoadRowsInserted(Integer bulkLoadRowsInserted)
+   {
+      this.bulkLoadRowsInserted = bulkLoadRowsInserted;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for bulkLoadRowsInserted
+    *******************************************************************************/
+   public ImportFile withBulkLoadRowsInserted(Integer bulkLoadRowsInserted)
+   {
+      this.bulkLoadRowsInserted = bulkLoadRowsInserted;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for bulkLoadRowsErrored
+    *******************************************************************************/
+   public Integer getBulkLoadRowsErrored()
+   {
+      return (this.bulkLoadRowsErrored);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for bulkLoadRowsErrored
+    *******************************************************************************/
+   public void setBulkLoadRowsErrored(Integer bulkLoadRowsErrored)
+   {
+      this.bulkLoadRowsErrored = bulkLoadRowsErrored;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for bulkLoadRowsErrored
+    *******************************************************************************/
+   public ImportFile withBulkLoadRowsErrored(Integer bulkLoadRowsErrored)
+   {
+      this.bulkLoadRowsErrored = bulkLoadRowsErrored;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for bulkLoadMillis
+    *******************************************************************************/
+   public Long getBulkLoadMillis()
+   {
+      return (this.bulkLoadMillis);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for bulkLoadMillis
+    *******************************************************************************/
+   public void setBulkLoadMillis(Long bulkLoadMillis)
+   {
+      this.bulkLoadMillis = bulkLoadMillis;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for bulkLoadMillis
+    *******************************************************************************/
+   public ImportFile withBulkLoadMillis(Long bulkLoadMillis)
+   {
+      this.bulkLoadMillis = bulkLoadMillis;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for bulkLoadRowsPerSecond
+    *******************************************************************************/
+   public BigDecimal getBulkLoadRowsPerSecond()
+   {
+      return (this.bulkLoadRowsPerSecond);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for bulkLoadRowsPerSecond
+    *******************************************************************************/
+   public void setBulkLoadRowsPerSecond(BigDecimal bulkLoadRowsPerSecond)
+   {
+      this.bulkLoadRowsPerSecond = bulkLoadRowsPerSecond;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for bulkLoadRowsPerSecond
+    *******************************************************************************/
+   public ImportFile withBulkLoadRowsPerSecond(BigDecimal bulkLoadRowsPerSecond)
+   {
+      this.bulkLoadRowsPerSecond = bulkLoadRowsPerSecond;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for validationMessage
+    *******************************************************************************/
+   public String getValidationMessage()
+   {
+      return (this.validationMessage);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for validationMessage
+    *******************************************************************************/
+   public void setValidationMessage(String validationMessage)
+   {
+      this.validationMessage = validationMessage;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for validationMessage
+    *******************************************************************************/
+   public ImportFile withValidationMessage(String validationMessage)
+   {
+      this.validationMessage = validationMessage;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for parsedPath
+    *******************************************************************************/
+   public String getParsedPath()
+   {
+      return (this.parsedPath);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for parsedPath
+    *******************************************************************************/
+   public void setParsedPath(String parsedPath)
+   {
+      this.parsedPath = parsedPath;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for parsedPath
+    *******************************************************************************/
+   public ImportFile withParsedPath(String parsedPath)
+   {
+      this.parsedPath = parsedPath;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for archiveEntryName
+    *******************************************************************************/
+   public String getArchiveEntryName()
+   {
+      return (this.archiveEntryName);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for archiveEntryName
+    *******************************************************************************/
+   public void setArchiveEntryName(String archiveEntryName)
+   {
+      this.archiveEntryName = archiveEntryName;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for archiveEntryName
+    *******************************************************************************/
+   public ImportFile withArchiveEntryName(String archiveEntryName)
+   {
+      this.archiveEntryName = archiveEntryName;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for bulkLoadChunkRows
+    *******************************************************************************/
+   public Integer getBulkLoadChunkRows()
+   {
+      return (this.bulkLoadChunkRows);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for bulkLoadChunkRows
+    *******************************************************************************/
+   public void setBulkLoadChunkRows(Integer bulkLoadChunkRows)
+   {
+      this.bulkLoadChunkRows = bulkLoadChunkRows;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for bulkLoadChunkRows
+    *******************************************************************************/
+   public ImportFile withBulkLoadChunkRows(Integer bulkLoadChunkRows)
+   {
+      this.bulkLoadChunkRows = bulkLoadChunkRows;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for bulkLoadChunksLoaded
+    *******************************************************************************/
+   public String getBulkLoadChunksLoaded()
+   {
+      return (this.bulkLoadChunksLoaded);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for bulkLoadChunksLoaded
+    *******************************************************************************/
+   public void setBulkLoadChunksLoaded(String bulkLoadChunksLoaded)
+   {
+      this.bulkLoadChunksLoaded = bulkLoadChunksLoaded;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for bulkLoadChunksLoaded
+    *******************************************************************************/
+   public ImportFile withBulkLoadChunksLoaded(String bulkLoadChunksLoaded)
+   {
+      this.bulkLoadChunksLoaded = bulkLoadChunksLoaded;
+      return (this);
+   }
+
 }
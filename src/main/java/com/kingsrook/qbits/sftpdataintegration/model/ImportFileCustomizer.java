@@ -22,19 +22,24 @@
 package com.kingsrook.qbits.sftpdataintegration.model;
 
 
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import com.kingsrook.qbits.sftpdataintegration.SFTPDataIntegrationQBitConfig;
 import com.kingsrook.qbits.sftpdataintegration.metadata.SFTPImportStagingFileTableMetaDataProducer;
+import com.kingsrook.qbits.sftpdataintegration.utils.ImportedSourcePathIndex;
 import com.kingsrook.qqq.backend.core.actions.customizers.TableCustomizerInterface;
 import com.kingsrook.qqq.backend.core.actions.permissions.PermissionsHelper;
 import com.kingsrook.qqq.backend.core.actions.permissions.TablePermissionSubType;
 import com.kingsrook.qqq.backend.core.context.QContext;
 import com.kingsrook.qqq.backend.core.exceptions.QException;
 import com.kingsrook.qqq.backend.core.model.actions.tables.QueryOrGetInputInterface;
+import com.kingsrook.qqq.backend.core.model.actions.tables.delete.DeleteInput;
 import com.kingsrook.qqq.backend.core.model.actions.tables.get.GetInput;
 import com.kingsrook.qqq.backend.core.model.data.QRecord;
 import com.kingsrook.qqq.backend.core.model.metadata.fields.AdornmentType;
 import com.kingsrook.qqq.backend.core.model.metadata.qbits.QBitConfig;
+import com.kingsrook.qqq.backend.core.utils.CollectionUtils;
 
 
 /*******************************************************************************
@@ -73,6 +78,34 @@ public class ImportFileCustomizer implements TableCustomizerInterface
 
 
 
+   /***************************************************************************
+    ** deleted import files may be re-imported - so the in-memory index of
+    ** imported source paths can't be trusted any more, for the configs whose
+    ** files were deleted (or for any config, if we can't tell which those are).
+    ** this only clears this server's index - others keep their entries until
+    ** they're reloaded (ImportedSourcePathIndex confirms hits, for that reason).
+    ***************************************************************************/
+   @Override
+   public List<QRecord> postDelete(DeleteInput deleteInput, List<QRecord> records) throws QException
+   {
+      Set<Integer> sftpImportConfigIds = new HashSet<>();
+      for(QRecord record : CollectionUtils.nonNullList(records))
+      {
+         Integer sftpImportConfigId = record.getValueInteger("sftpImportConfigId");
+         if(sftpImportConfigId == null)
+         {
+            ImportedSourcePathIndex.getInstance().clear();
+            return (records);
+         }
+         sftpImportConfigIds.add(sftpImportConfigId);
+      }
+
+      ImportedSourcePathIndex.getInstance().clear(sftpImportConfigIds);
+      return (records);
+   }
+
+
+
    /***************************************************************************
     **
     ***************************************************************************/
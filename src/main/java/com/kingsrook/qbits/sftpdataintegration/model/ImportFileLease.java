@@ -0,0 +1,272 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.sftpdataintegration.model;
+
+
+import java.time.Instant;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+import com.kingsrook.qqq.backend.core.model.data.QField;
+import com.kingsrook.qqq.backend.core.model.data.QRecord;
+import com.kingsrook.qqq.backend.core.model.data.QRecordEntity;
+import com.kingsrook.qqq.backend.core.model.metadata.QInstance;
+import com.kingsrook.qqq.backend.core.model.metadata.fields.ValueTooLongBehavior;
+import com.kingsrook.qqq.backend.core.model.metadata.layout.QIcon;
+import com.kingsrook.qqq.backend.core.model.metadata.producers.MetaDataCustomizerInterface;
+import com.kingsrook.qqq.backend.core.model.metadata.producers.annotations.QMetaDataProducingEntity;
+import com.kingsrook.qqq.backend.core.model.metadata.tables.QTableMetaData;
+import com.kingsrook.qqq.backend.core.model.metadata.tables.SectionFactory;
+import com.kingsrook.qqq.backend.core.model.metadata.tables.UniqueKey;
+
+
+/*******************************************************************************
+ ** QRecord Entity for ImportFileLease table - a claim, by one bulk load run,
+ ** on an ImportFile, until an expiry time.  The unique key on importFileId is
+ ** what makes claims atomic: of any runs that try to claim a file at once,
+ ** only one's insert can succeed.
+ *******************************************************************************/
+@QMetaDataProducingEntity(
+   produceTableMetaData = true,
+   tableMetaDataCustomizer = ImportFileLease.TableMetaDataCustomizer.class
+)
+public class ImportFileLease extends QRecordEntity
+{
+   public static final String TABLE_NAME = "importFileLease";
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   public static class TableMetaDataCustomizer implements MetaDataCustomizerInterface<QTableMetaData>
+   {
+
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      @Override
+      public QTableMetaData customizeMetaData(QInstance qInstance, QTableMetaData table) throws QException
+      {
+         table
+            .withIcon(new QIcon().withName("lock_clock"))
+            .withRecordLabelFormat("%s")
+            .withRecordLabelFields("importFileId")
+            .withUniqueKey(new UniqueKey("importFileId"))
+            .withSection(SectionFactory.defaultT1("id", "importFileId"))
+            .withSection(SectionFactory.defaultT2("leaseOwner", "leaseExpiresAt"))
+            .withSection(SectionFactory.defaultT3("createDate"));
+
+         return (table);
+      }
+   }
+
+
+
+   @QField(isEditable = false, isPrimaryKey = true)
+   private Integer id;
+
+   @QField(isRequired = true, label = "Import File")
+   private Integer importFileId;
+
+   @QField(maxLength = 100, valueTooLongBehavior = ValueTooLongBehavior.ERROR)
+   private String leaseOwner;
+
+   @QField()
+   private Instant leaseExpiresAt;
+
+   @QField(isEditable = false)
+   private Instant createDate;
+
+
+
+   /*******************************************************************************
+    ** Default constructor
+    *******************************************************************************/
+   public ImportFileLease()
+   {
+   }
+
+
+
+   /*******************************************************************************
+    ** Constructor that takes a QRecord
+    *******************************************************************************/
+   public ImportFileLease(QRecord record)
+   {
+      populateFromQRecord(record);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for id
+    *******************************************************************************/
+   public Integer getId()
+   {
+      return (this.id);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for id
+    *******************************************************************************/
+   public void setId(Integer id)
+   {
+      this.id = id;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for id
+    *******************************************************************************/
+   public ImportFileLease withId(Integer id)
+   {
+      this.id = id;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for importFileId
+    *******************************************************************************/
+   public Integer getImportFileId()
+   {
+      return (this.importFileId);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for importFileId
+    *******************************************************************************/
+   public void setImportFileId(Integer importFileId)
+   {
+      this.importFileId = importFileId;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for importFileId
+    *******************************************************************************/
+   public ImportFileLease withImportFileId(Integer importFileId)
+   {
+      this.importFileId = importFileId;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for leaseOwner
+    *******************************************************************************/
+   public String getLeaseOwner()
+   {
+      return (this.leaseOwner);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for leaseOwner
+    *******************************************************************************/
+   public void setLeaseOwner(String leaseOwner)
+   {
+      this.leaseOwner = leaseOwner;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for leaseOwner
+    *******************************************************************************/
+   public ImportFileLease withLeaseOwner(String leaseOwner)
+   {
+      this.leaseOwner = leaseOwner;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for leaseExpiresAt
+    *******************************************************************************/
+   public Instant getLeaseExpiresAt()
+   {
+      return (this.leaseExpiresAt);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for leaseExpiresAt
+    *******************************************************************************/
+   public void setLeaseExpiresAt(Instant leaseExpiresAt)
+   {
+      this.leaseExpiresAt = leaseExpiresAt;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for leaseExpiresAt
+    *******************************************************************************/
+   public ImportFileLease withLeaseExpiresAt(Instant leaseExpiresAt)
+   {
+      this.leaseExpiresAt = leaseExpiresAt;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for createDate
+    *******************************************************************************/
+   public Instant getCreateDate()
+   {
+      return (this.createDate);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for createDate
+    *******************************************************************************/
+   public void setCreateDate(Instant createDate)
+   {
+      this.createDate = createDate;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for createDate
+    *******************************************************************************/
+   public ImportFileLease withCreateDate(Instant createDate)
+   {
+      this.createDate = createDate;
+      return (this);
+   }
+
+}
@@ -40,7 +40,9 @@ public enum ImportFileStatusEnum implements PossibleValueEnum<Integer>
    PENDING(1, "Pending"),
    PROCESSING(2, "Processing"),
    COMPLETE(3, "Complete"),
-   ERROR(4, "Error");
+   ERROR(4, "Error"),
+   DUPLICATE(5, "Duplicate"),
+   INVALID(6, "Invalid");
 
    private final Integer id;
    private final String  label;
@@ -58,7 +60,9 @@ public enum ImportFileStatusEnum implements PossibleValueEnum<Integer>
          .withValues(iconAndColorValues(PENDING, "pending", AdornmentType.ChipValues.COLOR_DEFAULT))
          .withValues(iconAndColorValues(PROCESSING, "double_arrow", AdornmentType.ChipValues.COLOR_INFO))
          .withValues(iconAndColorValues(COMPLETE, "done", AdornmentType.ChipValues.COLOR_SUCCESS))
-         .withValues(iconAndColorValues(ERROR, "error", AdornmentType.ChipValues.COLOR_ERROR)));
+         .withValues(iconAndColorValues(ERROR, "error", AdornmentType.ChipValues.COLOR_ERROR))
+         .withValues(iconAndColorValues(DUPLICATE, "content_copy", AdornmentType.ChipValues.COLOR_WARNING))
+         .withValues(iconAndColorValues(INVALID, "rule", AdornmentType.ChipValues.COLOR_ERROR)));
    }
 
 
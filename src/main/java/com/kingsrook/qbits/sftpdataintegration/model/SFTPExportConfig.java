@@ -75,7 +75,7 @@ public class SFTPExportConfig extends QRecordEntity
             .withRecordLabelFields("name")
             .withUniqueKey(new UniqueKey("name"))
             .withSection(SectionFactory.defaultT1("id", "name"))
-            .withSection(SectionFactory.customT2("settings", new QIcon("settings"), "isActive", "sftpConnectionId", "savedReportId", "format", "subPath"))
+            .withSection(SectionFactory.customT2("settings", new QIcon("settings"), "isActive", "sftpConnectionId", "savedReportId", "format", "compression", "subPath"))
             .withSection(SectionFactory.customT2("schedule", new QIcon("schedule"), "cronExpression", "cronTimeZoneId"))
             .withSection(SectionFactory.customT2("variableValues", new QIcon().withName("data_object")).withWidgetName(SFTPExportConfigReportValuesWidgetMetaDataProducer.NAME))
             .withSection(SectionFactory.defaultT3("createDate", "modifyDate"))
@@ -126,6 +126,9 @@ public class SFTPExportConfig extends QRecordEntity
    @QField(isRequired = true, maxLength = 20, valueTooLongBehavior = ValueTooLongBehavior.ERROR, possibleValueSourceName = ReportFormatPossibleValueEnum.NAME)
    private String format;
 
+   @QField(maxLength = 20, valueTooLongBehavior = ValueTooLongBehavior.ERROR, possibleValueSourceName = ExportCompressionEnum.NAME)
+   private String compression;
+
    @QField()
    private String inputValues;
 
@@ -520,4 +523,35 @@ public class SFTPExportConfig extends QRecordEntity
       return (this);
    }
 
-}
\ No newline at end of file
+
+
+   /*******************************************************************************
+    ** Getter for compression
+    *******************************************************************************/
+   public String getCompression()
+   {
+      return (this.compression);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for compression
+    *******************************************************************************/
+   public void setCompression(String compression)
+   {
+      this.compression = compression;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for compression
+    *******************************************************************************/
+   public SFTPExportConfig withCompression(String compression)
+   {
+      this.compression = compression;
+      return (this);
+   }
+
+}
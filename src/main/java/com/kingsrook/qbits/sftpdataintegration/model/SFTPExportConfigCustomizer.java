@@ -69,6 +69,12 @@ public class SFTPExportConfigCustomizer implements TableCustomizerInterface
 
       for(QRecord record : records)
       {
+         ExportCompressionEnum compression = ExportCompressionEnum.getById(record.getValueString("compression"));
+         if(compression != null && !compression.isAvailable())
+         {
+            record.addError(new BadInputStatusMessage("Compression [" + compression.getLabel() + "] is not available on this server"));
+         }
+
          String cronExpression = record.getValueString("cronExpression");
          if(StringUtils.hasContent(cronExpression))
          {
@@ -73,7 +73,8 @@ public class SFTPImportConfig extends QRecordEntity
             .withRecordLabelFields("name")
             .withUniqueKey(new UniqueKey("name"))
             .withSection(SectionFactory.defaultT1("id", "name"))
-            .withSection(SectionFactory.customT2("settings", new QIcon("settings"), "isActive", "sftpConnectionId", "savedBulkLoadProfileId", "subPath", "fileNamePattern", "deleteImportedFiles"))
+            .withSection(SectionFactory.customT2("settings", new QIcon("settings"), "isActive", "sftpConnectionId", "savedBulkLoadProfileId", "subPath", "fileNamePattern", "deleteImportedFiles", "useModifyDateWatermark", "markDuplicateContentFiles", "bulkLoadImmediately", "decompressFiles"))
+            .withSection(SectionFactory.customT2("watermark", new QIcon("update"), "watermarkModifyDate", "watermarkFileNames"))
             .withSection(SectionFactory.customT2("schedule", new QIcon("schedule"), "cronExpression", "cronTimeZoneId"))
             .withSection(SectionFactory.defaultT3("createDate", "modifyDate"));
 
@@ -125,6 +126,24 @@ public class SFTPImportConfig extends QRecordEntity
    @QField(maxLength = 100, valueTooLongBehavior = ValueTooLongBehavior.ERROR, possibleValueSourceName = TimeZonePossibleValueSourceMetaDataProvider.NAME)
    private String cronTimeZoneId;
 
+   @QField(defaultValue = "false")
+   private Boolean useModifyDateWatermark;
+
+   @QField(isEditable = false)
+   private Instant watermarkModifyDate;
+
+   @QField(isEditable = false)
+   private String watermarkFileNames;
+
+   @QField(defaultValue = "false")
+   private Boolean markDuplicateContentFiles;
+
+   @QField(defaultValue = "false")
+   private Boolean bulkLoadImmediately;
+
+   @QField(defaultValue = "false")
+   private Boolean decompressFiles;
+
 
 
    /*******************************************************************************
@@ -516,4 +535,190 @@ public class SFTPImportConfig extends QRecordEntity
       return (this);
    }
 
+
+
+   /*******************************************************************************
+    ** Getter for useModifyDateWatermark
+    *******************************************************************************/
+   public Boolean getUseModifyDateWatermark()
+   {
+      return (this.useModifyDateWatermark);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for useModifyDateWatermark
+    *******************************************************************************/
+   public void setUseModifyDateWatermark(Boolean useModifyDateWatermark)
+   {
+      this.useModifyDateWatermark = useModifyDateWatermark;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for useModifyDateWatermark
+    *******************************************************************************/
+   public SFTPImportConfig withUseModifyDateWatermark(Boolean useModifyDateWatermark)
+   {
+      this.useModifyDateWatermark = useModifyDateWatermark;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for watermarkModifyDate
+    *******************************************************************************/
+   public Instant getWatermarkModifyDate()
+   {
+      return (this.watermarkModifyDate);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for watermarkModifyDate
+    *******************************************************************************/
+   public void setWatermarkModifyDate(Instant watermarkModifyDate)
+   {
+      this.watermarkModifyDate = watermarkModifyDate;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for watermarkModifyDate
+    *******************************************************************************/
+   public SFTPImportConfig withWatermarkModifyDate(Instant watermarkModifyDate)
+   {
+      this.watermarkModifyDate = watermarkModifyDate;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for watermarkFileNames
+    *******************************************************************************/
+   public String getWatermarkFileNames()
+   {
+      return (this.watermarkFileNames);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for watermarkFileNames
+    *******************************************************************************/
+   public void setWatermarkFileNames(String watermarkFileNames)
+   {
+      this.watermarkFileNames = watermarkFileNames;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for watermarkFileNames
+    *******************************************************************************/
+   public SFTPImportConfig withWatermarkFileNames(String watermarkFileNames)
+   {
+      this.watermarkFileNames = watermarkFileNames;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for markDuplicateContentFiles
+    *******************************************************************************/
+   public Boolean getMarkDuplicateContentFiles()
+   {
+      return (this.markDuplicateContentFiles);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for markDuplicateContentFiles
+    *******************************************************************************/
+   public void setMarkDuplicateContentFiles(Boolean markDuplicateContentFiles)
+   {
+      this.markDuplicateContentFiles = markDuplicateContentFiles;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for markDuplicateContentFiles
+    *******************************************************************************/
+   public SFTPImportConfig withMarkDuplicateContentFiles(Boolean markDuplicateContentFiles)
+   {
+      this.markDuplicateContentFiles = markDuplicateContentFiles;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for bulkLoadImmediately
+    *******************************************************************************/
+   public Boolean getBulkLoadImmediately()
+   {
+      return (this.bulkLoadImmediately);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for bulkLoadImmediately
+    *******************************************************************************/
+   public void setBulkLoadImmediately(Boolean bulkLoadImmediately)
+   {
+      this.bulkLoadImmediately = bulkLoadImmediately;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for bulkLoadImmediately
+    *******************************************************************************/
+   public SFTPImportConfig withBulkLoadImmediately(Boolean bulkLoadImmediately)
+   {
+      this.bulkLoadImmediately = bulkLoadImmediately;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for decompressFiles
+    *******************************************************************************/
+   public Boolean getDecompressFiles()
+   {
+      return (this.decompressFiles);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for decompressFiles
+    *******************************************************************************/
+   public void setDecompressFiles(Boolean decompressFiles)
+   {
+      this.decompressFiles = decompressFiles;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for decompressFiles
+    *******************************************************************************/
+   public SFTPImportConfig withDecompressFiles(Boolean decompressFiles)
+   {
+      this.decompressFiles = decompressFiles;
+      return (this);
+   }
+
 }
@@ -24,9 +24,11 @@ package com.kingsrook.qbits.sftpdataintegration.model;
 
 import java.io.Serializable;
 import java.text.ParseException;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import com.kingsrook.qbits.sftpdataintegration.metadata.SyncSFTPImportConfigScheduledJobMetaDataProducer;
 import com.kingsrook.qbits.sftpdataintegration.process.SyncSFTPImportConfigScheduledJobTransformStep;
 import com.kingsrook.qqq.backend.core.actions.customizers.RecordCustomizerUtilityInterface;
@@ -118,12 +120,28 @@ public class SFTPImportConfigCustomizer implements TableCustomizerInterface
    @Override
    public List<QRecord> postInsertOrUpdate(AbstractActionInput input, List<QRecord> records, Optional<List<QRecord>> oldRecordList) throws QException
    {
-      runSyncProcess(records);
+      ////////////////////////////////////////////////////////////////////////
+      // updates of just the watermark (by the sync process) can't change a //
+      // schedule - so don't re-sync scheduled jobs for them on every page. //
+      ////////////////////////////////////////////////////////////////////////
+      runSyncProcess(records.stream().filter(r -> !isWatermarkOnlyUpdate(r)).toList());
       return (records);
    }
 
 
 
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static boolean isWatermarkOnlyUpdate(QRecord record)
+   {
+      Set<String> fieldNames = new HashSet<>(record.getValues().keySet());
+      fieldNames.removeAll(Set.of("id", "modifyDate", "watermarkModifyDate", "watermarkFileNames"));
+      return (fieldNames.isEmpty());
+   }
+
+
+
    /*******************************************************************************
     **
     *******************************************************************************/
@@ -22,14 +22,43 @@
 package com.kingsrook.qbits.sftpdataintegration.process;
 
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import com.kingsrook.qbits.sftpdataintegration.SFTPDataIntegrationQBitConfig;
 import com.kingsrook.qbits.sftpdataintegration.metadata.ImportFileBulkLoadProcessMetaDataProducer;
 import com.kingsrook.qbits.sftpdataintegration.model.ImportFile;
 import com.kingsrook.qbits.sftpdataintegration.model.ImportFileStatusEnum;
+import com.kingsrook.qbits.sftpdataintegration.utils.ConcurrencyLimiter;
+import com.kingsrook.qbits.sftpdataintegration.utils.DelimitedFileChunker;
+import com.kingsrook.qbits.sftpdataintegration.utils.DelimitedFileCoalescer;
+import com.kingsrook.qbits.sftpdataintegration.utils.ImportFileLeaseManager;
+import com.kingsrook.qbits.sftpdataintegration.utils.ParallelTaskRunner;
+import com.kingsrook.qbits.sftpdataintegration.utils.SavedBulkLoadProfileCache;
+import com.kingsrook.qbits.sftpdataintegration.utils.StagedFileCsvConverter;
+import com.kingsrook.qbits.sftpdataintegration.utils.StagedFilePreflightValidator;
 import com.kingsrook.qqq.backend.core.actions.audits.DMLAuditAction;
 import com.kingsrook.qqq.backend.core.actions.processes.RunProcessAction;
-import com.kingsrook.qqq.backend.core.actions.tables.GetAction;
+import com.kingsrook.qqq.backend.core.actions.tables.DeleteAction;
+import com.kingsrook.qqq.backend.core.actions.tables.StorageAction;
 import com.kingsrook.qqq.backend.core.actions.tables.UpdateAction;
 import com.kingsrook.qqq.backend.core.exceptions.QException;
 import com.kingsrook.qqq.backend.core.logging.QLogger;
@@ -40,14 +69,19 @@ import com.kingsrook.qqq.backend.core.model.actions.processes.RunBackendStepOutp
 import com.kingsrook.qqq.backend.core.model.actions.processes.RunProcessInput;
 import com.kingsrook.qqq.backend.core.model.actions.processes.RunProcessOutput;
 import com.kingsrook.qqq.backend.core.model.actions.processes.Status;
+import com.kingsrook.qqq.backend.core.model.actions.tables.delete.DeleteInput;
 import com.kingsrook.qqq.backend.core.model.actions.tables.storage.StorageInput;
 import com.kingsrook.qqq.backend.core.model.actions.tables.update.UpdateInput;
 import com.kingsrook.qqq.backend.core.model.data.QRecord;
-import com.kingsrook.qqq.backend.core.model.savedbulkloadprofiles.SavedBulkLoadProfile;
 import com.kingsrook.qqq.backend.core.processes.implementations.bulk.insert.BulkInsertStepUtils;
 import com.kingsrook.qqq.backend.core.processes.implementations.etl.streamedwithfrontend.AbstractLoadStep;
 import com.kingsrook.qqq.backend.core.processes.implementations.etl.streamedwithfrontend.ProcessSummaryProviderInterface;
+import com.kingsrook.qqq.backend.core.processes.implementations.etl.streamedwithfrontend.StreamedETLWithFrontendProcess;
 import com.kingsrook.qqq.backend.core.processes.tracing.ProcessTracerKeyRecordMessage;
+import com.kingsrook.qqq.backend.core.utils.CollectionUtils;
+import com.kingsrook.qqq.backend.core.utils.StringUtils;
+import com.kingsrook.qqq.backend.core.utils.ValueUtils;
+import org.apache.commons.lang3.BooleanUtils;
 import static com.kingsrook.qqq.backend.core.logging.LogUtils.logPair;
 
 
@@ -56,8 +90,14 @@ import static com.kingsrook.qqq.backend.core.logging.LogUtils.logPair;
  *******************************************************************************/
 public class ImportFileBulkLoadLoadStep extends AbstractLoadStep implements ProcessSummaryProviderInterface
 {
+   public static final String BULK_LOAD_TABLE_KEY_PREFIX = "bulkLoadTable:";
+
    private static final QLogger LOG = QLogger.getLogger(ImportFileBulkLoadLoadStep.class);
 
+   private static final int  STATUS_UPDATE_BATCH_SIZE   = 100;
+   private static final int  DEFAULT_CHUNK_THREADS      = 4;
+   private static final long DEFAULT_COALESCE_MAX_BYTES = 10L * 1024 * 1024;
+
    private ProcessSummaryLine okLine = new ProcessSummaryLine(Status.OK)
       .withMessageSuffix(" bulk loaded")
       .withSingularFutureMessage("will be")
@@ -67,6 +107,23 @@ public class ImportFileBulkLoadLoadStep extends AbstractLoadStep implements Proc
 
    private ProcessSummaryLine hadErrorLine = new ProcessSummaryLine(Status.ERROR, "had an error running bulk load");
 
+   private ProcessSummaryLine claimedByOtherRunLine = new ProcessSummaryLine(Status.WARNING)
+      .withMessageSuffix(" being loaded by another run, so skipped")
+      .withSingularFutureMessage("is")
+      .withPluralFutureMessage("are")
+      .withSingularPastMessage("was")
+      .withPluralPastMessage("were");
+
+   private SavedBulkLoadProfileCache savedBulkLoadProfileCache;
+   private ImportFileLeaseManager    leaseManager;
+
+   private final List<QRecord> bufferedStatusRecords = new ArrayList<>();
+
+   private final AtomicLong totalRowsInserted = new AtomicLong();
+   private final AtomicLong totalRowsErrored  = new AtomicLong();
+   private final AtomicLong totalBytes        = new AtomicLong();
+   private       long       totalLoadMillis   = 0;
+
 
 
    /***************************************************************************
@@ -75,68 +132,963 @@ public class ImportFileBulkLoadLoadStep extends AbstractLoadStep implements Proc
    @Override
    public void runOnePage(RunBackendStepInput runBackendStepInput, RunBackendStepOutput runBackendStepOutput) throws QException
    {
-      for(ImportFile importFile : runBackendStepInput.getRecordsAsEntities(ImportFile.class))
+      SFTPDataIntegrationQBitConfig config   = (SFTPDataIntegrationQBitConfig) runBackendStepInput.getProcess().getSourceQBitConfig();
+      Integer                       threads  = config == null ? null : config.getImportFileBulkLoadThreads();
+      boolean                       parallel = threads != null && threads > 1;
+
+      ///////////////////////////////////////////////////////////////////////////////
+      // group the page's files by import config - each group is loaded in order,  //
+      // one file at a time - but (in parallel mode) different groups run at once. //
+      ///////////////////////////////////////////////////////////////////////////////
+      List<ImportFile> importFiles = runBackendStepInput.getRecordsAsEntities(ImportFile.class);
+
+      //////////////////////////////////////////////////////////////////////////////
+      // if other runs may be loading files at the same time, only load the ones  //
+      // that this run can claim (after freeing up any claims that have expired). //
+      //////////////////////////////////////////////////////////////////////////////
+      ImportFileLeaseManager leaseManager = getLeaseManager(config);
+      Set<Integer>           claimedIds   = Collections.emptySet();
+      if(leaseManager != null)
       {
-         try
+         ImportFileLeaseManager.reapExpiredLeases();
+         claimedIds = leaseManager.claim(importFiles.stream().map(ImportFile::getId).toList());
+
+         for(ImportFile importFile : importFiles)
+         {
+            if(!claimedIds.contains(importFile.getId()))
+            {
+               claimedByOtherRunLine.incrementCountAndAddPrimaryKey(importFile.getId());
+            }
+         }
+
+         Set<Integer> finalClaimedIds = claimedIds;
+         importFiles = importFiles.stream().filter(importFile -> finalClaimedIds.contains(importFile.getId())).toList();
+      }
+
+      Map<Integer, List<ImportFile>> importFilesByConfigId = new LinkedHashMap<>();
+      for(ImportFile importFile : importFiles)
+      {
+         importFilesByConfigId.computeIfAbsent(importFile.getSftpImportConfigId(), k -> new ArrayList<>()).add(importFile);
+      }
+
+      ///////////////////////////////////////////////////////////////////////////
+      // mark the whole page as processing in one update - then, as each file  //
+      // finishes, buffer its complete/error status, to be updated in batches. //
+      ///////////////////////////////////////////////////////////////////////////
+      updateImportFileStatuses(importFiles.stream().map(importFile -> newStatusRecord(importFile.getId(), ImportFileStatusEnum.PROCESSING)).toList());
+
+      ///////////////////////////////////////////////////////////////////////////
+      // keep this run's leases renewed while it loads - so the reaper doesn't //
+      // take back files that are just taking longer than a lease to load.     //
+      ///////////////////////////////////////////////////////////////////////////
+      ImportFileLeaseManager.Renewal leaseRenewal = leaseManager == null ? null : leaseManager.keepRenewing(claimedIds);
+
+      List<Exception> exceptions;
+      long            startMillis = System.currentTimeMillis();
+      try
+      {
+         exceptions = ParallelTaskRunner.runAll(new ArrayList<>(importFilesByConfigId.values()), threads, configImportFiles ->
          {
-            updateImportFileStatus(importFile.getId(), ImportFileStatusEnum.PROCESSING);
+            String permitOwner = UUID.randomUUID().toString();
+            for(List<ImportFile> coalescedBatch : coalesce(config, runBackendStepInput.getValueString(ImportFileBulkLoadProcessMetaDataProducer.FIELD_STAGING_TABLE), configImportFiles))
+            {
+               List<ImportFile> batch = renewLeases(leaseManager, coalescedBatch);
+               if(batch.isEmpty())
+               {
+                  continue;
+               }
 
-            QRecord savedBulkLoadProfileRecord = GetAction.execute(SavedBulkLoadProfile.TABLE_NAME, importFile.getSavedBulkLoadProfileId());
+               if(batch.size() == 1)
+               {
+                  loadImportFile(runBackendStepInput, config, batch.get(0), permitOwner, parallel);
+               }
+               else
+               {
+                  loadCoalescedImportFiles(runBackendStepInput, config, batch, permitOwner, parallel);
+               }
+            }
+         });
+      }
+      finally
+      {
+         totalLoadMillis += System.currentTimeMillis() - startMillis;
+         flushImportFileStatuses();
 
-            String tableName           = savedBulkLoadProfileRecord.getValueString("tableName");
-            String bulkLoadProcessName = tableName + ".bulkInsert";
+         if(leaseManager != null)
+         {
+            leaseRenewal.close();
+            leaseManager.release(claimedIds);
+         }
+      }
 
-            RunProcessInput runBulkLoadInput = new RunProcessInput();
-            runBulkLoadInput.setProcessName(bulkLoadProcessName);
-            runBulkLoadInput.addValue("tableName", tableName);
-            runBulkLoadInput.addValue("savedBulkLoadProfileId", savedBulkLoadProfileRecord.getValueInteger("id"));
-            BulkInsertStepUtils.setHeadless(runBulkLoadInput);
+      for(Exception exception : exceptions)
+      {
+         if(exception != null)
+         {
+            throw (exception instanceof QException qException ? qException : new QException("Error running bulk loads", exception));
+         }
+      }
+   }
 
-            runBackendStepInput.addValue(DMLAuditAction.AUDIT_CONTEXT_FIELD_NAME, "From Import File " + importFile.getId());
 
-            StorageInput storageInput = new StorageInput(runBackendStepInput.getValueString(ImportFileBulkLoadProcessMetaDataProducer.FIELD_STAGING_TABLE))
-               .withReference(importFile.getStagedPath());
 
-            BulkInsertStepUtils.setStorageInputForTheFile(runBulkLoadInput, storageInput);
-            BulkInsertStepUtils.setProcessTracerKeyRecordMessage(runBulkLoadInput, new ProcessTracerKeyRecordMessage(ImportFile.TABLE_NAME, importFile.getId()));
+   /***************************************************************************
+    ** (if claiming files) renew the leases on a batch of files just before
+    ** loading them - returning the ones this run still holds.  a file whose
+    ** lease was lost (reaped, after expiring) is left for whichever run has
+    ** it now.
+    ***************************************************************************/
+   private List<ImportFile> renewLeases(ImportFileLeaseManager leaseManager, List<ImportFile> batch) throws QException
+   {
+      if(leaseManager == null)
+      {
+         return (batch);
+      }
 
-            Serializable processTracerCodeReference = runBackendStepInput.getValue(ImportFileBulkLoadProcessMetaDataProducer.FIELD_BULK_LOAD_PROCESS_TRACER_CODE_REFERENCE);
-            if(processTracerCodeReference != null)
+      Set<Integer> renewedIds = leaseManager.renew(batch.stream().map(ImportFile::getId).toList());
+      for(ImportFile importFile : batch)
+      {
+         if(!renewedIds.contains(importFile.getId()))
+         {
+            LOG.warn("Lost lease on import file before loading it", logPair("id", importFile.getId()));
+            synchronized(this)
             {
-               runBulkLoadInput.addValue(RunProcessAction.PROCESS_TRACER_CODE_REFERENCE_FIELD, processTracerCodeReference);
+               claimedByOtherRunLine.incrementCountAndAddPrimaryKey(importFile.getId());
             }
+         }
+      }
+
+      return (batch.stream().filter(importFile -> renewedIds.contains(importFile.getId())).toList());
+   }
+
 
-            runBulkLoadInput.setFrontendStepBehavior(RunProcessInput.FrontendStepBehavior.SKIP);
-            RunProcessOutput runProcessOutput = new RunProcessAction().execute(runBulkLoadInput);
 
-            /////////////////////////////////////////////////////////////////////////
-            // todo we should do something with some output from bulk load, right? //
-            /////////////////////////////////////////////////////////////////////////
+   /***************************************************************************
+    ** run the bulk load process for one import file (in chunks, if it's big,
+    ** and the config says to), tracking its status and throughput.
+    ***************************************************************************/
+   private void loadImportFile(RunBackendStepInput runBackendStepInput, SFTPDataIntegrationQBitConfig config, ImportFile importFile, String permitOwner, boolean parallel) throws QException
+   {
+      long startMillis = System.currentTimeMillis();
+      try
+      {
+         SavedBulkLoadProfileCache.CachedProfile savedBulkLoadProfile = getSavedBulkLoadProfileCache().getProfile(importFile.getSavedBulkLoadProfileId());
+         if(savedBulkLoadProfile == null)
+         {
+            throw (new QException("Saved bulk load profile [" + importFile.getSavedBulkLoadProfileId() + "] was not found"));
+         }
+
+         String               stagingTableName   = runBackendStepInput.getValueString(ImportFileBulkLoadProcessMetaDataProducer.FIELD_STAGING_TABLE);
+         String               loadPath           = getLoadPath(config, stagingTableName, importFile);
+         Map<Integer, String> chunkPathsByNumber = splitIntoChunks(config, stagingTableName, loadPath, importFile, savedBulkLoadProfile);
 
+         List<RunProcessOutput> runProcessOutputs;
+         if(chunkPathsByNumber == null)
+         {
+            runProcessOutputs = List.of(runBulkLoad(runBackendStepInput, config, List.of(importFile), savedBulkLoadProfile, stagingTableName, loadPath, permitOwner, !parallel));
+         }
+         else
+         {
+            runProcessOutputs = loadChunks(runBackendStepInput, config, importFile, savedBulkLoadProfile, stagingTableName, chunkPathsByNumber);
+         }
+
+         ////////////////////////////////////////////////////////////////////////
+         // record the file's throughput, from the bulk load(s)' summary lines //
+         ////////////////////////////////////////////////////////////////////////
+         int rowsInserted = 0;
+         int rowsErrored  = 0;
+         for(RunProcessOutput runProcessOutput : runProcessOutputs)
+         {
+            int chunkRowsInserted = getRowsInserted(runProcessOutput);
+            rowsInserted += chunkRowsInserted;
+            rowsErrored += getRowsErrored(runProcessOutput, chunkRowsInserted);
+         }
+
+         totalRowsInserted.addAndGet(rowsInserted);
+         totalRowsErrored.addAndGet(rowsErrored);
+         totalBytes.addAndGet(Objects.requireNonNullElse(importFile.getStagedBytes(), 0L));
+
+         synchronized(this)
+         {
             okLine.incrementCountAndAddPrimaryKey(importFile.getId());
-            updateImportFileStatus(importFile.getId(), ImportFileStatusEnum.COMPLETE);
          }
-         catch(Exception e)
+
+         QRecord statusRecord = newMetricsRecord(importFile.getId(), ImportFileStatusEnum.COMPLETE, rowsInserted, rowsErrored, System.currentTimeMillis() - startMillis);
+         if(chunkPathsByNumber != null)
+         {
+            ////////////////////////////////////////////////////////////////////
+            // the file is complete - so its chunk progress is done with (if  //
+            // it's ever set back to pending, it's loaded again from scratch) //
+            ////////////////////////////////////////////////////////////////////
+            statusRecord.setValue("bulkLoadChunkRows", null);
+            statusRecord.setValue("bulkLoadChunksLoaded", null);
+         }
+         bufferImportFileStatus(statusRecord);
+      }
+      catch(Exception e)
+      {
+         LOG.warn("Error processing import file", e, logPair("id", importFile.getId()));
+         synchronized(this)
          {
-            LOG.warn("Error processing import file", e, logPair("id", importFile.getId()));
             hadErrorLine.incrementCountAndAddPrimaryKey(importFile.getId());
-            updateImportFileStatus(importFile.getId(), ImportFileStatusEnum.ERROR);
          }
+         bufferImportFileStatus(newMetricsRecord(importFile.getId(), ImportFileStatusEnum.ERROR, null, null, System.currentTimeMillis() - startMillis));
       }
    }
 
 
 
    /***************************************************************************
-    **
+    ** bulk load an import file's chunks, at the same time - the file is only
+    ** complete if all of its chunks load.  each chunk that loads is recorded
+    ** on the import file as it finishes - so if another chunk fails, a retry
+    ** of the file skips the chunks that already loaded, rather than loading
+    ** their rows again.  chunk files are deleted after.  no more chunks are
+    ** run at once than the table's limit on concurrent bulk loads.
     ***************************************************************************/
-   private static void updateImportFileStatus(Integer id, ImportFileStatusEnum status) throws QException
+   private List<RunProcessOutput> loadChunks(RunBackendStepInput runBackendStepInput, SFTPDataIntegrationQBitConfig config, ImportFile importFile, SavedBulkLoadProfileCache.CachedProfile savedBulkLoadProfile, String stagingTableName, Map<Integer, String> chunkPathsByNumber) throws QException
    {
-      new UpdateAction().execute(new UpdateInput(ImportFile.TABLE_NAME)
-         .withRecord(new ImportFile()
-            .withId(id)
-            .withImportFileStatusId(status.getId())
+      try
+      {
+         Integer       chunkThreads = Objects.requireNonNullElse(config.getImportFileBulkLoadChunkThreads(), DEFAULT_CHUNK_THREADS);
+         List<Integer> chunkNumbers = new ArrayList<>(chunkPathsByNumber.keySet());
+         Set<Integer>  loadedChunks = parseChunkNumbers(importFile.getBulkLoadChunksLoaded());
+
+         ///////////////////////////////////////////////////////////////////////////
+         // chunk threads are in addition to the file-level threads running this  //
+         // - and no more chunks than the table's limit can load at once anyway - //
+         // so don't start threads that would only sit waiting for a permit.      //
+         ///////////////////////////////////////////////////////////////////////////
+         Integer maxConcurrentBulkLoads = getMaxConcurrentBulkLoads(config, savedBulkLoadProfile.getTableName());
+         if(maxConcurrentBulkLoads != null)
+         {
+            chunkThreads = Math.min(chunkThreads, maxConcurrentBulkLoads);
+         }
+
+         ////////////////////////////////////////////////////////////////////////
+         // each chunk gets its own permit owner, so chunks count individually //
+         // against the table's limit on concurrent bulk loads.                //
+         ////////////////////////////////////////////////////////////////////////
+         List<RunProcessOutput> runProcessOutputs = Collections.synchronizedList(new ArrayList<>());
+         List<Exception>        chunkExceptions   = ParallelTaskRunner.runAll(chunkNumbers, chunkThreads, chunkNumber ->
+         {
+            runProcessOutputs.add(runBulkLoad(runBackendStepInput, config, List.of(importFile), savedBulkLoadProfile, stagingTableName, chunkPathsByNumber.get(chunkNumber), UUID.randomUUID().toString(), false));
+            recordChunkLoaded(importFile, loadedChunks, chunkNumber);
+         });
+
+         for(int i = 0; i < chunkExceptions.size(); i++)
+         {
+            if(chunkExceptions.get(i) != null)
+            {
+               throw (new QException("Error bulk loading chunk " + chunkNumbers.get(i) + " (" + loadedChunks.size() + " chunks have loaded, and will be skipped if the file is retried)", chunkExceptions.get(i)));
+            }
+         }
+
+         return (runProcessOutputs);
+      }
+      finally
+      {
+         deleteChunks(stagingTableName, importFile, chunkPathsByNumber.values());
+      }
+   }
+
+
+
+   /***************************************************************************
+    ** record (durably, on the import file) that one of its chunks has loaded.
+    ** updates are made one at a time, so each has all the chunks so far.
+    ***************************************************************************/
+   private static void recordChunkLoaded(ImportFile importFile, Set<Integer> loadedChunks, Integer chunkNumber) throws QException
+   {
+      synchronized(loadedChunks)
+      {
+         loadedChunks.add(chunkNumber);
+         new UpdateAction().execute(new UpdateInput(ImportFile.TABLE_NAME).withRecord(new ImportFile()
+            .withId(importFile.getId())
+            .withBulkLoadChunksLoaded(loadedChunks.stream().sorted().map(String::valueOf).collect(Collectors.joining(",")))
             .toQRecordOnlyChangedFields(true)));
+      }
+   }
+
+
+
+   /***************************************************************************
+    ** parse a comma-separated list of chunk numbers (as recorded in an import
+    ** file's bulkLoadChunksLoaded).
+    ***************************************************************************/
+   private static Set<Integer> parseChunkNumbers(String chunkNumbers)
+   {
+      Set<Integer> rs = new TreeSet<>();
+      if(StringUtils.hasContent(chunkNumbers))
+      {
+         for(String chunkNumber : chunkNumbers.split(","))
+         {
+            rs.add(Integer.parseInt(chunkNumber.trim()));
+         }
+      }
+      return (rs);
+   }
+
+
+
+   /***************************************************************************
+    ** delete an import file's chunk files from the staging table.
+    ***************************************************************************/
+   private static void deleteChunks(String stagingTableName, ImportFile importFile, Collection<String> chunkPaths)
+   {
+      if(chunkPaths.isEmpty())
+      {
+         return;
+      }
+
+      try
+      {
+         new DeleteAction().execute(new DeleteInput(stagingTableName).withPrimaryKeys(new ArrayList<>(chunkPaths)));
+      }
+      catch(Exception e)
+      {
+         LOG.warn("Error deleting import file chunks", e, logPair("id", importFile.getId()), logPair("count", chunkPaths.size()));
+      }
+   }
+
+
+
+   /***************************************************************************
+    ** the path of the staged file to bulk load for an import file: its CSV
+    ** companion, if it has one - or, if the config says to convert
+    ** spreadsheets, and it is one, a CSV companion made now (and recorded on
+    ** the import file, so a retry of it can use it too) - else its staged file.
+    ***************************************************************************/
+   private static String getLoadPath(SFTPDataIntegrationQBitConfig config, String stagingTableName, ImportFile importFile) throws QException
+   {
+      if(importFile.getParsedPath() != null)
+      {
+         return (importFile.getParsedPath());
+      }
+
+      String stagedPath = importFile.getStagedPath();
+      String parsedPath = StagedFileCsvConverter.getParsedPath(stagedPath);
+      if(config == null || !BooleanUtils.isTrue(config.getConvertStagedSpreadsheetsToCsv()) || !StagedFileCsvConverter.isSpreadsheet(stagedPath) || parsedPath.length() > 250)
+      {
+         return (stagedPath);
+      }
+
+      StagedFileCsvConverter.convert(stagingTableName, stagedPath, parsedPath);
+      new UpdateAction().execute(new UpdateInput(ImportFile.TABLE_NAME).withRecord(new ImportFile()
+         .withId(importFile.getId())
+         .withParsedPath(parsedPath)
+         .toQRecordOnlyChangedFields(true)));
+
+      importFile.setParsedPath(parsedPath);
+      return (parsedPath);
+   }
+
+
+
+   /***************************************************************************
+    ** if the config says to chunk files, and this one is delimited, split it
+    ** into staged chunk files - returning their paths, by chunk number - else
+    ** null, if the file isn't to be (or didn't need to be) split.
+    **
+    ** if an earlier try of the file loaded some of its chunks, it's split the
+    ** same way again (per the chunk size recorded then), and those chunks
+    ** aren't written (or returned).  if splitting fails, any chunk files that
+    ** were written are deleted.
+    ***************************************************************************/
+   private static Map<Integer, String> splitIntoChunks(SFTPDataIntegrationQBitConfig config, String stagingTableName, String stagedPath, ImportFile importFile, SavedBulkLoadProfileCache.CachedProfile savedBulkLoadProfile) throws QException
+   {
+      Set<Integer> loadedChunks = parseChunkNumbers(importFile.getBulkLoadChunksLoaded());
+      Integer      chunkRows    = loadedChunks.isEmpty() ? (config == null ? null : config.getImportFileBulkLoadChunkRows()) : importFile.getBulkLoadChunkRows();
+      if(chunkRows == null || chunkRows < 1 || !StagedFilePreflightValidator.isDelimitedFile(stagedPath))
+      {
+         return (null);
+      }
+
+      String               basePath           = stagedPath.substring(0, stagedPath.lastIndexOf('.'));
+      String               extension          = stagedPath.substring(stagedPath.lastIndexOf('.'));
+      Map<Integer, String> chunkPathsByNumber = new LinkedHashMap<>();
+
+      int                  chunkCount;
+      DelimitedFileChunker chunker = new DelimitedFileChunker(chunkRows, savedBulkLoadProfile.getHasHeaderRow());
+      try(InputStream inputStream = new StorageAction().getInputStream(new StorageInput(stagingTableName).withReference(stagedPath)))
+      {
+         chunkCount = chunker.split(inputStream, chunkIndex ->
+         {
+            int chunkNumber = chunkIndex + 1;
+            if(loadedChunks.contains(chunkNumber))
+            {
+               return (OutputStream.nullOutputStream());
+            }
+
+            String chunkPath = basePath + ".chunk-" + chunkNumber + extension;
+            try
+            {
+               OutputStream outputStream = new BufferedOutputStream(new StorageAction().createOutputStream(new StorageInput(stagingTableName).withReference(chunkPath)));
+               chunkPathsByNumber.put(chunkNumber, chunkPath);
+               return (outputStream);
+            }
+            catch(QException e)
+            {
+               throw (new IOException("Error opening chunk file [" + chunkPath + "]", e));
+            }
+         });
+      }
+      catch(IOException | RuntimeException e)
+      {
+         deleteChunks(stagingTableName, importFile, chunkPathsByNumber.values());
+         throw (new QException("Error splitting import file into chunks", e));
+      }
+
+      if(chunkCount == 0 && loadedChunks.isEmpty())
+      {
+         return (null);
+      }
+
+      ///////////////////////////////////////////////////////////////////////
+      // record the chunk size on the file, so a retry splits it the same  //
+      // way (and so can tell which chunks its recorded chunk numbers are) //
+      ///////////////////////////////////////////////////////////////////////
+      if(!chunkRows.equals(importFile.getBulkLoadChunkRows()))
+      {
+         try
+         {
+            new UpdateAction().execute(new UpdateInput(ImportFile.TABLE_NAME).withRecord(new ImportFile()
+               .withId(importFile.getId())
+               .withBulkLoadChunkRows(chunkRows)
+               .toQRecordOnlyChangedFields(true)));
+         }
+         catch(QException e)
+         {
+            deleteChunks(stagingTableName, importFile, chunkPathsByNumber.values());
+            throw (e);
+         }
+         importFile.setBulkLoadChunkRows(chunkRows);
+      }
+
+      return (chunkPathsByNumber);
+   }
+
+
+
+   /***************************************************************************
+    ** if the config says to coalesce small files, group a config's files into
+    ** batches, each to be bulk loaded in one run - keeping their order, and
+    ** only putting consecutive, small, delimited files with the same profile
+    ** (and so the same table) together - and, if the profile has a header row,
+    ** only files whose header rows are exactly the same (so their columns are
+    ** in the same order).  else, 1 file per batch.
+    ***************************************************************************/
+   private List<List<ImportFile>> coalesce(SFTPDataIntegrationQBitConfig config, String stagingTableName, List<ImportFile> importFiles) throws QException
+   {
+      Integer maxFiles = config == null ? null : config.getImportFileBulkLoadCoalesceMaxFiles();
+      if(maxFiles == null || maxFiles < 2)
+      {
+         return (importFiles.stream().map(List::of).toList());
+      }
+
+      long maxBytes = Objects.requireNonNullElse(config.getImportFileBulkLoadCoalesceMaxBytes(), DEFAULT_COALESCE_MAX_BYTES);
+
+      List<List<ImportFile>> batches     = new ArrayList<>();
+      List<ImportFile>       batch       = new ArrayList<>();
+      long                   batchBytes  = 0;
+      byte[]                 batchHeader = null;
+      for(ImportFile importFile : importFiles)
+      {
+         boolean canCoalesce = StagedFilePreflightValidator.isDelimitedFile(importFile.getStagedPath()) && importFile.getStagedBytes() != null && importFile.getStagedBytes() <= maxBytes;
+         byte[]  header      = canCoalesce ? readHeaderForCoalescing(stagingTableName, importFile) : null;
+         if(header == null)
+         {
+            canCoalesce = false;
+         }
+
+         if(!batch.isEmpty())
+         {
+            ImportFile first = batch.get(0);
+            boolean fitsInBatch = canCoalesce
+               && batchHeader != null
+               && Objects.equals(first.getSavedBulkLoadProfileId(), importFile.getSavedBulkLoadProfileId())
+               && getExtension(first.getStagedPath()).equalsIgnoreCase(getExtension(importFile.getStagedPath()))
+               && Arrays.equals(batchHeader, header)
+               && batch.size() < maxFiles
+               && batchBytes + importFile.getStagedBytes() <= maxBytes;
+
+            if(!fitsInBatch)
+            {
+               batches.add(batch);
+               batch = new ArrayList<>();
+               batchBytes = 0;
+            }
+         }
+
+         if(batch.isEmpty())
+         {
+            batchHeader = header;
+         }
+
+         batch.add(importFile);
+         batchBytes += Objects.requireNonNullElse(importFile.getStagedBytes(), 0L);
+      }
+
+      if(!batch.isEmpty())
+      {
+         batches.add(batch);
+      }
+
+      return (batches);
+   }
+
+
+
+   /***************************************************************************
+    ** read the header row of a staged file that may be coalesced - or, for a
+    ** profile without a header row, an empty header (so any such files can go
+    ** together).  returns null if the file shouldn't be coalesced (its profile
+    ** wasn't found, or it couldn't be read - which its own load will report).
+    ***************************************************************************/
+   private byte[] readHeaderForCoalescing(String stagingTableName, ImportFile importFile) throws QException
+   {
+      SavedBulkLoadProfileCache.CachedProfile savedBulkLoadProfile = getSavedBulkLoadProfileCache().getProfile(importFile.getSavedBulkLoadProfileId());
+      if(savedBulkLoadProfile == null)
+      {
+         return (null);
+      }
+
+      if(!savedBulkLoadProfile.getHasHeaderRow())
+      {
+         return (new byte[0]);
+      }
+
+      try(InputStream inputStream = new BufferedInputStream(new StorageAction().getInputStream(new StorageInput(stagingTableName).withReference(importFile.getStagedPath()))))
+      {
+         return (DelimitedFileCoalescer.readHeader(inputStream));
+      }
+      catch(Exception e)
+      {
+         LOG.info("Error reading staged file's header, so not coalescing it", e, logPair("id", importFile.getId()));
+         return (null);
+      }
+   }
+
+
+
+   /***************************************************************************
+    ** bulk load several small import files in one run, by concatenating them
+    ** into one staged file.  they succeed or fail together.  per-file row
+    ** counts are from the concatenation - unless the run had any rows with
+    ** errors, which can't be traced back to their files, so then they're left
+    ** unset (and the run's totals are in the process summary).  the run's time
+    ** is split among the files, by size.
+    ***************************************************************************/
+   private void loadCoalescedImportFiles(RunBackendStepInput runBackendStepInput, SFTPDataIntegrationQBitConfig config, List<ImportFile> importFiles, String permitOwner, boolean parallel) throws QException
+   {
+      long   startMillis      = System.currentTimeMillis();
+      String stagingTableName = runBackendStepInput.getValueString(ImportFileBulkLoadProcessMetaDataProducer.FIELD_STAGING_TABLE);
+      String coalescedPath    = "coalesced/" + UUID.randomUUID() + getExtension(importFiles.get(0).getStagedPath());
+      try
+      {
+         SavedBulkLoadProfileCache.CachedProfile savedBulkLoadProfile = getSavedBulkLoadProfileCache().getProfile(importFiles.get(0).getSavedBulkLoadProfileId());
+         if(savedBulkLoadProfile == null)
+         {
+            throw (new QException("Saved bulk load profile [" + importFiles.get(0).getSavedBulkLoadProfileId() + "] was not found"));
+         }
+
+         List<Integer> fileRowCounts = new ArrayList<>();
+         try(OutputStream outputStream = new BufferedOutputStream(new StorageAction().createOutputStream(new StorageInput(stagingTableName).withReference(coalescedPath))))
+         {
+            DelimitedFileCoalescer coalescer = new DelimitedFileCoalescer(outputStream, savedBulkLoadProfile.getHasHeaderRow());
+            for(ImportFile importFile : importFiles)
+            {
+               try(InputStream inputStream = new StorageAction().getInputStream(new StorageInput(stagingTableName).withReference(importFile.getStagedPath())))
+               {
+                  fileRowCounts.add(coalescer.append(inputStream));
+               }
+            }
+         }
+         catch(IOException e)
+         {
+            throw (new QException("Error coalescing import files", e));
+         }
+
+         RunProcessOutput runProcessOutput = runBulkLoad(runBackendStepInput, config, importFiles, savedBulkLoadProfile, stagingTableName, coalescedPath, permitOwner, !parallel);
+         int              rowsInserted     = getRowsInserted(runProcessOutput);
+         int              rowsErrored      = getRowsErrored(runProcessOutput, rowsInserted);
+         long[]           fileMillis       = splitMillis(importFiles, System.currentTimeMillis() - startMillis);
+
+         totalRowsInserted.addAndGet(rowsInserted);
+         totalRowsErrored.addAndGet(rowsErrored);
+
+         for(int i = 0; i < importFiles.size(); i++)
+         {
+            ImportFile importFile = importFiles.get(i);
+            totalBytes.addAndGet(Objects.requireNonNullElse(importFile.getStagedBytes(), 0L));
+            synchronized(this)
+            {
+               okLine.incrementCountAndAddPrimaryKey(importFile.getId());
+            }
+
+            Integer fileRows = rowsErrored == 0 ? fileRowCounts.get(i) : null;
+            bufferImportFileStatus(newMetricsRecord(importFile.getId(), ImportFileStatusEnum.COMPLETE, fileRows, rowsErrored == 0 ? 0 : null, fileMillis[i]));
+         }
+      }
+      catch(Exception e)
+      {
+         LOG.warn("Error processing coalesced import files", e, logPair("ids", importFiles.stream().map(ImportFile::getId).toList()));
+         long[] fileMillis = splitMillis(importFiles, System.currentTimeMillis() - startMillis);
+         for(int i = 0; i < importFiles.size(); i++)
+         {
+            ImportFile importFile = importFiles.get(i);
+            synchronized(this)
+            {
+               hadErrorLine.incrementCountAndAddPrimaryKey(importFile.getId());
+            }
+            bufferImportFileStatus(newMetricsRecord(importFile.getId(), ImportFileStatusEnum.ERROR, null, null, fileMillis[i]));
+         }
+      }
+      finally
+      {
+         try
+         {
+            new DeleteAction().execute(new DeleteInput(stagingTableName).withPrimaryKeys(new ArrayList<>(List.of(coalescedPath))));
+         }
+         catch(Exception e)
+         {
+            LOG.warn("Error deleting coalesced import file", e, logPair("path", coalescedPath));
+         }
+      }
+   }
+
+
+
+   /***************************************************************************
+    ** split the time it took to load files together among them, in proportion
+    ** to their sizes (evenly, if their sizes aren't known) - so each file's
+    ** time (and rows per second) is its share of the batch, rather than all
+    ** of it.
+    ***************************************************************************/
+   static long[] splitMillis(List<ImportFile> importFiles, long millis)
+   {
+      long[] rs         = new long[importFiles.size()];
+      long   totalBytes = importFiles.stream().mapToLong(importFile -> Objects.requireNonNullElse(importFile.getStagedBytes(), 0L)).sum();
+      for(int i = 0; i < rs.length; i++)
+      {
+         Long stagedBytes = importFiles.get(i).getStagedBytes();
+         rs[i] = totalBytes > 0 ? Math.round((double) millis * Objects.requireNonNullElse(stagedBytes, 0L) / totalBytes) : millis / rs.length;
+      }
+      return (rs);
+   }
+
+
+
+   /***************************************************************************
+    ** get a path's extension (including the dot) - or empty string, if none.
+    ***************************************************************************/
+   private static String getExtension(String path)
+   {
+      int lastDot = path == null ? -1 : path.lastIndexOf('.');
+      return (lastDot < 0 ? "" : path.substring(lastDot));
+   }
+
+
+
+   /***************************************************************************
+    ** run the bulk insert process for a staged file (an import file, one of its
+    ** chunks, or several import files coalesced into one).
+    ***************************************************************************/
+   private RunProcessOutput runBulkLoad(RunBackendStepInput runBackendStepInput, SFTPDataIntegrationQBitConfig config, List<ImportFile> importFiles, SavedBulkLoadProfileCache.CachedProfile savedBulkLoadProfile, String stagingTableName, String stagedPath, String permitOwner, boolean mayUpdateStepInput) throws QException
+   {
+      String tableName = savedBulkLoadProfile.getTableName();
+
+      RunProcessInput runBulkLoadInput = new RunProcessInput();
+      runBulkLoadInput.setProcessName(savedBulkLoadProfile.getBulkLoadProcessName());
+      runBulkLoadInput.addValue("tableName", tableName);
+      runBulkLoadInput.addValue("savedBulkLoadProfileId", savedBulkLoadProfile.getRecord().getValueInteger("id"));
+      BulkInsertStepUtils.setHeadless(runBulkLoadInput);
+
+      //////////////////////////////////////////////////////////////////////////
+      // the step input is shared by all threads in parallel mode - so there, //
+      // only put the audit context on the bulk load's own input.             //
+      //////////////////////////////////////////////////////////////////////////
+      String auditContext = importFiles.size() == 1 ? "From Import File " + importFiles.get(0).getId()
+         : "From Import Files " + importFiles.stream().map(importFile -> String.valueOf(importFile.getId())).collect(Collectors.joining(", "));
+      runBulkLoadInput.addValue(DMLAuditAction.AUDIT_CONTEXT_FIELD_NAME, auditContext);
+      if(mayUpdateStepInput)
+      {
+         runBackendStepInput.addValue(DMLAuditAction.AUDIT_CONTEXT_FIELD_NAME, auditContext);
+      }
+
+      StorageInput storageInput = new StorageInput(stagingTableName).withReference(stagedPath);
+
+      BulkInsertStepUtils.setStorageInputForTheFile(runBulkLoadInput, storageInput);
+      BulkInsertStepUtils.setProcessTracerKeyRecordMessage(runBulkLoadInput, new ProcessTracerKeyRecordMessage(ImportFile.TABLE_NAME, importFiles.get(0).getId()));
+
+      Serializable processTracerCodeReference = runBackendStepInput.getValue(ImportFileBulkLoadProcessMetaDataProducer.FIELD_BULK_LOAD_PROCESS_TRACER_CODE_REFERENCE);
+      if(processTracerCodeReference != null)
+      {
+         runBulkLoadInput.addValue(RunProcessAction.PROCESS_TRACER_CODE_REFERENCE_FIELD, processTracerCodeReference);
+      }
+
+      runBulkLoadInput.setFrontendStepBehavior(RunProcessInput.FrontendStepBehavior.SKIP);
+      RunProcessOutput runProcessOutput;
+      try(ConcurrencyLimiter.Permit permit = ConcurrencyLimiter.acquire(BULK_LOAD_TABLE_KEY_PREFIX + tableName, getMaxConcurrentBulkLoads(config, tableName), permitOwner))
+      {
+         runProcessOutput = new RunProcessAction().execute(runBulkLoadInput);
+      }
+
+      ///////////////////////////////////////////////////////////////////////
+      // a bulk load that failed as a whole (vs. rows with errors) returns //
+      // its exception, rather than throwing it                            //
+      ///////////////////////////////////////////////////////////////////////
+      if(runProcessOutput.getException().isPresent())
+      {
+         throw (new QException("Error running bulk load of [" + stagedPath + "]", runProcessOutput.getException().get()));
+      }
+
+      return (runProcessOutput);
+   }
+
+
+
+   /***************************************************************************
+    ** use the transform step's profile cache (it has already looked up this
+    ** run's profiles) - else (e.g., if this step is used with some other
+    ** transform step), one of our own.
+    ***************************************************************************/
+   private SavedBulkLoadProfileCache getSavedBulkLoadProfileCache()
+   {
+      if(getTransformStep() instanceof ImportFileBulkLoadTransformStep importFileBulkLoadTransformStep)
+      {
+         return (importFileBulkLoadTransformStep.getSavedBulkLoadProfileCache());
+      }
+
+      synchronized(this)
+      {
+         if(savedBulkLoadProfileCache == null)
+         {
+            savedBulkLoadProfileCache = new SavedBulkLoadProfileCache();
+         }
+         return (savedBulkLoadProfileCache);
+      }
+   }
+
+
+
+   /***************************************************************************
+    ** get a lease manager for this run (owning its leases), if the config says
+    ** to claim files before loading them - else null.
+    ***************************************************************************/
+   private synchronized ImportFileLeaseManager getLeaseManager(SFTPDataIntegrationQBitConfig config)
+   {
+      if(config == null || !BooleanUtils.isTrue(config.getUseImportFileLeases()))
+      {
+         return (null);
+      }
+
+      if(leaseManager == null)
+      {
+         leaseManager = new ImportFileLeaseManager(UUID.randomUUID().toString(), config.getImportFileLeaseSeconds());
+      }
+      return (leaseManager);
+   }
+
+
+
+   /***************************************************************************
+    ** get the limit on concurrent bulk loads into a table - from the per-table
+    ** map in the config, else the config's default (null means no limit).
+    ***************************************************************************/
+   private static Integer getMaxConcurrentBulkLoads(SFTPDataIntegrationQBitConfig config, String tableName)
+   {
+      if(config == null)
+      {
+         return (null);
+      }
+
+      Map<String, Integer> maxConcurrentByTable = config.getImportFileBulkLoadMaxConcurrentByTable();
+      if(maxConcurrentByTable != null && maxConcurrentByTable.containsKey(tableName))
+      {
+         return (maxConcurrentByTable.get(tableName));
+      }
+
+      return (config.getImportFileBulkLoadMaxConcurrentPerTable());
+   }
+
+
+
+   /***************************************************************************
+    ** the number of rows a bulk load inserted - the count on the bulk insert's
+    ** own "inserted" summary line.  OK lines that aren't about inserting are
+    ** skipped, as are lines counting more records than the run read (those
+    ** count associated child records, which aren't rows of the file).
+    ***************************************************************************/
+   static int getRowsInserted(RunProcessOutput runProcessOutput)
+   {
+      Integer recordCount = runProcessOutput == null ? null : ValueUtils.getValueAsInteger(runProcessOutput.getValue(StreamedETLWithFrontendProcess.FIELD_RECORD_COUNT));
+      for(ProcessSummaryLine line : getSummaryLines(runProcessOutput))
+      {
+         if(line.getStatus() != Status.OK || line.getCount() == null)
+         {
+            continue;
+         }
+
+         if(line.getMessage() == null || !line.getMessage().toLowerCase().contains("inserted"))
+         {
+            continue;
+         }
+
+         if(recordCount != null && line.getCount() > recordCount)
+         {
+            continue;
+         }
+
+         return (line.getCount());
+      }
+      return (0);
+   }
+
+
+
+   /***************************************************************************
+    ** the number of rows a bulk load didn't insert, due to errors.  error lines
+    ** are per message - so a row with several errors is on several of them,
+    ** and their sum can over-count.  so, if the run has a record count, the
+    ** rows it didn't insert are used instead, when that's lower.
+    ***************************************************************************/
+   static int getRowsErrored(RunProcessOutput runProcessOutput, int rowsInserted)
+   {
+      int rowsErrored = 0;
+      for(ProcessSummaryLine line : getSummaryLines(runProcessOutput))
+      {
+         if(line.getStatus() == Status.ERROR && line.getCount() != null)
+         {
+            rowsErrored += line.getCount();
+         }
+      }
+
+      Integer recordCount = runProcessOutput == null ? null : ValueUtils.getValueAsInteger(runProcessOutput.getValue(StreamedETLWithFrontendProcess.FIELD_RECORD_COUNT));
+      if(recordCount != null)
+      {
+         rowsErrored = Math.min(rowsErrored, Math.max(recordCount - rowsInserted, 0));
+      }
+      return (rowsErrored);
+   }
+
+
+
+   /***************************************************************************
+    ** a bulk load's process summary lines (the ProcessSummaryLine ones).
+    ***************************************************************************/
+   private static List<ProcessSummaryLine> getSummaryLines(RunProcessOutput runProcessOutput)
+   {
+      List<ProcessSummaryLine> rs             = new ArrayList<>();
+      Serializable             processSummary = runProcessOutput == null ? null : runProcessOutput.getValue(StreamedETLWithFrontendProcess.FIELD_PROCESS_SUMMARY);
+      if(processSummary instanceof List<?> lines)
+      {
+         for(Object line : lines)
+         {
+            if(line instanceof ProcessSummaryLine processSummaryLine)
+            {
+               rs.add(processSummaryLine);
+            }
+         }
+      }
+      return (rs);
+   }
+
+
+
+   /***************************************************************************
+    ** buffer a file's (terminal) status record - flushing the buffer once it's
+    ** full.
+    ***************************************************************************/
+   private void bufferImportFileStatus(QRecord statusRecord) throws QException
+   {
+      List<QRecord> recordsToUpdate = null;
+      synchronized(bufferedStatusRecords)
+      {
+         bufferedStatusRecords.add(statusRecord);
+         if(bufferedStatusRecords.size() >= STATUS_UPDATE_BATCH_SIZE)
+         {
+            recordsToUpdate = new ArrayList<>(bufferedStatusRecords);
+            bufferedStatusRecords.clear();
+         }
+      }
+
+      updateImportFileStatuses(recordsToUpdate);
+   }
+
+
+
+   /***************************************************************************
+    ** update all buffered file statuses.
+    ***************************************************************************/
+   private void flushImportFileStatuses() throws QException
+   {
+      List<QRecord> recordsToUpdate;
+      synchronized(bufferedStatusRecords)
+      {
+         recordsToUpdate = new ArrayList<>(bufferedStatusRecords);
+         bufferedStatusRecords.clear();
+      }
+
+      updateImportFileStatuses(recordsToUpdate);
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static QRecord newStatusRecord(Integer id, ImportFileStatusEnum status)
+   {
+      return (new ImportFile()
+         .withId(id)
+         .withImportFileStatusId(status.getId())
+         .toQRecordOnlyChangedFields(true));
+   }
+
+
+
+   /***************************************************************************
+    ** a (terminal) status record, with the file's bulk load metrics.
+    ***************************************************************************/
+   private static QRecord newMetricsRecord(Integer id, ImportFileStatusEnum status, Integer rowsInserted, Integer rowsErrored, long millis)
+   {
+      ImportFile importFile = new ImportFile()
+         .withId(id)
+         .withImportFileStatusId(status.getId())
+         .withBulkLoadRowsInserted(rowsInserted)
+         .withBulkLoadRowsErrored(rowsErrored)
+         .withBulkLoadMillis(millis);
+
+      if(rowsInserted != null)
+      {
+         importFile.setBulkLoadRowsPerSecond(getRowsPerSecond(rowsInserted, millis));
+      }
+
+      return (importFile.toQRecordOnlyChangedFields(true));
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static BigDecimal getRowsPerSecond(long rows, long millis)
+   {
+      return (BigDecimal.valueOf(rows * 1000).divide(BigDecimal.valueOf(Math.max(millis, 1)), 1, RoundingMode.HALF_UP));
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static void updateImportFileStatuses(List<QRecord> records) throws QException
+   {
+      if(CollectionUtils.nullSafeHasContents(records))
+      {
+         new UpdateAction().execute(new UpdateInput(ImportFile.TABLE_NAME).withRecords(records));
+      }
    }
 
 
@@ -148,12 +1100,19 @@ public class ImportFileBulkLoadLoadStep extends AbstractLoadStep implements Proc
    public ArrayList<ProcessSummaryLineInterface> getProcessSummary(RunBackendStepOutput runBackendStepOutput, boolean isForResultScreen)
    {
       ArrayList<ProcessSummaryLineInterface> processSummary = getTransformStep().getProcessSummary(runBackendStepOutput, isForResultScreen);
-      if(hadErrorLine.getCount() > 0)
+      if(hadErrorLine.getCount() > 0 || claimedByOtherRunLine.getCount() > 0)
       {
          processSummary.removeIf(line -> line.getStatus() == Status.OK);
 
          okLine.addSelfToListIfAnyCount(processSummary);
-         processSummary.add(hadErrorLine);
+         hadErrorLine.addSelfToListIfAnyCount(processSummary);
+         claimedByOtherRunLine.addSelfToListIfAnyCount(processSummary);
+      }
+
+      if(okLine.getCount() > 0)
+      {
+         processSummary.add(new ProcessSummaryLine(Status.INFO, String.format("Bulk loaded %,d rows (%,d with errors) from %,d bytes in %,.1f seconds (%s rows/sec)",
+            totalRowsInserted.get(), totalRowsErrored.get(), totalBytes.get(), totalLoadMillis / 1000.0, getRowsPerSecond(totalRowsInserted.get(), totalLoadMillis).toPlainString())));
       }
 
       return (processSummary);
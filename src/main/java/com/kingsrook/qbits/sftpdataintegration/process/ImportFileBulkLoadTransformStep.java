@@ -23,10 +23,15 @@ package com.kingsrook.qbits.sftpdataintegration.process;
 
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import com.kingsrook.qbits.sftpdataintegration.SFTPDataIntegrationQBitConfig;
+import com.kingsrook.qbits.sftpdataintegration.metadata.ImportFileBulkLoadProcessMetaDataProducer;
 import com.kingsrook.qbits.sftpdataintegration.model.ImportFile;
 import com.kingsrook.qbits.sftpdataintegration.model.ImportFileStatusEnum;
-import com.kingsrook.qqq.backend.core.actions.tables.GetAction;
-import com.kingsrook.qqq.backend.core.context.QContext;
+import com.kingsrook.qbits.sftpdataintegration.utils.SavedBulkLoadProfileCache;
+import com.kingsrook.qbits.sftpdataintegration.utils.StagedFilePreflightValidator;
+import com.kingsrook.qqq.backend.core.actions.tables.UpdateAction;
 import com.kingsrook.qqq.backend.core.exceptions.QException;
 import com.kingsrook.qqq.backend.core.logging.QLogger;
 import com.kingsrook.qqq.backend.core.model.actions.processes.ProcessSummaryLine;
@@ -34,10 +39,12 @@ import com.kingsrook.qqq.backend.core.model.actions.processes.ProcessSummaryLine
 import com.kingsrook.qqq.backend.core.model.actions.processes.RunBackendStepInput;
 import com.kingsrook.qqq.backend.core.model.actions.processes.RunBackendStepOutput;
 import com.kingsrook.qqq.backend.core.model.actions.processes.Status;
+import com.kingsrook.qqq.backend.core.model.actions.tables.update.UpdateInput;
 import com.kingsrook.qqq.backend.core.model.data.QRecord;
-import com.kingsrook.qqq.backend.core.model.metadata.processes.QProcessMetaData;
-import com.kingsrook.qqq.backend.core.model.savedbulkloadprofiles.SavedBulkLoadProfile;
 import com.kingsrook.qqq.backend.core.processes.implementations.etl.streamedwithfrontend.AbstractTransformStep;
+import com.kingsrook.qqq.backend.core.processes.implementations.etl.streamedwithfrontend.StreamedETLWithFrontendProcess;
+import org.apache.commons.lang3.BooleanUtils;
+import static com.kingsrook.qqq.backend.core.logging.LogUtils.logPair;
 
 
 /*******************************************************************************
@@ -47,6 +54,11 @@ public class ImportFileBulkLoadTransformStep extends AbstractTransformStep
 {
    private static final QLogger LOG = QLogger.getLogger(ImportFileBulkLoadTransformStep.class);
 
+   ////////////////////////////////////////////////
+   // shared with the load step (via its getter) //
+   ////////////////////////////////////////////////
+   private final SavedBulkLoadProfileCache savedBulkLoadProfileCache = new SavedBulkLoadProfileCache();
+
    private ProcessSummaryLine okLine = new ProcessSummaryLine(Status.OK)
       .withMessageSuffix(" bulk loaded")
       .withSingularFutureMessage("will be")
@@ -61,6 +73,13 @@ public class ImportFileBulkLoadTransformStep extends AbstractTransformStep
       .withSingularPastMessage("had")
       .withPluralPastMessage("had");
 
+   private ProcessSummaryLine duplicateLine = new ProcessSummaryLine(Status.WARNING)
+      .withMessageSuffix(" a duplicate of a previously imported file")
+      .withSingularFutureMessage("is")
+      .withPluralFutureMessage("are")
+      .withSingularPastMessage("was")
+      .withPluralPastMessage("were");
+
    private ProcessSummaryLine missingProfileLine = new ProcessSummaryLine(Status.ERROR)
       .withMessageSuffix(" missing a bulk load profile")
       .withSingularFutureMessage("is")
@@ -75,6 +94,13 @@ public class ImportFileBulkLoadTransformStep extends AbstractTransformStep
       .withSingularPastMessage("was")
       .withPluralPastMessage("were");
 
+   private ProcessSummaryLine invalidLine = new ProcessSummaryLine(Status.ERROR)
+      .withMessageSuffix(" not valid for its bulk load profile (see its validation message)")
+      .withSingularFutureMessage("is")
+      .withPluralFutureMessage("are")
+      .withSingularPastMessage("was")
+      .withPluralPastMessage("were");
+
 
 
    /*******************************************************************************
@@ -87,7 +113,9 @@ public class ImportFileBulkLoadTransformStep extends AbstractTransformStep
       okLine.addSelfToListIfAnyCount(rs);
       missingProfileLine.addSelfToListIfAnyCount(rs);
       missingBulkLoadProcessLine.addSelfToListIfAnyCount(rs);
+      invalidLine.addSelfToListIfAnyCount(rs);
       alreadyProcessedLine.addSelfToListIfAnyCount(rs);
+      duplicateLine.addSelfToListIfAnyCount(rs);
       return (rs);
    }
 
@@ -99,6 +127,11 @@ public class ImportFileBulkLoadTransformStep extends AbstractTransformStep
    @Override
    public void runOnePage(RunBackendStepInput runBackendStepInput, RunBackendStepOutput runBackendStepOutput) throws QException
    {
+      SFTPDataIntegrationQBitConfig config           = (SFTPDataIntegrationQBitConfig) runBackendStepInput.getProcess().getSourceQBitConfig();
+      boolean                       validate         = config != null && BooleanUtils.isTrue(config.getValidateStagedFilesBeforeBulkLoad());
+      String                        stagingTableName = runBackendStepInput.getValueString(ImportFileBulkLoadProcessMetaDataProducer.FIELD_STAGING_TABLE);
+      List<QRecord>                 invalidRecords   = new ArrayList<>();
+
       for(ImportFile importFile : runBackendStepInput.getRecordsAsEntities(ImportFile.class))
       {
          if(ImportFileStatusEnum.COMPLETE.getId().equals(importFile.getImportFileStatusId()))
@@ -107,25 +140,89 @@ public class ImportFileBulkLoadTransformStep extends AbstractTransformStep
             continue;
          }
 
-         QRecord savedBulkLoadProfileRecord = GetAction.execute(SavedBulkLoadProfile.TABLE_NAME, importFile.getSavedBulkLoadProfileId());
-         if(savedBulkLoadProfileRecord == null)
+         ///////////////////////////////////////////////////////////////////////////
+         // duplicates aren't loaded (to load one anyway, set it back to pending) //
+         ///////////////////////////////////////////////////////////////////////////
+         if(ImportFileStatusEnum.DUPLICATE.getId().equals(importFile.getImportFileStatusId()))
+         {
+            duplicateLine.incrementCountAndAddPrimaryKey(importFile.getId());
+            continue;
+         }
+
+         SavedBulkLoadProfileCache.CachedProfile savedBulkLoadProfile = savedBulkLoadProfileCache.getProfile(importFile.getSavedBulkLoadProfileId());
+         if(savedBulkLoadProfile == null)
          {
             missingProfileLine.incrementCountAndAddPrimaryKey(importFile.getId());
             continue;
          }
 
-         String           tableName           = savedBulkLoadProfileRecord.getValueString("tableName");
-         String           bulkLoadProcessName = tableName + ".bulkInsert";
-         QProcessMetaData bulkLoadProcess     = QContext.getQInstance().getProcess(bulkLoadProcessName);
-         if(bulkLoadProcess == null)
+         if(savedBulkLoadProfile.getBulkLoadProcess() == null)
          {
             missingBulkLoadProcessLine.incrementCountAndAddPrimaryKey(importFile.getId());
             continue;
          }
 
+         //////////////////////////////////////////////////////////////////////
+         // check the start of the staged file (header, delimiter, charset), //
+         // so a bad file fails here, rather than in a full bulk load run.   //
+         //////////////////////////////////////////////////////////////////////
+         if(validate)
+         {
+            String validationMessage = getValidationMessage(stagingTableName, importFile, savedBulkLoadProfile);
+            if(validationMessage != null)
+            {
+               invalidLine.incrementCountAndAddPrimaryKey(importFile.getId());
+               invalidRecords.add(new ImportFile()
+                  .withId(importFile.getId())
+                  .withImportFileStatusId(ImportFileStatusEnum.INVALID.getId())
+                  .withValidationMessage(validationMessage)
+                  .toQRecordOnlyChangedFields(true));
+               continue;
+            }
+         }
+
          okLine.incrementCountAndAddPrimaryKey(importFile.getId());
          runBackendStepOutput.addRecord(importFile.toQRecord());
       }
+
+      //////////////////////////////////////////////////////////////////
+      // only actually mark files as invalid when executing (not in a //
+      // preview/validate step)                                       //
+      //////////////////////////////////////////////////////////////////
+      if(!invalidRecords.isEmpty() && StreamedETLWithFrontendProcess.STEP_NAME_EXECUTE.equals(runBackendStepInput.getStepName()))
+      {
+         new UpdateAction().execute(new UpdateInput(ImportFile.TABLE_NAME).withRecords(invalidRecords));
+      }
+   }
+
+
+
+   /***************************************************************************
+    ** pre-flight check a file - returning null if it's ok, else the reason
+    ** it isn't (including if it can't be read).
+    ***************************************************************************/
+   private static String getValidationMessage(String stagingTableName, ImportFile importFile, SavedBulkLoadProfileCache.CachedProfile savedBulkLoadProfile)
+   {
+      try
+      {
+         return (StagedFilePreflightValidator.validate(stagingTableName, Objects.requireNonNullElse(importFile.getParsedPath(), importFile.getStagedPath()), savedBulkLoadProfile.getBulkLoadProfile()));
+      }
+      catch(Exception e)
+      {
+         LOG.info("Error reading staged file for validation", e, logPair("id", importFile.getId()));
+         return ("Staged file could not be read");
+      }
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for savedBulkLoadProfileCache - which the load step uses too, so
+    ** profiles are looked up once per run.
+    *******************************************************************************/
+   public SavedBulkLoadProfileCache getSavedBulkLoadProfileCache()
+   {
+      return (this.savedBulkLoadProfileCache);
    }
 
 }
@@ -22,13 +22,27 @@
 package com.kingsrook.qbits.sftpdataintegration.process;
 
 
+import java.io.BufferedOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 import com.kingsrook.qbits.sftpdataintegration.SFTPDataIntegrationQBitConfig;
+import com.kingsrook.qbits.sftpdataintegration.model.ExportCompressionEnum;
 import com.kingsrook.qbits.sftpdataintegration.model.SFTPExportConfig;
+import com.kingsrook.qbits.sftpdataintegration.utils.BackendVariantScope;
+import com.kingsrook.qbits.sftpdataintegration.utils.BackgroundWriteOutputStream;
+import com.kingsrook.qbits.sftpdataintegration.utils.ConcurrencyLimiter;
+import com.kingsrook.qbits.sftpdataintegration.utils.ParallelTaskRunner;
 import com.kingsrook.qqq.backend.core.actions.processes.QProcessCallbackFactory;
 import com.kingsrook.qqq.backend.core.actions.processes.RunProcessAction;
+import com.kingsrook.qqq.backend.core.actions.reporting.GenerateReportAction;
+import com.kingsrook.qqq.backend.core.actions.tables.DeleteAction;
 import com.kingsrook.qqq.backend.core.actions.tables.GetAction;
-import com.kingsrook.qqq.backend.core.context.QContext;
+import com.kingsrook.qqq.backend.core.actions.tables.StorageAction;
 import com.kingsrook.qqq.backend.core.exceptions.QException;
 import com.kingsrook.qqq.backend.core.logging.QLogger;
 import com.kingsrook.qqq.backend.core.model.actions.processes.ProcessSummaryLine;
@@ -39,18 +53,23 @@ import com.kingsrook.qqq.backend.core.model.actions.processes.RunBackendStepOutp
 import com.kingsrook.qqq.backend.core.model.actions.processes.RunProcessInput;
 import com.kingsrook.qqq.backend.core.model.actions.processes.RunProcessOutput;
 import com.kingsrook.qqq.backend.core.model.actions.processes.Status;
+import com.kingsrook.qqq.backend.core.model.actions.reporting.ReportDestination;
 import com.kingsrook.qqq.backend.core.model.actions.reporting.ReportFormat;
-import com.kingsrook.qqq.backend.core.model.data.QRecord;
-import com.kingsrook.qqq.backend.core.model.metadata.QBackendMetaData;
+import com.kingsrook.qqq.backend.core.model.actions.reporting.ReportInput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.delete.DeleteInput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.storage.StorageInput;
+import com.kingsrook.qqq.backend.core.model.metadata.reporting.QReportMetaData;
 import com.kingsrook.qqq.backend.core.model.savedreports.SavedReport;
 import com.kingsrook.qqq.backend.core.processes.implementations.etl.streamedwithfrontend.AbstractLoadStep;
 import com.kingsrook.qqq.backend.core.processes.implementations.etl.streamedwithfrontend.ProcessSummaryProviderInterface;
 import com.kingsrook.qqq.backend.core.processes.implementations.savedreports.RenderSavedReportExecuteStep;
 import com.kingsrook.qqq.backend.core.processes.implementations.savedreports.RenderSavedReportMetaDataProducer;
+import com.kingsrook.qqq.backend.core.processes.implementations.savedreports.SavedReportToReportMetaDataAdapter;
 import com.kingsrook.qqq.backend.core.utils.JsonUtils;
 import com.kingsrook.qqq.backend.core.utils.StringUtils;
-import com.kingsrook.qqq.backend.core.utils.collections.MapBuilder;
+import org.apache.commons.lang3.BooleanUtils;
 import org.json.JSONObject;
+import static com.kingsrook.qqq.backend.core.logging.LogUtils.logPair;
 
 
 /*******************************************************************************
@@ -58,6 +77,9 @@ import org.json.JSONObject;
  *******************************************************************************/
 public class RenderReportForSFTPExportLoadStep extends AbstractLoadStep implements ProcessSummaryProviderInterface
 {
+   public static final String EXPORT_SFTP_CONNECTION_KEY_PREFIX = "exportSFTPConnection:";
+   public static final int    STREAM_BUFFER_BYTES               = 64 * 1024;
+
    private static final QLogger LOG = QLogger.getLogger(RenderReportForSFTPExportLoadStep.class);
 
    private ProcessSummaryLine okLine = new ProcessSummaryLine(Status.OK)
@@ -67,7 +89,7 @@ public class RenderReportForSFTPExportLoadStep extends AbstractLoadStep implemen
       .withSingularPastMessage("was")
       .withPluralPastMessage("were");
 
-   private ProcessSummaryLineInterface fileNameLine;
+   private volatile ProcessSummaryLineInterface fileNameLine;
 
    private ProcessSummaryLine hadErrorLine = new ProcessSummaryLine(Status.ERROR, "had an error generating the report");
 
@@ -80,75 +102,282 @@ public class RenderReportForSFTPExportLoadStep extends AbstractLoadStep implemen
    @Override
    public void runOnePage(RunBackendStepInput runBackendStepInput, RunBackendStepOutput runBackendStepOutput) throws QException
    {
-      for(SFTPExportConfig sftpExportConfig : runBackendStepInput.getRecordsAsEntities(SFTPExportConfig.class))
-      {
-         try
-         {
-            RunProcessInput input = new RunProcessInput();
-            input.setProcessName(RenderSavedReportMetaDataProducer.NAME);
-            input.setCallback(QProcessCallbackFactory.forPrimaryKey("id", sftpExportConfig.getSavedReportId()));
-            input.setFrontendStepBehavior(RunProcessInput.FrontendStepBehavior.SKIP);
-
-            //////////////////////////////////////////////////////
-            // set up variant for the backend, if so configured //
-            //////////////////////////////////////////////////////
-            SFTPDataIntegrationQBitConfig config                   = (SFTPDataIntegrationQBitConfig) runBackendStepInput.getProcess().getSourceQBitConfig();
-            String                        destinationFileTableName = config.getEffectiveDestinationFileTableName();
-            QBackendMetaData             destinationFileBackend   = QContext.getQInstance().getBackendForTable(destinationFileTableName);
-            if(destinationFileBackend.getUsesVariants())
-            {
-               String variantTypeKey = destinationFileBackend.getBackendVariantsConfig().getVariantTypeKey();
-               QContext.getQSession().setBackendVariants(MapBuilder.of(variantTypeKey, sftpExportConfig.getId()));
-            }
+      SFTPDataIntegrationQBitConfig config            = (SFTPDataIntegrationQBitConfig) runBackendStepInput.getProcess().getSourceQBitConfig();
+      List<SFTPExportConfig>        sftpExportConfigs = runBackendStepInput.getRecordsAsEntities(SFTPExportConfig.class);
+      Integer                       threads           = config.getExportRenderThreads();
+
+      ////////////////////////////////////////////////////////////////////////////////////
+      // if this is a run of the process for a single record, it gets an info line with //
+      // the file name (decided here, before any threads start)                         //
+      ////////////////////////////////////////////////////////////////////////////////////
+      boolean isSingleRecordRun = firstPage && sftpExportConfigs.size() == 1;
+
+      //////////////////////////////////////////////////////////////////////////////
+      // render the page's reports - in parallel, if so configured.  failures are //
+      // counted (by renderReport) rather than thrown, so one doesn't stop others //
+      //////////////////////////////////////////////////////////////////////////////
+      ParallelTaskRunner.runAll(sftpExportConfigs, threads, sftpExportConfig -> renderReport(config, sftpExportConfig, isSingleRecordRun));
 
-            ReportFormat reportFormat = ReportFormat.fromString(sftpExportConfig.getFormat());
-            input.addValue(RenderSavedReportMetaDataProducer.FIELD_NAME_REPORT_FORMAT, sftpExportConfig.getFormat());
+      firstPage = false;
+   }
+
+
+
+   /***************************************************************************
+    ** render (and so, upload) the report for one export config - counting it
+    ** as ok or had-error.
+    ***************************************************************************/
+   private void renderReport(SFTPDataIntegrationQBitConfig config, SFTPExportConfig sftpExportConfig, boolean isSingleRecordRun)
+   {
+      try
+      {
+         String destinationFileTableName = config.getEffectiveDestinationFileTableName();
 
-            QRecord savedReportRecord = GetAction.execute(SavedReport.TABLE_NAME, sftpExportConfig.getSavedReportId());
-            String  fileName          = RenderSavedReportExecuteStep.getDownloadFileBaseName(new RunBackendStepInput(), new SavedReport(savedReportRecord)) + "." + reportFormat.getExtension();
+         ReportFormat              reportFormat = ReportFormat.fromString(sftpExportConfig.getFormat());
+         ExportCompressionEnum     compression  = ExportCompressionEnum.getById(sftpExportConfig.getCompression());
+         SavedReport               savedReport  = new SavedReport(GetAction.execute(SavedReport.TABLE_NAME, sftpExportConfig.getSavedReportId()));
+         String                    fileName     = RenderSavedReportExecuteStep.getDownloadFileBaseName(new RunBackendStepInput(), savedReport) + "." + reportFormat.getExtension();
+         Map<String, Serializable> inputValues  = getReportInputValues(sftpExportConfig);
 
-            input.addValue(RenderSavedReportMetaDataProducer.FIELD_NAME_STORAGE_TABLE_NAME, destinationFileTableName);
-            input.addValue(RenderSavedReportMetaDataProducer.FIELD_NAME_STORAGE_REFERENCE, fileName);
+         if(compression != null)
+         {
+            fileName += "." + compression.getExtension();
+         }
 
-            /////////////////////////////////////////////////////////////////////////////////////
-            // if there are input values, pass them along on report input...                   //
-            // this could maybe be better (e.g., some object?), but, this is working initially //
-            /////////////////////////////////////////////////////////////////////////////////////
-            if(StringUtils.hasContent(sftpExportConfig.getInputValues()))
+         ///////////////////////////////////////////////////////////////////////
+         // limit how many reports may be uploading to one SFTP connection at //
+         // once, if so configured - and use this config's variant of the     //
+         // destination backend (if it uses variants), for this report only   //
+         // (it may be running in parallel with other configs' reports).      //
+         ///////////////////////////////////////////////////////////////////////
+         boolean succeeded;
+         try(ConcurrencyLimiter.Permit permit = ConcurrencyLimiter.acquire(EXPORT_SFTP_CONNECTION_KEY_PREFIX + sftpExportConfig.getSftpConnectionId(), config.getExportMaxConcurrentPerSFTPConnection(), UUID.randomUUID().toString());
+            BackendVariantScope variantScope = BackendVariantScope.open(destinationFileTableName, sftpExportConfig.getId()))
+         {
+            /////////////////////////////////////////////////////////////////////
+            // compression is done on the stream, so compressed exports always //
+            // stream (the render-saved-report process doesn't know how to)    //
+            /////////////////////////////////////////////////////////////////////
+            if(BooleanUtils.isTrue(config.getStreamExportsToDestination()) || compression != null)
             {
-               JSONObject jsonObject = JsonUtils.toJSONObject(sftpExportConfig.getInputValues());
-               for(String name : jsonObject.keySet())
-               {
-                  input.addValue(name, jsonObject.optString(name));
-               }
+               streamReport(destinationFileTableName, fileName, savedReport, reportFormat, compression, inputValues);
+               succeeded = true;
             }
+            else
+            {
+               succeeded = runRenderSavedReportProcess(destinationFileTableName, fileName, sftpExportConfig, inputValues);
+            }
+         }
 
-            RunProcessOutput runProcessOutput = new RunProcessAction().execute(input);
-
-            if(runProcessOutput.getException().isPresent())
+         if(!succeeded)
+         {
+            synchronized(this)
             {
                hadErrorLine.incrementCountAndAddPrimaryKey(sftpExportConfig.getId());
             }
-            else
+         }
+         else
+         {
+            synchronized(this)
             {
                okLine.incrementCountAndAddPrimaryKey(sftpExportConfig.getId());
+            }
 
-               if(firstPage && runBackendStepInput.getRecords().size()  == 1)
-               {
-                  //////////////////////////////////////////////////////////////////////////////////////////////
-                  // if this is a run of the process for a single record, add an info line with the file name //
-                  //////////////////////////////////////////////////////////////////////////////////////////////
-                  fileNameLine = new ProcessSummaryRecordLink(Status.INFO, null, null, "The report file was named: " + fileName);
-               }
+            if(isSingleRecordRun)
+            {
+               fileNameLine = new ProcessSummaryRecordLink(Status.INFO, null, null, "The report file was named: " + fileName);
             }
          }
-         catch(Exception e)
+      }
+      catch(Exception e)
+      {
+         LOG.warn("Error rendering report for SFTP export config", e, logPair("sftpExportConfigId", sftpExportConfig.getId()));
+         synchronized(this)
          {
             hadErrorLine.incrementCountAndAddPrimaryKey(sftpExportConfig.getId());
          }
       }
+   }
 
-      firstPage = false;
+
+
+   /***************************************************************************
+    ** render the report using the render-saved-report process, which writes
+    ** it to the destination file table.  returns whether it succeeded.
+    ***************************************************************************/
+   private static boolean runRenderSavedReportProcess(String destinationFileTableName, String fileName, SFTPExportConfig sftpExportConfig, Map<String, Serializable> inputValues) throws QException
+   {
+      RunProcessInput input = new RunProcessInput();
+      input.setProcessName(RenderSavedReportMetaDataProducer.NAME);
+      input.setCallback(QProcessCallbackFactory.forPrimaryKey("id", sftpExportConfig.getSavedReportId()));
+      input.setFrontendStepBehavior(RunProcessInput.FrontendStepBehavior.SKIP);
+
+      input.addValue(RenderSavedReportMetaDataProducer.FIELD_NAME_REPORT_FORMAT, sftpExportConfig.getFormat());
+      input.addValue(RenderSavedReportMetaDataProducer.FIELD_NAME_STORAGE_TABLE_NAME, destinationFileTableName);
+      input.addValue(RenderSavedReportMetaDataProducer.FIELD_NAME_STORAGE_REFERENCE, fileName);
+
+      for(Map.Entry<String, Serializable> entry : inputValues.entrySet())
+      {
+         input.addValue(entry.getKey(), entry.getValue());
+      }
+
+      RunProcessOutput runProcessOutput = new RunProcessAction().execute(input);
+      return (runProcessOutput.getException().isEmpty());
+   }
+
+
+
+   /***************************************************************************
+    ** render the report straight into an output stream on the destination
+    ** file table - through a small, fixed-size buffer, so this step never holds
+    ** the whole report, and bytes are on their way to the destination as soon
+    ** as the first buffer-full of rows is rendered (how much the destination
+    ** backend's own output stream holds before writing is up to it).
+    **
+    ** if a compression is given, rows are compressed as they're rendered, and
+    ** the compressed bytes are written to the destination by a background
+    ** thread - so compressing and uploading run at the same time.
+    ***************************************************************************/
+   private static void streamReport(String destinationFileTableName, String fileName, SavedReport savedReport, ReportFormat reportFormat, ExportCompressionEnum compression, Map<String, Serializable> inputValues) throws Exception
+   {
+      QReportMetaData reportMetaData = new SavedReportToReportMetaDataAdapter().adapt(savedReport, reportFormat);
+
+      writeToDestination(destinationFileTableName, fileName, compression, outputStream ->
+      {
+         ReportInput reportInput = new ReportInput();
+         reportInput.setReportMetaData(reportMetaData);
+         reportInput.setInputValues(inputValues);
+         reportInput.setReportDestination(new ReportDestination()
+            .withReportFormat(reportFormat)
+            .withReportOutputStream(outputStream));
+
+         new GenerateReportAction().execute(reportInput);
+      });
+   }
+
+
+
+   /***************************************************************************
+    ** run a writer against a (buffered, and maybe compressing) stream to a file
+    ** in the destination file table.  if the writer (or closing the stream)
+    ** fails, the write is aborted - nothing more (e.g., buffered rows, or a
+    ** compression trailer that would make the file look complete) is passed to
+    ** the destination - and the partly-written file is deleted before the
+    ** error is re-thrown.  so a failed render never leaves a truncated file
+    ** under the final name (where the next hop would pick it up as if it were
+    ** complete).
+    ***************************************************************************/
+   static void writeToDestination(String destinationFileTableName, String fileName, ExportCompressionEnum compression, DestinationWriter writer) throws Exception
+   {
+      OutputStream                destinationOutputStream     = new StorageAction().createOutputStream(new StorageInput(destinationFileTableName).withReference(fileName));
+      BackgroundWriteOutputStream backgroundWriteOutputStream = null;
+      OutputStream                outputStream                = null;
+
+      try
+      {
+         if(compression == null)
+         {
+            outputStream = new BufferedOutputStream(destinationOutputStream, STREAM_BUFFER_BYTES);
+         }
+         else
+         {
+            backgroundWriteOutputStream = new BackgroundWriteOutputStream(destinationOutputStream);
+            outputStream = new BufferedOutputStream(compression.wrapOutputStream(backgroundWriteOutputStream), STREAM_BUFFER_BYTES);
+         }
+
+         writer.write(outputStream);
+         outputStream.close();
+      }
+      catch(Exception e)
+      {
+         abort(destinationOutputStream, backgroundWriteOutputStream, outputStream);
+         deletePartialFile(destinationFileTableName, fileName);
+         throw (e);
+      }
+   }
+
+
+
+   /***************************************************************************
+    ** give up on a write to the destination, without passing anything more
+    ** along to it.  errors here are secondary to the one that made us give up,
+    ** so they're only logged.
+    ***************************************************************************/
+   private static void abort(OutputStream destinationOutputStream, BackgroundWriteOutputStream backgroundWriteOutputStream, OutputStream outputStream)
+   {
+      if(backgroundWriteOutputStream == null)
+      {
+         ///////////////////////////////////////////////////////////////////
+         // close the destination itself - not the buffer in front of it, //
+         // which would first flush what it holds                         //
+         ///////////////////////////////////////////////////////////////////
+         try
+         {
+            destinationOutputStream.close();
+         }
+         catch(Exception e)
+         {
+            LOG.debug("Error closing destination output stream after a failed write", e);
+         }
+         return;
+      }
+
+      backgroundWriteOutputStream.abort();
+
+      if(outputStream != null)
+      {
+         ////////////////////////////////////////////////////////////////////
+         // close the compressor too, to release what it holds (e.g., zstd //
+         // native memory) - what it tries to write goes nowhere, as the   //
+         // background stream has been aborted                             //
+         ////////////////////////////////////////////////////////////////////
+         try
+         {
+            outputStream.close();
+         }
+         catch(Exception e)
+         {
+            LOG.debug("Error closing compressing output stream after an aborted write", e);
+         }
+      }
+   }
+
+
+
+   /***************************************************************************
+    ** delete a file that failed partway through being written.
+    ***************************************************************************/
+   private static void deletePartialFile(String destinationFileTableName, String fileName)
+   {
+      try
+      {
+         new DeleteAction().execute(new DeleteInput(destinationFileTableName).withPrimaryKeys(new ArrayList<>(List.of(fileName))));
+      }
+      catch(Exception e)
+      {
+         LOG.warn("Error deleting partially-written export file", e, logPair("fileName", fileName));
+      }
+   }
+
+
+
+   /***************************************************************************
+    ** the export config's input values (json), to pass along to the report.
+    ** this could maybe be better (e.g., some object?), but, this is working
+    ** initially.
+    ***************************************************************************/
+   private static Map<String, Serializable> getReportInputValues(SFTPExportConfig sftpExportConfig)
+   {
+      Map<String, Serializable> inputValues = new LinkedHashMap<>();
+      if(StringUtils.hasContent(sftpExportConfig.getInputValues()))
+      {
+         JSONObject jsonObject = JsonUtils.toJSONObject(sftpExportConfig.getInputValues());
+         for(String name : jsonObject.keySet())
+         {
+            inputValues.put(name, jsonObject.optString(name));
+         }
+      }
+      return (inputValues);
    }
 
 
@@ -176,4 +405,18 @@ public class RenderReportForSFTPExportLoadStep extends AbstractLoadStep implemen
       return (processSummary);
    }
 
+
+
+   /***************************************************************************
+    ** something that writes a file's contents to a stream.
+    ***************************************************************************/
+   @FunctionalInterface
+   interface DestinationWriter
+   {
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      void write(OutputStream outputStream) throws Exception;
+   }
+
 }
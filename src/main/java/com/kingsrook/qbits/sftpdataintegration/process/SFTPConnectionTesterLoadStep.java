@@ -22,8 +22,12 @@
 package com.kingsrook.qbits.sftpdataintegration.process;
 
 
+import java.io.IOException;
 import java.util.ArrayList;
+import com.kingsrook.qbits.sftpdataintegration.SFTPDataIntegrationQBitConfig;
 import com.kingsrook.qbits.sftpdataintegration.model.SFTPConnection;
+import com.kingsrook.qbits.sftpdataintegration.utils.SFTPSessionPool;
+import com.kingsrook.qqq.backend.core.context.QContext;
 import com.kingsrook.qqq.backend.core.exceptions.QException;
 import com.kingsrook.qqq.backend.core.instances.QMetaDataVariableInterpreter;
 import com.kingsrook.qqq.backend.core.logging.QLogger;
@@ -38,6 +42,8 @@ import com.kingsrook.qqq.backend.core.utils.StringUtils;
 import com.kingsrook.qqq.backend.module.filesystem.sftp.actions.AbstractSFTPAction;
 import com.kingsrook.qqq.backend.module.filesystem.sftp.actions.SFTPTestConnectionAction;
 import org.apache.commons.lang3.BooleanUtils;
+import org.apache.sshd.sftp.client.SftpClient;
+import static com.kingsrook.qqq.backend.core.logging.LogUtils.logPair;
 
 
 /*******************************************************************************
@@ -80,8 +86,24 @@ public class SFTPConnectionTesterLoadStep extends AbstractLoadStep implements Pr
          }
       }
 
+      /////////////////////////////////////////////////////////////////////////////
+      // if the session pool is in use, test through it - so that a successfully //
+      // tested (new) session is left in the pool, ready for the next sync run   //
+      /////////////////////////////////////////////////////////////////////////////
+      SFTPDataIntegrationQBitConfig config = null;
+      if(QContext.getQInstance().getTable(SFTPConnection.TABLE_NAME).getSourceQBitConfig() instanceof SFTPDataIntegrationQBitConfig sftpDataIntegrationQBitConfig && BooleanUtils.isTrue(sftpDataIntegrationQBitConfig.getUseSFTPSessionPool()))
+      {
+         config = sftpDataIntegrationQBitConfig;
+      }
+
       for(SFTPConnection sftpConnection : runBackendStepInput.getRecordsAsEntities(SFTPConnection.class))
       {
+         if(config != null)
+         {
+            testConnectionViaSessionPool(sftpConnection, privateKeyBytes, config);
+            continue;
+         }
+
          SFTPTestConnectionAction.SFTPTestConnectionTestInput input = new SFTPTestConnectionAction.SFTPTestConnectionTestInput()
             .withUsername(sftpConnection.getUsername())
             .withPassword(sftpConnection.getPassword())
@@ -113,6 +135,37 @@ public class SFTPConnectionTesterLoadStep extends AbstractLoadStep implements Pr
 
 
 
+   /***************************************************************************
+    ** test a connection by opening a new session for it in the session pool,
+    ** then reading its base path.
+    ***************************************************************************/
+   private void testConnectionViaSessionPool(SFTPConnection sftpConnection, byte[] privateKeyBytes, SFTPDataIntegrationQBitConfig config)
+   {
+      String recordLabel = sftpConnection.getName() + " (Id " + sftpConnection.getId() + ")";
+
+      try(SFTPSessionPool.PooledSFTPSession pooledSession = SFTPSessionPool.getInstance().borrow(sftpConnection, privateKeyBytes, config.getMaxConcurrentSessionsPerSFTPHost(), true))
+      {
+         String basePath = StringUtils.hasContent(sftpConnection.getBasePath()) ? sftpConnection.getBasePath() : ".";
+         try(SftpClient.CloseableHandle directoryHandle = pooledSession.getSftpClient().openDir(basePath))
+         {
+            pooledSession.getSftpClient().readDir(directoryHandle);
+            summaryLines.add(new ProcessSummaryLine(Status.OK, null, recordLabel + " connected successfully"));
+         }
+         catch(IOException e)
+         {
+            SFTPImportFileSyncLoadStep.markBrokenUnlessSftpError(pooledSession, e);
+            summaryLines.add(new ProcessSummaryLine(Status.WARNING, null, recordLabel + " connected, but failed to read the base path: " + e.getMessage()));
+         }
+      }
+      catch(QException e)
+      {
+         LOG.info("Error testing SFTP connection via session pool", e, logPair("sftpConnectionId", sftpConnection.getId()));
+         summaryLines.add(new ProcessSummaryLine(Status.ERROR, null, recordLabel + " failed to connect: " + e.getMessage()));
+      }
+   }
+
+
+
    /***************************************************************************
     **
     ***************************************************************************/
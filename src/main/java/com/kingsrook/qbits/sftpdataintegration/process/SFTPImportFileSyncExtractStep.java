@@ -22,26 +22,35 @@
 package com.kingsrook.qbits.sftpdataintegration.process;
 
 
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
 import com.kingsrook.qbits.sftpdataintegration.SFTPDataIntegrationQBitConfig;
+import com.kingsrook.qbits.sftpdataintegration.model.SFTPConnection;
 import com.kingsrook.qbits.sftpdataintegration.model.SFTPImportConfig;
+import com.kingsrook.qbits.sftpdataintegration.utils.BackendVariantScope;
+import com.kingsrook.qbits.sftpdataintegration.utils.ByteBudget;
+import com.kingsrook.qbits.sftpdataintegration.utils.ByteBudgetedRecordPipe;
+import com.kingsrook.qbits.sftpdataintegration.utils.ConcurrencyLimiter;
+import com.kingsrook.qbits.sftpdataintegration.utils.SFTPSessionPool;
+import com.kingsrook.qqq.backend.core.actions.reporting.RecordPipe;
 import com.kingsrook.qqq.backend.core.actions.tables.GetAction;
 import com.kingsrook.qqq.backend.core.actions.tables.QueryAction;
-import com.kingsrook.qqq.backend.core.context.QContext;
 import com.kingsrook.qqq.backend.core.exceptions.QException;
 import com.kingsrook.qqq.backend.core.exceptions.QUserFacingException;
 import com.kingsrook.qqq.backend.core.model.actions.processes.RunBackendStepInput;
+import com.kingsrook.qqq.backend.core.model.actions.processes.RunBackendStepOutput;
 import com.kingsrook.qqq.backend.core.model.actions.tables.query.QCriteriaOperator;
 import com.kingsrook.qqq.backend.core.model.actions.tables.query.QFilterCriteria;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QFilterOrderBy;
 import com.kingsrook.qqq.backend.core.model.actions.tables.query.QQueryFilter;
 import com.kingsrook.qqq.backend.core.model.data.QRecord;
-import com.kingsrook.qqq.backend.core.model.metadata.QBackendMetaData;
 import com.kingsrook.qqq.backend.core.processes.implementations.etl.streamedwithfrontend.ExtractViaQueryStep;
 import com.kingsrook.qqq.backend.core.processes.implementations.etl.streamedwithfrontend.StreamedETLWithFrontendProcess;
 import com.kingsrook.qqq.backend.core.processes.tracing.ProcessTracerKeyRecordMessage;
 import com.kingsrook.qqq.backend.core.utils.CollectionUtils;
 import com.kingsrook.qqq.backend.core.utils.StringUtils;
-import com.kingsrook.qqq.backend.core.utils.collections.MapBuilder;
 import org.apache.commons.lang3.BooleanUtils;
 
 
@@ -50,6 +59,112 @@ import org.apache.commons.lang3.BooleanUtils;
  *******************************************************************************/
 public class SFTPImportFileSyncExtractStep extends ExtractViaQueryStep
 {
+   public static final String FIELD_PERMIT_OWNER  = "concurrencyPermitOwner";
+   public static final String FIELD_SFTP_HOST_KEY = "sftpHostKey";
+   public static final String FIELD_MODIFY_DATE   = "modifyDate";
+
+
+
+   /***************************************************************************
+    ** hold permits (per the qbit config's limits) on the number of concurrent
+    ** sync runs, and concurrent sessions against this config's SFTP host, while
+    ** reading from the source table.  the load step re-uses the host permit
+    ** (keyed by the owner set here) for its own work against the source.  the
+    ** host permit comes via the session pool, so an idle pooled session on the
+    ** host is closed to make room for it, rather than stalling this run.
+    ***************************************************************************/
+   @Override
+   public void run(RunBackendStepInput runBackendStepInput, RunBackendStepOutput runBackendStepOutput) throws QException
+   {
+      SFTPDataIntegrationQBitConfig config = (SFTPDataIntegrationQBitConfig) runBackendStepInput.getProcess().getSourceQBitConfig();
+
+      String owner = UUID.randomUUID().toString();
+      runBackendStepInput.addValue(FIELD_PERMIT_OWNER, owner);
+
+      Integer sftpImportConfigId = getSftpImportConfigId(runBackendStepInput);
+      String  sftpHostKey        = getSFTPHostKey(sftpImportConfigId);
+      runBackendStepInput.addValue(FIELD_SFTP_HOST_KEY, sftpHostKey);
+
+      /////////////////////////////////////////////////////////////////////////
+      // query this config's variant of the source backend - scoped to this  //
+      // thread, so other syncs (or exports) running at once aren't affected //
+      /////////////////////////////////////////////////////////////////////////
+      try(ConcurrencyLimiter.Permit runPermit = ConcurrencyLimiter.acquire(ConcurrencyLimiter.SFTP_IMPORT_FILE_SYNC_KEY, config.getImportFileSyncMaxConcurrentRuns(), owner);
+         ConcurrencyLimiter.Permit hostPermit = SFTPSessionPool.getInstance().acquireHostPermit(sftpHostKey, config.getMaxConcurrentSessionsPerSFTPHost(), owner);
+         BackendVariantScope variantScope = BackendVariantScope.open(config.getEffectiveSourceFileTableName(), sftpImportConfigId))
+      {
+         if(isByteBudgeted(config))
+         {
+            /////////////////////////////////////////////////////////////////////////////
+            // put a pipe in front of the process's pipe, that blocks the query when   //
+            // the contents of records already in-flight to the load step fill the     //
+            // budget.  the transform & load steps release bytes as they finish files. //
+            /////////////////////////////////////////////////////////////////////////////
+            RecordPipe recordPipe = getRecordPipe();
+            ByteBudget byteBudget = ByteBudget.open(owner, config.getImportFileSyncMaxBytesInFlight());
+            setRecordPipe(new ByteBudgetedRecordPipe(recordPipe, byteBudget));
+            try
+            {
+               super.run(runBackendStepInput, runBackendStepOutput);
+            }
+            finally
+            {
+               setRecordPipe(recordPipe);
+               byteBudget.producerDone();
+            }
+         }
+         else
+         {
+            super.run(runBackendStepInput, runBackendStepOutput);
+         }
+      }
+   }
+
+
+
+   /***************************************************************************
+    ** count the source files - using this config's variant of the source
+    ** backend, scoped to this thread (as in run).
+    ***************************************************************************/
+   @Override
+   public Integer doCount(RunBackendStepInput runBackendStepInput) throws QException
+   {
+      SFTPDataIntegrationQBitConfig config = (SFTPDataIntegrationQBitConfig) runBackendStepInput.getProcess().getSourceQBitConfig();
+      try(BackendVariantScope variantScope = BackendVariantScope.open(config.getEffectiveSourceFileTableName(), getSftpImportConfigId(runBackendStepInput)))
+      {
+         return (super.doCount(runBackendStepInput));
+      }
+   }
+
+
+
+   /***************************************************************************
+    ** the watermark's file names are stored newline-separated.
+    ***************************************************************************/
+   static List<String> getWatermarkFileNames(String watermarkFileNames)
+   {
+      if(!StringUtils.hasContent(watermarkFileNames))
+      {
+         return (new ArrayList<>());
+      }
+
+      return (new ArrayList<>(List.of(watermarkFileNames.split("\n"))));
+   }
+
+
+
+   /***************************************************************************
+    ** is the number of bytes of file contents in-flight between the extract and
+    ** load steps limited by a budget (vs. the pipe holding just 1 record)?  only
+    ** applies when contents are going through the pipe (i.e., not streaming).
+    ***************************************************************************/
+   static boolean isByteBudgeted(SFTPDataIntegrationQBitConfig config)
+   {
+      return (config.getImportFileSyncMaxBytesInFlight() != null && config.getImportFileSyncMaxBytesInFlight() > 0 && !BooleanUtils.isTrue(config.getStreamImportFileContents()));
+   }
+
+
+
    /***************************************************************************
     **
     ***************************************************************************/
@@ -67,14 +182,11 @@ public class SFTPImportFileSyncExtractStep extends ExtractViaQueryStep
          throw (new QUserFacingException("The selected SFTP Import Config is not active."));
       }
 
-      SFTPDataIntegrationQBitConfig config              = (SFTPDataIntegrationQBitConfig) runBackendStepInput.getProcess().getSourceQBitConfig();
-      String                        sourceFileTableName = config.getEffectiveSourceFileTableName();
-      QBackendMetaData             sourceFileBackend   = QContext.getQInstance().getBackendForTable(sourceFileTableName);
-      if(sourceFileBackend.getUsesVariants())
-      {
-         String variantTypeKey = sourceFileBackend.getBackendVariantsConfig().getVariantTypeKey();
-         QContext.getQSession().setBackendVariants(MapBuilder.of(variantTypeKey, sftpImportConfigId));
-      }
+      ///////////////////////////////////////////////////////////////////////
+      // (this config's variant of the source backend is scoped by callers //
+      // that use this filter against it - run and doCount)                //
+      ///////////////////////////////////////////////////////////////////////
+      SFTPDataIntegrationQBitConfig config = (SFTPDataIntegrationQBitConfig) runBackendStepInput.getProcess().getSourceQBitConfig();
 
       ////////////////////////////////////////////////////////
       // translate settings on the importConfig to a filter //
@@ -87,10 +199,38 @@ public class SFTPImportFileSyncExtractStep extends ExtractViaQueryStep
          filter.addCriteria(new QFilterCriteria("fileName", QCriteriaOperator.LIKE, fileNamePattern));
       }
 
+      //////////////////////////////////////////////////////////////////////////////
+      // if the config uses a modify-date watermark, only take files modified     //
+      // after it (or at it, but not already seen at that time) - sorted by their //
+      // modify date, so the load step can advance the watermark page by page.    //
+      //////////////////////////////////////////////////////////////////////////////
+      if(BooleanUtils.isTrue(sftpImportConfig.getValueBoolean("useModifyDateWatermark")))
+      {
+         Instant watermarkModifyDate = sftpImportConfig.getValueInstant("watermarkModifyDate");
+         if(watermarkModifyDate != null)
+         {
+            QQueryFilter atWatermarkFilter = new QQueryFilter(new QFilterCriteria(FIELD_MODIFY_DATE, QCriteriaOperator.EQUALS, watermarkModifyDate));
+            List<String> watermarkFileNames = getWatermarkFileNames(sftpImportConfig.getValueString("watermarkFileNames"));
+            if(!watermarkFileNames.isEmpty())
+            {
+               atWatermarkFilter.addCriteria(new QFilterCriteria("fileName", QCriteriaOperator.NOT_IN, watermarkFileNames));
+            }
+
+            filter.addSubFilter(new QQueryFilter()
+               .withBooleanOperator(QQueryFilter.BooleanOperator.OR)
+               .withCriteria(new QFilterCriteria(FIELD_MODIFY_DATE, QCriteriaOperator.GREATER_THAN, watermarkModifyDate))
+               .withSubFilter(atWatermarkFilter));
+         }
+
+         filter.addOrderBy(new QFilterOrderBy(FIELD_MODIFY_DATE));
+      }
+
       ////////////////////////////////////////////////////////////////////////////////////
       // for the execute step, make sure heavy-fields (e.g., file contents) are fetched //
+      // - unless we're streaming file contents, in which case the load step reads them //
+      // directly from the source table, rather than them going through the record pipe //
       ////////////////////////////////////////////////////////////////////////////////////
-      if(runBackendStepInput.getStepName().equals(StreamedETLWithFrontendProcess.STEP_NAME_EXECUTE))
+      if(runBackendStepInput.getStepName().equals(StreamedETLWithFrontendProcess.STEP_NAME_EXECUTE) && !BooleanUtils.isTrue(config.getStreamImportFileContents()))
       {
          runBackendStepInput.addValue(StreamedETLWithFrontendProcess.FIELD_FETCH_HEAVY_FIELDS, true);
       }
@@ -100,6 +240,28 @@ public class SFTPImportFileSyncExtractStep extends ExtractViaQueryStep
 
 
 
+   /***************************************************************************
+    ** look up the SFTPConnection for an import config, to build its host key.
+    ***************************************************************************/
+   private static String getSFTPHostKey(Integer sftpImportConfigId) throws QException
+   {
+      QRecord sftpImportConfig = GetAction.execute(SFTPImportConfig.TABLE_NAME, sftpImportConfigId);
+      if(sftpImportConfig == null || sftpImportConfig.getValueInteger("sftpConnectionId") == null)
+      {
+         return (null);
+      }
+
+      QRecord sftpConnection = GetAction.execute(SFTPConnection.TABLE_NAME, sftpImportConfig.getValueInteger("sftpConnectionId"));
+      if(sftpConnection == null)
+      {
+         return (null);
+      }
+
+      return (ConcurrencyLimiter.getSFTPHostKey(sftpConnection.getValueString("hostname"), sftpConnection.getValueInteger("port")));
+   }
+
+
+
    /***************************************************************************
     **
     ***************************************************************************/
@@ -22,28 +22,70 @@
 package com.kingsrook.qbits.sftpdataintegration.process;
 
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.Serializable;
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
+import java.util.stream.Collectors;
 import com.kingsrook.qbits.sftpdataintegration.SFTPDataIntegrationQBitConfig;
+import com.kingsrook.qbits.sftpdataintegration.model.ImportFile;
+import com.kingsrook.qbits.sftpdataintegration.model.ImportFileStatusEnum;
+import com.kingsrook.qbits.sftpdataintegration.model.SFTPConnection;
 import com.kingsrook.qbits.sftpdataintegration.model.SFTPImportConfig;
+import com.kingsrook.qbits.sftpdataintegration.utils.BackendVariantScope;
+import com.kingsrook.qbits.sftpdataintegration.utils.ByteBudget;
+import com.kingsrook.qbits.sftpdataintegration.utils.ConcurrencyLimiter;
+import com.kingsrook.qbits.sftpdataintegration.utils.ImportFileBulkLoadQueue;
+import com.kingsrook.qbits.sftpdataintegration.utils.ImportFileDecompressor;
+import com.kingsrook.qbits.sftpdataintegration.utils.ImportFileStager;
+import com.kingsrook.qbits.sftpdataintegration.utils.ImportedSourcePathIndex;
+import com.kingsrook.qbits.sftpdataintegration.utils.ParallelTaskRunner;
+import com.kingsrook.qbits.sftpdataintegration.utils.SFTPSessionPool;
 import com.kingsrook.qqq.backend.core.actions.tables.DeleteAction;
-import com.kingsrook.qqq.backend.core.actions.tables.InsertAction;
+import com.kingsrook.qqq.backend.core.actions.tables.GetAction;
+import com.kingsrook.qqq.backend.core.actions.tables.QueryAction;
+import com.kingsrook.qqq.backend.core.actions.tables.StorageAction;
+import com.kingsrook.qqq.backend.core.actions.tables.UpdateAction;
+import com.kingsrook.qqq.backend.core.context.QContext;
 import com.kingsrook.qqq.backend.core.exceptions.QException;
 import com.kingsrook.qqq.backend.core.logging.QLogger;
+import com.kingsrook.qqq.backend.core.model.actions.processes.BackendStepPostRunInput;
+import com.kingsrook.qqq.backend.core.model.actions.processes.BackendStepPostRunOutput;
 import com.kingsrook.qqq.backend.core.model.actions.processes.ProcessSummaryLine;
 import com.kingsrook.qqq.backend.core.model.actions.processes.ProcessSummaryLineInterface;
 import com.kingsrook.qqq.backend.core.model.actions.processes.RunBackendStepInput;
 import com.kingsrook.qqq.backend.core.model.actions.processes.RunBackendStepOutput;
 import com.kingsrook.qqq.backend.core.model.actions.processes.Status;
 import com.kingsrook.qqq.backend.core.model.actions.tables.delete.DeleteInput;
-import com.kingsrook.qqq.backend.core.model.actions.tables.insert.InsertInput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.delete.DeleteOutput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QCriteriaOperator;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QFilterCriteria;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QQueryFilter;
+import com.kingsrook.qqq.backend.core.model.actions.tables.storage.StorageInput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.update.UpdateInput;
 import com.kingsrook.qqq.backend.core.model.data.QRecord;
 import com.kingsrook.qqq.backend.core.processes.implementations.etl.streamedwithfrontend.LoadViaInsertStep;
 import com.kingsrook.qqq.backend.core.processes.implementations.etl.streamedwithfrontend.ProcessSummaryProviderInterface;
 import com.kingsrook.qqq.backend.core.processes.implementations.general.StandardProcessSummaryLineProducer;
 import com.kingsrook.qqq.backend.core.utils.CollectionUtils;
+import com.kingsrook.qqq.backend.module.filesystem.base.model.metadata.AbstractFilesystemTableBackendDetails;
+import com.kingsrook.qqq.backend.module.filesystem.sftp.model.metadata.SFTPBackendMetaData;
 import org.apache.commons.lang3.BooleanUtils;
+import org.apache.sshd.sftp.common.SftpConstants;
+import org.apache.sshd.sftp.common.SftpException;
+import static com.kingsrook.qqq.backend.core.logging.LogUtils.logPair;
 
 
 /*******************************************************************************
@@ -53,6 +95,14 @@ public class SFTPImportFileSyncLoadStep extends LoadViaInsertStep implements Pro
 {
    private static final QLogger LOG = QLogger.getLogger(SFTPImportFileSyncLoadStep.class);
 
+   private Instant      watermarkModifyDate;
+   private List<String> watermarkFileNames;
+   private boolean      hadStagingFailure = false;
+   private boolean      hadPageFailure    = false;
+
+   private Set<String>          sourcePathsToDelete  = new LinkedHashSet<>();
+   private Map<String, Integer> importFileIdsToIndex = new LinkedHashMap<>();
+
    private ProcessSummaryLine okToInsertLine = StandardProcessSummaryLineProducer.getOkToInsertLine()
       .withMessageSuffix(" imported");
 
@@ -63,6 +113,27 @@ public class SFTPImportFileSyncLoadStep extends LoadViaInsertStep implements Pro
       .withSingularPastMessage("was")
       .withPluralPastMessage("were");
 
+   private ProcessSummaryLine failedToStageLine = new ProcessSummaryLine(Status.ERROR)
+      .withMessageSuffix(" to be staged, and will be tried again on the next sync")
+      .withSingularFutureMessage("failed")
+      .withPluralFutureMessage("failed")
+      .withSingularPastMessage("failed")
+      .withPluralPastMessage("failed");
+
+   private ProcessSummaryLine failedToDeleteLine = new ProcessSummaryLine(Status.WARNING)
+      .withMessageSuffix(" not deleted from the source, and will be tried again on the next sync")
+      .withSingularFutureMessage("will be")
+      .withPluralFutureMessage("will be")
+      .withSingularPastMessage("was")
+      .withPluralPastMessage("were");
+
+   private ProcessSummaryLine duplicateContentLine = new ProcessSummaryLine(Status.WARNING)
+      .withMessageSuffix(" the same contents as a previously imported file, so marked as a duplicate")
+      .withSingularFutureMessage("has")
+      .withPluralFutureMessage("have")
+      .withSingularPastMessage("had")
+      .withPluralPastMessage("had");
+
 
 
    /*******************************************************************************
@@ -86,6 +157,9 @@ public class SFTPImportFileSyncLoadStep extends LoadViaInsertStep implements Pro
       ArrayList<ProcessSummaryLineInterface> rs = new ArrayList<>();
       okToInsertLine.addSelfToListIfAnyCount(rs);
       alreadyImportedLine.addSelfToListIfAnyCount(rs);
+      duplicateContentLine.addSelfToListIfAnyCount(rs);
+      failedToStageLine.addSelfToListIfAnyCount(rs);
+      failedToDeleteLine.addSelfToListIfAnyCount(rs);
       return (rs);
    }
 
@@ -96,6 +170,37 @@ public class SFTPImportFileSyncLoadStep extends LoadViaInsertStep implements Pro
     *******************************************************************************/
    @Override
    public void runOnePage(RunBackendStepInput runBackendStepInput, RunBackendStepOutput runBackendStepOutput) throws QException
+   {
+      List<QRecord> pageRecords = runBackendStepInput.getRecords();
+      try(BackendVariantScope variantScope = openSourceVariantScope(runBackendStepInput))
+      {
+         stageAndInsertPage(runBackendStepInput, runBackendStepOutput);
+      }
+      catch(QException | RuntimeException e)
+      {
+         ////////////////////////////////////////////////////////////////////
+         // remember that the run didn't get all of its files in - so that //
+         // postRun doesn't advance the watermark past any of them         //
+         ////////////////////////////////////////////////////////////////////
+         hadPageFailure = true;
+         throw (e);
+      }
+      finally
+      {
+         ///////////////////////////////////////////////////////////////////////////
+         // done with this page's file contents - so if the extract step is using //
+         // a byte budget, let it put more into the pipe.                         //
+         ///////////////////////////////////////////////////////////////////////////
+         ByteBudget.release(runBackendStepInput.getValueString(SFTPImportFileSyncExtractStep.FIELD_PERMIT_OWNER), pageRecords);
+      }
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private void stageAndInsertPage(RunBackendStepInput runBackendStepInput, RunBackendStepOutput runBackendStepOutput) throws QException
    {
       SFTPImportConfig              sftpImportConfig = new SFTPImportConfig((QRecord) runBackendStepInput.getValue("sftpImportConfig"));
       SFTPDataIntegrationQBitConfig config           = (SFTPDataIntegrationQBitConfig) runBackendStepInput.getProcess().getSourceQBitConfig();
@@ -103,15 +208,114 @@ public class SFTPImportFileSyncLoadStep extends LoadViaInsertStep implements Pro
       ////////////////////////////////////////////
       // upload the files to the staging tables //
       ////////////////////////////////////////////
-      for(QRecord record : runBackendStepInput.getRecords())
+      boolean          streamContents  = BooleanUtils.isTrue(config.getStreamImportFileContents());
+      boolean          deleteFiles     = BooleanUtils.isTrue(sftpImportConfig.getDeleteImportedFiles());
+      boolean          decompressFiles = BooleanUtils.isTrue(sftpImportConfig.getDecompressFiles());
+      ImportFileStager stager          = new ImportFileStager(config.getEffectiveSourceFileTableName(), config.getEffectiveStagingFileTableName())
+         .withComputeContentHash(BooleanUtils.isTrue(sftpImportConfig.getMarkDuplicateContentFiles()));
+
+      ImportFileDecompressor      decompressor        = decompressFiles ? newDecompressor(config, stager) : null;
+      Map<QRecord, List<QRecord>> archiveEntryRecords = Collections.synchronizedMap(new IdentityHashMap<>());
+
+      ////////////////////////////////////////////////////////////////////////////
+      // if we'll be reading from the sftp server in this step, and pooling is  //
+      // on, then each staging thread borrows a session from the pool, instead  //
+      // of opening more.  a pooled session takes a host permit of its own, on  //
+      // top of the one the extract step holds while it's still listing files - //
+      // so if the host is limited to a single session, don't pool here (it     //
+      // would wait for the extract step, which can be waiting for this step to //
+      // take its records).                                                     //
+      ////////////////////////////////////////////////////////////////////////////
+      Integer        maxSessionsPerHost = config.getMaxConcurrentSessionsPerSFTPHost();
+      SFTPConnection sftpConnection     = (streamContents && (maxSessionsPerHost == null || maxSessionsPerHost > 1)) ? getPooledSourceSFTPConnection(config, sftpImportConfig) : null;
+      int            stagingThreads     = getStagingThreads(config, streamContents);
+
+      ////////////////////////////////////////////////////////////////////////////////
+      // stage the page's files - in parallel, if so configured.  a file that fails //
+      // doesn't stop the others - it just isn't inserted (or deleted) below.       //
+      ////////////////////////////////////////////////////////////////////////////////
+      List<QRecord>   records         = runBackendStepInput.getRecords();
+      Set<String>     pageSourcePaths = records.stream().map(r -> r.getValueString("sourcePath")).collect(Collectors.toSet());
+      List<Exception> exceptions      = ParallelTaskRunner.runAll(records, stagingThreads, record ->
       {
-         String stagedPath = UUID.randomUUID() + "/" + record.getValueString("sourcePath");
+         String sourcePath = record.getValueString("sourcePath");
+         String stagedPath = UUID.randomUUID() + "/" + sourcePath;
          record.setValue("stagedPath", stagedPath);
 
-         new InsertAction().execute(new InsertInput(config.getEffectiveStagingFileTableName()).withRecord(new QRecord()
-            .withValue("fileName", stagedPath)
-            .withValue("contents", record.getValueByteArray("contents"))
-         ));
+         if(decompressFiles)
+         {
+            List<ImportFileDecompressor.DecompressedFile> decompressedFiles = stageDecompressing(runBackendStepInput, config, sftpImportConfig, sftpConnection, stagingThreads, decompressor, record);
+            archiveEntryRecords.put(record, toImportFileRecords(record, decompressedFiles));
+            return;
+         }
+
+         ImportFileStager.StagedFile stagedFile;
+         if(streamContents && sftpConnection != null)
+         {
+            String remotePath = getSourceFileRemotePath(config, sftpConnection, sftpImportConfig, sourcePath);
+            try(SFTPSessionPool.PooledSFTPSession pooledSession = borrowPooledSession(sftpConnection, config, false))
+            {
+               try(InputStream inputStream = pooledSession.getSftpClient().read(remotePath))
+               {
+                  stagedFile = stager.stage(inputStream, stagedPath);
+               }
+               catch(IOException e)
+               {
+                  markBrokenUnlessSftpError(pooledSession, e);
+                  throw (new QException("Error reading source file [" + remotePath + "]", e));
+               }
+            }
+         }
+         else if(streamContents)
+         {
+            try(ConcurrencyLimiter.Permit permit = acquireStagingPermit(runBackendStepInput, config, stagingThreads))
+            {
+               stagedFile = stager.stageFromSource(sourcePath, stagedPath);
+            }
+         }
+         else
+         {
+            stagedFile = stager.stage(record.getValueByteArray("contents"), stagedPath);
+         }
+
+         record.setValue("contentHash", stagedFile.getContentHash());
+         record.setValue("stagedBytes", stagedFile.getSize());
+      });
+
+      ////////////////////////////////////////////////////////////////////////
+      // a source file that was decompressed is replaced by the import file //
+      // record(s) for what it held (one per entry, for an archive)         //
+      ////////////////////////////////////////////////////////////////////////
+      List<QRecord> stagedRecords = new ArrayList<>();
+      for(int i = 0; i < records.size(); i++)
+      {
+         if(exceptions.get(i) == null)
+         {
+            stagedRecords.addAll(archiveEntryRecords.getOrDefault(records.get(i), List.of(records.get(i))));
+         }
+         else
+         {
+            String sourcePath = records.get(i).getValueString("sourcePath");
+            LOG.warn("Error staging import file", exceptions.get(i), logPair("sftpImportConfigId", sftpImportConfig.getId()), logPair("sourcePath", sourcePath));
+            failedToStageLine.incrementCountAndAddPrimaryKey(sourcePath);
+            hadStagingFailure = true;
+         }
+      }
+      runBackendStepInput.setRecords(stagedRecords);
+
+      if(BooleanUtils.isTrue(sftpImportConfig.getMarkDuplicateContentFiles()))
+      {
+         markDuplicateContentFiles(sftpImportConfig, stagedRecords);
+      }
+
+      ///////////////////////////////////////////////////////////////////////////
+      // record (durably, with the import file) that the source file is yet to //
+      // be deleted - so if the delete at the end of the run fails (or never   //
+      // happens), a later run will try it again.                              //
+      ///////////////////////////////////////////////////////////////////////////
+      if(deleteFiles)
+      {
+         stagedRecords.forEach(record -> record.setValue("sourceFileDeletePending", true));
       }
 
       ////////////////////////////////
@@ -126,16 +330,560 @@ public class SFTPImportFileSyncLoadStep extends LoadViaInsertStep implements Pro
       for(QRecord record : runBackendStepOutput.getRecords())
       {
          okToInsertLine.incrementCountAndAddPrimaryKey(record.getValue("id"));
+
+         //////////////////////////////////////////////////////////////////
+         // the index of imported source paths is told about these files //
+         // in postRun, once they're sure to be committed                //
+         //////////////////////////////////////////////////////////////////
+         if(BooleanUtils.isTrue(config.getUseImportedSourcePathIndex()) && record.getValue("id") != null)
+         {
+            importFileIdsToIndex.put(record.getValueString("sourcePath"), record.getValueInteger("id"));
+         }
+      }
+
+      //////////////////////////////////////////////////////////////////////////
+      // hand this page's new (pending) files straight off to be bulk loaded, //
+      // if so configured.  the process auto-commits its inserts (there's no  //
+      // run-wide transaction), so these are already committed, and visible   //
+      // to the bulk load - which can start while later pages are staged.     //
+      //////////////////////////////////////////////////////////////////////////
+      if(BooleanUtils.isTrue(sftpImportConfig.getBulkLoadImmediately()))
+      {
+         List<Integer> pendingImportFileIds = runBackendStepOutput.getRecords().stream()
+            .filter(r -> ImportFileStatusEnum.PENDING.getId().equals(r.getValueInteger("importFileStatusId")))
+            .map(r -> r.getValueInteger("id"))
+            .toList();
+         if(!pendingImportFileIds.isEmpty())
+         {
+            ImportFileBulkLoadQueue.getInstance().enqueue(pendingImportFileIds, config.getProcessTracerCodeReference());
+         }
+      }
+
+      //////////////////////////////////////////////////////////////////////////
+      // queue processed files for deletion from the source, if so configured //
+      // - they're deleted all together, in postRun, after all pages are      //
+      // inserted.  that's every listed file that was already imported (which //
+      // the transform step didn't send here), plus the files this page       //
+      // inserted - but not any that failed to stage or to insert.            //
+      //////////////////////////////////////////////////////////////////////////
+      if(deleteFiles)
+      {
+         for(Serializable sourcePath : CollectionUtils.nonNullList((ArrayList<Serializable>) runBackendStepOutput.getValue("allSourcePaths")))
+         {
+            if(!pageSourcePaths.contains(String.valueOf(sourcePath)))
+            {
+               sourcePathsToDelete.add(String.valueOf(sourcePath));
+            }
+         }
+
+         for(QRecord record : runBackendStepOutput.getRecords())
+         {
+            if(record.getValue("id") != null && CollectionUtils.nullSafeIsEmpty(record.getErrors()))
+            {
+               sourcePathsToDelete.add(record.getValueString("sourcePath"));
+            }
+         }
+      }
+
+      ///////////////////////////////////////////////////////////////////////////
+      // now that this page's files are all in, move the (in-memory) watermark //
+      // up past them, if the config uses one.  it's only saved in postRun,    //
+      // once every page is in - so a later page that fails can't leave it     //
+      // past files that the next run would then never list.                   //
+      ///////////////////////////////////////////////////////////////////////////
+      if(BooleanUtils.isTrue(sftpImportConfig.getUseModifyDateWatermark()))
+      {
+         advanceWatermark(sftpImportConfig, runBackendStepOutput);
+      }
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Override
+   public void postRun(BackendStepPostRunInput runBackendStepInput, BackendStepPostRunOutput runBackendStepOutput) throws QException
+   {
+      super.postRun(runBackendStepInput, runBackendStepOutput);
+
+      SFTPDataIntegrationQBitConfig config           = (SFTPDataIntegrationQBitConfig) runBackendStepInput.getProcess().getSourceQBitConfig();
+      SFTPImportConfig              sftpImportConfig = new SFTPImportConfig((QRecord) runBackendStepInput.getValue("sftpImportConfig"));
+
+      //////////////////////////////////////////////////////////////////////////
+      // save the watermark, if this run moved it - but only if every page of //
+      // files was staged and inserted, so that the next run lists any that   //
+      // weren't again.  (the process auto-commits its inserts, so the files  //
+      // inserted by now are committed.)                                      //
+      //////////////////////////////////////////////////////////////////////////
+      if(watermarkFileNames != null && !hadStagingFailure && !hadPageFailure)
+      {
+         saveWatermark(sftpImportConfig);
+      }
+
+      ////////////////////////////////////////////////////////////////////
+      // add the run's (committed) new files to the index of imported   //
+      // source paths, if it's in use - so the next run skips them with //
+      // no need to catch the index up on them                          //
+      ////////////////////////////////////////////////////////////////////
+      for(Map.Entry<String, Integer> entry : importFileIdsToIndex.entrySet())
+      {
+         ImportedSourcePathIndex.getInstance().recordImported(sftpImportConfig.getId(), entry.getKey(), entry.getValue());
       }
 
-      //////////////////////////////////////////////////////////////////
-      // delete all processed files from the source, if so configured //
-      //////////////////////////////////////////////////////////////////
       if(BooleanUtils.isTrue(sftpImportConfig.getDeleteImportedFiles()))
       {
-         ArrayList<Serializable> sourcePaths = (ArrayList<Serializable>) runBackendStepOutput.getValue("allSourcePaths");
-         new DeleteAction().execute(new DeleteInput(config.getEffectiveSourceFileTableName()).withPrimaryKeys(sourcePaths));
+         try(BackendVariantScope variantScope = BackendVariantScope.open(config.getEffectiveSourceFileTableName(), sftpImportConfig.getId()))
+         {
+            deleteSourceFiles(runBackendStepInput, config, sftpImportConfig);
+         }
+      }
+   }
+
+
+
+   /***************************************************************************
+    ** stage a source file, decompressing it if it's compressed - reading it
+    ** through the same route as a file that's staged as-is (the pooled sftp
+    ** session, the source file table, or the contents already read by the
+    ** extract step).
+    ***************************************************************************/
+   private static List<ImportFileDecompressor.DecompressedFile> stageDecompressing(RunBackendStepInput runBackendStepInput, SFTPDataIntegrationQBitConfig config, SFTPImportConfig sftpImportConfig, SFTPConnection sftpConnection, int stagingThreads, ImportFileDecompressor decompressor, QRecord record) throws QException
+   {
+      String sourcePath = record.getValueString("sourcePath");
+      String stagedPath = record.getValueString("stagedPath");
+
+      if(BooleanUtils.isTrue(config.getStreamImportFileContents()) && sftpConnection != null)
+      {
+         String remotePath = getSourceFileRemotePath(config, sftpConnection, sftpImportConfig, sourcePath);
+         try(SFTPSessionPool.PooledSFTPSession pooledSession = borrowPooledSession(sftpConnection, config, false))
+         {
+            try(InputStream inputStream = pooledSession.getSftpClient().read(remotePath))
+            {
+               return (decompressor.stage(inputStream, sourcePath, stagedPath));
+            }
+            catch(IOException e)
+            {
+               markBrokenUnlessSftpError(pooledSession, e);
+               throw (new QException("Error reading source file [" + remotePath + "]", e));
+            }
+         }
       }
+
+      if(BooleanUtils.isTrue(config.getStreamImportFileContents()))
+      {
+         try(ConcurrencyLimiter.Permit permit = acquireStagingPermit(runBackendStepInput, config, stagingThreads);
+            InputStream inputStream = new StorageAction().getInputStream(new StorageInput(config.getEffectiveSourceFileTableName()).withReference(sourcePath)))
+         {
+            return (decompressor.stage(inputStream, sourcePath, stagedPath));
+         }
+         catch(IOException e)
+         {
+            throw (new QException("Error reading source file [" + sourcePath + "]", e));
+         }
+      }
+
+      byte[] contents = record.getValueByteArray("contents");
+      return (decompressor.stage(new ByteArrayInputStream(contents == null ? new byte[0] : contents), sourcePath, stagedPath));
+   }
+
+
+
+   /***************************************************************************
+    ** a decompressor, with the limits from the config (else the defaults).
+    ***************************************************************************/
+   private static ImportFileDecompressor newDecompressor(SFTPDataIntegrationQBitConfig config, ImportFileStager stager)
+   {
+      return (new ImportFileDecompressor(stager)
+         .withMaxExpandedBytes(Objects.requireNonNullElse(config.getDecompressMaxExpandedBytes(), ImportFileDecompressor.DEFAULT_MAX_EXPANDED_BYTES))
+         .withMaxArchiveEntries(Objects.requireNonNullElse(config.getDecompressMaxArchiveEntries(), ImportFileDecompressor.DEFAULT_MAX_ARCHIVE_ENTRIES))
+         .withMaxCompressionRatio(Objects.requireNonNullElse(config.getDecompressMaxCompressionRatio(), ImportFileDecompressor.DEFAULT_MAX_COMPRESSION_RATIO)));
+   }
+
+
+
+   /***************************************************************************
+    ** build the import file record for each file staged from a source file -
+    ** copies of the source file's record, with the staged file's details.
+    ***************************************************************************/
+   private static List<QRecord> toImportFileRecords(QRecord sourceFileRecord, List<ImportFileDecompressor.DecompressedFile> decompressedFiles)
+   {
+      List<QRecord> importFileRecords = new ArrayList<>();
+      for(ImportFileDecompressor.DecompressedFile decompressedFile : decompressedFiles)
+      {
+         QRecord importFileRecord = new QRecord(sourceFileRecord)
+            .withValue("archiveEntryName", decompressedFile.getArchiveEntryName())
+            .withValue("stagedPath", decompressedFile.getStagedPath())
+            .withValue("contentHash", decompressedFile.getStagedFile().getContentHash())
+            .withValue("stagedBytes", decompressedFile.getStagedFile().getSize());
+
+         ////////////////////////////////////////////////////////////////////////
+         // the source file's contents (if the extract step read them) are     //
+         // staged by now - so don't carry them along on every entry's record. //
+         // (they stay on the source file's record, which the byte budget is   //
+         // released by, when the page is done.)                               //
+         ////////////////////////////////////////////////////////////////////////
+         importFileRecord.getValues().remove("contents");
+         importFileRecords.add(importFileRecord);
+      }
+      return (importFileRecords);
+   }
+
+
+
+   /***************************************************************************
+    ** use this config's variant of the source backend, for work in this step
+    ** (on this thread, and any it starts - e.g., to stage files in parallel).
+    ***************************************************************************/
+   private static BackendVariantScope openSourceVariantScope(RunBackendStepInput runBackendStepInput)
+   {
+      SFTPDataIntegrationQBitConfig config           = (SFTPDataIntegrationQBitConfig) runBackendStepInput.getProcess().getSourceQBitConfig();
+      SFTPImportConfig              sftpImportConfig = new SFTPImportConfig((QRecord) runBackendStepInput.getValue("sftpImportConfig"));
+      return (BackendVariantScope.open(config.getEffectiveSourceFileTableName(), sftpImportConfig.getId()));
+   }
+
+
+
+   /***************************************************************************
+    ** delete the queued source files (plus any whose deletes are still pending
+    ** from earlier runs) - over one pooled session, if pooling is on, else in
+    ** one DeleteAction.  files that fail to delete stay pending on their import
+    ** file records, to be tried again by the next run.
+    ***************************************************************************/
+   private void deleteSourceFiles(RunBackendStepInput runBackendStepInput, SFTPDataIntegrationQBitConfig config, SFTPImportConfig sftpImportConfig) throws QException
+   {
+      for(QRecord importFileRecord : QueryAction.execute(ImportFile.TABLE_NAME, new QQueryFilter()
+         .withCriteria(new QFilterCriteria("sftpImportConfigId", QCriteriaOperator.EQUALS, sftpImportConfig.getId()))
+         .withCriteria(new QFilterCriteria("sourceFileDeletePending", QCriteriaOperator.EQUALS, true))))
+      {
+         sourcePathsToDelete.add(importFileRecord.getValueString("sourcePath"));
+      }
+
+      if(sourcePathsToDelete.isEmpty())
+      {
+         return;
+      }
+
+      Set<String>    failedSourcePaths = new HashSet<>();
+      SFTPConnection sftpConnection    = getPooledSourceSFTPConnection(config, sftpImportConfig);
+      try
+      {
+         if(sftpConnection != null)
+         {
+            try(SFTPSessionPool.PooledSFTPSession pooledSession = borrowPooledSession(sftpConnection, config, false))
+            {
+               boolean sessionBroken = false;
+               for(String sourcePath : sourcePathsToDelete)
+               {
+                  if(sessionBroken)
+                  {
+                     failedSourcePaths.add(sourcePath);
+                     continue;
+                  }
+
+                  String remotePath = getSourceFileRemotePath(config, sftpConnection, sftpImportConfig, sourcePath);
+                  try
+                  {
+                     pooledSession.getSftpClient().remove(remotePath);
+                  }
+                  catch(SftpException e)
+                  {
+                     ////////////////////////////////////////////////////////////
+                     // a file that's already gone doesn't need deleting again //
+                     ////////////////////////////////////////////////////////////
+                     if(e.getStatus() != SftpConstants.SSH_FX_NO_SUCH_FILE)
+                     {
+                        LOG.warn("Error deleting source file", e, logPair("sftpImportConfigId", sftpImportConfig.getId()), logPair("remotePath", remotePath));
+                        failedSourcePaths.add(sourcePath);
+                     }
+                  }
+                  catch(IOException e)
+                  {
+                     LOG.warn("Error deleting source file", e, logPair("sftpImportConfigId", sftpImportConfig.getId()), logPair("remotePath", remotePath));
+                     pooledSession.markBroken();
+                     failedSourcePaths.add(sourcePath);
+                     sessionBroken = true;
+                  }
+               }
+            }
+         }
+         else
+         {
+            String       sourceFileTableName = config.getEffectiveSourceFileTableName();
+            DeleteOutput deleteOutput;
+            try(ConcurrencyLimiter.Permit permit = acquireSFTPHostPermit(runBackendStepInput, config))
+            {
+               deleteOutput = new DeleteAction().execute(new DeleteInput(sourceFileTableName).withPrimaryKeys(new ArrayList<>(sourcePathsToDelete)));
+            }
+
+            String primaryKeyField = QContext.getQInstance().getTable(sourceFileTableName).getPrimaryKeyField();
+            for(QRecord recordWithError : CollectionUtils.nonNullList(deleteOutput.getRecordsWithErrors()))
+            {
+               //////////////////////////////////////////////////////////////////
+               // as over a pooled session, a file that's already gone doesn't //
+               // need deleting again - so only count it if it's still there   //
+               //////////////////////////////////////////////////////////////////
+               String sourcePath = recordWithError.getValueString(primaryKeyField);
+               if(sourceFileExists(sourceFileTableName, primaryKeyField, sourcePath))
+               {
+                  LOG.warn("Error deleting source file", logPair("sftpImportConfigId", sftpImportConfig.getId()), logPair("sourcePath", sourcePath), logPair("errors", recordWithError.getErrors()));
+                  failedSourcePaths.add(sourcePath);
+               }
+            }
+         }
+      }
+      catch(QException e)
+      {
+         LOG.warn("Error deleting source files", e, logPair("sftpImportConfigId", sftpImportConfig.getId()), logPair("count", sourcePathsToDelete.size()));
+         failedSourcePaths.addAll(sourcePathsToDelete);
+      }
+
+      failedSourcePaths.forEach(failedToDeleteLine::incrementCountAndAddPrimaryKey);
+
+      ////////////////////////////////////////////////////////////////////
+      // clear the delete-pending flag from the files that were deleted //
+      ////////////////////////////////////////////////////////////////////
+      List<String> deletedSourcePaths = sourcePathsToDelete.stream().filter(sourcePath -> !failedSourcePaths.contains(sourcePath)).toList();
+      for(List<String> page : CollectionUtils.getPages(deletedSourcePaths, 1000))
+      {
+         List<QRecord> importFileRecords = QueryAction.execute(ImportFile.TABLE_NAME, new QQueryFilter()
+            .withCriteria(new QFilterCriteria("sftpImportConfigId", QCriteriaOperator.EQUALS, sftpImportConfig.getId()))
+            .withCriteria(new QFilterCriteria("sourceFileDeletePending", QCriteriaOperator.EQUALS, true))
+            .withCriteria(new QFilterCriteria("sourcePath", QCriteriaOperator.IN, page)));
+
+         if(!importFileRecords.isEmpty())
+         {
+            new UpdateAction().execute(new UpdateInput(ImportFile.TABLE_NAME).withRecords(importFileRecords.stream()
+               .map(r -> new QRecord().withValue("id", r.getValue("id")).withValue("sourceFileDeletePending", false))
+               .toList()));
+         }
+      }
+
+      sourcePathsToDelete.clear();
+   }
+
+
+
+   /***************************************************************************
+    ** check if a source file (that failed to delete) is still there - assuming
+    ** it is, if we can't tell.
+    ***************************************************************************/
+   private static boolean sourceFileExists(String sourceFileTableName, String primaryKeyField, String sourcePath)
+   {
+      try
+      {
+         return (!QueryAction.execute(sourceFileTableName, new QQueryFilter(new QFilterCriteria(primaryKeyField, QCriteriaOperator.EQUALS, sourcePath))).isEmpty());
+      }
+      catch(Exception e)
+      {
+         LOG.debug("Error checking if source file exists", e, logPair("sourcePath", sourcePath));
+         return (true);
+      }
+   }
+
+
+
+   /***************************************************************************
+    ** mark files whose content hash matches a file already imported for this
+    ** config (or an earlier file in this page) as duplicates, rather than
+    ** pending - so they won't be bulk loaded again.  files that errored (or
+    ** were invalid) don't count, so a corrected re-drop of the same contents
+    ** can still be loaded.
+    ***************************************************************************/
+   private void markDuplicateContentFiles(SFTPImportConfig sftpImportConfig, List<QRecord> records) throws QException
+   {
+      List<String> contentHashes = records.stream().map(r -> r.getValueString("contentHash")).filter(Objects::nonNull).distinct().toList();
+      if(contentHashes.isEmpty())
+      {
+         return;
+      }
+
+      Set<String> seenContentHashes = new HashSet<>();
+      for(QRecord existingRecord : QueryAction.execute(ImportFile.TABLE_NAME, new QQueryFilter()
+         .withCriteria(new QFilterCriteria("sftpImportConfigId", QCriteriaOperator.EQUALS, sftpImportConfig.getId()))
+         .withCriteria(new QFilterCriteria("contentHash", QCriteriaOperator.IN, contentHashes))
+         .withCriteria(new QFilterCriteria("importFileStatusId", QCriteriaOperator.NOT_IN, List.of(ImportFileStatusEnum.ERROR.getId(), ImportFileStatusEnum.INVALID.getId())))))
+      {
+         seenContentHashes.add(existingRecord.getValueString("contentHash"));
+      }
+
+      for(QRecord record : records)
+      {
+         String contentHash = record.getValueString("contentHash");
+         if(contentHash != null && !seenContentHashes.add(contentHash))
+         {
+            record.setValue("importFileStatusId", ImportFileStatusEnum.DUPLICATE.getId());
+            duplicateContentLine.incrementCountAndAddPrimaryKey(record.getValueString("sourcePath"));
+         }
+      }
+   }
+
+
+
+   /***************************************************************************
+    ** pages come (from the extract step) in modify-date order - so move the
+    ** watermark up to the newest modify-date in this page - remembering the
+    ** names of all files seen at exactly that time (which may span pages).
+    ** this only moves the in-memory watermark - see saveWatermark.
+    ***************************************************************************/
+   private void advanceWatermark(SFTPImportConfig sftpImportConfig, RunBackendStepOutput runBackendStepOutput)
+   {
+      if(watermarkFileNames == null)
+      {
+         watermarkModifyDate = sftpImportConfig.getWatermarkModifyDate();
+         watermarkFileNames = SFTPImportFileSyncExtractStep.getWatermarkFileNames(sftpImportConfig.getWatermarkFileNames());
+      }
+
+      Instant pageMaxModifyDate = (Instant) runBackendStepOutput.getValue(SFTPImportFileSyncTransformStep.FIELD_PAGE_MAX_MODIFY_DATE);
+      if(pageMaxModifyDate == null || (watermarkModifyDate != null && pageMaxModifyDate.isBefore(watermarkModifyDate)))
+      {
+         return;
+      }
+
+      if(!pageMaxModifyDate.equals(watermarkModifyDate))
+      {
+         watermarkModifyDate = pageMaxModifyDate;
+         watermarkFileNames = new ArrayList<>();
+      }
+
+      for(String fileName : CollectionUtils.nonNullList((List<String>) runBackendStepOutput.getValue(SFTPImportFileSyncTransformStep.FIELD_PAGE_MAX_MODIFY_DATE_FILE_NAMES)))
+      {
+         if(!watermarkFileNames.contains(fileName))
+         {
+            watermarkFileNames.add(fileName);
+         }
+      }
+   }
+
+
+
+   /***************************************************************************
+    ** store the watermark that the run's pages moved up to on the config.
+    ***************************************************************************/
+   private void saveWatermark(SFTPImportConfig sftpImportConfig) throws QException
+   {
+      new UpdateAction().execute(new UpdateInput(SFTPImportConfig.TABLE_NAME).withRecord(new QRecord()
+         .withValue("id", sftpImportConfig.getId())
+         .withValue("watermarkModifyDate", watermarkModifyDate)
+         .withValue("watermarkFileNames", String.join("\n", watermarkFileNames))));
+   }
+
+
+
+   /***************************************************************************
+    ** if the session pool is on, and the source table is on an sftp backend,
+    ** get the SFTPConnection for the import config - else null.
+    ***************************************************************************/
+   private static SFTPConnection getPooledSourceSFTPConnection(SFTPDataIntegrationQBitConfig config, SFTPImportConfig sftpImportConfig) throws QException
+   {
+      if(!BooleanUtils.isTrue(config.getUseSFTPSessionPool()) || !(QContext.getQInstance().getBackendForTable(config.getEffectiveSourceFileTableName()) instanceof SFTPBackendMetaData))
+      {
+         return (null);
+      }
+
+      QRecord sftpConnectionRecord = GetAction.execute(SFTPConnection.TABLE_NAME, sftpImportConfig.getSftpConnectionId());
+      return (sftpConnectionRecord == null ? null : new SFTPConnection(sftpConnectionRecord));
+   }
+
+
+
+   /***************************************************************************
+    ** borrow a session for an SFTPConnection from the session pool
+    ***************************************************************************/
+   static SFTPSessionPool.PooledSFTPSession borrowPooledSession(SFTPConnection sftpConnection, SFTPDataIntegrationQBitConfig config, boolean forceNewSession) throws QException
+   {
+      byte[] privateKey = SFTPSessionPool.getPrivateKeyFromEnvVar(config.getSftpPrivateKeyEnvVarName());
+      return (SFTPSessionPool.getInstance().borrow(sftpConnection, privateKey, config.getMaxConcurrentSessionsPerSFTPHost(), forceNewSession));
+   }
+
+
+
+   /***************************************************************************
+    ** an SftpException is the server telling us no (e.g., no such file) - the
+    ** session is fine - but any other i/o error means it shouldn't be re-used.
+    ***************************************************************************/
+   static void markBrokenUnlessSftpError(SFTPSessionPool.PooledSFTPSession pooledSession, IOException e)
+   {
+      if(!(e instanceof SftpException))
+      {
+         pooledSession.markBroken();
+      }
+   }
+
+
+
+   /***************************************************************************
+    ** build the full path on the sftp server to a source file - the same way
+    ** the source-file backend does:  connection base path, import config sub
+    ** path (which together are the variant's base path), then the table's
+    ** base path, then the file's path.
+    ***************************************************************************/
+   private static String getSourceFileRemotePath(SFTPDataIntegrationQBitConfig config, SFTPConnection sftpConnection, SFTPImportConfig sftpImportConfig, String sourcePath)
+   {
+      String tableBasePath = null;
+      if(QContext.getQInstance().getTable(config.getEffectiveSourceFileTableName()).getBackendDetails() instanceof AbstractFilesystemTableBackendDetails tableBackendDetails)
+      {
+         tableBasePath = tableBackendDetails.getBasePath();
+      }
+
+      String path = String.join("/",
+         Objects.requireNonNullElse(sftpConnection.getBasePath(), ""),
+         Objects.requireNonNullElse(sftpImportConfig.getSubPath(), ""),
+         Objects.requireNonNullElse(tableBasePath, ""),
+         sourcePath);
+      return (path.replaceAll("/+", "/"));
+   }
+
+
+
+   /***************************************************************************
+    ** how many threads to stage a page's files with.  when they're read from
+    ** the sftp host as they're staged, each thread needs a session there - so
+    ** there can't be more of them than the host allows, less the one the
+    ** extract step holds while listing files.
+    ***************************************************************************/
+   static int getStagingThreads(SFTPDataIntegrationQBitConfig config, boolean streamContents)
+   {
+      int     stagingThreads     = Objects.requireNonNullElse(config.getImportFileStagingThreads(), 1);
+      Integer maxSessionsPerHost = config.getMaxConcurrentSessionsPerSFTPHost();
+      if(streamContents && maxSessionsPerHost != null)
+      {
+         stagingThreads = Math.max(1, Math.min(stagingThreads, maxSessionsPerHost - 1));
+      }
+      return (stagingThreads);
+   }
+
+
+
+   /***************************************************************************
+    ** get a permit to read a file being staged from this run's SFTP host.  a
+    ** lone staging thread re-uses the run's permit (as the rest of this step
+    ** does) - but parallel staging threads each open their own session, so
+    ** each needs a permit of its own (i.e., with its own owner).
+    ***************************************************************************/
+   private static ConcurrencyLimiter.Permit acquireStagingPermit(RunBackendStepInput runBackendStepInput, SFTPDataIntegrationQBitConfig config, int stagingThreads) throws QException
+   {
+      if(stagingThreads < 2)
+      {
+         return (acquireSFTPHostPermit(runBackendStepInput, config));
+      }
+
+      String sftpHostKey = runBackendStepInput.getValueString(SFTPImportFileSyncExtractStep.FIELD_SFTP_HOST_KEY);
+      return (SFTPSessionPool.getInstance().acquireHostPermit(sftpHostKey, config.getMaxConcurrentSessionsPerSFTPHost(), UUID.randomUUID().toString()));
+   }
+
+
+
+   /***************************************************************************
+    ** get a permit (re-using the extract step's, if it's still running) to
+    ** work against this run's SFTP host - closing idle pooled sessions on the
+    ** host if need be, to make room.
+    ***************************************************************************/
+   private static ConcurrencyLimiter.Permit acquireSFTPHostPermit(RunBackendStepInput runBackendStepInput, SFTPDataIntegrationQBitConfig config) throws QException
+   {
+      String sftpHostKey = runBackendStepInput.getValueString(SFTPImportFileSyncExtractStep.FIELD_SFTP_HOST_KEY);
+      String owner       = runBackendStepInput.getValueString(SFTPImportFileSyncExtractStep.FIELD_PERMIT_OWNER);
+      return (SFTPSessionPool.getInstance().acquireHostPermit(sftpHostKey, config.getMaxConcurrentSessionsPerSFTPHost(), owner));
    }
 
 }
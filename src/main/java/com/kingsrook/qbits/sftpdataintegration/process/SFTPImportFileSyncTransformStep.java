@@ -22,6 +22,7 @@
 package com.kingsrook.qbits.sftpdataintegration.process;
 
 
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
@@ -31,6 +32,8 @@ import com.kingsrook.qbits.sftpdataintegration.SFTPDataIntegrationQBitConfig;
 import com.kingsrook.qbits.sftpdataintegration.model.ImportFile;
 import com.kingsrook.qbits.sftpdataintegration.model.ImportFileStatusEnum;
 import com.kingsrook.qbits.sftpdataintegration.model.SFTPImportConfig;
+import com.kingsrook.qbits.sftpdataintegration.utils.ByteBudget;
+import com.kingsrook.qbits.sftpdataintegration.utils.ImportedSourcePathIndex;
 import com.kingsrook.qqq.backend.core.actions.tables.QueryAction;
 import com.kingsrook.qqq.backend.core.exceptions.QException;
 import com.kingsrook.qqq.backend.core.logging.QLogger;
@@ -46,6 +49,7 @@ import com.kingsrook.qqq.backend.core.model.data.QRecord;
 import com.kingsrook.qqq.backend.core.processes.implementations.etl.streamedwithfrontend.AbstractTransformStep;
 import com.kingsrook.qqq.backend.core.processes.implementations.general.StandardProcessSummaryLineProducer;
 import com.kingsrook.qqq.backend.core.utils.CollectionUtils;
+import org.apache.commons.lang3.BooleanUtils;
 
 
 /*******************************************************************************
@@ -55,6 +59,9 @@ public class SFTPImportFileSyncTransformStep extends AbstractTransformStep
 {
    private static final QLogger LOG = QLogger.getLogger(SFTPImportFileSyncTransformStep.class);
 
+   public static final String FIELD_PAGE_MAX_MODIFY_DATE            = "pageMaxModifyDate";
+   public static final String FIELD_PAGE_MAX_MODIFY_DATE_FILE_NAMES = "pageMaxModifyDateFileNames";
+
    private ProcessSummaryLine okToInsertLine = StandardProcessSummaryLineProducer.getOkToInsertLine()
       .withMessageSuffix(" imported");
 
@@ -67,6 +74,8 @@ public class SFTPImportFileSyncTransformStep extends AbstractTransformStep
 
    Set<Integer> alreadyImportedFileIds = new HashSet<>();
 
+   private boolean isImportedSourcePathIndexCaughtUp = false;
+
 
 
    /*******************************************************************************
@@ -89,6 +98,16 @@ public class SFTPImportFileSyncTransformStep extends AbstractTransformStep
    @Override
    public Integer getOverrideRecordPipeCapacity(RunBackendStepInput runBackendStepInput)
    {
+      //////////////////////////////////////////////////////////////////////////////
+      // file contents go through the pipe - so, unless they're limited by a byte //
+      // budget (or aren't in the pipe at all, when streaming), hold just 1 file. //
+      //////////////////////////////////////////////////////////////////////////////
+      SFTPDataIntegrationQBitConfig config = (SFTPDataIntegrationQBitConfig) runBackendStepInput.getProcess().getSourceQBitConfig();
+      if(SFTPImportFileSyncExtractStep.isByteBudgeted(config) || BooleanUtils.isTrue(config.getStreamImportFileContents()))
+      {
+         return (null);
+      }
+
       return (1);
    }
 
@@ -99,6 +118,22 @@ public class SFTPImportFileSyncTransformStep extends AbstractTransformStep
     *******************************************************************************/
    @Override
    public void runOnePage(RunBackendStepInput runBackendStepInput, RunBackendStepOutput runBackendStepOutput) throws QException
+   {
+      /////////////////////////////////////////////////////////////////////////
+      // if the extract step is using a byte budget, the load step releases  //
+      // the page's bytes when it's done with them - but if this step fails, //
+      // the page won't get there, so they must be released here instead.    //
+      /////////////////////////////////////////////////////////////////////////
+      String permitOwner = runBackendStepInput.getValueString(SFTPImportFileSyncExtractStep.FIELD_PERMIT_OWNER);
+      ByteBudget.releaseIfConsumerFails(permitOwner, runBackendStepInput.getRecords(), () -> transformPage(runBackendStepInput, runBackendStepOutput, permitOwner));
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private void transformPage(RunBackendStepInput runBackendStepInput, RunBackendStepOutput runBackendStepOutput, String permitOwner) throws QException
    {
       QRecord          sftpImportConfigQRecord = (QRecord) runBackendStepInput.getValue("sftpImportConfig");
       SFTPImportConfig sftpImportConfig        = new SFTPImportConfig(sftpImportConfigQRecord);
@@ -114,18 +149,65 @@ public class SFTPImportFileSyncTransformStep extends AbstractTransformStep
       ArrayList<String> sourcePaths = new ArrayList<>(runBackendStepInput.getRecords().stream().map(r -> r.getValueString("fileName")).toList());
       runBackendStepOutput.addValue("allSourcePaths", sourcePaths);
 
-      QQueryFilter queryFilter = new QQueryFilter()
-         .withCriteria(new QFilterCriteria("sftpImportConfigId", QCriteriaOperator.EQUALS, sftpImportConfig.getId()))
-         .withCriteria(new QFilterCriteria("sourcePath", QCriteriaOperator.IN, runBackendStepInput.getRecords().stream().map(r -> r.getValueString("fileName")).toList()));
-      List<QRecord>        existingRecords     = QueryAction.execute(ImportFile.TABLE_NAME, queryFilter);
-      Map<String, Integer> existingSourcePaths = CollectionUtils.listToMap(existingRecords, r -> r.getValueString("sourcePath"), r -> r.getValueInteger("id"));
+      ////////////////////////////////////////////////////////////////////////////
+      // if using a modify-date watermark, tell the load step the newest modify //
+      // date in this page, and the names of the files at it, to advance it to. //
+      ////////////////////////////////////////////////////////////////////////////
+      if(BooleanUtils.isTrue(sftpImportConfig.getUseModifyDateWatermark()))
+      {
+         Instant           pageMaxModifyDate = null;
+         ArrayList<String> pageMaxFileNames  = new ArrayList<>();
+         for(QRecord record : runBackendStepInput.getRecords())
+         {
+            Instant modifyDate = record.getValueInstant(SFTPImportFileSyncExtractStep.FIELD_MODIFY_DATE);
+            if(modifyDate != null && (pageMaxModifyDate == null || modifyDate.isAfter(pageMaxModifyDate)))
+            {
+               pageMaxModifyDate = modifyDate;
+               pageMaxFileNames.clear();
+            }
 
+            if(modifyDate != null && modifyDate.equals(pageMaxModifyDate))
+            {
+               pageMaxFileNames.add(record.getValueString("fileName"));
+            }
+         }
+
+         runBackendStepOutput.addValue(FIELD_PAGE_MAX_MODIFY_DATE, pageMaxModifyDate);
+         runBackendStepOutput.addValue(FIELD_PAGE_MAX_MODIFY_DATE_FILE_NAMES, pageMaxFileNames);
+      }
+
+      ///////////////////////////////////////////////////////////////////////////
+      // find which of these files were already imported - either from the in- //
+      // memory index (if so configured), or by querying the ImportFile table  //
+      ///////////////////////////////////////////////////////////////////////////
+      SFTPDataIntegrationQBitConfig config = (SFTPDataIntegrationQBitConfig) runBackendStepInput.getProcess().getSourceQBitConfig();
+      Map<String, Integer>          existingSourcePaths;
+      if(BooleanUtils.isTrue(config.getUseImportedSourcePathIndex()))
+      {
+         if(!isImportedSourcePathIndexCaughtUp)
+         {
+            ImportedSourcePathIndex.getInstance().catchUp(sftpImportConfig.getId());
+            isImportedSourcePathIndexCaughtUp = true;
+         }
+         existingSourcePaths = ImportedSourcePathIndex.getInstance().getImportedFileIds(sftpImportConfig.getId(), sourcePaths);
+      }
+      else
+      {
+         QQueryFilter queryFilter = new QQueryFilter()
+            .withCriteria(new QFilterCriteria("sftpImportConfigId", QCriteriaOperator.EQUALS, sftpImportConfig.getId()))
+            .withCriteria(new QFilterCriteria("sourcePath", QCriteriaOperator.IN, sourcePaths));
+         List<QRecord> existingRecords = QueryAction.execute(ImportFile.TABLE_NAME, queryFilter);
+         existingSourcePaths = CollectionUtils.listToMap(existingRecords, r -> r.getValueString("sourcePath"), r -> r.getValueInteger("id"));
+      }
+
+      List<QRecord> alreadyImportedRecords = new ArrayList<>();
       for(QRecord record : runBackendStepInput.getRecords())
       {
          if(existingSourcePaths.containsKey(record.getValueString("fileName")))
          {
             alreadyImportedLine.incrementCountAndAddPrimaryKey(record.getValueString("fileName"));
             alreadyImportedFileIds.add(existingSourcePaths.get(record.getValueString("fileName")));
+            alreadyImportedRecords.add(record);
          }
          else
          {
@@ -141,17 +223,29 @@ public class SFTPImportFileSyncTransformStep extends AbstractTransformStep
             // copy additional fields over from sftpImportConfig to importFiles //
             // (e.g., application-defined security keys)                        //
             //////////////////////////////////////////////////////////////////////
-            SFTPDataIntegrationQBitConfig config = (SFTPDataIntegrationQBitConfig) runBackendStepInput.getProcess().getSourceQBitConfig();
             for(Map.Entry<String, String> entry : CollectionUtils.nonNullMap(config.getAdditionalFieldsToCopyFromSftpImportConfigToImportFile()).entrySet())
             {
                importFile.setValue(entry.getValue(), sftpImportConfigQRecord.getValue(entry.getKey()));
             }
 
-            importFile.setValue("contents", record.getValueByteArray("contents"));
+            //////////////////////////////////////////////////////////////////////////
+            // when streaming, the load step reads contents from the source table - //
+            // so only carry them through the record pipe if we're not streaming.   //
+            //////////////////////////////////////////////////////////////////////////
+            if(!BooleanUtils.isTrue(config.getStreamImportFileContents()))
+            {
+               importFile.setValue("contents", record.getValueByteArray("contents"));
+            }
 
             runBackendStepOutput.addRecord(importFile);
          }
       }
+
+      ////////////////////////////////////////////////////////////////////////
+      // files already imported won't go to the load step, so release their //
+      // bytes here (last, so a failure above doesn't release them twice)   //
+      ////////////////////////////////////////////////////////////////////////
+      ByteBudget.release(permitOwner, alreadyImportedRecords);
    }
 
 }
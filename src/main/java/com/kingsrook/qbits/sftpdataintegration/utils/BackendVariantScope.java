@@ -0,0 +1,134 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.sftpdataintegration.utils;
+
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import com.kingsrook.qqq.backend.core.context.QContext;
+import com.kingsrook.qqq.backend.core.model.metadata.QBackendMetaData;
+import com.kingsrook.qqq.backend.core.model.session.QSession;
+import com.kingsrook.qqq.backend.core.utils.CollectionUtils;
+import org.apache.commons.lang3.SerializationUtils;
+
+
+/*******************************************************************************
+ ** Select a backend variant (e.g., which SFTP server a variant-backed table
+ ** reads or writes) for one unit of work, on the current thread only - rather
+ ** than setting it on the shared session, where tasks running at the same time
+ ** (on other threads, with the same session) would clobber each other's.
+ **
+ ** Opening a scope gives the current thread its own copy of the session, with
+ ** the variant set on it (the backend reads variants from the session, as
+ ** usual), and closing it puts the previous session back - so use it with
+ ** try-with-resources:
+ **
+ ** <pre>
+ ** try(BackendVariantScope scope = BackendVariantScope.open(tableName, id))
+ ** {
+ **    // work against tableName, using variant id
+ ** }
+ ** </pre>
+ **
+ ** Threads started within a scope that capture the QContext (e.g., by
+ ** ParallelTaskRunner) get the scope's session, and so its variant.  For
+ ** tables whose backend doesn't use variants, scopes do nothing.
+ *******************************************************************************/
+public class BackendVariantScope implements AutoCloseable
+{
+   private final QSession previousSession;
+
+
+
+   /*******************************************************************************
+    ** Constructor
+    **
+    *******************************************************************************/
+   private BackendVariantScope(QSession previousSession)
+   {
+      this.previousSession = previousSession;
+   }
+
+
+
+   /***************************************************************************
+    ** open a scope in which the table's backend uses the given variant, on the
+    ** current thread.  close it to end the scope.
+    ***************************************************************************/
+   public static BackendVariantScope open(String tableName, Serializable variantId)
+   {
+      QSession previousSession = QContext.getQSession();
+      QSession scopedSession   = getSessionWithVariant(previousSession, tableName, variantId);
+      if(scopedSession == null)
+      {
+         return (new BackendVariantScope(null));
+      }
+
+      QContext.setQSession(scopedSession);
+      return (new BackendVariantScope(previousSession));
+   }
+
+
+
+   /***************************************************************************
+    ** a copy of the session, with the variant set for the table's backend - or
+    ** null if the backend doesn't use variants, or the session already has it
+    ** (in which case there's nothing to do).
+    ***************************************************************************/
+   private static QSession getSessionWithVariant(QSession session, String tableName, Serializable variantId)
+   {
+      QBackendMetaData backend = QContext.getQInstance().getBackendForTable(tableName);
+      if(backend == null || !backend.getUsesVariants() || session == null)
+      {
+         return (null);
+      }
+
+      String                    variantTypeKey = backend.getBackendVariantsConfig().getVariantTypeKey();
+      Map<String, Serializable> variants       = new HashMap<>(CollectionUtils.nonNullMap(session.getBackendVariants()));
+      if(variants.containsKey(variantTypeKey) && Objects.equals(variants.get(variantTypeKey), variantId))
+      {
+         return (null);
+      }
+
+      variants.put(variantTypeKey, variantId);
+      QSession sessionWithVariant = SerializationUtils.clone(session);
+      sessionWithVariant.setBackendVariants(variants);
+      return (sessionWithVariant);
+   }
+
+
+
+   /***************************************************************************
+    ** end the scope - putting the thread's previous session back.
+    ***************************************************************************/
+   @Override
+   public void close()
+   {
+      if(previousSession != null)
+      {
+         QContext.setQSession(previousSession);
+      }
+   }
+
+}
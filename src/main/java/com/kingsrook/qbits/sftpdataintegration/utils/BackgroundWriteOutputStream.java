@@ -0,0 +1,372 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.sftpdataintegration.utils;
+
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.kingsrook.qqq.backend.core.context.CapturedContext;
+import com.kingsrook.qqq.backend.core.context.QContext;
+
+
+/*******************************************************************************
+ ** Output stream that hands what's written to it off to another thread, which
+ ** writes it to the wrapped (destination) stream - so that the work of
+ ** producing the bytes (e.g., rendering and compressing a report) runs at the
+ ** same time as the work of writing them (e.g., uploading them to an SFTP
+ ** server), instead of the two taking turns.
+ **
+ ** Bytes are passed along in fixed-size chunks, through a bounded queue - so
+ ** memory use is flat (at most a few chunks), no matter how much is written,
+ ** and a writer that gets ahead of the destination waits for it to catch up.
+ **
+ ** An error writing to the destination is thrown from the next write (or from
+ ** close).  close waits for everything to be written, then closes the
+ ** destination.  abort (for a writer that failed partway through) instead
+ ** drops whatever hasn't been written yet, and closes the destination without
+ ** passing along anything more - leaving the caller to delete what it holds.
+ *******************************************************************************/
+public class BackgroundWriteOutputStream extends OutputStream
+{
+   public static final int DEFAULT_CHUNK_BYTES       = 64 * 1024;
+   public static final int DEFAULT_MAX_QUEUED_CHUNKS = 4;
+
+   private static final byte[] END_OF_STREAM = new byte[0];
+
+   private static final AtomicInteger   threadCounter = new AtomicInteger();
+   private static final ExecutorService executor      = Executors.newCachedThreadPool(runnable ->
+   {
+      Thread thread = new Thread(runnable, "qbit-sftp-background-write-" + threadCounter.incrementAndGet());
+      thread.setDaemon(true);
+      return (thread);
+   });
+
+   private final OutputStream          destination;
+   private final BlockingQueue<byte[]> queue;
+   private final Future<?>             writerFuture;
+
+   private byte[]  chunk;
+   private int     chunkLength = 0;
+   private boolean closed      = false;
+
+   private volatile IOException failure;
+   private volatile boolean     aborted = false;
+
+
+
+   /*******************************************************************************
+    ** Constructor - using the default chunk size and queue length.
+    **
+    *******************************************************************************/
+   public BackgroundWriteOutputStream(OutputStream destination)
+   {
+      this(destination, DEFAULT_CHUNK_BYTES, DEFAULT_MAX_QUEUED_CHUNKS);
+   }
+
+
+
+   /*******************************************************************************
+    ** Constructor
+    **
+    *******************************************************************************/
+   public BackgroundWriteOutputStream(OutputStream destination, int chunkBytes, int maxQueuedChunks)
+   {
+      this.destination = destination;
+      this.queue = new ArrayBlockingQueue<>(maxQueuedChunks);
+      this.chunk = new byte[chunkBytes];
+
+      CapturedContext capturedContext = QContext.capture();
+      this.writerFuture = executor.submit(() ->
+      {
+         QContext.init(capturedContext);
+         try
+         {
+            writeQueuedChunks();
+         }
+         finally
+         {
+            QContext.clear();
+         }
+      });
+   }
+
+
+
+   /***************************************************************************
+    ** (in the background thread) write chunks from the queue to the destination,
+    ** until the end of the stream.  after a failure, keep taking (and dropping)
+    ** chunks, so the producing thread never waits on a full queue forever.
+    ***************************************************************************/
+   private void writeQueuedChunks()
+   {
+      try
+      {
+         byte[] bytes;
+         while((bytes = queue.take()) != END_OF_STREAM)
+         {
+            if(failure == null && !aborted)
+            {
+               try
+               {
+                  destination.write(bytes);
+               }
+               catch(IOException e)
+               {
+                  failure = e;
+               }
+               catch(RuntimeException e)
+               {
+                  failure = new IOException(e);
+               }
+            }
+         }
+      }
+      catch(InterruptedException e)
+      {
+         failure = new InterruptedIOException("Interrupted while writing in background");
+         Thread.currentThread().interrupt();
+      }
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   @Override
+   public void write(int b) throws IOException
+   {
+      ensureOpen();
+      if(chunkLength == chunk.length)
+      {
+         enqueueChunk();
+      }
+      chunk[chunkLength++] = (byte) b;
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   @Override
+   public void write(byte[] bytes, int offset, int length) throws IOException
+   {
+      ensureOpen();
+      while(length > 0)
+      {
+         if(chunkLength == chunk.length)
+         {
+            enqueueChunk();
+         }
+
+         int copyLength = Math.min(length, chunk.length - chunkLength);
+         System.arraycopy(bytes, offset, chunk, chunkLength, copyLength);
+         chunkLength += copyLength;
+         offset += copyLength;
+         length -= copyLength;
+      }
+   }
+
+
+
+   /***************************************************************************
+    ** pass along what's been written so far (without waiting for it to be
+    ** written to the destination).
+    ***************************************************************************/
+   @Override
+   public void flush() throws IOException
+   {
+      ensureOpen();
+      if(chunkLength > 0)
+      {
+         enqueueChunk();
+      }
+   }
+
+
+
+   /***************************************************************************
+    ** pass along what's left, wait for all of it to be written, then close the
+    ** destination.
+    ***************************************************************************/
+   @Override
+   public void close() throws IOException
+   {
+      if(closed)
+      {
+         return;
+      }
+
+      try
+      {
+         if(chunkLength > 0 && failure == null)
+         {
+            enqueueChunk();
+         }
+         put(END_OF_STREAM);
+         writerFuture.get();
+      }
+      catch(ExecutionException e)
+      {
+         throw (new IOException("Error writing in background", e.getCause()));
+      }
+      catch(InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+         throw (new InterruptedIOException("Interrupted while waiting for background write"));
+      }
+      finally
+      {
+         closed = true;
+         destination.close();
+      }
+
+      throwIfFailed();
+   }
+
+
+
+   /***************************************************************************
+    ** give up on the stream: drop what's been written but not yet passed to the
+    ** destination, wait for the background thread to stop, then close the
+    ** destination.  errors (from the background write, or from closing) are
+    ** not thrown - the caller is already handling the failure that made it
+    ** abort.  the destination is left with only a prefix of what was written,
+    ** so the caller should delete it.
+    ***************************************************************************/
+   public void abort()
+   {
+      if(closed)
+      {
+         return;
+      }
+
+      closed = true;
+      aborted = true;
+      chunkLength = 0;
+
+      try
+      {
+         //////////////////////////////////////////////////////////////////////
+         // this is the only thread putting to the queue - so after clearing //
+         // it, there's room for the end-of-stream marker                    //
+         //////////////////////////////////////////////////////////////////////
+         queue.clear();
+         queue.put(END_OF_STREAM);
+         writerFuture.get();
+      }
+      catch(ExecutionException e)
+      {
+         /////////////////////////////////////////////////////////////////////////////////
+         // the background thread doesn't throw - but if it did, we're giving up anyway //
+         /////////////////////////////////////////////////////////////////////////////////
+      }
+      catch(InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+      }
+      finally
+      {
+         try
+         {
+            destination.close();
+         }
+         catch(IOException e)
+         {
+            /////////////////////////////////////////////////////////////////////////
+            // already giving up on the destination - nothing more to do with this //
+            /////////////////////////////////////////////////////////////////////////
+         }
+      }
+   }
+
+
+
+   /***************************************************************************
+    ** hand the current chunk off to the background thread, and start a new one.
+    ***************************************************************************/
+   private void enqueueChunk() throws IOException
+   {
+      throwIfFailed();
+
+      byte[] bytes = chunkLength == chunk.length ? chunk : Arrays.copyOf(chunk, chunkLength);
+      put(bytes);
+
+      chunk = new byte[chunk.length];
+      chunkLength = 0;
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private void put(byte[] bytes) throws IOException
+   {
+      try
+      {
+         queue.put(bytes);
+      }
+      catch(InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+         throw (new InterruptedIOException("Interrupted while waiting to write in background"));
+      }
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private void throwIfFailed() throws IOException
+   {
+      if(failure != null)
+      {
+         throw (new IOException("Error writing in background", failure));
+      }
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private void ensureOpen() throws IOException
+   {
+      if(closed)
+      {
+         throw (new IOException("Stream is closed"));
+      }
+   }
+
+}
@@ -0,0 +1,218 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.sftpdataintegration.utils;
+
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+import com.kingsrook.qqq.backend.core.model.data.QRecord;
+import com.kingsrook.qqq.backend.core.utils.CollectionUtils;
+
+
+/*******************************************************************************
+ ** Limit on the number of bytes (of records' heavy-field contents) that may be
+ ** in-flight between a producer (e.g., an extract step) and consumer (e.g., a
+ ** load step) at once.  Budgets are registered by an owner key, so that the
+ ** consumer side (which may be a different step object) can find its budget.
+ **
+ ** A single acquisition larger than the whole budget is allowed through when
+ ** nothing else is in flight - so huge files still move, just one at a time.
+ *******************************************************************************/
+public class ByteBudget
+{
+   public static final String CONTENTS_FIELD_NAME = "contents";
+
+   private static final Map<String, ByteBudget> budgetsByOwner = new ConcurrentHashMap<>();
+
+   private final String owner;
+   private final long   maxBytes;
+
+   private long    bytesInFlight  = 0;
+   private boolean isProducerDone = false;
+
+
+
+   /*******************************************************************************
+    ** Constructor
+    **
+    *******************************************************************************/
+   private ByteBudget(String owner, long maxBytes)
+   {
+      this.owner = owner;
+      this.maxBytes = maxBytes;
+   }
+
+
+
+   /***************************************************************************
+    ** create and register a budget for an owner.
+    ***************************************************************************/
+   public static ByteBudget open(String owner, long maxBytes)
+   {
+      ByteBudget byteBudget = new ByteBudget(owner, maxBytes);
+      budgetsByOwner.put(owner, byteBudget);
+      return (byteBudget);
+   }
+
+
+
+   /***************************************************************************
+    ** release the bytes of some records back to the budget registered for an
+    ** owner (if there is one).
+    ***************************************************************************/
+   public static void release(String owner, Collection<QRecord> records)
+   {
+      ByteBudget byteBudget = owner == null ? null : budgetsByOwner.get(owner);
+      if(byteBudget != null)
+      {
+         byteBudget.release(sizeOf(records));
+      }
+   }
+
+
+
+   /***************************************************************************
+    ** run a consumer of some records (e.g., a step's work on a page) - and if
+    ** it fails, release the records' bytes to the owner's budget (if there is
+    ** one), as they then won't get to whatever would have released them.
+    ** otherwise, the producer could be left waiting forever for bytes that
+    ** will never come back.
+    ***************************************************************************/
+   public static void releaseIfConsumerFails(String owner, Collection<QRecord> records, PageConsumer consumer) throws QException
+   {
+      try
+      {
+         consumer.run();
+      }
+      catch(QException | RuntimeException | Error e)
+      {
+         release(owner, records);
+         throw (e);
+      }
+   }
+
+
+
+   /***************************************************************************
+    ** block until the requested number of bytes fit in the budget.
+    ***************************************************************************/
+   public synchronized void acquire(long bytes) throws QException
+   {
+      while(bytesInFlight > 0 && bytesInFlight + bytes > maxBytes)
+      {
+         try
+         {
+            wait();
+         }
+         catch(InterruptedException e)
+         {
+            Thread.currentThread().interrupt();
+            throw (new QException("Interrupted while waiting for bytes to be available in budget", e));
+         }
+      }
+
+      bytesInFlight += bytes;
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   public synchronized void release(long bytes)
+   {
+      bytesInFlight = Math.max(0, bytesInFlight - bytes);
+      notifyAll();
+      unregisterIfDone();
+   }
+
+
+
+   /***************************************************************************
+    ** note that the producer won't acquire any more - so once everything has
+    ** been released, this budget can be forgotten.
+    ***************************************************************************/
+   public synchronized void producerDone()
+   {
+      isProducerDone = true;
+      unregisterIfDone();
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private void unregisterIfDone()
+   {
+      if(isProducerDone && bytesInFlight == 0)
+      {
+         budgetsByOwner.remove(owner, this);
+      }
+   }
+
+
+
+   /***************************************************************************
+    ** size (in bytes) of the contents of some records.
+    ***************************************************************************/
+   public static long sizeOf(Collection<QRecord> records)
+   {
+      long size = 0;
+      for(QRecord record : CollectionUtils.nonNullCollection(records))
+      {
+         byte[] contents = record.getValueByteArray(CONTENTS_FIELD_NAME);
+         if(contents != null)
+         {
+            size += contents.length;
+         }
+      }
+      return (size);
+   }
+
+
+
+   /***************************************************************************
+    ** work done by a consumer of records from a budgeted pipe.
+    ***************************************************************************/
+   @FunctionalInterface
+   public interface PageConsumer
+   {
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      void run() throws QException;
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for bytesInFlight
+    *******************************************************************************/
+   public synchronized long getBytesInFlight()
+   {
+      return (this.bytesInFlight);
+   }
+
+}
@@ -0,0 +1,127 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.sftpdataintegration.utils;
+
+
+import java.util.List;
+import com.kingsrook.qqq.backend.core.actions.reporting.RecordPipe;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+import com.kingsrook.qqq.backend.core.model.data.QRecord;
+import com.kingsrook.qqq.backend.core.utils.lambdas.UnsafeFunction;
+
+
+/*******************************************************************************
+ ** Record pipe that sits in front of another pipe, and blocks producers until
+ ** the contents of the records they're adding fit in a ByteBudget.  Consumers
+ ** are responsible for releasing the bytes of the records they've taken once
+ ** they're done with them - including if they fail (see
+ ** ByteBudget.releaseIfConsumerFails), else the producer can block forever.
+ **
+ ** Every public RecordPipe method is forwarded to the wrapped pipe (only adds
+ ** are budgeted) - so records can be consumed and counted through either pipe,
+ ** and none are ever left in this object's own (unused) queue.
+ *******************************************************************************/
+public class ByteBudgetedRecordPipe extends RecordPipe
+{
+   private final RecordPipe wrappedPipe;
+   private final ByteBudget byteBudget;
+
+
+
+   /*******************************************************************************
+    ** Constructor
+    **
+    *******************************************************************************/
+   public ByteBudgetedRecordPipe(RecordPipe wrappedPipe, ByteBudget byteBudget)
+   {
+      this.wrappedPipe = wrappedPipe;
+      this.byteBudget = byteBudget;
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   @Override
+   public void addRecord(QRecord record) throws QException
+   {
+      addRecords(List.of(record));
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   @Override
+   public void addRecords(List<QRecord> records) throws QException
+   {
+      byteBudget.acquire(ByteBudget.sizeOf(records));
+      wrappedPipe.addRecords(records);
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   @Override
+   public List<QRecord> consumeAvailableRecords()
+   {
+      return (wrappedPipe.consumeAvailableRecords());
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   @Override
+   public int countAvailableRecords()
+   {
+      return (wrappedPipe.countAvailableRecords());
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   @Override
+   public void setPostRecordActions(UnsafeFunction<List<QRecord>, List<QRecord>, QException> postRecordActions)
+   {
+      wrappedPipe.setPostRecordActions(postRecordActions);
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   @Override
+   public void terminate()
+   {
+      wrappedPipe.terminate();
+   }
+
+}
@@ -0,0 +1,295 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.sftpdataintegration.utils;
+
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+
+
+/*******************************************************************************
+ ** Limit how many units of work may run at the same time against a shared
+ ** resource - e.g., how many sync runs may be active at once, or how many
+ ** sessions may be open at once against an SFTP host (to stay under partner
+ ** servers' MaxSessions settings).
+ **
+ ** Permits are re-entrant per owner - so, for example, the load step of a sync
+ ** run re-uses the permit that its extract step is holding for a host, rather
+ ** than waiting (potentially forever) for another one.  An owner holds at most
+ ** one of a key's permits, no matter how many of its threads ask for it at
+ ** once (the first one takes the permit; the others wait for it, then share
+ ** it) - so work that needs a permit each (e.g., one per open session) must use
+ ** a distinct owner for each.
+ **
+ ** If the limit given for a key changes, new permits come from a fresh pool of
+ ** the new size - so, until permits from the old pool are released, up to the
+ ** old and new limits together may be held at once.
+ *******************************************************************************/
+public class ConcurrencyLimiter
+{
+   public static final String SFTP_IMPORT_FILE_SYNC_KEY = "SFTPImportFileSync";
+
+   ////////////////////////////////////////////////////
+   // both maps are guarded by synchronizing on LOCK //
+   ////////////////////////////////////////////////////
+   private static final Object                   LOCK  = new Object();
+   private static final Map<String, LimitedPool> pools = new HashMap<>();
+   private static final Map<String, Hold>        holds = new HashMap<>();
+
+
+
+   /***************************************************************************
+    ** get the key used to limit sessions against an SFTP host.
+    ***************************************************************************/
+   public static String getSFTPHostKey(String hostname, Integer port)
+   {
+      return ("sftpHost:" + hostname + ":" + Objects.requireNonNullElse(port, 22));
+   }
+
+
+
+   /***************************************************************************
+    ** acquire a permit for the given key, blocking until one is available.
+    ** a null (or non-positive) limit means unlimited, in which case a no-op
+    ** permit is returned.  the returned permit must be closed to release it.
+    ***************************************************************************/
+   public static Permit acquire(String key, Integer limit, String owner) throws QException
+   {
+      return (acquire(key, limit, owner, null));
+   }
+
+
+
+   /***************************************************************************
+    ** acquire a permit for the given key, waiting at most timeoutMillis for one
+    ** to be available - returning null if none was.
+    ***************************************************************************/
+   public static Permit tryAcquire(String key, Integer limit, String owner, long timeoutMillis) throws QException
+   {
+      return (acquire(key, limit, owner, timeoutMillis));
+   }
+
+
+
+   /***************************************************************************
+    ** acquire a permit - waiting forever if timeoutMillis is null, else giving
+    ** up (and returning null) after that long.
+    ***************************************************************************/
+   private static Permit acquire(String key, Integer limit, String owner, Long timeoutMillis) throws QException
+   {
+      if(key == null || limit == null || limit < 1)
+      {
+         return (new Permit(null, null));
+      }
+
+      /////////////////////////////////////////////////////////////////////////
+      // join the owner's hold on the key, if there is one - else start one  //
+      // (in the same synchronized block, so two of an owner's threads can't //
+      // both start one, and so both take a permit)                          //
+      /////////////////////////////////////////////////////////////////////////
+      String  holdKey   = key + " / " + owner;
+      Hold    hold;
+      boolean isNewHold;
+      synchronized(LOCK)
+      {
+         hold = holds.get(holdKey);
+         isNewHold = (hold == null);
+         if(isNewHold)
+         {
+            hold = new Hold(getPool(key, limit).semaphore);
+            holds.put(holdKey, hold);
+         }
+         hold.count++;
+      }
+
+      try
+      {
+         if(isNewHold)
+         {
+            if(timeoutMillis == null)
+            {
+               hold.semaphore.acquire();
+            }
+            else if(!hold.semaphore.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS))
+            {
+               throw (new TimeoutException());
+            }
+            hold.acquired.complete(null);
+         }
+         else if(timeoutMillis == null)
+         {
+            hold.acquired.get();
+         }
+         else
+         {
+            hold.acquired.get(timeoutMillis, TimeUnit.MILLISECONDS);
+         }
+      }
+      catch(InterruptedException | ExecutionException | TimeoutException e)
+      {
+         if(isNewHold)
+         {
+            hold.acquired.completeExceptionally(e);
+         }
+         release(holdKey, hold);
+
+         if(e instanceof TimeoutException || e.getCause() instanceof TimeoutException)
+         {
+            return (null);
+         }
+
+         if(e instanceof InterruptedException)
+         {
+            Thread.currentThread().interrupt();
+         }
+         throw (new QException("Could not get a permit for [" + key + "]", e));
+      }
+
+      return (new Permit(holdKey, hold));
+   }
+
+
+
+   /***************************************************************************
+    ** get the pool of permits for a key - replacing it, if the limit changed.
+    ** (must be called while synchronized on LOCK.)
+    ***************************************************************************/
+   private static LimitedPool getPool(String key, int limit)
+   {
+      LimitedPool pool = pools.get(key);
+      if(pool == null || pool.limit != limit)
+      {
+         pool = new LimitedPool(limit, new Semaphore(limit, true));
+         pools.put(key, pool);
+      }
+      return (pool);
+   }
+
+
+
+   /***************************************************************************
+    ** leave a hold - and if it was the last one out, end the hold, giving its
+    ** permit back (if it got one).
+    ***************************************************************************/
+   private static void release(String holdKey, Hold hold)
+   {
+      synchronized(LOCK)
+      {
+         hold.count--;
+         if(hold.count > 0)
+         {
+            return;
+         }
+
+         if(holds.get(holdKey) == hold)
+         {
+            holds.remove(holdKey);
+         }
+      }
+
+      if(hold.acquired.isDone() && !hold.acquired.isCompletedExceptionally())
+      {
+         hold.semaphore.release();
+      }
+   }
+
+
+
+   /***************************************************************************
+    ** a key's pool of permits, and the limit it was made with.
+    ***************************************************************************/
+   private record LimitedPool(int limit, Semaphore semaphore)
+   {
+   }
+
+
+
+   /***************************************************************************
+    ** an owner's hold on one of a key's permits - shared by all of the owner's
+    ** threads using the key at once.  count is guarded by LOCK.
+    ***************************************************************************/
+   private static class Hold
+   {
+      private final Semaphore               semaphore;
+      private final CompletableFuture<Void> acquired = new CompletableFuture<>();
+      private int                           count    = 0;
+
+
+
+      /*******************************************************************************
+       ** Constructor
+       **
+       *******************************************************************************/
+      private Hold(Semaphore semaphore)
+      {
+         this.semaphore = semaphore;
+      }
+   }
+
+
+
+   /***************************************************************************
+    ** a permit acquired from the limiter - close it to release it.
+    ***************************************************************************/
+   public static class Permit implements AutoCloseable
+   {
+      private final String holdKey;
+      private final Hold   hold;
+
+      private boolean isReleased = false;
+
+
+
+      /*******************************************************************************
+       ** Constructor
+       **
+       *******************************************************************************/
+      private Permit(String holdKey, Hold hold)
+      {
+         this.holdKey = holdKey;
+         this.hold = hold;
+      }
+
+
+
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      @Override
+      public synchronized void close()
+      {
+         if(hold != null && !isReleased)
+         {
+            isReleased = true;
+            release(holdKey, hold);
+         }
+      }
+   }
+
+}
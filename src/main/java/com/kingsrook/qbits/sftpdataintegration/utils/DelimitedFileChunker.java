@@ -0,0 +1,199 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.sftpdataintegration.utils;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+
+/*******************************************************************************
+ ** Split a delimited (e.g., CSV) file into chunks of at most a given number of
+ ** data rows - splitting only at row boundaries (i.e., not at newlines inside
+ ** quoted values), and repeating the header row (if it has one) at the start
+ ** of every chunk - so each chunk can be bulk loaded on its own.
+ **
+ ** Works on bytes (quotes and newlines are single bytes in UTF-8, and never
+ ** appear inside multibyte characters), in one streaming pass.  The start of
+ ** the first chunk is held in memory (up to a limit) until a second chunk is
+ ** needed - so a small file that fits in one chunk isn't written anywhere, and
+ ** the caller can just use it as-is.  Past that limit, the first chunk is
+ ** written out as it's read, like the others.
+ *******************************************************************************/
+public class DelimitedFileChunker
+{
+   public static final int DEFAULT_MAX_BUFFERED_BYTES = 1024 * 1024;
+
+   private static final int BUFFER_SIZE = 64 * 1024;
+
+   private final int     rowsPerChunk;
+   private final boolean hasHeaderRow;
+   private final int     maxBufferedBytes;
+
+
+
+   /***************************************************************************
+    ** opens the output stream for a chunk (by 0-based index).
+    ***************************************************************************/
+   @FunctionalInterface
+   public interface ChunkOpener
+   {
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      OutputStream open(int chunkIndex) throws IOException;
+   }
+
+
+
+   /*******************************************************************************
+    ** Constructor - holding at most the default number of bytes in memory.
+    **
+    *******************************************************************************/
+   public DelimitedFileChunker(int rowsPerChunk, boolean hasHeaderRow)
+   {
+      this(rowsPerChunk, hasHeaderRow, DEFAULT_MAX_BUFFERED_BYTES);
+   }
+
+
+
+   /*******************************************************************************
+    ** Constructor
+    **
+    *******************************************************************************/
+   public DelimitedFileChunker(int rowsPerChunk, boolean hasHeaderRow, int maxBufferedBytes)
+   {
+      this.rowsPerChunk = Math.max(1, rowsPerChunk);
+      this.hasHeaderRow = hasHeaderRow;
+      this.maxBufferedBytes = maxBufferedBytes;
+   }
+
+
+
+   /***************************************************************************
+    ** split the input into chunks, opening each one via the chunk opener.
+    ** returns the number of chunks written - or 0, if the whole input fit in
+    ** one chunk, and in memory (in which case nothing was written).
+    ***************************************************************************/
+   public int split(InputStream inputStream, ChunkOpener chunkOpener) throws IOException
+   {
+      ByteArrayOutputStream headerBytes      = new ByteArrayOutputStream();
+      ByteArrayOutputStream firstChunkBytes  = new ByteArrayOutputStream();
+      OutputStream          current          = firstChunkBytes;
+      boolean               firstChunkOpened = false;
+      int                   chunkIndex       = 0;
+      int                   rowsInChunk      = 0;
+      boolean               inHeader         = hasHeaderRow;
+      boolean               inQuotes         = false;
+      boolean               atRowStart       = true;
+
+      try
+      {
+         byte[] buffer = new byte[BUFFER_SIZE];
+         int    length;
+         while((length = inputStream.read(buffer)) != -1)
+         {
+            int segmentStart = 0;
+            for(int i = 0; i < length; i++)
+            {
+               byte b = buffer[i];
+
+               ///////////////////////////////////////////////////////////////
+               // a new data row, when the current chunk is full, starts a  //
+               // new chunk - so write out what's pending, and switch over. //
+               ///////////////////////////////////////////////////////////////
+               if(atRowStart && !inHeader && rowsInChunk == rowsPerChunk)
+               {
+                  current.write(buffer, segmentStart, i - segmentStart);
+                  segmentStart = i;
+
+                  if(chunkIndex == 0 && !firstChunkOpened)
+                  {
+                     try(OutputStream firstChunkOutputStream = chunkOpener.open(0))
+                     {
+                        firstChunkBytes.writeTo(firstChunkOutputStream);
+                     }
+                  }
+                  else
+                  {
+                     current.close();
+                  }
+
+                  chunkIndex++;
+                  current = chunkOpener.open(chunkIndex);
+                  headerBytes.writeTo(current);
+                  rowsInChunk = 0;
+               }
+               atRowStart = false;
+
+               if(inHeader)
+               {
+                  headerBytes.write(b);
+               }
+
+               if(b == '"')
+               {
+                  inQuotes = !inQuotes;
+               }
+               else if(b == '\n' && !inQuotes)
+               {
+                  if(inHeader)
+                  {
+                     inHeader = false;
+                  }
+                  else
+                  {
+                     rowsInChunk++;
+                  }
+                  atRowStart = true;
+               }
+            }
+
+            current.write(buffer, segmentStart, length - segmentStart);
+
+            ////////////////////////////////////////////////////////////////
+            // once the first chunk outgrows memory, write it out as it's //
+            // read, instead of holding it until a second chunk is needed //
+            ////////////////////////////////////////////////////////////////
+            if(chunkIndex == 0 && !firstChunkOpened && firstChunkBytes.size() > maxBufferedBytes)
+            {
+               current = chunkOpener.open(0);
+               firstChunkOpened = true;
+               firstChunkBytes.writeTo(current);
+               firstChunkBytes.reset();
+            }
+         }
+      }
+      finally
+      {
+         if(chunkIndex > 0 || firstChunkOpened)
+         {
+            current.close();
+         }
+      }
+
+      return (chunkIndex == 0 && !firstChunkOpened ? 0 : chunkIndex + 1);
+   }
+
+}
@@ -0,0 +1,203 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.sftpdataintegration.utils;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+
+/*******************************************************************************
+ ** Concatenate delimited (e.g., CSV) files with the same layout into one - so
+ ** they can be bulk loaded in a single run.  The header row (if the files have
+ ** one) is only kept from the first file, and each file is ended with a
+ ** newline, so the next one starts on a new row.
+ **
+ ** Each later file's header row must match the first file's exactly (else its
+ ** columns would be loaded under the wrong names) - so callers should group
+ ** files by their headers (see readHeader) - and append fails, before writing
+ ** any of a file, if its header doesn't match.
+ **
+ ** Like DelimitedFileChunker, works on bytes, in one streaming pass per file -
+ ** counting each file's data rows (i.e., not newlines inside quoted values).
+ *******************************************************************************/
+public class DelimitedFileCoalescer
+{
+   private static final int BUFFER_SIZE      = 64 * 1024;
+   private static final int MAX_HEADER_BYTES = 1024 * 1024;
+
+   private final OutputStream outputStream;
+   private final boolean      hasHeaderRow;
+
+   private int    fileCount = 0;
+   private byte[] firstHeader;
+
+
+
+   /*******************************************************************************
+    ** Constructor
+    **
+    *******************************************************************************/
+   public DelimitedFileCoalescer(OutputStream outputStream, boolean hasHeaderRow)
+   {
+      this.outputStream = outputStream;
+      this.hasHeaderRow = hasHeaderRow;
+   }
+
+
+
+   /***************************************************************************
+    ** read a file's header row (its bytes, through its newline) - for grouping
+    ** files that can be coalesced.  reads no further than the header (or, for
+    ** a file without any unquoted newline, 1 MB of it).
+    ***************************************************************************/
+   public static byte[] readHeader(InputStream inputStream) throws IOException
+   {
+      ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+      boolean               inQuotes    = false;
+      int                   b;
+      while(headerBytes.size() < MAX_HEADER_BYTES && (b = inputStream.read()) != -1)
+      {
+         headerBytes.write(b);
+         if(b == '"')
+         {
+            inQuotes = !inQuotes;
+         }
+         else if(b == '\n' && !inQuotes)
+         {
+            break;
+         }
+      }
+      return (headerBytes.toByteArray());
+   }
+
+
+
+   /***************************************************************************
+    ** append a file to the output - returning its number of data rows.  throws
+    ** (having written nothing of the file) if its header row doesn't match the
+    ** first file's.
+    ***************************************************************************/
+   public int append(InputStream inputStream) throws IOException
+   {
+      ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+      boolean               skipHeader  = hasHeaderRow && fileCount > 0;
+      boolean               inHeader    = hasHeaderRow;
+      boolean               inQuotes    = false;
+      boolean               atRowStart  = true;
+      int                   rows        = 0;
+
+      byte[] buffer = new byte[BUFFER_SIZE];
+      int    length;
+      while((length = inputStream.read(buffer)) != -1)
+      {
+         int segmentStart = 0;
+         for(int i = 0; i < length; i++)
+         {
+            byte b = buffer[i];
+            atRowStart = false;
+
+            if(inHeader)
+            {
+               headerBytes.write(b);
+            }
+
+            if(b == '"')
+            {
+               inQuotes = !inQuotes;
+            }
+            else if(b == '\n' && !inQuotes)
+            {
+               if(inHeader)
+               {
+                  inHeader = false;
+                  checkHeader(headerBytes.toByteArray());
+
+                  ///////////////////////////////////////////////////////
+                  // drop this (non-first) file's header, through here //
+                  ///////////////////////////////////////////////////////
+                  if(skipHeader)
+                  {
+                     segmentStart = i + 1;
+                  }
+               }
+               else
+               {
+                  rows++;
+               }
+               atRowStart = true;
+            }
+         }
+
+         if(!(skipHeader && inHeader))
+         {
+            outputStream.write(buffer, segmentStart, length - segmentStart);
+         }
+      }
+
+      /////////////////////////////////////////////////////////////////////
+      // a last row without a newline still counts - and gets a newline, //
+      // so the next file's first row doesn't run into it.               //
+      /////////////////////////////////////////////////////////////////////
+      if(!atRowStart)
+      {
+         if(inHeader)
+         {
+            checkHeader(headerBytes.toByteArray());
+         }
+         else
+         {
+            rows++;
+         }
+
+         if(!(skipHeader && inHeader))
+         {
+            outputStream.write('\n');
+         }
+      }
+
+      fileCount++;
+      return (rows);
+   }
+
+
+
+   /***************************************************************************
+    ** keep the first file's header row - and check that each later file's
+    ** matches it.
+    ***************************************************************************/
+   private void checkHeader(byte[] header) throws IOException
+   {
+      if(fileCount == 0)
+      {
+         firstHeader = header;
+      }
+      else if(!Arrays.equals(firstHeader, header))
+      {
+         throw (new IOException("Header row of file " + (fileCount + 1) + " does not match the first file's header row"));
+      }
+   }
+
+}
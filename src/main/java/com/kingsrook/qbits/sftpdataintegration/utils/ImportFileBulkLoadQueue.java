@@ -0,0 +1,158 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.sftpdataintegration.utils;
+
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import com.kingsrook.qbits.sftpdataintegration.metadata.ImportFileBulkLoadProcessMetaDataProducer;
+import com.kingsrook.qqq.backend.core.actions.processes.QProcessCallbackFactory;
+import com.kingsrook.qqq.backend.core.actions.processes.RunProcessAction;
+import com.kingsrook.qqq.backend.core.context.QContext;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+import com.kingsrook.qqq.backend.core.logging.QLogger;
+import com.kingsrook.qqq.backend.core.model.actions.processes.RunProcessInput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QCriteriaOperator;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QFilterCriteria;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QQueryFilter;
+import com.kingsrook.qqq.backend.core.model.metadata.QInstance;
+import com.kingsrook.qqq.backend.core.model.metadata.code.QCodeReference;
+import com.kingsrook.qqq.backend.core.model.session.QSession;
+import static com.kingsrook.qqq.backend.core.logging.LogUtils.logPair;
+
+
+/*******************************************************************************
+ ** Queue of newly synced ImportFiles to be bulk loaded right away (rather than
+ ** waiting for the next scheduled or manual run of the bulk load process) -
+ ** a page at a time, as the sync inserts them (its inserts auto-commit), so a
+ ** sync's first files can be loading while it's still staging the rest.
+ **
+ ** Each enqueued batch of ids is loaded by a run of the ImportFileBulkLoad
+ ** process, on a single background thread - so batches are loaded in the
+ ** order they were enqueued (and so, per import config, in sync order).  A
+ ** scheduled run of the process at the same time as a queued one may load the
+ ** same files - unless the QBit config says to use import file leases.
+ *******************************************************************************/
+public class ImportFileBulkLoadQueue
+{
+   private static final QLogger LOG = QLogger.getLogger(ImportFileBulkLoadQueue.class);
+
+   private static ImportFileBulkLoadQueue instance;
+
+   private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable ->
+   {
+      Thread thread = new Thread(runnable, "qbit-sftp-bulk-load-queue");
+      thread.setDaemon(true);
+      return (thread);
+   });
+
+
+
+   /*******************************************************************************
+    ** Singleton accessor
+    *******************************************************************************/
+   public static synchronized ImportFileBulkLoadQueue getInstance()
+   {
+      if(instance == null)
+      {
+         instance = new ImportFileBulkLoadQueue();
+      }
+      return (instance);
+   }
+
+
+
+   /***************************************************************************
+    ** queue a batch of import files to be bulk loaded, in the background, with
+    ** the calling thread's instance and session.
+    ***************************************************************************/
+   public Future<?> enqueue(List<Integer> importFileIds, QCodeReference processTracerCodeReference)
+   {
+      QInstance qInstance = QContext.getQInstance();
+      QSession  qSession  = QContext.getQSession();
+
+      return (executor.submit(() ->
+      {
+         QContext.init(qInstance, qSession);
+         try
+         {
+            runBulkLoad(importFileIds, processTracerCodeReference);
+         }
+         catch(Exception e)
+         {
+            LOG.warn("Error bulk loading queued import files", e, logPair("importFileIds", importFileIds));
+         }
+         finally
+         {
+            QContext.clear();
+         }
+      }));
+   }
+
+
+
+   /***************************************************************************
+    ** wait for everything queued so far to be loaded (e.g., for tests, or an
+    ** orderly shutdown).
+    ***************************************************************************/
+   public void awaitIdle(long timeout, TimeUnit timeUnit) throws QException
+   {
+      try
+      {
+         executor.submit(() -> { }).get(timeout, timeUnit);
+      }
+      catch(InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+         throw (new QException("Interrupted waiting for queued bulk loads", e));
+      }
+      catch(ExecutionException | TimeoutException e)
+      {
+         throw (new QException("Error waiting for queued bulk loads", e));
+      }
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static void runBulkLoad(List<Integer> importFileIds, QCodeReference processTracerCodeReference) throws QException
+   {
+      RunProcessInput input = new RunProcessInput();
+      input.setProcessName(ImportFileBulkLoadProcessMetaDataProducer.NAME);
+      input.setCallback(QProcessCallbackFactory.forFilter(new QQueryFilter(new QFilterCriteria("id", QCriteriaOperator.IN, importFileIds))));
+      input.setFrontendStepBehavior(RunProcessInput.FrontendStepBehavior.SKIP);
+      if(processTracerCodeReference != null)
+      {
+         input.addValue(RunProcessAction.PROCESS_TRACER_CODE_REFERENCE_FIELD, processTracerCodeReference);
+      }
+
+      new RunProcessAction().execute(input);
+   }
+
+}
@@ -0,0 +1,558 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.sftpdataintegration.utils;
+
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+
+
+/*******************************************************************************
+ ** Stage files that may be compressed - decompressing them as they're copied
+ ** into the staging file table (through the stager's fixed-size buffer, so an
+ ** archive is never fully held in memory, no matter how large it is).
+ **
+ ** Compression is detected by the file's extension (.gz or .zip), else by its
+ ** leading ("magic") bytes.  A gzip file is staged as the one file it holds
+ ** (without its .gz extension).  A zip archive is staged as one file per entry
+ ** (under the archive's staged path) - skipping directories and macOS resource
+ ** fork entries.  Zip-based formats that are loaded as-is (e.g., xlsx) are not
+ ** treated as archives.  Anything else is staged as-is.
+ **
+ ** To guard against "zip bombs", decompressing fails once a file expands past
+ ** a total number of bytes, or past a ratio of its compressed size (checked
+ ** only after the first megabyte, so small, very compressible files are fine),
+ ** or once an archive holds too many entries.  When a file fails partway
+ ** through, whatever was already staged from it is deleted.
+ *******************************************************************************/
+public class ImportFileDecompressor
+{
+   public static final String GZIP_EXTENSION = "gz";
+   public static final String ZIP_EXTENSION  = "zip";
+
+   public static final long DEFAULT_MAX_EXPANDED_BYTES    = 10L * 1024 * 1024 * 1024;
+   public static final int  DEFAULT_MAX_ARCHIVE_ENTRIES   = 10_000;
+   public static final int  DEFAULT_MAX_COMPRESSION_RATIO = 100;
+
+   private static final Set<String> ZIP_CONTAINER_EXTENSIONS       = Set.of("xlsx", "xlsm", "ods");
+   private static final String      MACOS_METADATA_PREFIX          = "__MACOSX/";
+   private static final long        RATIO_CHECK_MIN_EXPANDED_BYTES = 1024 * 1024;
+
+   private final ImportFileStager stager;
+
+   private long maxExpandedBytes    = DEFAULT_MAX_EXPANDED_BYTES;
+   private int  maxArchiveEntries   = DEFAULT_MAX_ARCHIVE_ENTRIES;
+   private int  maxCompressionRatio = DEFAULT_MAX_COMPRESSION_RATIO;
+
+
+
+   /***************************************************************************
+    ** kinds of compression that are decompressed.
+    ***************************************************************************/
+   public enum Compression
+   {
+      GZIP,
+      ZIP
+   }
+
+
+
+   /*******************************************************************************
+    ** Constructor
+    **
+    *******************************************************************************/
+   public ImportFileDecompressor(ImportFileStager stager)
+   {
+      this.stager = stager;
+   }
+
+
+
+   /***************************************************************************
+    ** stage the contents of an input stream, read from sourcePath, to stagedPath
+    ** (in the staging file table) - decompressing it first, if it's compressed.
+    ** returns the file(s) that were staged.  the input stream is consumed (and
+    ** may be closed) by this method.
+    ***************************************************************************/
+   public List<DecompressedFile> stage(InputStream inputStream, String sourcePath, String stagedPath) throws QException
+   {
+      try
+      {
+         InputStream markableInputStream = inputStream.markSupported() ? inputStream : new BufferedInputStream(inputStream, ImportFileStager.BUFFER_SIZE);
+         Compression compression         = detectCompression(sourcePath, markableInputStream);
+
+         if(compression == Compression.GZIP)
+         {
+            String           decompressedPath = getDecompressedPath(stagedPath);
+            ExpansionTracker expansionTracker = new ExpansionTracker(sourcePath, markableInputStream);
+            try(InputStream gzipInputStream = new GZIPInputStream(expansionTracker.getCompressedInputStream(), ImportFileStager.BUFFER_SIZE))
+            {
+               return (List.of(new DecompressedFile(null, decompressedPath, stager.stage(expansionTracker.track(gzipInputStream), decompressedPath))));
+            }
+            catch(IOException | QException | RuntimeException e)
+            {
+               stager.delete(List.of(decompressedPath));
+               throw (e);
+            }
+         }
+
+         if(compression == Compression.ZIP)
+         {
+            return (stageZipEntries(markableInputStream, sourcePath, stagedPath));
+         }
+
+         return (List.of(new DecompressedFile(null, stagedPath, stager.stage(markableInputStream, stagedPath))));
+      }
+      catch(IOException e)
+      {
+         throw (new QException("Error decompressing source file [" + sourcePath + "]", e));
+      }
+   }
+
+
+
+   /***************************************************************************
+    ** stage each (file) entry of a zip archive, under the archive's staged path.
+    ** if the archive fails partway through (including by going over a limit),
+    ** the entries that were already staged from it are deleted.
+    ***************************************************************************/
+   private List<DecompressedFile> stageZipEntries(InputStream inputStream, String sourcePath, String stagedPath) throws IOException, QException
+   {
+      List<DecompressedFile> decompressedFiles = new ArrayList<>();
+      List<String>           stagedPaths       = new ArrayList<>();
+      ExpansionTracker       expansionTracker  = new ExpansionTracker(sourcePath, inputStream);
+
+      try(ZipInputStream zipInputStream = new ZipInputStream(expansionTracker.getCompressedInputStream()))
+      {
+         int      entryCount = 0;
+         ZipEntry zipEntry;
+         while((zipEntry = zipInputStream.getNextEntry()) != null)
+         {
+            if(++entryCount > maxArchiveEntries)
+            {
+               throw (new QException("Archive [" + sourcePath + "] contains more than the limit of " + maxArchiveEntries + " entries"));
+            }
+
+            if(zipEntry.isDirectory() || zipEntry.getName().startsWith(MACOS_METADATA_PREFIX))
+            {
+               continue;
+            }
+
+            /////////////////////////////////////////////////////////////////////////
+            // the zip stream reads only the current entry's bytes, then ends - so //
+            // the stager can read it like any other stream                        //
+            /////////////////////////////////////////////////////////////////////////
+            String entryName       = getSafeEntryName(sourcePath, zipEntry.getName());
+            String entryStagedPath = stagedPath + "/" + entryName;
+            stagedPaths.add(entryStagedPath);
+            decompressedFiles.add(new DecompressedFile(entryName, entryStagedPath, stager.stage(expansionTracker.track(zipInputStream), entryStagedPath)));
+         }
+      }
+      catch(IOException | QException | RuntimeException e)
+      {
+         stager.delete(stagedPaths);
+         throw (e);
+      }
+
+      if(decompressedFiles.isEmpty())
+      {
+         throw (new QException("Archive [" + sourcePath + "] does not contain any files"));
+      }
+
+      return (decompressedFiles);
+   }
+
+
+
+   /***************************************************************************
+    ** figure out if (and how) a file is compressed - by its extension, else by
+    ** peeking at its first few bytes.  the stream must support mark/reset (and
+    ** is left at its start).  returns null if the file isn't compressed.
+    ***************************************************************************/
+   public static Compression detectCompression(String path, InputStream markableInputStream) throws IOException
+   {
+      String extension = getExtension(path);
+      if(GZIP_EXTENSION.equals(extension))
+      {
+         return (Compression.GZIP);
+      }
+      if(ZIP_EXTENSION.equals(extension))
+      {
+         return (Compression.ZIP);
+      }
+
+      markableInputStream.mark(4);
+      byte[] magic = markableInputStream.readNBytes(4);
+      markableInputStream.reset();
+
+      if(magic.length >= 2 && (magic[0] & 0xff) == 0x1f && (magic[1] & 0xff) == 0x8b)
+      {
+         return (Compression.GZIP);
+      }
+
+      if(magic.length == 4 && magic[0] == 'P' && magic[1] == 'K' && magic[2] == 3 && magic[3] == 4 && !ZIP_CONTAINER_EXTENSIONS.contains(extension))
+      {
+         return (Compression.ZIP);
+      }
+
+      return (null);
+   }
+
+
+
+   /***************************************************************************
+    ** the path a gzip file is decompressed to - its path without the .gz.
+    ***************************************************************************/
+   static String getDecompressedPath(String path)
+   {
+      if(GZIP_EXTENSION.equals(getExtension(path)))
+      {
+         return (path.substring(0, path.length() - GZIP_EXTENSION.length() - 1));
+      }
+      return (path);
+   }
+
+
+
+   /***************************************************************************
+    ** a zip entry's name, as a relative path that stays under the archive's
+    ** staged path (i.e., no leading slashes, and no ".." segments).
+    ***************************************************************************/
+   static String getSafeEntryName(String sourcePath, String entryName) throws QException
+   {
+      String safeEntryName = entryName.replace('\\', '/').replaceFirst("^/+", "");
+      for(String segment : safeEntryName.split("/"))
+      {
+         if(segment.equals(".."))
+         {
+            throw (new QException("Archive [" + sourcePath + "] contains an entry with an unsafe path [" + entryName + "]"));
+         }
+      }
+      return (safeEntryName);
+   }
+
+
+
+   /***************************************************************************
+    ** lower-cased extension of a path (null if it doesn't have one).
+    ***************************************************************************/
+   private static String getExtension(String path)
+   {
+      if(path == null)
+      {
+         return (null);
+      }
+
+      String fileName = path.substring(path.lastIndexOf('/') + 1);
+      int    dotIndex = fileName.lastIndexOf('.');
+      return (dotIndex < 0 ? null : fileName.substring(dotIndex + 1).toLowerCase(Locale.ROOT));
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for maxExpandedBytes
+    *******************************************************************************/
+   public long getMaxExpandedBytes()
+   {
+      return (this.maxExpandedBytes);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for maxExpandedBytes
+    *******************************************************************************/
+   public void setMaxExpandedBytes(long maxExpandedBytes)
+   {
+      this.maxExpandedBytes = maxExpandedBytes;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for maxExpandedBytes
+    *******************************************************************************/
+   public ImportFileDecompressor withMaxExpandedBytes(long maxExpandedBytes)
+   {
+      this.maxExpandedBytes = maxExpandedBytes;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for maxArchiveEntries
+    *******************************************************************************/
+   public int getMaxArchiveEntries()
+   {
+      return (this.maxArchiveEntries);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for maxArchiveEntries
+    *******************************************************************************/
+   public void setMaxArchiveEntries(int maxArchiveEntries)
+   {
+      this.maxArchiveEntries = maxArchiveEntries;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for maxArchiveEntries
+    *******************************************************************************/
+   public ImportFileDecompressor withMaxArchiveEntries(int maxArchiveEntries)
+   {
+      this.maxArchiveEntries = maxArchiveEntries;
+      return (this);
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for maxCompressionRatio
+    *******************************************************************************/
+   public int getMaxCompressionRatio()
+   {
+      return (this.maxCompressionRatio);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for maxCompressionRatio
+    *******************************************************************************/
+   public void setMaxCompressionRatio(int maxCompressionRatio)
+   {
+      this.maxCompressionRatio = maxCompressionRatio;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for maxCompressionRatio
+    *******************************************************************************/
+   public ImportFileDecompressor withMaxCompressionRatio(int maxCompressionRatio)
+   {
+      this.maxCompressionRatio = maxCompressionRatio;
+      return (this);
+   }
+
+
+
+   /***************************************************************************
+    ** counts the bytes read from a compressed file, and the bytes decompressed
+    ** from it (over all of an archive's entries) - failing a read that takes
+    ** the decompressed bytes past the limit, or past the compression ratio.
+    ***************************************************************************/
+   private class ExpansionTracker
+   {
+      private final String      sourcePath;
+      private final InputStream compressedInputStream;
+
+      private long compressedBytes = 0;
+      private long expandedBytes   = 0;
+
+
+
+      /*******************************************************************************
+       ** Constructor
+       **
+       *******************************************************************************/
+      private ExpansionTracker(String sourcePath, InputStream inputStream)
+      {
+         this.sourcePath = sourcePath;
+         this.compressedInputStream = new FilterInputStream(inputStream)
+         {
+            @Override
+            public int read() throws IOException
+            {
+               int b = super.read();
+               if(b != -1)
+               {
+                  compressedBytes++;
+               }
+               return (b);
+            }
+
+
+
+            @Override
+            public int read(byte[] bytes, int offset, int length) throws IOException
+            {
+               int read = super.read(bytes, offset, length);
+               if(read > 0)
+               {
+                  compressedBytes += read;
+               }
+               return (read);
+            }
+         };
+      }
+
+
+
+      /***************************************************************************
+       ** the stream to decompress from (the compressed bytes, counted).
+       ***************************************************************************/
+      private InputStream getCompressedInputStream()
+      {
+         return (compressedInputStream);
+      }
+
+
+
+      /***************************************************************************
+       ** wrap a decompressing stream, to count (and limit) what's read from
+       ** it.  closing the returned stream does not close the wrapped one.
+       ***************************************************************************/
+      private InputStream track(InputStream decompressedInputStream)
+      {
+         return (new FilterInputStream(decompressedInputStream)
+         {
+            @Override
+            public int read() throws IOException
+            {
+               int b = super.read();
+               if(b != -1)
+               {
+                  addExpandedBytes(1);
+               }
+               return (b);
+            }
+
+
+
+            @Override
+            public int read(byte[] bytes, int offset, int length) throws IOException
+            {
+               int read = super.read(bytes, offset, length);
+               if(read > 0)
+               {
+                  addExpandedBytes(read);
+               }
+               return (read);
+            }
+
+
+
+            @Override
+            public void close()
+            {
+               //////////////////////////////////////////////////////////////////
+               // leave the decompressing stream open - e.g., for the next zip //
+               // entry (whoever opened it closes it)                          //
+               //////////////////////////////////////////////////////////////////
+            }
+         });
+      }
+
+
+
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      private void addExpandedBytes(long count) throws IOException
+      {
+         expandedBytes += count;
+         if(expandedBytes > maxExpandedBytes)
+         {
+            throw (new IOException("File [" + sourcePath + "] decompresses to more than the limit of " + maxExpandedBytes + " bytes"));
+         }
+
+         if(expandedBytes > RATIO_CHECK_MIN_EXPANDED_BYTES && expandedBytes > compressedBytes * maxCompressionRatio)
+         {
+            throw (new IOException("File [" + sourcePath + "] decompresses to more than " + maxCompressionRatio + " times its compressed size"));
+         }
+      }
+   }
+
+
+
+   /***************************************************************************
+    ** a file that was staged - with the name of the archive entry it came from
+    ** (null if it didn't come from an archive).
+    ***************************************************************************/
+   public static class DecompressedFile
+   {
+      private final String                      archiveEntryName;
+      private final String                      stagedPath;
+      private final ImportFileStager.StagedFile stagedFile;
+
+
+
+      /*******************************************************************************
+       ** Constructor
+       **
+       *******************************************************************************/
+      public DecompressedFile(String archiveEntryName, String stagedPath, ImportFileStager.StagedFile stagedFile)
+      {
+         this.archiveEntryName = archiveEntryName;
+         this.stagedPath = stagedPath;
+         this.stagedFile = stagedFile;
+      }
+
+
+
+      /*******************************************************************************
+       ** Getter for archiveEntryName
+       *******************************************************************************/
+      public String getArchiveEntryName()
+      {
+         return (this.archiveEntryName);
+      }
+
+
+
+      /*******************************************************************************
+       ** Getter for stagedPath
+       *******************************************************************************/
+      public String getStagedPath()
+      {
+         return (this.stagedPath);
+      }
+
+
+
+      /*******************************************************************************
+       ** Getter for stagedFile
+       *******************************************************************************/
+      public ImportFileStager.StagedFile getStagedFile()
+      {
+         return (this.stagedFile);
+      }
+   }
+
+}
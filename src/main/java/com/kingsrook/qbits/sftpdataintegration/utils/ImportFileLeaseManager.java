@@ -0,0 +1,396 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.sftpdataintegration.utils;
+
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.kingsrook.qbits.sftpdataintegration.model.ImportFile;
+import com.kingsrook.qbits.sftpdataintegration.model.ImportFileLease;
+import com.kingsrook.qbits.sftpdataintegration.model.ImportFileStatusEnum;
+import com.kingsrook.qqq.backend.core.actions.tables.DeleteAction;
+import com.kingsrook.qqq.backend.core.actions.tables.InsertAction;
+import com.kingsrook.qqq.backend.core.actions.tables.QueryAction;
+import com.kingsrook.qqq.backend.core.actions.tables.UpdateAction;
+import com.kingsrook.qqq.backend.core.context.CapturedContext;
+import com.kingsrook.qqq.backend.core.context.QContext;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+import com.kingsrook.qqq.backend.core.logging.QLogger;
+import com.kingsrook.qqq.backend.core.model.actions.tables.delete.DeleteInput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.insert.InsertInput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.insert.InsertOutput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QCriteriaOperator;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QFilterCriteria;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QQueryFilter;
+import com.kingsrook.qqq.backend.core.model.actions.tables.update.UpdateInput;
+import com.kingsrook.qqq.backend.core.model.data.QRecord;
+import com.kingsrook.qqq.backend.core.utils.CollectionUtils;
+import static com.kingsrook.qqq.backend.core.logging.LogUtils.logPair;
+
+
+/*******************************************************************************
+ ** Claim ImportFiles for one bulk load run, via ImportFileLease records - so
+ ** that runs on multiple servers can work through the same pending files at
+ ** once, without any file being loaded twice.
+ **
+ ** A claim is the insert of a lease record - which, by the lease table's unique
+ ** key on importFileId, only one run can do for a file.  That key is checked
+ ** by QQQ before the insert, but a backend may not enforce it itself - so two
+ ** runs racing for a file could both insert leases.  So after inserting, a run
+ ** reads back the leases on its files, and only keeps the ones where its lease
+ ** is the first (lowest id) - letting go of the rest.  Leases are deleted
+ ** (released) when the run is done with their files.  While a run is loading
+ ** its files, it keeps renewing their leases - so a lease only expires if it's
+ ** left behind by a run that died (or stalled), at which point the reaper
+ ** deletes it, and puts its file (if it was left processing) back to pending,
+ ** so another run loads it.
+ *******************************************************************************/
+public class ImportFileLeaseManager
+{
+   public static final int DEFAULT_LEASE_SECONDS = 60 * 60;
+
+   private static final QLogger LOG = QLogger.getLogger(ImportFileLeaseManager.class);
+
+   private static final AtomicInteger            threadCounter = new AtomicInteger();
+   private static final ScheduledExecutorService renewer       = Executors.newScheduledThreadPool(1, runnable ->
+   {
+      Thread thread = new Thread(runnable, "qbit-sftp-lease-renewer-" + threadCounter.incrementAndGet());
+      thread.setDaemon(true);
+      return (thread);
+   });
+
+   private final String  leaseOwner;
+   private final Integer leaseSeconds;
+
+
+
+   /*******************************************************************************
+    ** Constructor
+    **
+    *******************************************************************************/
+   public ImportFileLeaseManager(String leaseOwner, Integer leaseSeconds)
+   {
+      this.leaseOwner = leaseOwner;
+      this.leaseSeconds = leaseSeconds == null ? DEFAULT_LEASE_SECONDS : leaseSeconds;
+   }
+
+
+
+   /***************************************************************************
+    ** try to claim the given import files - returning the ids of the ones that
+    ** this owner now holds leases on, and that are still waiting to be loaded
+    ** (i.e., weren't completed by another run since they were queried).
+    ***************************************************************************/
+   public Set<Integer> claim(Collection<Integer> importFileIds) throws QException
+   {
+      Set<Integer> claimedIds = new LinkedHashSet<>();
+      if(CollectionUtils.nullSafeIsEmpty(importFileIds))
+      {
+         return (claimedIds);
+      }
+
+      Instant       leaseExpiresAt = Instant.now().plusSeconds(leaseSeconds);
+      List<QRecord> leaseRecords   = new ArrayList<>();
+      for(Integer importFileId : importFileIds)
+      {
+         leaseRecords.add(new ImportFileLease()
+            .withImportFileId(importFileId)
+            .withLeaseOwner(leaseOwner)
+            .withLeaseExpiresAt(leaseExpiresAt)
+            .toQRecord());
+      }
+
+      try
+      {
+         InsertOutput insertOutput = new InsertAction().execute(new InsertInput(ImportFileLease.TABLE_NAME).withRecords(leaseRecords));
+         for(QRecord leaseRecord : insertOutput.getRecords())
+         {
+            if(CollectionUtils.nullSafeIsEmpty(leaseRecord.getErrors()))
+            {
+               claimedIds.add(leaseRecord.getValueInteger("importFileId"));
+            }
+         }
+      }
+      catch(QException e)
+      {
+         ////////////////////////////////////////////////////////////////////////////
+         // a backend that enforces the unique key itself may fail the whole batch //
+         // if any one file is already leased - so in that case, go one at a time. //
+         ////////////////////////////////////////////////////////////////////////////
+         for(QRecord leaseRecord : leaseRecords)
+         {
+            try
+            {
+               InsertOutput insertOutput = new InsertAction().execute(new InsertInput(ImportFileLease.TABLE_NAME).withRecord(leaseRecord));
+               if(CollectionUtils.nullSafeIsEmpty(insertOutput.getRecords().get(0).getErrors()))
+               {
+                  claimedIds.add(leaseRecord.getValueInteger("importFileId"));
+               }
+            }
+            catch(QException e2)
+            {
+               LOG.debug("Did not claim import file", e2, logPair("importFileId", leaseRecord.getValueInteger("importFileId")));
+            }
+         }
+      }
+
+      ///////////////////////////////////////////////////////////////////////////
+      // read back the leases on the files we think we claimed - if another    //
+      // run also got a lease on one (on a backend that doesn't enforce the    //
+      // unique key), the first lease wins, and the other run lets go of it.   //
+      ///////////////////////////////////////////////////////////////////////////
+      if(!claimedIds.isEmpty())
+      {
+         Map<Integer, QRecord> firstLeaseByImportFileId = new HashMap<>();
+         for(QRecord leaseRecord : QueryAction.execute(ImportFileLease.TABLE_NAME, new QQueryFilter(new QFilterCriteria("importFileId", QCriteriaOperator.IN, claimedIds))))
+         {
+            firstLeaseByImportFileId.merge(leaseRecord.getValueInteger("importFileId"), leaseRecord, (a, b) -> a.getValueInteger("id") <= b.getValueInteger("id") ? a : b);
+         }
+
+         Set<Integer> notOwnedIds = new LinkedHashSet<>();
+         for(Integer importFileId : claimedIds)
+         {
+            QRecord firstLease = firstLeaseByImportFileId.get(importFileId);
+            if(firstLease == null || !leaseOwner.equals(firstLease.getValueString("leaseOwner")))
+            {
+               notOwnedIds.add(importFileId);
+            }
+         }
+
+         if(!notOwnedIds.isEmpty())
+         {
+            LOG.info("Lost race to claim import files", logPair("leaseOwner", leaseOwner), logPair("count", notOwnedIds.size()));
+            release(notOwnedIds);
+            claimedIds.removeAll(notOwnedIds);
+         }
+      }
+
+      ////////////////////////////////////////////////////////////////////////////
+      // a file may have been loaded by another run (which then released it) in //
+      // between when our run queried it, and when we claimed it - so re-check. //
+      ////////////////////////////////////////////////////////////////////////////
+      if(!claimedIds.isEmpty())
+      {
+         Set<Integer> alreadyDoneIds = new LinkedHashSet<>();
+         for(QRecord importFileRecord : QueryAction.execute(ImportFile.TABLE_NAME, new QQueryFilter()
+            .withCriteria(new QFilterCriteria("id", QCriteriaOperator.IN, claimedIds))
+            .withCriteria(new QFilterCriteria("importFileStatusId", QCriteriaOperator.IN, List.of(ImportFileStatusEnum.COMPLETE.getId(), ImportFileStatusEnum.DUPLICATE.getId())))))
+         {
+            alreadyDoneIds.add(importFileRecord.getValueInteger("id"));
+         }
+
+         if(!alreadyDoneIds.isEmpty())
+         {
+            release(alreadyDoneIds);
+            claimedIds.removeAll(alreadyDoneIds);
+         }
+      }
+
+      return (claimedIds);
+   }
+
+
+
+   /***************************************************************************
+    ** extend this owner's leases on the given import files (to a full lease
+    ** from now) - returning the ids of the ones it still holds (i.e., that
+    ** weren't reaped, for having expired before now).
+    ***************************************************************************/
+   public Set<Integer> renew(Collection<Integer> importFileIds) throws QException
+   {
+      Set<Integer> renewedIds = new LinkedHashSet<>();
+      if(CollectionUtils.nullSafeIsEmpty(importFileIds))
+      {
+         return (renewedIds);
+      }
+
+      List<QRecord> leaseRecords = QueryAction.execute(ImportFileLease.TABLE_NAME, new QQueryFilter()
+         .withCriteria(new QFilterCriteria("importFileId", QCriteriaOperator.IN, importFileIds))
+         .withCriteria(new QFilterCriteria("leaseOwner", QCriteriaOperator.EQUALS, leaseOwner)));
+      if(leaseRecords.isEmpty())
+      {
+         return (renewedIds);
+      }
+
+      Instant leaseExpiresAt = Instant.now().plusSeconds(leaseSeconds);
+      new UpdateAction().execute(new UpdateInput(ImportFileLease.TABLE_NAME).withRecords(leaseRecords.stream()
+         .map(r -> new QRecord().withValue("id", r.getValue("id")).withValue("leaseExpiresAt", leaseExpiresAt))
+         .toList()));
+
+      for(QRecord leaseRecord : leaseRecords)
+      {
+         renewedIds.add(leaseRecord.getValueInteger("importFileId"));
+      }
+      return (renewedIds);
+   }
+
+
+
+   /***************************************************************************
+    ** keep renewing this owner's leases on the given import files, in the
+    ** background (3 times per lease period), until the returned renewal is
+    ** closed - for while the files are being loaded, however long that takes.
+    ***************************************************************************/
+   public Renewal keepRenewing(Collection<Integer> importFileIds)
+   {
+      List<Integer>   ids             = new ArrayList<>(importFileIds);
+      long            periodMillis    = Math.max(leaseSeconds * 1000L / 3, 100);
+      CapturedContext capturedContext = QContext.capture();
+
+      ScheduledFuture<?> future = renewer.scheduleWithFixedDelay(() ->
+      {
+         QContext.init(capturedContext);
+         try
+         {
+            Set<Integer> renewedIds = renew(ids);
+            if(renewedIds.size() < ids.size())
+            {
+               LOG.warn("Lost leases on import files being loaded", logPair("leaseOwner", leaseOwner), logPair("count", ids.size() - renewedIds.size()));
+            }
+         }
+         catch(Exception e)
+         {
+            LOG.warn("Error renewing import file leases", e, logPair("leaseOwner", leaseOwner));
+         }
+         finally
+         {
+            QContext.clear();
+         }
+      }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+
+      return (new Renewal(future));
+   }
+
+
+
+   /***************************************************************************
+    ** release this owner's leases on the given import files.
+    ***************************************************************************/
+   public void release(Collection<Integer> importFileIds) throws QException
+   {
+      if(CollectionUtils.nullSafeIsEmpty(importFileIds))
+      {
+         return;
+      }
+
+      new DeleteAction().execute(new DeleteInput(ImportFileLease.TABLE_NAME).withQueryFilter(new QQueryFilter()
+         .withCriteria(new QFilterCriteria("importFileId", QCriteriaOperator.IN, importFileIds))
+         .withCriteria(new QFilterCriteria("leaseOwner", QCriteriaOperator.EQUALS, leaseOwner))));
+   }
+
+
+
+   /***************************************************************************
+    ** delete expired leases - then set their files back to pending, if they
+    ** were left processing (by a run that died, or stalled past its lease).
+    **
+    ** a lease is only deleted if it's still expired as of the delete - so one
+    ** that its run renews in the meantime is kept, and its file left alone.
+    ** files that have been claimed again since are left alone too.
+    ***************************************************************************/
+   public static void reapExpiredLeases() throws QException
+   {
+      Instant       now                 = Instant.now();
+      List<QRecord> expiredLeaseRecords = QueryAction.execute(ImportFileLease.TABLE_NAME, new QQueryFilter(new QFilterCriteria("leaseExpiresAt", QCriteriaOperator.LESS_THAN, now)));
+      if(expiredLeaseRecords.isEmpty())
+      {
+         return;
+      }
+
+      List<Serializable> expiredLeaseIds = expiredLeaseRecords.stream().map(r -> r.getValue("id")).toList();
+      new DeleteAction().execute(new DeleteInput(ImportFileLease.TABLE_NAME).withQueryFilter(new QQueryFilter()
+         .withCriteria(new QFilterCriteria("id", QCriteriaOperator.IN, expiredLeaseIds))
+         .withCriteria(new QFilterCriteria("leaseExpiresAt", QCriteriaOperator.LESS_THAN, now))));
+
+      ////////////////////////////////////////////////////////////////////////////
+      // only reset the files whose leases are now gone - not ones whose lease  //
+      // was renewed (so wasn't deleted), or that another run has since claimed //
+      ////////////////////////////////////////////////////////////////////////////
+      Set<Integer> reapedImportFileIds = new LinkedHashSet<>(expiredLeaseRecords.stream().map(r -> r.getValueInteger("importFileId")).toList());
+      for(QRecord leaseRecord : QueryAction.execute(ImportFileLease.TABLE_NAME, new QQueryFilter(new QFilterCriteria("importFileId", QCriteriaOperator.IN, reapedImportFileIds))))
+      {
+         reapedImportFileIds.remove(leaseRecord.getValueInteger("importFileId"));
+      }
+
+      if(reapedImportFileIds.isEmpty())
+      {
+         return;
+      }
+
+      LOG.info("Reaped expired import file leases", logPair("count", reapedImportFileIds.size()));
+
+      List<QRecord> processingImportFileRecords = QueryAction.execute(ImportFile.TABLE_NAME, new QQueryFilter()
+         .withCriteria(new QFilterCriteria("id", QCriteriaOperator.IN, reapedImportFileIds))
+         .withCriteria(new QFilterCriteria("importFileStatusId", QCriteriaOperator.EQUALS, ImportFileStatusEnum.PROCESSING.getId())));
+      if(!processingImportFileRecords.isEmpty())
+      {
+         new UpdateAction().execute(new UpdateInput(ImportFile.TABLE_NAME).withRecords(processingImportFileRecords.stream()
+            .map(r -> new QRecord().withValue("id", r.getValue("id")).withValue("importFileStatusId", ImportFileStatusEnum.PENDING.getId()))
+            .toList()));
+      }
+   }
+
+
+
+   /***************************************************************************
+    ** background renewal of a set of leases - closing it stops the renewing.
+    ***************************************************************************/
+   public static class Renewal implements AutoCloseable
+   {
+      private final ScheduledFuture<?> future;
+
+
+
+      /*******************************************************************************
+       ** Constructor
+       **
+       *******************************************************************************/
+      private Renewal(ScheduledFuture<?> future)
+      {
+         this.future = future;
+      }
+
+
+
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      @Override
+      public void close()
+      {
+         future.cancel(false);
+      }
+   }
+
+}
@@ -0,0 +1,494 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.sftpdataintegration.utils;
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Objects;
+import com.kingsrook.qqq.backend.core.actions.tables.DeleteAction;
+import com.kingsrook.qqq.backend.core.actions.tables.InsertAction;
+import com.kingsrook.qqq.backend.core.actions.tables.StorageAction;
+import com.kingsrook.qqq.backend.core.context.QContext;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+import com.kingsrook.qqq.backend.core.logging.QLogger;
+import com.kingsrook.qqq.backend.core.model.actions.tables.delete.DeleteInput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.insert.InsertInput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.storage.StorageInput;
+import com.kingsrook.qqq.backend.core.model.data.QRecord;
+import com.kingsrook.qqq.backend.core.model.metadata.QBackendMetaData;
+import com.kingsrook.qqq.backend.core.model.metadata.tables.QTableMetaData;
+import com.kingsrook.qqq.backend.module.filesystem.base.model.metadata.AbstractFilesystemTableBackendDetails;
+import com.kingsrook.qqq.backend.module.filesystem.local.model.metadata.FilesystemBackendMetaData;
+import static com.kingsrook.qqq.backend.core.logging.LogUtils.logPair;
+
+
+/*******************************************************************************
+ ** Copy files from the source file table to the staging file table, through a
+ ** fixed-size buffer - so the contents of a file never need to be fully held in
+ ** memory, regardless of how large the file is.
+ **
+ ** When the staging table is backed by a local filesystem, files are written
+ ** directly to their target path through a FileChannel (and if the source table
+ ** is also local, the copy is done with FileChannel.transferTo, letting the OS
+ ** move the bytes without copying them through user space).  Note that this
+ ** skips any customizers on the staging table.
+ **
+ ** Optionally, a SHA-256 hash of each file's contents can be computed in the
+ ** same pass as it is copied (in which case, the local-to-local copy reads the
+ ** bytes through a buffer, rather than using transferTo).
+ *******************************************************************************/
+public class ImportFileStager
+{
+   public static final int    BUFFER_SIZE            = 64 * 1024;
+   public static final String CONTENT_HASH_ALGORITHM = "SHA-256";
+
+   private static final QLogger LOG = QLogger.getLogger(ImportFileStager.class);
+
+   private final String sourceFileTableName;
+   private final String stagingFileTableName;
+
+   private final Path localSourceBasePath;
+   private final Path localStagingBasePath;
+
+   private boolean computeContentHash = false;
+
+
+
+   /*******************************************************************************
+    ** Constructor
+    **
+    *******************************************************************************/
+   public ImportFileStager(String sourceFileTableName, String stagingFileTableName)
+   {
+      this.sourceFileTableName = sourceFileTableName;
+      this.stagingFileTableName = stagingFileTableName;
+
+      this.localSourceBasePath = getLocalFilesystemBasePath(sourceFileTableName);
+      this.localStagingBasePath = getLocalFilesystemBasePath(stagingFileTableName);
+   }
+
+
+
+   /***************************************************************************
+    ** stream the file at sourcePath (in the source file table) to stagedPath
+    ** (in the staging file table).  if the copy fails part way, whatever was
+    ** written to stagedPath is deleted.
+    ***************************************************************************/
+   public StagedFile stageFromSource(String sourcePath, String stagedPath) throws QException
+   {
+      try
+      {
+         return (doStageFromSource(sourcePath, stagedPath));
+      }
+      catch(QException | RuntimeException e)
+      {
+         delete(List.of(stagedPath));
+         throw (e);
+      }
+   }
+
+
+
+   /***************************************************************************
+    ** write the contents of an input stream to stagedPath (in the staging file
+    ** table).  the input stream is not closed by this method.  if the write
+    ** fails part way, whatever was written to stagedPath is deleted.
+    ***************************************************************************/
+   public StagedFile stage(InputStream inputStream, String stagedPath) throws QException
+   {
+      try
+      {
+         return (doStage(inputStream, stagedPath));
+      }
+      catch(QException | RuntimeException e)
+      {
+         delete(List.of(stagedPath));
+         throw (e);
+      }
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private StagedFile doStageFromSource(String sourcePath, String stagedPath) throws QException
+   {
+      if(localSourceBasePath != null && localStagingBasePath != null)
+      {
+         Path source = resolve(localSourceBasePath, sourcePath);
+         Path target = resolve(localStagingBasePath, stagedPath);
+         try(FileChannel sourceChannel = FileChannel.open(source, StandardOpenOption.READ); FileChannel targetChannel = openForWrite(target))
+         {
+            if(computeContentHash)
+            {
+               MessageDigest messageDigest = newMessageDigest();
+               ByteBuffer    byteBuffer    = ByteBuffer.allocate(BUFFER_SIZE);
+               long          total         = 0;
+               while(sourceChannel.read(byteBuffer) != -1)
+               {
+                  byteBuffer.flip();
+                  messageDigest.update(byteBuffer.array(), 0, byteBuffer.limit());
+                  while(byteBuffer.hasRemaining())
+                  {
+                     total += targetChannel.write(byteBuffer);
+                  }
+                  byteBuffer.clear();
+               }
+               return (new StagedFile(total, toHex(messageDigest)));
+            }
+
+            long size     = sourceChannel.size();
+            long position = 0;
+            while(position < size)
+            {
+               position += sourceChannel.transferTo(position, size - position, targetChannel);
+            }
+            return (new StagedFile(position, null));
+         }
+         catch(IOException e)
+         {
+            throw (new QException("Error copying source file [" + sourcePath + "] to staged file [" + stagedPath + "]", e));
+         }
+      }
+
+      try(InputStream inputStream = new StorageAction().getInputStream(new StorageInput(sourceFileTableName).withReference(sourcePath)))
+      {
+         return (doStage(inputStream, stagedPath));
+      }
+      catch(IOException e)
+      {
+         throw (new QException("Error reading source file [" + sourcePath + "]", e));
+      }
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private StagedFile doStage(InputStream inputStream, String stagedPath) throws QException
+   {
+      MessageDigest messageDigest = computeContentHash ? newMessageDigest() : null;
+      if(messageDigest != null)
+      {
+         inputStream = new DigestInputStream(inputStream, messageDigest);
+      }
+
+      if(localStagingBasePath != null)
+      {
+         try(FileChannel targetChannel = openForWrite(resolve(localStagingBasePath, stagedPath)))
+         {
+            //////////////////////////////////////////////////////////////////////////////
+            // note - don't close this channel, as that would close the caller's stream //
+            //////////////////////////////////////////////////////////////////////////////
+            ReadableByteChannel sourceChannel = Channels.newChannel(inputStream);
+
+            long position = 0;
+            long transferred;
+            while((transferred = targetChannel.transferFrom(sourceChannel, position, BUFFER_SIZE)) > 0)
+            {
+               position += transferred;
+            }
+            return (new StagedFile(position, toHex(messageDigest)));
+         }
+         catch(IOException e)
+         {
+            throw (new QException("Error writing staged file [" + stagedPath + "]", e));
+         }
+      }
+
+      try(OutputStream outputStream = new StorageAction().createOutputStream(new StorageInput(stagingFileTableName).withReference(stagedPath)))
+      {
+         return (new StagedFile(copy(inputStream, outputStream), toHex(messageDigest)));
+      }
+      catch(IOException e)
+      {
+         throw (new QException("Error writing staged file [" + stagedPath + "]", e));
+      }
+   }
+
+
+
+   /***************************************************************************
+    ** write file contents that were already read into memory to stagedPath (in
+    ** the staging file table) - deleting whatever was written, if that fails.
+    ***************************************************************************/
+   public StagedFile stage(byte[] contents, String stagedPath) throws QException
+   {
+      MessageDigest messageDigest = computeContentHash ? newMessageDigest() : null;
+      if(messageDigest != null && contents != null)
+      {
+         messageDigest.update(contents);
+      }
+
+      if(localStagingBasePath != null)
+      {
+         try(FileChannel targetChannel = openForWrite(resolve(localStagingBasePath, stagedPath)))
+         {
+            ByteBuffer byteBuffer = ByteBuffer.wrap(Objects.requireNonNullElse(contents, new byte[0]));
+            while(byteBuffer.hasRemaining())
+            {
+               targetChannel.write(byteBuffer);
+            }
+            return (new StagedFile(byteBuffer.limit(), toHex(messageDigest)));
+         }
+         catch(IOException e)
+         {
+            delete(List.of(stagedPath));
+            throw (new QException("Error writing staged file [" + stagedPath + "]", e));
+         }
+      }
+
+      new InsertAction().execute(new InsertInput(stagingFileTableName).withRecord(new QRecord()
+         .withValue("fileName", stagedPath)
+         .withValue("contents", contents)
+      ));
+      return (new StagedFile(contents == null ? 0 : contents.length, toHex(messageDigest)));
+   }
+
+
+
+   /***************************************************************************
+    ** delete staged files (e.g., ones staged from an archive that then failed).
+    ** a file that can't be deleted is logged, not thrown - so the rest are
+    ** still deleted, and the caller's own error isn't hidden.
+    ***************************************************************************/
+   public void delete(List<String> stagedPaths)
+   {
+      if(stagedPaths.isEmpty())
+      {
+         return;
+      }
+
+      if(localStagingBasePath != null)
+      {
+         for(String stagedPath : stagedPaths)
+         {
+            try
+            {
+               Files.deleteIfExists(resolve(localStagingBasePath, stagedPath));
+            }
+            catch(Exception e)
+            {
+               LOG.warn("Error deleting staged file", e, logPair("stagedPath", stagedPath));
+            }
+         }
+         return;
+      }
+
+      try
+      {
+         new DeleteAction().execute(new DeleteInput(stagingFileTableName).withPrimaryKeys(new ArrayList<>(stagedPaths)));
+      }
+      catch(Exception e)
+      {
+         LOG.warn("Error deleting staged files", e, logPair("stagedPaths", stagedPaths));
+      }
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static MessageDigest newMessageDigest() throws QException
+   {
+      try
+      {
+         return (MessageDigest.getInstance(CONTENT_HASH_ALGORITHM));
+      }
+      catch(NoSuchAlgorithmException e)
+      {
+         throw (new QException("Error getting message digest for content hash", e));
+      }
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static String toHex(MessageDigest messageDigest)
+   {
+      return (messageDigest == null ? null : HexFormat.of().formatHex(messageDigest.digest()));
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   static long copy(InputStream inputStream, OutputStream outputStream) throws IOException
+   {
+      byte[] buffer = new byte[BUFFER_SIZE];
+      long   total  = 0;
+      int    read;
+      while((read = inputStream.read(buffer)) != -1)
+      {
+         outputStream.write(buffer, 0, read);
+         total += read;
+      }
+      return (total);
+   }
+
+
+
+   /***************************************************************************
+    ** if a table is backed by a local filesystem, get the full path to where
+    ** its files live - else, null.
+    ***************************************************************************/
+   static Path getLocalFilesystemBasePath(String tableName)
+   {
+      QTableMetaData   table   = QContext.getQInstance().getTable(tableName);
+      QBackendMetaData backend = QContext.getQInstance().getBackendForTable(tableName);
+      if(table == null || !(backend instanceof FilesystemBackendMetaData filesystemBackend))
+      {
+         return (null);
+      }
+
+      String tableBasePath = null;
+      if(table.getBackendDetails() instanceof AbstractFilesystemTableBackendDetails tableBackendDetails)
+      {
+         tableBasePath = tableBackendDetails.getBasePath();
+      }
+
+      return (Path.of(Objects.requireNonNullElse(filesystemBackend.getBasePath(), "/"), Objects.requireNonNullElse(tableBasePath, "")).normalize());
+   }
+
+
+
+   /***************************************************************************
+    ** resolve a file-table reference (e.g., a fileName) under a base path -
+    ** not allowing it to escape from that base path.
+    ***************************************************************************/
+   private static Path resolve(Path basePath, String reference) throws QException
+   {
+      Path path = basePath.resolve(reference.replaceFirst("^/+", "")).normalize();
+      if(!path.startsWith(basePath))
+      {
+         throw (new QException("Invalid file path [" + reference + "]"));
+      }
+      return (path);
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static FileChannel openForWrite(Path path) throws IOException
+   {
+      Files.createDirectories(path.getParent());
+      return (FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE));
+   }
+
+
+
+   /*******************************************************************************
+    ** Getter for computeContentHash
+    *******************************************************************************/
+   public boolean getComputeContentHash()
+   {
+      return (this.computeContentHash);
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for computeContentHash
+    *******************************************************************************/
+   public void setComputeContentHash(boolean computeContentHash)
+   {
+      this.computeContentHash = computeContentHash;
+   }
+
+
+
+   /*******************************************************************************
+    ** Fluent setter for computeContentHash
+    *******************************************************************************/
+   public ImportFileStager withComputeContentHash(boolean computeContentHash)
+   {
+      this.computeContentHash = computeContentHash;
+      return (this);
+   }
+
+
+
+   /***************************************************************************
+    ** result of staging a file:  its size, and (if computed) its content hash.
+    ***************************************************************************/
+   public static class StagedFile
+   {
+      private final long   size;
+      private final String contentHash;
+
+
+
+      /*******************************************************************************
+       ** Constructor
+       **
+       *******************************************************************************/
+      public StagedFile(long size, String contentHash)
+      {
+         this.size = size;
+         this.contentHash = contentHash;
+      }
+
+
+
+      /*******************************************************************************
+       ** Getter for size
+       *******************************************************************************/
+      public long getSize()
+      {
+         return (this.size);
+      }
+
+
+
+      /*******************************************************************************
+       ** Getter for contentHash
+       *******************************************************************************/
+      public String getContentHash()
+      {
+         return (this.contentHash);
+      }
+   }
+
+}
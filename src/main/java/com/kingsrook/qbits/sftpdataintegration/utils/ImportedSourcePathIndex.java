@@ -0,0 +1,340 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.sftpdataintegration.utils;
+
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import com.kingsrook.qbits.sftpdataintegration.model.ImportFile;
+import com.kingsrook.qqq.backend.core.actions.tables.QueryAction;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QCriteriaOperator;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QFilterCriteria;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QQueryFilter;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QueryInput;
+import com.kingsrook.qqq.backend.core.model.data.QRecord;
+import com.kingsrook.qqq.backend.core.utils.CollectionUtils;
+
+
+/*******************************************************************************
+ ** In-memory index, per SFTPImportConfig, of the source paths that have already
+ ** been imported (i.e., that have ImportFile records), and those records' ids -
+ ** to answer "which of these files were already imported" without querying the
+ ** (ever-growing) ImportFile table for every page of every sync.
+ **
+ ** An index is loaded lazily (1 query, of just the ids and source paths of all
+ ** of a config's ImportFiles), then kept current by:
+ ** - the sync load step, after a run's ImportFiles are inserted (in postRun);
+ ** - once per sync run (see catchUp), querying for ImportFiles with ids greater
+ **   than those seen by the previous catch-up (cheap - and picks up files
+ **   imported by other servers, including ones whose lower ids were committed
+ **   after higher ones were read);
+ ** - being fully reloaded after a max age, and cleared for a config when any of
+ **   its ImportFiles are deleted on this server (so they can be re-imported).
+ **
+ ** An index hit is only a hint: the paths it finds are confirmed with one query
+ ** (by source path, IN the page's hits) before a file is skipped - so a page of
+ ** all-new files is answered with no query, and a stale entry (e.g., for a file
+ ** deleted through another server, whose index here isn't cleared - other
+ ** servers' indexes keep such entries until their next reload) can't cause a
+ ** file to be skipped.  A miss is not confirmed - so a file imported elsewhere,
+ ** and not yet caught up, may be listed as new (as it would be by two syncs
+ ** running at once without the index).
+ *******************************************************************************/
+public class ImportedSourcePathIndex
+{
+   public static final long DEFAULT_MAX_AGE_MILLIS = 10 * 60 * 1000;
+
+   private static ImportedSourcePathIndex instance;
+
+   private final Map<Integer, ConfigIndex> indexesByConfigId = new ConcurrentHashMap<>();
+
+   private long maxAgeMillis = DEFAULT_MAX_AGE_MILLIS;
+
+
+
+   /*******************************************************************************
+    ** Singleton getter
+    *******************************************************************************/
+   public static synchronized ImportedSourcePathIndex getInstance()
+   {
+      if(instance == null)
+      {
+         instance = new ImportedSourcePathIndex();
+      }
+      return (instance);
+   }
+
+
+
+   /***************************************************************************
+    ** for the given source paths, look up which have already been imported for
+    ** a config - returning a map of those paths to their ImportFile ids.  paths
+    ** found in the index are confirmed against the ImportFile table (in one
+    ** query), and any that aren't there any more are dropped from the index.
+    ***************************************************************************/
+   public Map<String, Integer> getImportedFileIds(Integer sftpImportConfigId, Collection<String> sourcePaths) throws QException
+   {
+      ConfigIndex          configIndex = indexesByConfigId.computeIfAbsent(sftpImportConfigId, ConfigIndex::new);
+      Map<String, Integer> indexHits   = configIndex.getImportedFileIds(sourcePaths, maxAgeMillis);
+      if(indexHits.isEmpty())
+      {
+         return (indexHits);
+      }
+
+      List<QRecord> importFileRecords = ConfigIndex.queryIdsAndSourcePaths(new QQueryFilter()
+         .withCriteria(new QFilterCriteria("sftpImportConfigId", QCriteriaOperator.EQUALS, sftpImportConfigId))
+         .withCriteria(new QFilterCriteria("sourcePath", QCriteriaOperator.IN, new ArrayList<>(indexHits.keySet()))));
+
+      Map<String, Integer> rs = new HashMap<>();
+      for(QRecord record : importFileRecords)
+      {
+         rs.put(record.getValueString("sourcePath"), record.getValueInteger("id"));
+      }
+
+      configIndex.removeStale(indexHits.keySet().stream().filter(sourcePath -> !rs.containsKey(sourcePath)).toList());
+      return (rs);
+   }
+
+
+
+   /***************************************************************************
+    ** if a config's index is loaded, query for any files imported since it was
+    ** last loaded or caught up (e.g., by another server).  a sync run calls
+    ** this once, before its first lookup.
+    ***************************************************************************/
+   public void catchUp(Integer sftpImportConfigId) throws QException
+   {
+      ConfigIndex configIndex = indexesByConfigId.get(sftpImportConfigId);
+      if(configIndex != null)
+      {
+         configIndex.catchUp(maxAgeMillis);
+      }
+   }
+
+
+
+   /***************************************************************************
+    ** note that a file was imported (i.e., its ImportFile was inserted - and
+    ** committed, so call this only once the insert can't be rolled back).
+    ***************************************************************************/
+   public void recordImported(Integer sftpImportConfigId, String sourcePath, Integer importFileId)
+   {
+      ConfigIndex configIndex = indexesByConfigId.get(sftpImportConfigId);
+      if(configIndex != null)
+      {
+         configIndex.add(sourcePath, importFileId);
+      }
+   }
+
+
+
+   /***************************************************************************
+    ** forget the indexes for some configs - e.g., after some of their
+    ** ImportFiles are deleted.  (only on this server - other servers' indexes
+    ** keep their entries until they're reloaded, which is why hits are always
+    ** confirmed before being trusted.)
+    ***************************************************************************/
+   public void clear(Collection<Integer> sftpImportConfigIds)
+   {
+      for(Integer sftpImportConfigId : CollectionUtils.nonNullCollection(sftpImportConfigIds))
+      {
+         indexesByConfigId.remove(sftpImportConfigId);
+      }
+   }
+
+
+
+   /***************************************************************************
+    ** forget everything.
+    ***************************************************************************/
+   public void clear()
+   {
+      indexesByConfigId.clear();
+   }
+
+
+
+   /*******************************************************************************
+    ** Setter for maxAgeMillis
+    *******************************************************************************/
+   public void setMaxAgeMillis(long maxAgeMillis)
+   {
+      this.maxAgeMillis = maxAgeMillis;
+   }
+
+
+
+   /***************************************************************************
+    ** index for one config
+    ***************************************************************************/
+   private static class ConfigIndex
+   {
+      private final Integer sftpImportConfigId;
+
+      private Map<String, Integer> importFileIdsBySourcePath;
+      private Integer              maxImportFileId;
+      private Integer              catchUpFromImportFileId;
+      private long                 loadedAtMillis;
+
+
+
+      /*******************************************************************************
+       ** Constructor
+       **
+       *******************************************************************************/
+      private ConfigIndex(Integer sftpImportConfigId)
+      {
+         this.sftpImportConfigId = sftpImportConfigId;
+      }
+
+
+
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      private synchronized Map<String, Integer> getImportedFileIds(Collection<String> sourcePaths, long maxAgeMillis) throws QException
+      {
+         if(!isWarm(maxAgeMillis))
+         {
+            importFileIdsBySourcePath = new HashMap<>();
+            maxImportFileId = null;
+            loadedAtMillis = System.currentTimeMillis();
+            addAll(queryIdsAndSourcePaths(new QQueryFilter(new QFilterCriteria("sftpImportConfigId", QCriteriaOperator.EQUALS, sftpImportConfigId))));
+            catchUpFromImportFileId = maxImportFileId;
+         }
+
+         Map<String, Integer> rs = new HashMap<>();
+         for(String sourcePath : CollectionUtils.nonNullCollection(sourcePaths))
+         {
+            Integer importFileId = importFileIdsBySourcePath.get(sourcePath);
+            if(importFileId != null)
+            {
+               rs.put(sourcePath, importFileId);
+            }
+         }
+         return (rs);
+      }
+
+
+
+      /***************************************************************************
+       ** pick up any files imported since we last looked (e.g., by another
+       ** server) - these are the only ImportFile rows we have to read.  (if
+       ** the index isn't warm, the next lookup will fully load it anyway.)
+       **
+       ** ids aren't committed in order - a row with a lower id than one we've
+       ** read may be committed after it - so each catch-up reads from the
+       ** highest id seen by the one before it, not the highest seen overall.
+       ***************************************************************************/
+      private synchronized void catchUp(long maxAgeMillis) throws QException
+      {
+         if(!isWarm(maxAgeMillis))
+         {
+            return;
+         }
+
+         QQueryFilter filter = new QQueryFilter(new QFilterCriteria("sftpImportConfigId", QCriteriaOperator.EQUALS, sftpImportConfigId));
+         if(catchUpFromImportFileId != null)
+         {
+            filter.addCriteria(new QFilterCriteria("id", QCriteriaOperator.GREATER_THAN, catchUpFromImportFileId));
+         }
+
+         Integer maxImportFileIdBeforeCatchUp = maxImportFileId;
+         addAll(queryIdsAndSourcePaths(filter));
+         catchUpFromImportFileId = maxImportFileIdBeforeCatchUp;
+      }
+
+
+
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      private boolean isWarm(long maxAgeMillis)
+      {
+         return (importFileIdsBySourcePath != null && System.currentTimeMillis() - loadedAtMillis <= maxAgeMillis);
+      }
+
+
+
+      /***************************************************************************
+       ** drop entries that turned out not to be in the ImportFile table.
+       ***************************************************************************/
+      private synchronized void removeStale(Collection<String> sourcePaths)
+      {
+         if(importFileIdsBySourcePath != null)
+         {
+            sourcePaths.forEach(importFileIdsBySourcePath::remove);
+         }
+      }
+
+
+
+      /***************************************************************************
+       ** query just the fields the index holds - not whole ImportFile records.
+       ***************************************************************************/
+      private static List<QRecord> queryIdsAndSourcePaths(QQueryFilter filter) throws QException
+      {
+         return (new QueryAction().execute(new QueryInput(ImportFile.TABLE_NAME)
+            .withFilter(filter)
+            .withFieldsToQuery(Set.of("id", "sourcePath"))).getRecords());
+      }
+
+
+
+      /***************************************************************************
+       ** records read from the ImportFile table - so they move maxImportFileId.
+       ***************************************************************************/
+      private void addAll(List<QRecord> importFileRecords)
+      {
+         for(QRecord record : importFileRecords)
+         {
+            Integer id = record.getValueInteger("id");
+            importFileIdsBySourcePath.put(record.getValueString("sourcePath"), id);
+            if(id != null && (maxImportFileId == null || id > maxImportFileId))
+            {
+               maxImportFileId = id;
+            }
+         }
+      }
+
+
+
+      /***************************************************************************
+       ** a file inserted by this server - doesn't move maxImportFileId, in case
+       ** another server inserted files with lower ids that we haven't seen yet.
+       ***************************************************************************/
+      private synchronized void add(String sourcePath, Integer importFileId)
+      {
+         if(importFileIdsBySourcePath != null)
+         {
+            importFileIdsBySourcePath.put(sourcePath, importFileId);
+         }
+      }
+   }
+
+}
@@ -0,0 +1,158 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.sftpdataintegration.utils;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.kingsrook.qqq.backend.core.context.CapturedContext;
+import com.kingsrook.qqq.backend.core.context.QContext;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+
+
+/*******************************************************************************
+ ** Run a task against each of a list of items, using up to a given number of
+ ** threads at once (each of which runs with the caller's QContext), waiting for
+ ** all of them to finish.  A failure of one item doesn't stop the others - each
+ ** item's exception (or null, if it succeeded) is returned, in item order.
+ **
+ ** Worker threads come from a shared, cached pool of daemon threads - so the
+ ** cost of starting threads is only paid when more are needed than are idle.
+ *******************************************************************************/
+public class ParallelTaskRunner
+{
+   private static final AtomicInteger   threadCounter = new AtomicInteger();
+   private static final ExecutorService executor      = Executors.newCachedThreadPool(runnable ->
+   {
+      Thread thread = new Thread(runnable, "qbit-sftp-worker-" + threadCounter.incrementAndGet());
+      thread.setDaemon(true);
+      return (thread);
+   });
+
+
+
+   /***************************************************************************
+    ** a task to run against an item.
+    ***************************************************************************/
+   @FunctionalInterface
+   public interface ItemTask<T>
+   {
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      void run(T item) throws Exception;
+   }
+
+
+
+   /***************************************************************************
+    ** run the task against all items, with at most maxThreads running at once
+    ** (if maxThreads is null or less than 2, items are run one at a time, in the
+    ** calling thread).  returns a list (parallel to items) of the exception
+    ** each item threw, or null for items that succeeded.
+    ***************************************************************************/
+   public static <T> List<Exception> runAll(List<T> items, Integer maxThreads, ItemTask<T> task) throws QException
+   {
+      Exception[] exceptions = new Exception[items.size()];
+
+      int threads = Math.min(maxThreads == null ? 1 : maxThreads, items.size());
+      if(threads < 2)
+      {
+         for(int i = 0; i < items.size(); i++)
+         {
+            exceptions[i] = runOne(task, items.get(i));
+         }
+         return (Arrays.asList(exceptions));
+      }
+
+      ////////////////////////////////////////////////////////////////////////////
+      // each worker takes the next un-run item, until there are none left - so //
+      // the items are spread over the workers as they become free              //
+      ////////////////////////////////////////////////////////////////////////////
+      CapturedContext capturedContext = QContext.capture();
+      AtomicInteger   nextIndex       = new AtomicInteger();
+      List<Future<?>> futures         = new ArrayList<>();
+      for(int t = 0; t < threads; t++)
+      {
+         futures.add(executor.submit(() ->
+         {
+            QContext.init(capturedContext);
+            try
+            {
+               int i;
+               while((i = nextIndex.getAndIncrement()) < items.size())
+               {
+                  exceptions[i] = runOne(task, items.get(i));
+               }
+            }
+            finally
+            {
+               QContext.clear();
+            }
+         }));
+      }
+
+      for(Future<?> future : futures)
+      {
+         try
+         {
+            future.get();
+         }
+         catch(InterruptedException e)
+         {
+            Thread.currentThread().interrupt();
+            throw (new QException("Interrupted while waiting for parallel tasks", e));
+         }
+         catch(ExecutionException e)
+         {
+            throw (new QException("Error running parallel tasks", e.getCause()));
+         }
+      }
+
+      return (Arrays.asList(exceptions));
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static <T> Exception runOne(ItemTask<T> task, T item)
+   {
+      try
+      {
+         task.run(item);
+         return (null);
+      }
+      catch(Exception e)
+      {
+         return (e);
+      }
+   }
+
+}
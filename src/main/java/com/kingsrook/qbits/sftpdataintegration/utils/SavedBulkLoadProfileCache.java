@@ -0,0 +1,185 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.sftpdataintegration.utils;
+
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import com.kingsrook.qqq.backend.core.actions.tables.GetAction;
+import com.kingsrook.qqq.backend.core.context.QContext;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+import com.kingsrook.qqq.backend.core.model.data.QRecord;
+import com.kingsrook.qqq.backend.core.model.metadata.processes.QProcessMetaData;
+import com.kingsrook.qqq.backend.core.model.savedbulkloadprofiles.SavedBulkLoadProfile;
+import com.kingsrook.qqq.backend.core.processes.implementations.bulk.insert.model.BulkLoadProfile;
+import com.kingsrook.qqq.backend.core.utils.JsonUtils;
+
+
+/*******************************************************************************
+ ** Cache of SavedBulkLoadProfile records (by id), along with the bulk insert
+ ** process for each one's table - so that a bulk load run over many import
+ ** files (which nearly all share a handful of profiles) looks each profile up
+ ** once, rather than once per file, per step.
+ **
+ ** An instance is meant to live for one process run (shared by its transform
+ ** and load steps) - so a profile that's edited is picked up by the next run.
+ ** Missing profiles are cached too (as not-found).  Thread-safe, for use by
+ ** parallel bulk loads.
+ *******************************************************************************/
+public class SavedBulkLoadProfileCache
+{
+   private final Map<Integer, Optional<CachedProfile>> profilesById = new ConcurrentHashMap<>();
+
+
+
+   /***************************************************************************
+    ** get the profile with the given id - from the cache, else by looking it
+    ** up (and caching it).  returns null if there is no such profile.
+    ***************************************************************************/
+   public CachedProfile getProfile(Integer savedBulkLoadProfileId) throws QException
+   {
+      if(savedBulkLoadProfileId == null)
+      {
+         return (null);
+      }
+
+      Optional<CachedProfile> cachedProfile = profilesById.get(savedBulkLoadProfileId);
+      if(cachedProfile == null)
+      {
+         QRecord savedBulkLoadProfileRecord = GetAction.execute(SavedBulkLoadProfile.TABLE_NAME, savedBulkLoadProfileId);
+         cachedProfile = Optional.ofNullable(savedBulkLoadProfileRecord == null ? null : new CachedProfile(savedBulkLoadProfileRecord));
+         profilesById.put(savedBulkLoadProfileId, cachedProfile);
+      }
+
+      return (cachedProfile.orElse(null));
+   }
+
+
+
+   /***************************************************************************
+    ** a saved bulk load profile record, and its table's bulk insert process
+    ** (null if the table doesn't have one).
+    ***************************************************************************/
+   public static class CachedProfile
+   {
+      private final QRecord          record;
+      private final String           tableName;
+      private final String           bulkLoadProcessName;
+      private final QProcessMetaData bulkLoadProcess;
+      private final BulkLoadProfile  bulkLoadProfile;
+
+
+
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      private CachedProfile(QRecord record)
+      {
+         this.record = record;
+         this.tableName = record.getValueString("tableName");
+         this.bulkLoadProcessName = tableName + ".bulkInsert";
+         this.bulkLoadProcess = QContext.getQInstance().getProcess(bulkLoadProcessName);
+         this.bulkLoadProfile = readBulkLoadProfile(record);
+      }
+
+
+
+      /***************************************************************************
+       ** read the bulk load profile out of the record's mapping json (null if
+       ** it can't be read).
+       ***************************************************************************/
+      private static BulkLoadProfile readBulkLoadProfile(QRecord record)
+      {
+         try
+         {
+            return (JsonUtils.toObject(record.getValueString("mappingJson"), BulkLoadProfile.class));
+         }
+         catch(Exception e)
+         {
+            return (null);
+         }
+      }
+
+
+
+      /*******************************************************************************
+       ** Getter for record
+       *******************************************************************************/
+      public QRecord getRecord()
+      {
+         return (this.record);
+      }
+
+
+
+      /*******************************************************************************
+       ** Getter for tableName
+       *******************************************************************************/
+      public String getTableName()
+      {
+         return (this.tableName);
+      }
+
+
+
+      /*******************************************************************************
+       ** Getter for bulkLoadProcessName
+       *******************************************************************************/
+      public String getBulkLoadProcessName()
+      {
+         return (this.bulkLoadProcessName);
+      }
+
+
+
+      /*******************************************************************************
+       ** Getter for bulkLoadProcess
+       *******************************************************************************/
+      public QProcessMetaData getBulkLoadProcess()
+      {
+         return (this.bulkLoadProcess);
+      }
+
+
+
+      /*******************************************************************************
+       ** Getter for bulkLoadProfile (null if its mapping json couldn't be read)
+       *******************************************************************************/
+      public BulkLoadProfile getBulkLoadProfile()
+      {
+         return (this.bulkLoadProfile);
+      }
+
+
+
+      /*******************************************************************************
+       ** does the profile's file have a header row (assuming it does, if the
+       ** profile's mapping couldn't be read).
+       *******************************************************************************/
+      public boolean getHasHeaderRow()
+      {
+         return (bulkLoadProfile == null || !Boolean.FALSE.equals(bulkLoadProfile.getHasHeaderRow()));
+      }
+   }
+
+}
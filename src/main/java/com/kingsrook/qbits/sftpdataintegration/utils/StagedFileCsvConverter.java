@@ -0,0 +1,163 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.sftpdataintegration.utils;
+
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Serializable;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Iterator;
+import com.kingsrook.qqq.backend.core.actions.tables.StorageAction;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+import com.kingsrook.qqq.backend.core.model.actions.tables.storage.StorageInput;
+import com.kingsrook.qqq.backend.core.processes.implementations.bulk.insert.filehandling.FileToRowsInterface;
+import com.kingsrook.qqq.backend.core.processes.implementations.bulk.insert.model.BulkLoadFileRow;
+
+
+/*******************************************************************************
+ ** Convert a staged spreadsheet (xlsx) file - which is slow and memory-hungry
+ ** to parse - into a plain CSV companion file, next to it in the staging
+ ** table.  Bulk loads of the file (including retries of it) can then read the
+ ** companion instead, which is cheap to parse (and can be chunked).
+ **
+ ** Parses the file with the same reader the bulk insert process uses, so the
+ ** companion has the same rows and columns.  Typed cell values are written in
+ ** ISO formats (e.g., 2025-01-31 for a date), which bulk loads read back as
+ ** the same values.
+ *******************************************************************************/
+public class StagedFileCsvConverter
+{
+   public static final String PARSED_PATH_SUFFIX = ".parsed.csv";
+
+
+
+   /***************************************************************************
+    ** is a (staged) file a spreadsheet - i.e., one worth converting.
+    ***************************************************************************/
+   public static boolean isSpreadsheet(String path)
+   {
+      return (path != null && path.toLowerCase().endsWith(".xlsx"));
+   }
+
+
+
+   /***************************************************************************
+    ** the path of a staged file's companion CSV.
+    ***************************************************************************/
+   public static String getParsedPath(String stagedPath)
+   {
+      return (stagedPath + PARSED_PATH_SUFFIX);
+   }
+
+
+
+   /***************************************************************************
+    ** convert a staged file to a CSV companion, in the same staging table.
+    ** returns the number of rows written (including any header row).
+    ***************************************************************************/
+   public static int convert(String stagingTableName, String stagedPath, String parsedPath) throws QException
+   {
+      try(InputStream inputStream = new StorageAction().getInputStream(new StorageInput(stagingTableName).withReference(stagedPath));
+         FileToRowsInterface fileToRows = FileToRowsInterface.forFile(stagedPath, inputStream);
+         Writer writer = new BufferedWriter(new OutputStreamWriter(new StorageAction().createOutputStream(new StorageInput(stagingTableName).withReference(parsedPath)), StandardCharsets.UTF_8)))
+      {
+         return (writeCsv(fileToRows, writer));
+      }
+      catch(QException e)
+      {
+         throw (e);
+      }
+      catch(Exception e)
+      {
+         throw (new QException("Error converting staged file [" + stagedPath + "] to CSV", e));
+      }
+   }
+
+
+
+   /***************************************************************************
+    ** write rows as CSV - returning the number of rows written.
+    ***************************************************************************/
+   static int writeCsv(Iterator<BulkLoadFileRow> rows, Writer writer) throws IOException
+   {
+      int count = 0;
+      while(rows.hasNext())
+      {
+         BulkLoadFileRow row = rows.next();
+         for(int i = 0; i < row.size(); i++)
+         {
+            if(i > 0)
+            {
+               writer.write(',');
+            }
+            writer.write(toCsvValue(row.getValueElseNull(i)));
+         }
+         writer.write('\n');
+         count++;
+      }
+      return (count);
+   }
+
+
+
+   /***************************************************************************
+    ** format (and if needed, quote) a cell value for CSV.
+    ***************************************************************************/
+   private static String toCsvValue(Serializable value)
+   {
+      String string;
+      if(value == null)
+      {
+         return ("");
+      }
+      else if(value instanceof BigDecimal bigDecimal)
+      {
+         string = bigDecimal.toPlainString();
+      }
+      else if(value instanceof LocalDateTime localDateTime && localDateTime.toLocalTime().equals(LocalTime.MIDNIGHT))
+      {
+         ///////////////////////////////////////////////////////////////////
+         // spreadsheets store dates as date-times at midnight - so write //
+         // those as just the date                                        //
+         ///////////////////////////////////////////////////////////////////
+         string = localDateTime.toLocalDate().toString();
+      }
+      else
+      {
+         string = value.toString();
+      }
+
+      if(string.indexOf(',') >= 0 || string.indexOf('"') >= 0 || string.indexOf('\n') >= 0 || string.indexOf('\r') >= 0)
+      {
+         return ('"' + string.replace("\"", "\"\"") + '"');
+      }
+      return (string);
+   }
+
+}
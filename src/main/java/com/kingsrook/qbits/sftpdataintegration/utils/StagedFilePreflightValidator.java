@@ -0,0 +1,283 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.sftpdataintegration.utils;
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import com.kingsrook.qqq.backend.core.actions.tables.StorageAction;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+import com.kingsrook.qqq.backend.core.model.actions.tables.storage.StorageInput;
+import com.kingsrook.qqq.backend.core.processes.implementations.bulk.insert.model.BulkLoadProfile;
+import com.kingsrook.qqq.backend.core.processes.implementations.bulk.insert.model.BulkLoadProfileField;
+import com.kingsrook.qqq.backend.core.utils.CollectionUtils;
+
+
+/*******************************************************************************
+ ** Cheap checks of a staged delimited (csv, tsv, or txt) file, before starting
+ ** a full bulk load of it - reading only the start of the file, to see that it
+ ** is UTF-8 text, and (if its bulk load profile maps columns by header name)
+ ** that its header row is split by the expected delimiter, and has all of the
+ ** profile's mapped columns.
+ **
+ ** Other files (e.g., xlsx) aren't checked.  Checks that can't be made from
+ ** the start of the file (e.g., a header row longer than it) are skipped.
+ *******************************************************************************/
+public class StagedFilePreflightValidator
+{
+   public static final int PREFLIGHT_BYTES = 8 * 1024;
+
+   private static final List<Character> OTHER_DELIMITERS = List.of(',', '\t', ';', '|');
+
+
+
+   /***************************************************************************
+    ** read the start of a staged file, and validate it.  returns null if it is
+    ** (or can't be seen not to be) ok - else a message saying what's wrong.
+    ***************************************************************************/
+   public static String validate(String stagingTableName, String stagedPath, BulkLoadProfile bulkLoadProfile) throws QException
+   {
+      if(!isDelimitedFile(stagedPath))
+      {
+         return (null);
+      }
+
+      try(InputStream inputStream = new StorageAction().getInputStream(new StorageInput(stagingTableName).withReference(stagedPath)))
+      {
+         byte[] head = inputStream.readNBytes(PREFLIGHT_BYTES);
+         return (validate(head, head.length < PREFLIGHT_BYTES, stagedPath, bulkLoadProfile));
+      }
+      catch(IOException e)
+      {
+         throw (new QException("Error reading staged file [" + stagedPath + "]", e));
+      }
+   }
+
+
+
+   /***************************************************************************
+    ** validate the start (head) of a file - which may be the whole file.
+    ***************************************************************************/
+   static String validate(byte[] head, boolean isWholeFile, String stagedPath, BulkLoadProfile bulkLoadProfile)
+   {
+      boolean hasHeaderRow = bulkLoadProfile == null || !Boolean.FALSE.equals(bulkLoadProfile.getHasHeaderRow());
+      if(head.length == 0)
+      {
+         return (hasHeaderRow ? "File is empty" : null);
+      }
+
+      ////////////////////////////////////////////////////////////////////////
+      // only decode through the last newline, if the head isn't the whole  //
+      // file - so a multibyte character cut off at its end isn't an error. //
+      ////////////////////////////////////////////////////////////////////////
+      int length = head.length;
+      if(!isWholeFile)
+      {
+         length = 0;
+         for(int i = head.length - 1; i >= 0; i--)
+         {
+            if(head[i] == '\n')
+            {
+               length = i + 1;
+               break;
+            }
+         }
+
+         if(length == 0)
+         {
+            return (null);
+         }
+      }
+
+      String text;
+      try
+      {
+         text = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT)
+            .decode(ByteBuffer.wrap(head, 0, length))
+            .toString();
+      }
+      catch(CharacterCodingException e)
+      {
+         return ("File is not valid UTF-8 text");
+      }
+
+      if(text.startsWith("\uFEFF"))
+      {
+         text = text.substring(1);
+      }
+
+      List<String> expectedHeaders = getExpectedHeaders(bulkLoadProfile);
+      if(!hasHeaderRow || expectedHeaders.isEmpty())
+      {
+         return (null);
+      }
+
+      char         delimiter = stagedPath.toLowerCase().endsWith(".tsv") ? '\t' : ',';
+      String       headerRow = getFirstRow(text);
+      List<String> headers   = splitRow(headerRow, delimiter);
+
+      Set<String>  foundHeaders   = headers.stream().map(h -> h.trim().toLowerCase()).collect(Collectors.toSet());
+      List<String> missingHeaders = expectedHeaders.stream().filter(h -> !foundHeaders.contains(h.trim().toLowerCase())).toList();
+      if(missingHeaders.isEmpty())
+      {
+         return (null);
+      }
+
+      ////////////////////////////////////////////////////////////////////////
+      // if the whole header row is one column, and the profile wants more, //
+      // it's probably split by some other delimiter - so say that.         //
+      ////////////////////////////////////////////////////////////////////////
+      if(headers.size() == 1 && expectedHeaders.size() > 1)
+      {
+         for(Character otherDelimiter : OTHER_DELIMITERS)
+         {
+            if(otherDelimiter != delimiter && splitRow(headerRow, otherDelimiter).size() > 1)
+            {
+               return ("Header row is not delimited by " + describe(delimiter) + " (it appears to be delimited by " + describe(otherDelimiter) + ")");
+            }
+         }
+      }
+
+      return ("Header row is missing column" + (missingHeaders.size() == 1 ? "" : "s") + ": " + String.join(", ", missingHeaders));
+   }
+
+
+
+   /***************************************************************************
+    ** is a (staged) file delimited (csv, tsv, or txt).
+    ***************************************************************************/
+   public static boolean isDelimitedFile(String path)
+   {
+      return (path != null && path.toLowerCase().matches(".*\\.(csv|tsv|txt)$"));
+   }
+
+
+
+   /***************************************************************************
+    ** the header names that the profile maps fields from.
+    ***************************************************************************/
+   private static List<String> getExpectedHeaders(BulkLoadProfile bulkLoadProfile)
+   {
+      List<String> expectedHeaders = new ArrayList<>();
+      if(bulkLoadProfile != null)
+      {
+         for(BulkLoadProfileField field : CollectionUtils.nonNullList(bulkLoadProfile.getFieldList()))
+         {
+            if(field.getHeaderName() != null)
+            {
+               expectedHeaders.add(field.getHeaderName());
+            }
+         }
+      }
+      return (expectedHeaders);
+   }
+
+
+
+   /***************************************************************************
+    ** the text up to the first newline that isn't in quotes.
+    ***************************************************************************/
+   private static String getFirstRow(String text)
+   {
+      boolean inQuotes = false;
+      for(int i = 0; i < text.length(); i++)
+      {
+         char c = text.charAt(i);
+         if(c == '"')
+         {
+            inQuotes = !inQuotes;
+         }
+         else if(c == '\n' && !inQuotes)
+         {
+            return (text.substring(0, i > 0 && text.charAt(i - 1) == '\r' ? i - 1 : i));
+         }
+      }
+      return (text);
+   }
+
+
+
+   /***************************************************************************
+    ** split a row on a delimiter (outside of quotes), unquoting values.
+    ***************************************************************************/
+   private static List<String> splitRow(String row, char delimiter)
+   {
+      List<String>  values   = new ArrayList<>();
+      StringBuilder value    = new StringBuilder();
+      boolean       inQuotes = false;
+      for(int i = 0; i < row.length(); i++)
+      {
+         char c = row.charAt(i);
+         if(c == '"')
+         {
+            if(inQuotes && i + 1 < row.length() && row.charAt(i + 1) == '"')
+            {
+               value.append('"');
+               i++;
+            }
+            else
+            {
+               inQuotes = !inQuotes;
+            }
+         }
+         else if(c == delimiter && !inQuotes)
+         {
+            values.add(value.toString());
+            value.setLength(0);
+         }
+         else
+         {
+            value.append(c);
+         }
+      }
+      values.add(value.toString());
+      return (values);
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static String describe(char delimiter)
+   {
+      return (switch(delimiter)
+      {
+         case '\t' -> "tabs";
+         case ',' -> "commas";
+         case ';' -> "semicolons";
+         case '|' -> "pipes";
+         default -> "'" + delimiter + "'";
+      });
+   }
+
+}
@@ -23,6 +23,7 @@ package com.kingsrook.qbits.sftpdataintegration;
 
 
 import java.io.File;
+import com.kingsrook.qbits.sftpdataintegration.utils.ImportedSourcePathIndex;
 import com.kingsrook.qqq.backend.core.context.QContext;
 import com.kingsrook.qqq.backend.core.exceptions.QException;
 import com.kingsrook.qqq.backend.core.instances.QInstanceValidator;
@@ -76,6 +77,7 @@ public class BaseTest
       QContext.init(qInstance, new QSession());
 
       MemoryRecordStore.fullReset();
+      ImportedSourcePathIndex.getInstance().clear();
    }
 
 
@@ -0,0 +1,116 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.sftpdataintegration.process;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import com.kingsrook.qbits.sftpdataintegration.BaseTest;
+import com.kingsrook.qbits.sftpdataintegration.model.ImportFile;
+import com.kingsrook.qqq.backend.core.model.actions.processes.ProcessSummaryLine;
+import com.kingsrook.qqq.backend.core.model.actions.processes.RunProcessOutput;
+import com.kingsrook.qqq.backend.core.model.actions.processes.Status;
+import com.kingsrook.qqq.backend.core.processes.implementations.etl.streamedwithfrontend.StreamedETLWithFrontendProcess;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+/*******************************************************************************
+ ** Unit test for ImportFileBulkLoadLoadStep
+ *******************************************************************************/
+class ImportFileBulkLoadLoadStepTest extends BaseTest
+{
+
+   /*******************************************************************************
+    ** only the bulk insert's own inserted line counts as rows inserted - not
+    ** lines for associated child records - and a row with several errors
+    ** isn't counted more than once, when the run has a record count.
+    *******************************************************************************/
+   @Test
+   void testRowCountsFromProcessSummary()
+   {
+      ArrayList<ProcessSummaryLine> processSummary = new ArrayList<>(List.of(
+         new ProcessSummaryLine(Status.OK, 7, "order records were inserted"),
+         new ProcessSummaryLine(Status.OK, 20, "order line records were inserted"),
+         new ProcessSummaryLine(Status.ERROR, 3, "records were missing a customer"),
+         new ProcessSummaryLine(Status.ERROR, 2, "records had an invalid date")));
+
+      RunProcessOutput runProcessOutput = new RunProcessOutput();
+      runProcessOutput.addValue(StreamedETLWithFrontendProcess.FIELD_PROCESS_SUMMARY, processSummary);
+
+      /////////////////////////////////////////////////////////////////////////
+      // without a record count, errors are counted per line; with one, it's //
+      // the rows that weren't inserted (2 rows had both errors)             //
+      /////////////////////////////////////////////////////////////////////////
+      assertEquals(7, ImportFileBulkLoadLoadStep.getRowsInserted(runProcessOutput));
+      assertEquals(5, ImportFileBulkLoadLoadStep.getRowsErrored(runProcessOutput, 7));
+
+      runProcessOutput.addValue(StreamedETLWithFrontendProcess.FIELD_RECORD_COUNT, 10);
+      assertEquals(3, ImportFileBulkLoadLoadStep.getRowsErrored(runProcessOutput, 7));
+
+      assertEquals(0, ImportFileBulkLoadLoadStep.getRowsInserted(null));
+      assertEquals(0, ImportFileBulkLoadLoadStep.getRowsErrored(null, 0));
+   }
+
+
+
+   /*******************************************************************************
+    ** the inserted line is found by its message and the run's record count -
+    ** not by being the first OK line.
+    *******************************************************************************/
+   @Test
+   void testRowsInsertedIsNotJustTheFirstOkLine()
+   {
+      ArrayList<ProcessSummaryLine> processSummary = new ArrayList<>(List.of(
+         new ProcessSummaryLine(Status.OK, 10, "records were read from the file"),
+         new ProcessSummaryLine(Status.OK, 20, "order line records were inserted"),
+         new ProcessSummaryLine(Status.OK, 7, "order records were inserted")));
+
+      RunProcessOutput runProcessOutput = new RunProcessOutput();
+      runProcessOutput.addValue(StreamedETLWithFrontendProcess.FIELD_PROCESS_SUMMARY, processSummary);
+      runProcessOutput.addValue(StreamedETLWithFrontendProcess.FIELD_RECORD_COUNT, 10);
+      assertEquals(7, ImportFileBulkLoadLoadStep.getRowsInserted(runProcessOutput));
+
+      runProcessOutput.addValue(StreamedETLWithFrontendProcess.FIELD_PROCESS_SUMMARY, new ArrayList<>(List.of(
+         new ProcessSummaryLine(Status.OK, 10, "records were read from the file"))));
+      assertEquals(0, ImportFileBulkLoadLoadStep.getRowsInserted(runProcessOutput));
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testSplitMillis()
+   {
+      assertArrayEquals(new long[] { 250, 750 }, ImportFileBulkLoadLoadStep.splitMillis(List.of(
+         new ImportFile().withStagedBytes(100L),
+         new ImportFile().withStagedBytes(300L)), 1000));
+
+      assertArrayEquals(new long[] { 500, 500 }, ImportFileBulkLoadLoadStep.splitMillis(List.of(
+         new ImportFile(),
+         new ImportFile()), 1000));
+   }
+
+}
@@ -26,6 +26,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import com.kingsrook.qbits.sftpdataintegration.BaseTest;
+import com.kingsrook.qbits.sftpdataintegration.SFTPDataIntegrationQBitConfig;
 import com.kingsrook.qbits.sftpdataintegration.metadata.ImportFileBulkLoadProcessMetaDataProducer;
 import com.kingsrook.qbits.sftpdataintegration.metadata.SFTPImportStagingFileTableMetaDataProducer;
 import com.kingsrook.qbits.sftpdataintegration.model.ImportFile;
@@ -33,8 +34,10 @@ import com.kingsrook.qbits.sftpdataintegration.model.ImportFileStatusEnum;
 import com.kingsrook.qqq.backend.core.actions.processes.QProcessCallbackFactory;
 import com.kingsrook.qqq.backend.core.actions.processes.RunProcessAction;
 import com.kingsrook.qqq.backend.core.actions.tables.CountAction;
+import com.kingsrook.qqq.backend.core.actions.tables.GetAction;
 import com.kingsrook.qqq.backend.core.actions.tables.InsertAction;
 import com.kingsrook.qqq.backend.core.actions.tables.QueryAction;
+import com.kingsrook.qqq.backend.core.context.QContext;
 import com.kingsrook.qqq.backend.core.exceptions.QException;
 import com.kingsrook.qqq.backend.core.model.actions.processes.RunProcessInput;
 import com.kingsrook.qqq.backend.core.model.actions.processes.RunProcessOutput;
@@ -52,6 +55,8 @@ import com.kingsrook.qqq.backend.core.processes.implementations.bulk.insert.mode
 import com.kingsrook.qqq.backend.core.utils.JsonUtils;
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 
 
 /*******************************************************************************
@@ -124,6 +129,359 @@ class ImportFileBulkLoadProcessTest extends BaseTest
       assertEquals("/yourFile.xlsx", records.get(1).getValueString("stagedPath"));
       assertEquals(ImportFileStatusEnum.ERROR.getId(), records.get(1).getValueInteger("importFileStatusId"));
       assertEquals(1, records.get(1).getValueInteger("savedBulkLoadProfileId"));
+
+      ///////////////////////////////////////////////////////
+      // the import file should have its bulk load metrics //
+      ///////////////////////////////////////////////////////
+      QRecord loadedImportFile = GetAction.execute(ImportFile.TABLE_NAME, importFile.getValue("id"));
+      assertEquals(2, loadedImportFile.getValueInteger("bulkLoadRowsInserted"));
+      assertEquals(0, loadedImportFile.getValueInteger("bulkLoadRowsErrored"));
+      assertNotNull(loadedImportFile.getValueLong("bulkLoadMillis"));
+      assertNotNull(loadedImportFile.getValueBigDecimal("bulkLoadRowsPerSecond"));
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testParallelBulkLoads() throws QException
+   {
+      SFTPDataIntegrationQBitConfig qBitConfig = (SFTPDataIntegrationQBitConfig) QContext.getQInstance().getProcess(ImportFileBulkLoadProcessMetaDataProducer.NAME).getSourceQBitConfig();
+      qBitConfig.setImportFileBulkLoadThreads(4);
+      qBitConfig.setImportFileBulkLoadMaxConcurrentByTable(Map.of(ImportFile.TABLE_NAME, 1));
+
+      Integer savedBulkLoadProfileId = new InsertAction().execute(new InsertInput(SavedBulkLoadProfile.TABLE_NAME).withRecordEntity(new SavedBulkLoadProfile()
+         .withLabel("Test Profile")
+         .withTableName(ImportFile.TABLE_NAME)
+         .withMappingJson(JsonUtils.toJson(new BulkLoadProfile()
+            .withHasHeaderRow(true)
+            .withVersion("v1")
+            .withLayout(BulkInsertMapping.Layout.FLAT.getPossibleValueId())
+            .withFieldList(new ArrayList<>(List.of(
+               new BulkLoadProfileField().withFieldName("stagedPath").withHeaderName("Staged Path"),
+               new BulkLoadProfileField().withFieldName("sourcePath").withDefaultValue("loaded")
+            )))
+         ))
+      )).getRecords().get(0).getValueInteger("id");
+
+      ///////////////////////////////////////////////////
+      // files for 2 different configs, to run at once //
+      ///////////////////////////////////////////////////
+      List<Integer> importFileIds = new ArrayList<>();
+      for(int i = 0; i < 6; i++)
+      {
+         String fileName = "file" + i + ".csv";
+         new InsertAction().execute(new InsertInput(SFTPImportStagingFileTableMetaDataProducer.NAME).withRecord(new QRecord()
+            .withValue("fileName", fileName)
+            .withValue("contents", "Staged Path\n/loaded" + i + ".csv\n")));
+
+         importFileIds.add(new InsertAction().execute(new InsertInput(ImportFile.TABLE_NAME).withRecordEntity(new ImportFile()
+            .withSftpImportConfigId(i % 2 + 1)
+            .withImportFileStatusId(ImportFileStatusEnum.PENDING.getId())
+            .withStagedPath(fileName)
+            .withSavedBulkLoadProfileId(savedBulkLoadProfileId)
+         )).getRecords().get(0).getValueInteger("id"));
+      }
+
+      RunProcessInput input = new RunProcessInput();
+      input.setProcessName(ImportFileBulkLoadProcessMetaDataProducer.NAME);
+      input.setCallback(QProcessCallbackFactory.forFilter(new QQueryFilter(new QFilterCriteria("id", QCriteriaOperator.IN, importFileIds))));
+      input.setFrontendStepBehavior(RunProcessInput.FrontendStepBehavior.SKIP);
+      new RunProcessAction().execute(input);
+
+      for(QRecord record : QueryAction.execute(ImportFile.TABLE_NAME, new QQueryFilter(new QFilterCriteria("id", QCriteriaOperator.IN, importFileIds))))
+      {
+         assertEquals(ImportFileStatusEnum.COMPLETE.getId(), record.getValueInteger("importFileStatusId"));
+      }
+
+      List<QRecord> loadedRecords = QueryAction.execute(ImportFile.TABLE_NAME, new QQueryFilter(new QFilterCriteria("sourcePath", QCriteriaOperator.EQUALS, "loaded")));
+      assertEquals(6, loadedRecords.size());
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testCoalescedBulkLoads() throws QException
+   {
+      SFTPDataIntegrationQBitConfig qBitConfig = (SFTPDataIntegrationQBitConfig) QContext.getQInstance().getProcess(ImportFileBulkLoadProcessMetaDataProducer.NAME).getSourceQBitConfig();
+      qBitConfig.setImportFileBulkLoadCoalesceMaxFiles(3);
+
+      Integer savedBulkLoadProfileId = new InsertAction().execute(new InsertInput(SavedBulkLoadProfile.TABLE_NAME).withRecordEntity(new SavedBulkLoadProfile()
+         .withLabel("Test Profile")
+         .withTableName(ImportFile.TABLE_NAME)
+         .withMappingJson(JsonUtils.toJson(new BulkLoadProfile()
+            .withHasHeaderRow(true)
+            .withVersion("v1")
+            .withLayout(BulkInsertMapping.Layout.FLAT.getPossibleValueId())
+            .withFieldList(new ArrayList<>(List.of(
+               new BulkLoadProfileField().withFieldName("stagedPath").withHeaderName("Staged Path"),
+               new BulkLoadProfileField().withFieldName("sourcePath").withDefaultValue("coalesced")
+            )))
+         ))
+      )).getRecords().get(0).getValueInteger("id");
+
+      ////////////////////////////////////////////////////////////////////////
+      // 5 small files (the last without a trailing newline) - so 2 batches //
+      ////////////////////////////////////////////////////////////////////////
+      List<Integer> importFileIds = new ArrayList<>();
+      for(int i = 0; i < 5; i++)
+      {
+         String fileName = "small" + i + ".csv";
+         String contents = "Staged Path\n/small" + i + "a.csv\n/small" + i + "b.csv" + (i < 4 ? "\n" : "");
+         new InsertAction().execute(new InsertInput(SFTPImportStagingFileTableMetaDataProducer.NAME).withRecord(new QRecord()
+            .withValue("fileName", fileName)
+            .withValue("contents", contents)));
+
+         importFileIds.add(new InsertAction().execute(new InsertInput(ImportFile.TABLE_NAME).withRecordEntity(new ImportFile()
+            .withSftpImportConfigId(1)
+            .withImportFileStatusId(ImportFileStatusEnum.PENDING.getId())
+            .withStagedPath(fileName)
+            .withStagedBytes((long) contents.length())
+            .withSavedBulkLoadProfileId(savedBulkLoadProfileId)
+         )).getRecords().get(0).getValueInteger("id"));
+      }
+
+      RunProcessInput input = new RunProcessInput();
+      input.setProcessName(ImportFileBulkLoadProcessMetaDataProducer.NAME);
+      input.setCallback(QProcessCallbackFactory.forFilter(new QQueryFilter(new QFilterCriteria("id", QCriteriaOperator.IN, importFileIds))));
+      input.setFrontendStepBehavior(RunProcessInput.FrontendStepBehavior.SKIP);
+      new RunProcessAction().execute(input);
+
+      for(QRecord record : QueryAction.execute(ImportFile.TABLE_NAME, new QQueryFilter(new QFilterCriteria("id", QCriteriaOperator.IN, importFileIds))))
+      {
+         assertEquals(ImportFileStatusEnum.COMPLETE.getId(), record.getValueInteger("importFileStatusId"));
+         assertEquals(2, record.getValueInteger("bulkLoadRowsInserted"));
+      }
+
+      List<QRecord> loadedRecords = QueryAction.execute(ImportFile.TABLE_NAME, new QQueryFilter(new QFilterCriteria("sourcePath", QCriteriaOperator.EQUALS, "coalesced")));
+      assertEquals(10, loadedRecords.size());
+   }
+
+
+
+   /*******************************************************************************
+    ** a page with more files than fit in one batch of status updates, where
+    ** files fail partway through it - every file should still end up with its
+    ** own terminal status (none left as processing).
+    *******************************************************************************/
+   @Test
+   void testBatchedStatusesWhenFilesFailPartwayThroughPage() throws QException
+   {
+      SFTPDataIntegrationQBitConfig qBitConfig = (SFTPDataIntegrationQBitConfig) QContext.getQInstance().getProcess(ImportFileBulkLoadProcessMetaDataProducer.NAME).getSourceQBitConfig();
+      qBitConfig.setConvertStagedSpreadsheetsToCsv(true);
+
+      Integer savedBulkLoadProfileId = new InsertAction().execute(new InsertInput(SavedBulkLoadProfile.TABLE_NAME).withRecordEntity(new SavedBulkLoadProfile()
+         .withLabel("Test Profile")
+         .withTableName(ImportFile.TABLE_NAME)
+         .withMappingJson(JsonUtils.toJson(new BulkLoadProfile()
+            .withHasHeaderRow(true)
+            .withVersion("v1")
+            .withLayout(BulkInsertMapping.Layout.FLAT.getPossibleValueId())
+            .withFieldList(new ArrayList<>(List.of(
+               new BulkLoadProfileField().withFieldName("stagedPath").withHeaderName("Staged Path"),
+               new BulkLoadProfileField().withFieldName("sourcePath").withDefaultValue("batched")
+            )))
+         ))
+      )).getRecords().get(0).getValueInteger("id");
+
+      ////////////////////////////////////////////////////////////////////////
+      // 3 good files, then 100 files that fail (they aren't really xlsx,   //
+      // so can't be converted) - filling a batch of statuses mid-page -    //
+      // then 2 more good files, whose statuses are left for the last flush //
+      ////////////////////////////////////////////////////////////////////////
+      List<Integer> allIds  = new ArrayList<>();
+      List<Integer> goodIds = new ArrayList<>();
+      List<Integer> badIds  = new ArrayList<>();
+      for(int i = 0; i < 105; i++)
+      {
+         boolean good     = i < 3 || i >= 103;
+         String  fileName = good ? "good" + i + ".csv" : "bad" + i + ".xlsx";
+         new InsertAction().execute(new InsertInput(SFTPImportStagingFileTableMetaDataProducer.NAME).withRecord(new QRecord()
+            .withValue("fileName", fileName)
+            .withValue("contents", good ? "Staged Path\n/good" + i + ".csv\n" : "not a spreadsheet")));
+
+         Integer id = new InsertAction().execute(new InsertInput(ImportFile.TABLE_NAME).withRecordEntity(new ImportFile()
+            .withSftpImportConfigId(1)
+            .withImportFileStatusId(ImportFileStatusEnum.PENDING.getId())
+            .withStagedPath(fileName)
+            .withSavedBulkLoadProfileId(savedBulkLoadProfileId)
+         )).getRecords().get(0).getValueInteger("id");
+         allIds.add(id);
+         (good ? goodIds : badIds).add(id);
+      }
+
+      RunProcessInput input = new RunProcessInput();
+      input.setProcessName(ImportFileBulkLoadProcessMetaDataProducer.NAME);
+      input.setCallback(QProcessCallbackFactory.forFilter(new QQueryFilter(new QFilterCriteria("id", QCriteriaOperator.IN, allIds))));
+      input.setFrontendStepBehavior(RunProcessInput.FrontendStepBehavior.SKIP);
+      new RunProcessAction().execute(input);
+
+      for(QRecord record : QueryAction.execute(ImportFile.TABLE_NAME, new QQueryFilter(new QFilterCriteria("id", QCriteriaOperator.IN, goodIds))))
+      {
+         assertEquals(ImportFileStatusEnum.COMPLETE.getId(), record.getValueInteger("importFileStatusId"));
+         assertEquals(1, record.getValueInteger("bulkLoadRowsInserted"));
+      }
+
+      for(QRecord record : QueryAction.execute(ImportFile.TABLE_NAME, new QQueryFilter(new QFilterCriteria("id", QCriteriaOperator.IN, badIds))))
+      {
+         assertEquals(ImportFileStatusEnum.ERROR.getId(), record.getValueInteger("importFileStatusId"));
+         assertNull(record.getValueInteger("bulkLoadRowsInserted"));
+         assertNotNull(record.getValueLong("bulkLoadMillis"));
+      }
+
+      assertEquals(5, QueryAction.execute(ImportFile.TABLE_NAME, new QQueryFilter(new QFilterCriteria("sourcePath", QCriteriaOperator.EQUALS, "batched"))).size());
+   }
+
+
+
+   /*******************************************************************************
+    ** a chunked file's row counts are rolled up from all of its chunks - and a
+    ** retry of a file, some of whose chunks loaded before, skips those chunks.
+    *******************************************************************************/
+   @Test
+   void testChunkedBulkLoads() throws QException
+   {
+      SFTPDataIntegrationQBitConfig qBitConfig = (SFTPDataIntegrationQBitConfig) QContext.getQInstance().getProcess(ImportFileBulkLoadProcessMetaDataProducer.NAME).getSourceQBitConfig();
+      qBitConfig.setImportFileBulkLoadChunkRows(2);
+
+      Integer savedBulkLoadProfileId = new InsertAction().execute(new InsertInput(SavedBulkLoadProfile.TABLE_NAME).withRecordEntity(new SavedBulkLoadProfile()
+         .withLabel("Test Profile")
+         .withTableName(ImportFile.TABLE_NAME)
+         .withMappingJson(JsonUtils.toJson(new BulkLoadProfile()
+            .withHasHeaderRow(true)
+            .withVersion("v1")
+            .withLayout(BulkInsertMapping.Layout.FLAT.getPossibleValueId())
+            .withFieldList(new ArrayList<>(List.of(
+               new BulkLoadProfileField().withFieldName("stagedPath").withHeaderName("Staged Path"),
+               new BulkLoadProfileField().withFieldName("sourcePath").withDefaultValue("chunked")
+            )))
+         ))
+      )).getRecords().get(0).getValueInteger("id");
+
+      ////////////////////////////////////////////////////////////////////////
+      // 2 files of 5 rows (so 3 chunks each) - the second as if an earlier //
+      // try of it loaded its 2nd chunk, before another chunk failed        //
+      ////////////////////////////////////////////////////////////////////////
+      String contents = "Staged Path\n/row1.csv\n/row2.csv\n/row3.csv\n/row4.csv\n/row5.csv\n";
+      for(String fileName : List.of("big1.csv", "big2.csv"))
+      {
+         new InsertAction().execute(new InsertInput(SFTPImportStagingFileTableMetaDataProducer.NAME).withRecord(new QRecord()
+            .withValue("fileName", fileName)
+            .withValue("contents", contents)));
+      }
+
+      Integer freshId = new InsertAction().execute(new InsertInput(ImportFile.TABLE_NAME).withRecordEntity(new ImportFile()
+         .withSftpImportConfigId(1)
+         .withImportFileStatusId(ImportFileStatusEnum.PENDING.getId())
+         .withStagedPath("big1.csv")
+         .withSavedBulkLoadProfileId(savedBulkLoadProfileId)
+      )).getRecords().get(0).getValueInteger("id");
+
+      Integer retryId = new InsertAction().execute(new InsertInput(ImportFile.TABLE_NAME).withRecordEntity(new ImportFile()
+         .withSftpImportConfigId(1)
+         .withImportFileStatusId(ImportFileStatusEnum.ERROR.getId())
+         .withStagedPath("big2.csv")
+         .withSavedBulkLoadProfileId(savedBulkLoadProfileId)
+         .withBulkLoadChunkRows(2)
+         .withBulkLoadChunksLoaded("2")
+      )).getRecords().get(0).getValueInteger("id");
+
+      RunProcessInput input = new RunProcessInput();
+      input.setProcessName(ImportFileBulkLoadProcessMetaDataProducer.NAME);
+      input.setCallback(QProcessCallbackFactory.forFilter(new QQueryFilter(new QFilterCriteria("id", QCriteriaOperator.IN, List.of(freshId, retryId)))));
+      input.setFrontendStepBehavior(RunProcessInput.FrontendStepBehavior.SKIP);
+      new RunProcessAction().execute(input);
+
+      QRecord fresh = GetAction.execute(ImportFile.TABLE_NAME, freshId);
+      assertEquals(ImportFileStatusEnum.COMPLETE.getId(), fresh.getValueInteger("importFileStatusId"));
+      assertEquals(5, fresh.getValueInteger("bulkLoadRowsInserted"));
+      assertNull(fresh.getValueString("bulkLoadChunksLoaded"));
+
+      QRecord retried = GetAction.execute(ImportFile.TABLE_NAME, retryId);
+      assertEquals(ImportFileStatusEnum.COMPLETE.getId(), retried.getValueInteger("importFileStatusId"));
+      assertEquals(3, retried.getValueInteger("bulkLoadRowsInserted"));
+      assertNull(retried.getValueString("bulkLoadChunksLoaded"));
+      assertNull(retried.getValueInteger("bulkLoadChunkRows"));
+
+      ///////////////////////////////////////////////////////////////////////
+      // rows 3 and 4 (the already-loaded chunk) are only loaded once more //
+      // (by the fresh file) - and no chunk files are left behind          //
+      ///////////////////////////////////////////////////////////////////////
+      List<QRecord> loadedRecords = QueryAction.execute(ImportFile.TABLE_NAME, new QQueryFilter(new QFilterCriteria("sourcePath", QCriteriaOperator.EQUALS, "chunked")));
+      assertEquals(8, loadedRecords.size());
+      assertEquals(1, loadedRecords.stream().filter(r -> "/row3.csv".equals(r.getValueString("stagedPath"))).count());
+      assertEquals(2, loadedRecords.stream().filter(r -> "/row5.csv".equals(r.getValueString("stagedPath"))).count());
+      assertEquals(0, QueryAction.execute(SFTPImportStagingFileTableMetaDataProducer.NAME, new QQueryFilter()).stream()
+         .filter(r -> r.getValueString("fileName").contains(".chunk-")).count());
+   }
+
+
+
+   /*******************************************************************************
+    ** a file with the same columns as its neighbors, but in a different order,
+    ** isn't coalesced with them - so its values load into the right fields.
+    *******************************************************************************/
+   @Test
+   void testCoalescingWithReorderedColumns() throws QException
+   {
+      SFTPDataIntegrationQBitConfig qBitConfig = (SFTPDataIntegrationQBitConfig) QContext.getQInstance().getProcess(ImportFileBulkLoadProcessMetaDataProducer.NAME).getSourceQBitConfig();
+      qBitConfig.setImportFileBulkLoadCoalesceMaxFiles(3);
+
+      Integer savedBulkLoadProfileId = new InsertAction().execute(new InsertInput(SavedBulkLoadProfile.TABLE_NAME).withRecordEntity(new SavedBulkLoadProfile()
+         .withLabel("Test Profile")
+         .withTableName(ImportFile.TABLE_NAME)
+         .withMappingJson(JsonUtils.toJson(new BulkLoadProfile()
+            .withHasHeaderRow(true)
+            .withVersion("v1")
+            .withLayout(BulkInsertMapping.Layout.FLAT.getPossibleValueId())
+            .withFieldList(new ArrayList<>(List.of(
+               new BulkLoadProfileField().withFieldName("stagedPath").withHeaderName("Staged Path"),
+               new BulkLoadProfileField().withFieldName("sourcePath").withHeaderName("Entry")
+            )))
+         ))
+      )).getRecords().get(0).getValueInteger("id");
+
+      List<String>  contents      = List.of("Staged Path,Entry\n/first.csv,entry1\n", "Entry,Staged Path\nentry2,/second.csv\n", "Staged Path,Entry\n/third.csv,entry3\n");
+      List<Integer> importFileIds = new ArrayList<>();
+      for(int i = 0; i < contents.size(); i++)
+      {
+         String fileName = "reordered" + i + ".csv";
+         new InsertAction().execute(new InsertInput(SFTPImportStagingFileTableMetaDataProducer.NAME).withRecord(new QRecord()
+            .withValue("fileName", fileName)
+            .withValue("contents", contents.get(i))));
+
+         importFileIds.add(new InsertAction().execute(new InsertInput(ImportFile.TABLE_NAME).withRecordEntity(new ImportFile()
+            .withSftpImportConfigId(1)
+            .withImportFileStatusId(ImportFileStatusEnum.PENDING.getId())
+            .withStagedPath(fileName)
+            .withStagedBytes((long) contents.get(i).length())
+            .withSavedBulkLoadProfileId(savedBulkLoadProfileId)
+         )).getRecords().get(0).getValueInteger("id"));
+      }
+
+      RunProcessInput input = new RunProcessInput();
+      input.setProcessName(ImportFileBulkLoadProcessMetaDataProducer.NAME);
+      input.setCallback(QProcessCallbackFactory.forFilter(new QQueryFilter(new QFilterCriteria("id", QCriteriaOperator.IN, importFileIds))));
+      input.setFrontendStepBehavior(RunProcessInput.FrontendStepBehavior.SKIP);
+      new RunProcessAction().execute(input);
+
+      for(QRecord record : QueryAction.execute(ImportFile.TABLE_NAME, new QQueryFilter(new QFilterCriteria("id", QCriteriaOperator.IN, importFileIds))))
+      {
+         assertEquals(ImportFileStatusEnum.COMPLETE.getId(), record.getValueInteger("importFileStatusId"));
+      }
+
+      List<QRecord> loadedRecords = QueryAction.execute(ImportFile.TABLE_NAME, new QQueryFilter(new QFilterCriteria("sourcePath", QCriteriaOperator.IN, List.of("entry1", "entry2", "entry3"))));
+      assertEquals(3, loadedRecords.size());
+      for(QRecord loadedRecord : loadedRecords)
+      {
+         String entry = loadedRecord.getValueString("sourcePath");
+         assertEquals(Map.of("entry1", "/first.csv", "entry2", "/second.csv", "entry3", "/third.csv").get(entry), loadedRecord.getValueString("stagedPath"));
+      }
    }
 
-}
\ No newline at end of file
+}
@@ -22,24 +22,37 @@
 package com.kingsrook.qbits.sftpdataintegration.process;
 
 
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.zip.GZIPInputStream;
 import com.kingsrook.qbits.sftpdataintegration.BaseTest;
+import com.kingsrook.qbits.sftpdataintegration.SFTPDataIntegrationQBitConfig;
 import com.kingsrook.qbits.sftpdataintegration.metadata.RenderReportForSFTPExportProcessMetaDataProducer;
 import com.kingsrook.qbits.sftpdataintegration.metadata.SFTPExportDestinationFileTableMetaDataProducer;
+import com.kingsrook.qbits.sftpdataintegration.model.ExportCompressionEnum;
 import com.kingsrook.qbits.sftpdataintegration.model.SFTPConnection;
 import com.kingsrook.qbits.sftpdataintegration.model.SFTPExportConfig;
 import com.kingsrook.qqq.backend.core.actions.processes.QProcessCallbackFactory;
 import com.kingsrook.qqq.backend.core.actions.processes.RunProcessAction;
 import com.kingsrook.qqq.backend.core.actions.tables.InsertAction;
 import com.kingsrook.qqq.backend.core.actions.tables.QueryAction;
+import com.kingsrook.qqq.backend.core.actions.tables.StorageAction;
+import com.kingsrook.qqq.backend.core.context.QContext;
 import com.kingsrook.qqq.backend.core.exceptions.QException;
 import com.kingsrook.qqq.backend.core.model.actions.processes.RunProcessInput;
 import com.kingsrook.qqq.backend.core.model.actions.processes.RunProcessOutput;
 import com.kingsrook.qqq.backend.core.model.actions.tables.insert.InsertInput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QCriteriaOperator;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QFilterCriteria;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QQueryFilter;
+import com.kingsrook.qqq.backend.core.model.actions.tables.storage.StorageInput;
 import com.kingsrook.qqq.backend.core.model.data.QRecord;
 import com.kingsrook.qqq.backend.core.model.savedreports.SavedReport;
 import org.junit.jupiter.api.Test;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 
@@ -86,6 +99,171 @@ public class RenderReportForSFTPExportProcessTest extends BaseTest
 
 
 
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testParallelExports() throws QException
+   {
+      SFTPDataIntegrationQBitConfig qBitConfig = (SFTPDataIntegrationQBitConfig) QContext.getQInstance().getProcess(RenderReportForSFTPExportProcessMetaDataProducer.NAME).getSourceQBitConfig();
+      qBitConfig.setExportRenderThreads(4);
+      qBitConfig.setExportMaxConcurrentPerSFTPConnection(2);
+
+      Integer sftpConnectionId = new InsertAction().executeForRecord(new InsertInput(SFTPConnection.TABLE_NAME).withRecordEntity(new SFTPConnection()
+         .withName("Test Conn")
+         .withHostname("localhost")
+         .withIsActive(true)
+      )).getValueInteger("id");
+
+      List<Integer> sftpExportConfigIds = new ArrayList<>();
+      for(int i = 0; i < 3; i++)
+      {
+         Integer savedReportId = new InsertAction().executeForRecord(new InsertInput(SavedReport.TABLE_NAME).withRecordEntity(new SavedReport()
+            .withTableName(SFTPConnection.TABLE_NAME)
+            .withLabel("report " + i)
+            .withQueryFilterJson("{}")
+            .withColumnsJson("""
+               {"columns":[{"name":"id","isVisible":true,"width":75,"pinned":"left"},{"name":"name","isVisible":true,"width":75,"pinned":"left"}]}
+               """)
+         )).getValueInteger("id");
+
+         sftpExportConfigIds.add(new InsertAction().executeForRecord(new InsertInput(SFTPExportConfig.TABLE_NAME).withRecordEntity(new SFTPExportConfig()
+            .withName("Test Config " + i)
+            .withSftpConnectionId(sftpConnectionId)
+            .withSavedReportId(savedReportId)
+            .withFormat("CSV")
+            .withIsActive(true)
+         )).getValueInteger("id"));
+      }
+
+      RunProcessInput input = new RunProcessInput();
+      input.setProcessName(RenderReportForSFTPExportProcessMetaDataProducer.NAME);
+      input.setCallback(QProcessCallbackFactory.forFilter(new QQueryFilter(new QFilterCriteria("id", QCriteriaOperator.IN, sftpExportConfigIds))));
+      input.setFrontendStepBehavior(RunProcessInput.FrontendStepBehavior.SKIP);
+      new RunProcessAction().execute(input);
+
+      List<QRecord> exportedFileRecords = QueryAction.execute(SFTPExportDestinationFileTableMetaDataProducer.NAME, null);
+      assertEquals(3, exportedFileRecords.size());
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testStreamedExport() throws Exception
+   {
+      SFTPDataIntegrationQBitConfig qBitConfig = (SFTPDataIntegrationQBitConfig) QContext.getQInstance().getProcess(RenderReportForSFTPExportProcessMetaDataProducer.NAME).getSourceQBitConfig();
+      qBitConfig.setStreamExportsToDestination(true);
+
+      Integer savedReportId = new InsertAction().executeForRecord(new InsertInput(SavedReport.TABLE_NAME).withRecordEntity(new SavedReport()
+         .withTableName(SFTPConnection.TABLE_NAME)
+         .withLabel("sftp conns report")
+         .withQueryFilterJson("{}")
+         .withColumnsJson("""
+            {"columns":[{"name":"id","isVisible":true,"width":75,"pinned":"left"},{"name":"name","isVisible":true,"width":75,"pinned":"left"}]}
+            """)
+      )).getValueInteger("id");
+
+      Integer sftpConnectionId = new InsertAction().executeForRecord(new InsertInput(SFTPConnection.TABLE_NAME).withRecordEntity(new SFTPConnection()
+         .withName("Test Conn")
+         .withHostname("localhost")
+         .withIsActive(true)
+      )).getValueInteger("id");
+
+      QRecord sftpExportConfigRecord = new InsertAction().executeForRecord(new InsertInput(SFTPExportConfig.TABLE_NAME).withRecordEntity(new SFTPExportConfig()
+         .withName("Test Config")
+         .withSftpConnectionId(sftpConnectionId)
+         .withSavedReportId(savedReportId)
+         .withFormat("CSV")
+         .withIsActive(true)
+      ));
+
+      runProcess(sftpExportConfigRecord);
+
+      List<QRecord> exportedFileRecords = QueryAction.execute(SFTPExportDestinationFileTableMetaDataProducer.NAME, null);
+      assertEquals(1, exportedFileRecords.size());
+
+      String fileName = exportedFileRecords.get(0).getValueString("fileName");
+      assertThat(fileName).matches("sftp conns report - 20..-..-..-....\\.csv");
+
+      try(InputStream inputStream = new StorageAction().getInputStream(new StorageInput(SFTPExportDestinationFileTableMetaDataProducer.NAME).withReference(fileName)))
+      {
+         assertThat(new String(inputStream.readAllBytes(), StandardCharsets.UTF_8)).contains("Test Conn");
+      }
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testGzipCompressedExport() throws Exception
+   {
+      Integer savedReportId = new InsertAction().executeForRecord(new InsertInput(SavedReport.TABLE_NAME).withRecordEntity(new SavedReport()
+         .withTableName(SFTPConnection.TABLE_NAME)
+         .withLabel("sftp conns report")
+         .withQueryFilterJson("{}")
+         .withColumnsJson("""
+            {"columns":[{"name":"id","isVisible":true,"width":75,"pinned":"left"},{"name":"name","isVisible":true,"width":75,"pinned":"left"}]}
+            """)
+      )).getValueInteger("id");
+
+      Integer sftpConnectionId = new InsertAction().executeForRecord(new InsertInput(SFTPConnection.TABLE_NAME).withRecordEntity(new SFTPConnection()
+         .withName("Test Conn")
+         .withHostname("localhost")
+         .withIsActive(true)
+      )).getValueInteger("id");
+
+      QRecord sftpExportConfigRecord = new InsertAction().executeForRecord(new InsertInput(SFTPExportConfig.TABLE_NAME).withRecordEntity(new SFTPExportConfig()
+         .withName("Test Config")
+         .withSftpConnectionId(sftpConnectionId)
+         .withSavedReportId(savedReportId)
+         .withFormat("CSV")
+         .withCompression(ExportCompressionEnum.GZIP.getId())
+         .withIsActive(true)
+      ));
+
+      runProcess(sftpExportConfigRecord);
+
+      List<QRecord> exportedFileRecords = QueryAction.execute(SFTPExportDestinationFileTableMetaDataProducer.NAME, null);
+      assertEquals(1, exportedFileRecords.size());
+
+      String fileName = exportedFileRecords.get(0).getValueString("fileName");
+      assertThat(fileName).matches("sftp conns report - 20..-..-..-....\\.csv\\.gz");
+
+      try(InputStream inputStream = new GZIPInputStream(new StorageAction().getInputStream(new StorageInput(SFTPExportDestinationFileTableMetaDataProducer.NAME).withReference(fileName))))
+      {
+         assertThat(new String(inputStream.readAllBytes(), StandardCharsets.UTF_8)).contains("Test Conn");
+      }
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testFailedWriteDeletesPartialFile() throws Exception
+   {
+      for(ExportCompressionEnum compression : new ExportCompressionEnum[] { null, ExportCompressionEnum.GZIP, ExportCompressionEnum.ZSTD })
+      {
+         String fileName = "partial-" + compression + ".csv";
+         assertThatThrownBy(() -> RenderReportForSFTPExportLoadStep.writeToDestination(SFTPExportDestinationFileTableMetaDataProducer.NAME, fileName, compression, outputStream ->
+         {
+            outputStream.write("id,name\n".repeat(100_000).getBytes(StandardCharsets.UTF_8));
+            outputStream.flush();
+            throw (new QException("render failed"));
+         })).hasMessageContaining("render failed");
+
+         assertThat(QueryAction.execute(SFTPExportDestinationFileTableMetaDataProducer.NAME, null)).isEmpty();
+      }
+   }
+
+
+
    /***************************************************************************
     **
     ***************************************************************************/
@@ -22,32 +22,65 @@
 package com.kingsrook.qbits.sftpdataintegration.process;
 
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 import com.kingsrook.qbits.sftpdataintegration.BaseTest;
+import com.kingsrook.qbits.sftpdataintegration.SFTPDataIntegrationQBitConfig;
 import com.kingsrook.qbits.sftpdataintegration.metadata.SFTPImportFileSyncProcessMetaDataProducer;
 import com.kingsrook.qbits.sftpdataintegration.metadata.SFTPImportSourceFileTableMetaDataProducer;
 import com.kingsrook.qbits.sftpdataintegration.metadata.SFTPImportStagingFileTableMetaDataProducer;
 import com.kingsrook.qbits.sftpdataintegration.model.ImportFile;
+import com.kingsrook.qbits.sftpdataintegration.model.ImportFileStatusEnum;
 import com.kingsrook.qbits.sftpdataintegration.model.SFTPImportConfig;
+import com.kingsrook.qbits.sftpdataintegration.utils.ImportFileBulkLoadQueue;
+import com.kingsrook.qqq.backend.core.actions.customizers.TableCustomizerInterface;
+import com.kingsrook.qqq.backend.core.actions.customizers.TableCustomizers;
 import com.kingsrook.qqq.backend.core.actions.processes.QProcessCallbackFactory;
 import com.kingsrook.qqq.backend.core.actions.processes.RunProcessAction;
+import com.kingsrook.qqq.backend.core.actions.tables.DeleteAction;
 import com.kingsrook.qqq.backend.core.actions.tables.GetAction;
 import com.kingsrook.qqq.backend.core.actions.tables.InsertAction;
 import com.kingsrook.qqq.backend.core.actions.tables.QueryAction;
+import com.kingsrook.qqq.backend.core.actions.tables.StorageAction;
 import com.kingsrook.qqq.backend.core.actions.tables.UpdateAction;
+import com.kingsrook.qqq.backend.core.context.QContext;
 import com.kingsrook.qqq.backend.core.exceptions.QException;
+import com.kingsrook.qqq.backend.core.model.actions.AbstractActionInput;
 import com.kingsrook.qqq.backend.core.model.actions.processes.RunProcessInput;
 import com.kingsrook.qqq.backend.core.model.actions.processes.RunProcessOutput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.delete.DeleteInput;
 import com.kingsrook.qqq.backend.core.model.actions.tables.insert.InsertInput;
 import com.kingsrook.qqq.backend.core.model.actions.tables.query.QCriteriaOperator;
 import com.kingsrook.qqq.backend.core.model.actions.tables.query.QFilterCriteria;
 import com.kingsrook.qqq.backend.core.model.actions.tables.query.QQueryFilter;
+import com.kingsrook.qqq.backend.core.model.actions.tables.storage.StorageInput;
 import com.kingsrook.qqq.backend.core.model.actions.tables.update.UpdateInput;
 import com.kingsrook.qqq.backend.core.model.data.QRecord;
+import com.kingsrook.qqq.backend.core.model.metadata.code.QCodeReference;
+import com.kingsrook.qqq.backend.core.model.savedbulkloadprofiles.SavedBulkLoadProfile;
+import com.kingsrook.qqq.backend.core.processes.implementations.bulk.insert.model.BulkInsertMapping;
+import com.kingsrook.qqq.backend.core.processes.implementations.bulk.insert.model.BulkLoadProfile;
+import com.kingsrook.qqq.backend.core.processes.implementations.bulk.insert.model.BulkLoadProfileField;
+import com.kingsrook.qqq.backend.core.utils.JsonUtils;
 import org.junit.jupiter.api.Test;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 
@@ -132,6 +165,592 @@ class SFTPImportFileSyncProcessTest extends BaseTest
 
 
 
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testStreamImportFileContents() throws Exception
+   {
+      getQBitConfig().setStreamImportFileContents(true);
+
+      QRecord sftpImportConfig = new InsertAction().execute(new InsertInput(SFTPImportConfig.TABLE_NAME).withRecordEntity(new SFTPImportConfig()
+         .withName("test")
+         .withSftpConnectionId(1)
+         .withIsActive(true)
+         .withDeleteImportedFiles(true)
+         .withSavedBulkLoadProfileId(47))).getRecords().get(0);
+
+      String fileName = UUID.randomUUID() + ".csv";
+      String contents = "one,two,three\n" + "1,2,3\n".repeat(50_000);
+      new InsertAction().execute(new InsertInput(SFTPImportSourceFileTableMetaDataProducer.NAME).withRecord(
+         new QRecord().withValue("fileName", fileName).withValue("contents", contents)));
+
+      runProcess(sftpImportConfig);
+
+      ////////////////////////////////////////////////////////////////////////
+      // make sure the staged file has the full contents of the source file //
+      ////////////////////////////////////////////////////////////////////////
+      List<QRecord> importFileRecords = QueryAction.execute(ImportFile.TABLE_NAME, new QQueryFilter(new QFilterCriteria("sourcePath", QCriteriaOperator.EQUALS, fileName)));
+      assertEquals(1, importFileRecords.size());
+      assertEquals(contents, readStagedFile(importFileRecords.get(0).getValueString("stagedPath")));
+
+      ///////////////////////////////////////////
+      // and the source file should be deleted //
+      ///////////////////////////////////////////
+      assertNull(GetAction.execute(SFTPImportSourceFileTableMetaDataProducer.NAME, fileName));
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testDecompressFiles() throws Exception
+   {
+      getQBitConfig().setStreamImportFileContents(true);
+
+      QRecord sftpImportConfig = new InsertAction().execute(new InsertInput(SFTPImportConfig.TABLE_NAME).withRecordEntity(new SFTPImportConfig()
+         .withName("test")
+         .withSftpConnectionId(1)
+         .withIsActive(true)
+         .withDeleteImportedFiles(true)
+         .withDecompressFiles(true)
+         .withSavedBulkLoadProfileId(47))).getRecords().get(0);
+
+      String prefix      = UUID.randomUUID().toString();
+      String gzipName    = prefix + "-a.csv.gz";
+      String zipName     = prefix + "-b.zip";
+      String gzipContent = "one,two\n1,2\n";
+      new InsertAction().execute(new InsertInput(SFTPImportSourceFileTableMetaDataProducer.NAME).withRecords(List.of(
+         new QRecord().withValue("fileName", gzipName).withValue("contents", gzip(gzipContent)),
+         new QRecord().withValue("fileName", zipName).withValue("contents", zip(List.of(
+            "x.csv", "one,two\n3,4\n",
+            "dir/y.csv", "one,two\n5,6\n",
+            "__MACOSX/._x.csv", "junk"))))));
+
+      runProcess(sftpImportConfig);
+
+      /////////////////////////////////////////////////////////////////////
+      // the gzip file is staged decompressed, without its .gz extension //
+      /////////////////////////////////////////////////////////////////////
+      List<QRecord> gzipImportFiles = QueryAction.execute(ImportFile.TABLE_NAME, new QQueryFilter(new QFilterCriteria("sourcePath", QCriteriaOperator.EQUALS, gzipName)));
+      assertEquals(1, gzipImportFiles.size());
+      assertThat(gzipImportFiles.get(0).getValueString("stagedPath")).endsWith(prefix + "-a.csv");
+      assertNull(gzipImportFiles.get(0).getValueString("archiveEntryName"));
+      assertEquals(gzipContent, readStagedFile(gzipImportFiles.get(0).getValueString("stagedPath")));
+
+      ///////////////////////////////////////////////////////////////////
+      // and the zip gets an import file per (non-metadata) file entry //
+      ///////////////////////////////////////////////////////////////////
+      List<QRecord> zipImportFiles = QueryAction.execute(ImportFile.TABLE_NAME, new QQueryFilter(new QFilterCriteria("sourcePath", QCriteriaOperator.EQUALS, zipName)));
+      assertEquals(Set.of("x.csv", "dir/y.csv"), zipImportFiles.stream().map(r -> r.getValueString("archiveEntryName")).collect(Collectors.toSet()));
+      for(QRecord zipImportFile : zipImportFiles)
+      {
+         String expectedContents = zipImportFile.getValueString("archiveEntryName").equals("x.csv") ? "one,two\n3,4\n" : "one,two\n5,6\n";
+         assertEquals(expectedContents, readStagedFile(zipImportFile.getValueString("stagedPath")));
+      }
+
+      /////////////////////////////////////////////
+      // and both source files should be deleted //
+      /////////////////////////////////////////////
+      assertNull(GetAction.execute(SFTPImportSourceFileTableMetaDataProducer.NAME, gzipName));
+      assertNull(GetAction.execute(SFTPImportSourceFileTableMetaDataProducer.NAME, zipName));
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testByteBudgetedRecordPipe() throws Exception
+   {
+      getQBitConfig().setImportFileSyncMaxBytesInFlight(100L);
+
+      QRecord sftpImportConfig = new InsertAction().execute(new InsertInput(SFTPImportConfig.TABLE_NAME).withRecordEntity(new SFTPImportConfig()
+         .withName("test")
+         .withSftpConnectionId(1)
+         .withIsActive(true)
+         .withSavedBulkLoadProfileId(47))).getRecords().get(0);
+
+      //////////////////////////////////////////////////////////////////////////
+      // a mix of files that fit in the budget together, and one that doesn't //
+      //////////////////////////////////////////////////////////////////////////
+      String prefix = UUID.randomUUID().toString();
+      for(int i = 0; i < 10; i++)
+      {
+         new InsertAction().execute(new InsertInput(SFTPImportSourceFileTableMetaDataProducer.NAME).withRecord(
+            new QRecord().withValue("fileName", prefix + "-" + i + ".csv").withValue("contents", "one,two\n" + i + ",2\n")));
+      }
+
+      String bigContents = "one,two\n" + "1,2\n".repeat(1000);
+      new InsertAction().execute(new InsertInput(SFTPImportSourceFileTableMetaDataProducer.NAME).withRecord(
+         new QRecord().withValue("fileName", prefix + "-big.csv").withValue("contents", bigContents)));
+
+      runProcess(sftpImportConfig);
+
+      List<QRecord> importFileRecords = QueryAction.execute(ImportFile.TABLE_NAME, new QQueryFilter(new QFilterCriteria("sourcePath", QCriteriaOperator.STARTS_WITH, prefix)));
+      assertEquals(11, importFileRecords.size());
+
+      QRecord bigImportFile = importFileRecords.stream().filter(r -> r.getValueString("sourcePath").endsWith("-big.csv")).findFirst().orElseThrow();
+      assertEquals(bigContents, readStagedFile(bigImportFile.getValueString("stagedPath")));
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testDeferredSourceFileDeletes() throws Exception
+   {
+      QRecord sftpImportConfig = new InsertAction().execute(new InsertInput(SFTPImportConfig.TABLE_NAME).withRecordEntity(new SFTPImportConfig()
+         .withName("test")
+         .withSftpConnectionId(1)
+         .withIsActive(true)
+         .withDeleteImportedFiles(true)
+         .withFileNamePattern("%.csv")
+         .withSavedBulkLoadProfileId(47))).getRecords().get(0);
+
+      //////////////////////////////////////////////////////////////////////////
+      // a file imported by an earlier run, whose delete is still pending -   //
+      // named so that it won't be listed by this run, but still gets deleted //
+      //////////////////////////////////////////////////////////////////////////
+      String pendingFileName         = UUID.randomUUID() + ".txt";
+      String newFileName             = UUID.randomUUID() + ".csv";
+      String alreadyImportedFileName = UUID.randomUUID() + ".csv";
+      new InsertAction().execute(new InsertInput(SFTPImportSourceFileTableMetaDataProducer.NAME).withRecords(List.of(
+         new QRecord().withValue("fileName", pendingFileName).withValue("contents", "one,two\n1,2\n"),
+         new QRecord().withValue("fileName", newFileName).withValue("contents", "one,two\n3,4\n"),
+         new QRecord().withValue("fileName", alreadyImportedFileName).withValue("contents", "one,two\n5,6\n")
+      )));
+      new InsertAction().execute(new InsertInput(ImportFile.TABLE_NAME).withRecordEntity(new ImportFile()
+         .withSftpImportConfigId(sftpImportConfig.getValueInteger("id"))
+         .withSourcePath(pendingFileName)
+         .withStagedPath(UUID.randomUUID() + "/" + pendingFileName)
+         .withImportFileStatusId(ImportFileStatusEnum.COMPLETE.getId())
+         .withSourceFileDeletePending(true)));
+
+      /////////////////////////////////////////////////////////////////////
+      // and a file imported by an earlier run (with no delete pending - //
+      // e.g., from before delete mode was turned on) - this run skips   //
+      // importing it again, but still deletes it                        //
+      /////////////////////////////////////////////////////////////////////
+      new InsertAction().execute(new InsertInput(ImportFile.TABLE_NAME).withRecordEntity(new ImportFile()
+         .withSftpImportConfigId(sftpImportConfig.getValueInteger("id"))
+         .withSourcePath(alreadyImportedFileName)
+         .withStagedPath(UUID.randomUUID() + "/" + alreadyImportedFileName)
+         .withImportFileStatusId(ImportFileStatusEnum.COMPLETE.getId())
+         .withSourceFileDeletePending(false)));
+
+      runProcess(sftpImportConfig);
+
+      assertNull(GetAction.execute(SFTPImportSourceFileTableMetaDataProducer.NAME, pendingFileName));
+      assertNull(GetAction.execute(SFTPImportSourceFileTableMetaDataProducer.NAME, newFileName));
+      assertNull(GetAction.execute(SFTPImportSourceFileTableMetaDataProducer.NAME, alreadyImportedFileName));
+
+      List<QRecord> importFileRecords = QueryAction.execute(ImportFile.TABLE_NAME, new QQueryFilter(new QFilterCriteria("sourcePath", QCriteriaOperator.IN, List.of(pendingFileName, newFileName))));
+      assertEquals(2, importFileRecords.size());
+      for(QRecord importFileRecord : importFileRecords)
+      {
+         assertFalse(importFileRecord.getValueBoolean("sourceFileDeletePending"));
+      }
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testBulkLoadImmediately() throws Exception
+   {
+      Integer savedBulkLoadProfileId = new InsertAction().execute(new InsertInput(SavedBulkLoadProfile.TABLE_NAME).withRecordEntity(new SavedBulkLoadProfile()
+         .withLabel("Test Profile")
+         .withTableName(ImportFile.TABLE_NAME)
+         .withMappingJson(JsonUtils.toJson(new BulkLoadProfile()
+            .withHasHeaderRow(true)
+            .withVersion("v1")
+            .withLayout(BulkInsertMapping.Layout.FLAT.getPossibleValueId())
+            .withFieldList(new ArrayList<>(List.of(
+               new BulkLoadProfileField().withFieldName("stagedPath").withHeaderName("Staged Path"),
+               new BulkLoadProfileField().withFieldName("sourcePath").withDefaultValue("loaded")
+            )))
+         ))
+      )).getRecords().get(0).getValueInteger("id");
+
+      QRecord sftpImportConfig = new InsertAction().execute(new InsertInput(SFTPImportConfig.TABLE_NAME).withRecordEntity(new SFTPImportConfig()
+         .withName("test")
+         .withSftpConnectionId(1)
+         .withIsActive(true)
+         .withBulkLoadImmediately(true)
+         .withSavedBulkLoadProfileId(savedBulkLoadProfileId))).getRecords().get(0);
+
+      String fileName = UUID.randomUUID() + ".csv";
+      new InsertAction().execute(new InsertInput(SFTPImportSourceFileTableMetaDataProducer.NAME).withRecord(
+         new QRecord().withValue("fileName", fileName).withValue("contents", "Staged Path\n/loaded.csv\n")));
+
+      runProcess(sftpImportConfig);
+      ImportFileBulkLoadQueue.getInstance().awaitIdle(30, TimeUnit.SECONDS);
+
+      ImportFile importFile = new ImportFile(QueryAction.execute(ImportFile.TABLE_NAME, new QQueryFilter(new QFilterCriteria("sourcePath", QCriteriaOperator.EQUALS, fileName))).get(0));
+      assertEquals(ImportFileStatusEnum.COMPLETE.getId(), importFile.getImportFileStatusId());
+
+      List<QRecord> loadedRecords = QueryAction.execute(ImportFile.TABLE_NAME, new QQueryFilter(new QFilterCriteria("sourcePath", QCriteriaOperator.EQUALS, "loaded")));
+      assertEquals(1, loadedRecords.size());
+      assertEquals("/loaded.csv", loadedRecords.get(0).getValueString("stagedPath"));
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testParallelStaging() throws Exception
+   {
+      getQBitConfig().setImportFileStagingThreads(4);
+
+      QRecord sftpImportConfig = new InsertAction().execute(new InsertInput(SFTPImportConfig.TABLE_NAME).withRecordEntity(new SFTPImportConfig()
+         .withName("test")
+         .withSftpConnectionId(1)
+         .withIsActive(true)
+         .withSavedBulkLoadProfileId(47))).getRecords().get(0);
+
+      String prefix = UUID.randomUUID().toString();
+      for(int i = 0; i < 20; i++)
+      {
+         new InsertAction().execute(new InsertInput(SFTPImportSourceFileTableMetaDataProducer.NAME).withRecord(
+            new QRecord().withValue("fileName", prefix + "-" + i + ".csv").withValue("contents", "one,two\n" + i + ",2\n")));
+      }
+
+      runProcess(sftpImportConfig);
+
+      List<QRecord> importFileRecords = QueryAction.execute(ImportFile.TABLE_NAME, new QQueryFilter(new QFilterCriteria("sourcePath", QCriteriaOperator.STARTS_WITH, prefix)));
+      assertEquals(20, importFileRecords.size());
+      for(QRecord importFileRecord : importFileRecords)
+      {
+         String sourcePath = importFileRecord.getValueString("sourcePath");
+         String i          = sourcePath.substring(prefix.length() + 1, sourcePath.length() - ".csv".length());
+         assertEquals("one,two\n" + i + ",2\n", readStagedFile(importFileRecord.getValueString("stagedPath")));
+
+         //////////////////////////////////////////////////////////////
+         // this config doesn't mark duplicates, so nothing's hashed //
+         //////////////////////////////////////////////////////////////
+         assertNull(importFileRecord.getValue("contentHash"));
+      }
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testParallelStagingWithinHostSessionLimit() throws Exception
+   {
+      SFTPDataIntegrationQBitConfig config = getQBitConfig();
+      config.setImportFileStagingThreads(4);
+      config.setMaxConcurrentSessionsPerSFTPHost(3);
+      config.setStreamImportFileContents(true);
+
+      //////////////////////////////////////////////////////////////////////
+      // reading from the host as they stage, the threads (each needing a //
+      // session) plus the extract step's session must fit the host limit //
+      //////////////////////////////////////////////////////////////////////
+      assertEquals(2, SFTPImportFileSyncLoadStep.getStagingThreads(config, true));
+      assertEquals(4, SFTPImportFileSyncLoadStep.getStagingThreads(config, false));
+
+      config.setMaxConcurrentSessionsPerSFTPHost(1);
+      assertEquals(1, SFTPImportFileSyncLoadStep.getStagingThreads(config, true));
+      config.setMaxConcurrentSessionsPerSFTPHost(3);
+
+      QRecord sftpImportConfig = new InsertAction().execute(new InsertInput(SFTPImportConfig.TABLE_NAME).withRecordEntity(new SFTPImportConfig()
+         .withName("test")
+         .withSftpConnectionId(1)
+         .withIsActive(true)
+         .withSavedBulkLoadProfileId(47))).getRecords().get(0);
+
+      String prefix = UUID.randomUUID().toString();
+      for(int i = 0; i < 20; i++)
+      {
+         new InsertAction().execute(new InsertInput(SFTPImportSourceFileTableMetaDataProducer.NAME).withRecord(
+            new QRecord().withValue("fileName", prefix + "-" + i + ".csv").withValue("contents", "one,two\n" + i + ",2\n")));
+      }
+
+      runProcess(sftpImportConfig);
+
+      List<QRecord> importFileRecords = QueryAction.execute(ImportFile.TABLE_NAME, new QQueryFilter(new QFilterCriteria("sourcePath", QCriteriaOperator.STARTS_WITH, prefix)));
+      assertEquals(20, importFileRecords.size());
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testModifyDateWatermark() throws Exception
+   {
+      QRecord sftpImportConfig = new InsertAction().execute(new InsertInput(SFTPImportConfig.TABLE_NAME).withRecordEntity(new SFTPImportConfig()
+         .withName("test")
+         .withSftpConnectionId(1)
+         .withIsActive(true)
+         .withDeleteImportedFiles(false)
+         .withUseModifyDateWatermark(true)
+         .withSavedBulkLoadProfileId(47))).getRecords().get(0);
+
+      String prefix = UUID.randomUUID().toString();
+      for(int i = 0; i < 2; i++)
+      {
+         new InsertAction().execute(new InsertInput(SFTPImportSourceFileTableMetaDataProducer.NAME).withRecord(
+            new QRecord().withValue("fileName", prefix + "-" + i + ".csv").withValue("contents", "one,two\n1,2\n")));
+      }
+
+      runProcess(sftpImportConfig);
+      QQueryFilter prefixFilter = new QQueryFilter(new QFilterCriteria("sourcePath", QCriteriaOperator.STARTS_WITH, prefix));
+      assertEquals(2, QueryAction.execute(ImportFile.TABLE_NAME, prefixFilter).size());
+
+      SFTPImportConfig updatedConfig = new SFTPImportConfig(GetAction.execute(SFTPImportConfig.TABLE_NAME, sftpImportConfig.getValue("id")));
+      assertNotNull(updatedConfig.getWatermarkModifyDate());
+      assertNotNull(updatedConfig.getWatermarkFileNames());
+
+      ///////////////////////////////////////////////////////////////////////////////
+      // forget about the import files - the watermark alone should keep them from //
+      // being imported again (where, without it, the IN-query dedupe would not)   //
+      ///////////////////////////////////////////////////////////////////////////////
+      new DeleteAction().execute(new DeleteInput(ImportFile.TABLE_NAME).withQueryFilter(prefixFilter));
+      runProcess(sftpImportConfig);
+      assertEquals(0, QueryAction.execute(ImportFile.TABLE_NAME, prefixFilter).size());
+
+      //////////////////////////////////////////////
+      // but a new file, after the watermark, is. //
+      //////////////////////////////////////////////
+      Thread.sleep(10);
+      new InsertAction().execute(new InsertInput(SFTPImportSourceFileTableMetaDataProducer.NAME).withRecord(
+         new QRecord().withValue("fileName", prefix + "-new.csv").withValue("contents", "one,two\n1,2\n")));
+      runProcess(sftpImportConfig);
+
+      List<QRecord> importFileRecords = QueryAction.execute(ImportFile.TABLE_NAME, prefixFilter);
+      assertEquals(1, importFileRecords.size());
+      assertEquals(prefix + "-new.csv", importFileRecords.get(0).getValueString("sourcePath"));
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testWatermarkNotSavedWhenALaterPageFails() throws Exception
+   {
+      QContext.getQInstance().getTable(ImportFile.TABLE_NAME).withCustomizer(TableCustomizers.PRE_INSERT_RECORD, new QCodeReference(FailingImportFileInsertCustomizer.class));
+
+      QRecord sftpImportConfig = new InsertAction().execute(new InsertInput(SFTPImportConfig.TABLE_NAME).withRecordEntity(new SFTPImportConfig()
+         .withName("test")
+         .withSftpConnectionId(1)
+         .withIsActive(true)
+         .withDeleteImportedFiles(false)
+         .withUseModifyDateWatermark(true)
+         .withSavedBulkLoadProfileId(47))).getRecords().get(0);
+
+      ////////////////////////////////////////////////////////////////////
+      // files are listed in modify-date order - so the failing file is //
+      // on the last page, after the other files' pages are inserted    //
+      ////////////////////////////////////////////////////////////////////
+      String prefix = UUID.randomUUID().toString();
+      for(String suffix : List.of("-0.csv", "-1.csv", FailingImportFileInsertCustomizer.FAILING_SUFFIX))
+      {
+         new InsertAction().execute(new InsertInput(SFTPImportSourceFileTableMetaDataProducer.NAME).withRecord(
+            new QRecord().withValue("fileName", prefix + suffix).withValue("contents", "one,two\n1,2\n")));
+         Thread.sleep(10);
+      }
+
+      try
+      {
+         FailingImportFileInsertCustomizer.fail = true;
+         runProcess(sftpImportConfig);
+      }
+      catch(Exception e)
+      {
+         ///////////////////////////////////////////////
+         // expected - the run fails on its last page //
+         ///////////////////////////////////////////////
+      }
+      finally
+      {
+         FailingImportFileInsertCustomizer.fail = false;
+      }
+
+      QQueryFilter prefixFilter = new QQueryFilter(new QFilterCriteria("sourcePath", QCriteriaOperator.STARTS_WITH, prefix));
+      assertThat(QueryAction.execute(ImportFile.TABLE_NAME, prefixFilter).stream().map(r -> r.getValueString("sourcePath"))).doesNotContain(prefix + FailingImportFileInsertCustomizer.FAILING_SUFFIX);
+
+      SFTPImportConfig updatedConfig = new SFTPImportConfig(GetAction.execute(SFTPImportConfig.TABLE_NAME, sftpImportConfig.getValue("id")));
+      assertNull(updatedConfig.getWatermarkModifyDate());
+      assertNull(updatedConfig.getWatermarkFileNames());
+
+      ///////////////////////////////////////////////////////////////////////
+      // so the next run lists the failed file again, and imports it - and //
+      // (with every page in) saves the watermark                          //
+      ///////////////////////////////////////////////////////////////////////
+      runProcess(sftpImportConfig);
+      assertEquals(3, QueryAction.execute(ImportFile.TABLE_NAME, prefixFilter).size());
+
+      updatedConfig = new SFTPImportConfig(GetAction.execute(SFTPImportConfig.TABLE_NAME, sftpImportConfig.getValue("id")));
+      assertNotNull(updatedConfig.getWatermarkModifyDate());
+      assertThat(updatedConfig.getWatermarkFileNames()).contains(prefix + FailingImportFileInsertCustomizer.FAILING_SUFFIX);
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testImportedSourcePathIndex() throws Exception
+   {
+      getQBitConfig().setUseImportedSourcePathIndex(true);
+
+      QRecord sftpImportConfig = new InsertAction().execute(new InsertInput(SFTPImportConfig.TABLE_NAME).withRecordEntity(new SFTPImportConfig()
+         .withName("test")
+         .withSftpConnectionId(1)
+         .withIsActive(true)
+         .withDeleteImportedFiles(false)
+         .withSavedBulkLoadProfileId(47))).getRecords().get(0);
+      Integer sftpImportConfigId = sftpImportConfig.getValueInteger("id");
+
+      new InsertAction().execute(new InsertInput(SFTPImportSourceFileTableMetaDataProducer.NAME).withRecord(new QRecord().withValue("fileName", "a.csv").withValue("contents", "one\n1\n")));
+      runProcess(sftpImportConfig);
+      assertEquals(1, QueryAction.execute(ImportFile.TABLE_NAME, new QQueryFilter()).size());
+
+      //////////////////////////////////////////////////////////////////////////////
+      // simulate a file imported by another server, after our index was loaded - //
+      // it should be picked up by the index, and not imported again              //
+      //////////////////////////////////////////////////////////////////////////////
+      new InsertAction().execute(new InsertInput(ImportFile.TABLE_NAME).withRecordEntity(new ImportFile()
+         .withSftpImportConfigId(sftpImportConfigId)
+         .withSourcePath("b.csv")
+         .withStagedPath("elsewhere/b.csv")));
+
+      new InsertAction().execute(new InsertInput(SFTPImportSourceFileTableMetaDataProducer.NAME).withRecord(new QRecord().withValue("fileName", "b.csv").withValue("contents", "one\n1\n")));
+      new InsertAction().execute(new InsertInput(SFTPImportSourceFileTableMetaDataProducer.NAME).withRecord(new QRecord().withValue("fileName", "c.csv").withValue("contents", "one\n1\n")));
+      runProcess(sftpImportConfig);
+
+      List<QRecord> importFileRecords = QueryAction.execute(ImportFile.TABLE_NAME, new QQueryFilter());
+      assertEquals(3, importFileRecords.size());
+      assertEquals(Set.of("a.csv", "b.csv", "c.csv"), importFileRecords.stream().map(r -> r.getValueString("sourcePath")).collect(Collectors.toSet()));
+
+      //////////////////////////////////////////////////////////////////////////
+      // after deleting an import file, it can be imported again on next sync //
+      //////////////////////////////////////////////////////////////////////////
+      new DeleteAction().execute(new DeleteInput(ImportFile.TABLE_NAME).withQueryFilter(new QQueryFilter(new QFilterCriteria("sourcePath", QCriteriaOperator.EQUALS, "a.csv"))));
+      runProcess(sftpImportConfig);
+      assertEquals(1, QueryAction.execute(ImportFile.TABLE_NAME, new QQueryFilter(new QFilterCriteria("sourcePath", QCriteriaOperator.EQUALS, "a.csv"))).size());
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testContentHashAndDuplicates() throws Exception
+   {
+      QRecord sftpImportConfig = new InsertAction().execute(new InsertInput(SFTPImportConfig.TABLE_NAME).withRecordEntity(new SFTPImportConfig()
+         .withName("test")
+         .withSftpConnectionId(1)
+         .withIsActive(true)
+         .withDeleteImportedFiles(true)
+         .withMarkDuplicateContentFiles(true)
+         .withSavedBulkLoadProfileId(47))).getRecords().get(0);
+
+      String sameContents  = "one,two\n1,2\n";
+      String otherContents = "one,two\n3,4\n";
+      new InsertAction().execute(new InsertInput(SFTPImportSourceFileTableMetaDataProducer.NAME).withRecord(new QRecord().withValue("fileName", "a.csv").withValue("contents", sameContents)));
+      new InsertAction().execute(new InsertInput(SFTPImportSourceFileTableMetaDataProducer.NAME).withRecord(new QRecord().withValue("fileName", "b.csv").withValue("contents", sameContents)));
+      new InsertAction().execute(new InsertInput(SFTPImportSourceFileTableMetaDataProducer.NAME).withRecord(new QRecord().withValue("fileName", "c.csv").withValue("contents", otherContents)));
+      runProcess(sftpImportConfig);
+
+      List<ImportFile> importFiles = QueryAction.execute(ImportFile.TABLE_NAME, new QQueryFilter()).stream().map(ImportFile::new).toList();
+      assertEquals(3, importFiles.size());
+
+      String sameHash = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(sameContents.getBytes(StandardCharsets.UTF_8)));
+      assertEquals(2, importFiles.stream().filter(f -> sameHash.equals(f.getContentHash())).count());
+      assertEquals(1, importFiles.stream().filter(f -> ImportFileStatusEnum.DUPLICATE.getId().equals(f.getImportFileStatusId())).count());
+      assertEquals(2, importFiles.stream().filter(f -> ImportFileStatusEnum.PENDING.getId().equals(f.getImportFileStatusId())).count());
+
+      /////////////////////////////////////////////////////////////////////////
+      // a later file, under a new name, with the same contents as c.csv, is //
+      // also a duplicate                                                    //
+      /////////////////////////////////////////////////////////////////////////
+      new InsertAction().execute(new InsertInput(SFTPImportSourceFileTableMetaDataProducer.NAME).withRecord(new QRecord().withValue("fileName", "d.csv").withValue("contents", otherContents)));
+      runProcess(sftpImportConfig);
+
+      ImportFile importFileD = new ImportFile(QueryAction.execute(ImportFile.TABLE_NAME, new QQueryFilter(new QFilterCriteria("sourcePath", QCriteriaOperator.EQUALS, "d.csv"))).get(0));
+      assertEquals(ImportFileStatusEnum.DUPLICATE.getId(), importFileD.getImportFileStatusId());
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   static String readStagedFile(String stagedPath) throws Exception
+   {
+      try(InputStream inputStream = new StorageAction().getInputStream(new StorageInput(SFTPImportStagingFileTableMetaDataProducer.NAME).withReference(stagedPath)))
+      {
+         return (new String(inputStream.readAllBytes(), StandardCharsets.UTF_8));
+      }
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static byte[] gzip(String contents) throws IOException
+   {
+      ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+      try(GZIPOutputStream gzipOutputStream = new GZIPOutputStream(byteArrayOutputStream))
+      {
+         gzipOutputStream.write(contents.getBytes(StandardCharsets.UTF_8));
+      }
+      return (byteArrayOutputStream.toByteArray());
+   }
+
+
+
+   /***************************************************************************
+    ** build a zip, from a list of alternating entry names and contents.
+    ***************************************************************************/
+   private static byte[] zip(List<String> namesAndContents) throws IOException
+   {
+      ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+      try(ZipOutputStream zipOutputStream = new ZipOutputStream(byteArrayOutputStream))
+      {
+         for(int i = 0; i < namesAndContents.size(); i += 2)
+         {
+            zipOutputStream.putNextEntry(new ZipEntry(namesAndContents.get(i)));
+            zipOutputStream.write(namesAndContents.get(i + 1).getBytes(StandardCharsets.UTF_8));
+            zipOutputStream.closeEntry();
+         }
+      }
+      return (byteArrayOutputStream.toByteArray());
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   static SFTPDataIntegrationQBitConfig getQBitConfig()
+   {
+      return ((SFTPDataIntegrationQBitConfig) QContext.getQInstance().getProcess(SFTPImportFileSyncProcessMetaDataProducer.NAME).getSourceQBitConfig());
+   }
+
+
+
    /***************************************************************************
     **
     ***************************************************************************/
@@ -190,4 +809,31 @@ class SFTPImportFileSyncProcessTest extends BaseTest
       assertEquals(1, importFileRecords.size());
    }
 
-}
\ No newline at end of file
+
+   /***************************************************************************
+    ** fails inserts of import files for source files with a given suffix,
+    ** while turned on.
+    ***************************************************************************/
+   public static class FailingImportFileInsertCustomizer implements TableCustomizerInterface
+   {
+      public static final String FAILING_SUFFIX = "-fail.csv";
+
+      public static volatile boolean fail = false;
+
+
+
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      @Override
+      public List<QRecord> preInsertOrUpdate(AbstractActionInput input, List<QRecord> records, boolean isPreview, Optional<List<QRecord>> oldRecordList) throws QException
+      {
+         if(fail && records.stream().anyMatch(r -> r.getValueString("sourcePath").endsWith(FAILING_SUFFIX)))
+         {
+            throw (new QException("Failing insert of import file"));
+         }
+         return (records);
+      }
+   }
+
+}
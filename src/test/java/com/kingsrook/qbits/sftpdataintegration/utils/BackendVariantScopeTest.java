@@ -0,0 +1,142 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.sftpdataintegration.utils;
+
+
+import java.util.List;
+import com.kingsrook.qbits.sftpdataintegration.BaseTest;
+import com.kingsrook.qqq.backend.core.context.QContext;
+import com.kingsrook.qqq.backend.core.model.metadata.QBackendMetaData;
+import com.kingsrook.qqq.backend.core.model.metadata.QInstance;
+import com.kingsrook.qqq.backend.core.model.metadata.fields.QFieldMetaData;
+import com.kingsrook.qqq.backend.core.model.metadata.fields.QFieldType;
+import com.kingsrook.qqq.backend.core.model.metadata.tables.QTableMetaData;
+import com.kingsrook.qqq.backend.core.model.metadata.variants.BackendVariantsConfig;
+import com.kingsrook.qqq.backend.core.model.session.QSession;
+import com.kingsrook.qqq.backend.core.modules.backend.implementations.memory.MemoryBackendModule;
+import org.junit.jupiter.api.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+
+
+/*******************************************************************************
+ ** Unit test for BackendVariantScope
+ *******************************************************************************/
+class BackendVariantScopeTest extends BaseTest
+{
+   private static final String VARIANT_TYPE_KEY = "testVariant";
+   private static final String BACKEND_NAME     = "variantBackend";
+   private static final String TABLE_NAME       = "variantTable";
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testScopesAreSeparatePerThread() throws Exception
+   {
+      addVariantTable();
+      QSession originalSession = QContext.getQSession();
+
+      try(BackendVariantScope scope = BackendVariantScope.open(TABLE_NAME, 1))
+      {
+         assertThat(getCurrentVariant()).isEqualTo(1);
+         assertThat(originalSession.getBackendVariants()).doesNotContainKey(VARIANT_TYPE_KEY);
+
+         ////////////////////////////////////////////////////////////////////////////
+         // other threads can open their own scopes without changing this thread's //
+         ////////////////////////////////////////////////////////////////////////////
+         List<Exception> exceptions = ParallelTaskRunner.runAll(List.of(2, 3), 2, variantId ->
+         {
+            assertThat(getCurrentVariant()).isEqualTo(1);
+            try(BackendVariantScope innerScope = BackendVariantScope.open(TABLE_NAME, variantId))
+            {
+               assertThat(getCurrentVariant()).isEqualTo(variantId);
+            }
+         });
+         assertThat(exceptions).containsOnlyNulls();
+         assertThat(getCurrentVariant()).isEqualTo(1);
+      }
+
+      assertThat(QContext.getQSession()).isSameAs(originalSession);
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testReOpeningSameVariantIsNoOp() throws Exception
+   {
+      addVariantTable();
+      QSession originalSession = QContext.getQSession();
+
+      try(BackendVariantScope scope = BackendVariantScope.open(TABLE_NAME, 1))
+      {
+         QSession scopedSession = QContext.getQSession();
+
+         //////////////////////////////////////////////////////////////////
+         // re-opening with the variant already in place changes nothing //
+         //////////////////////////////////////////////////////////////////
+         try(BackendVariantScope sameScope = BackendVariantScope.open(TABLE_NAME, 1))
+         {
+            assertThat(QContext.getQSession()).isSameAs(scopedSession);
+         }
+         assertThat(QContext.getQSession()).isSameAs(scopedSession);
+      }
+
+      assertThat(QContext.getQSession()).isSameAs(originalSession);
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static Object getCurrentVariant()
+   {
+      return (QContext.getQSession().getBackendVariants() == null ? null : QContext.getQSession().getBackendVariants().get(VARIANT_TYPE_KEY));
+   }
+
+
+
+   /***************************************************************************
+    ** add a memory-backed table whose backend uses variants
+    ***************************************************************************/
+   private static void addVariantTable()
+   {
+      QInstance qInstance = QContext.getQInstance();
+
+      QBackendMetaData backend = new QBackendMetaData().withBackendType(MemoryBackendModule.class).withName(BACKEND_NAME);
+      backend.setUsesVariants(true);
+      backend.setBackendVariantsConfig(new BackendVariantsConfig().withVariantTypeKey(VARIANT_TYPE_KEY));
+      qInstance.addBackend(backend);
+
+      qInstance.addTable(new QTableMetaData()
+         .withName(TABLE_NAME)
+         .withBackendName(BACKEND_NAME)
+         .withPrimaryKeyField("id")
+         .withField(new QFieldMetaData("id", QFieldType.INTEGER)));
+   }
+
+}
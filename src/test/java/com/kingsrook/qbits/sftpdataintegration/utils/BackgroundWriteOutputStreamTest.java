@@ -0,0 +1,136 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.sftpdataintegration.utils;
+
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import com.kingsrook.qbits.sftpdataintegration.BaseTest;
+import org.junit.jupiter.api.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+
+/*******************************************************************************
+ ** Unit test for BackgroundWriteOutputStream
+ *******************************************************************************/
+class BackgroundWriteOutputStreamTest extends BaseTest
+{
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testAllBytesAreWrittenInOrder() throws IOException
+   {
+      byte[] bytes = new byte[100_000];
+      new Random(47).nextBytes(bytes);
+
+      ByteArrayOutputStream destination = new ByteArrayOutputStream();
+      try(OutputStream outputStream = new BackgroundWriteOutputStream(destination, 1000, 2))
+      {
+         /////////////////////////////////////////////////////////////////
+         // mix single-byte and array writes, of sizes that span chunks //
+         /////////////////////////////////////////////////////////////////
+         int offset = 0;
+         while(offset < bytes.length)
+         {
+            outputStream.write(bytes[offset++]);
+            int length = Math.min(1733, bytes.length - offset);
+            outputStream.write(bytes, offset, length);
+            offset += length;
+         }
+      }
+
+      assertThat(destination.toByteArray()).isEqualTo(bytes);
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testDestinationFailureIsThrown()
+   {
+      OutputStream failingDestination = new OutputStream()
+      {
+         @Override
+         public void write(int b) throws IOException
+         {
+            throw (new IOException("connection lost"));
+         }
+      };
+
+      assertThatThrownBy(() ->
+      {
+         try(OutputStream outputStream = new BackgroundWriteOutputStream(failingDestination, 10, 1))
+         {
+            for(int i = 0; i < 1000; i++)
+            {
+               outputStream.write(new byte[10]);
+            }
+         }
+      }).isInstanceOf(IOException.class)
+         .rootCause().hasMessage("connection lost");
+   }
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testAbortClosesDestinationWithoutPassingAlongBufferedBytes() throws IOException
+   {
+      AtomicBoolean         destinationClosed = new AtomicBoolean(false);
+      ByteArrayOutputStream destination       = new ByteArrayOutputStream()
+      {
+         @Override
+         public void close()
+         {
+            destinationClosed.set(true);
+         }
+      };
+
+      BackgroundWriteOutputStream outputStream = new BackgroundWriteOutputStream(destination, 1000, 2);
+      outputStream.write(new byte[500]);
+      outputStream.abort();
+
+      ///////////////////////////////////////////////////////////////////
+      // the half-chunk that was never handed off is dropped, not sent //
+      ///////////////////////////////////////////////////////////////////
+      assertThat(destinationClosed).isTrue();
+      assertThat(destination.size()).isZero();
+
+      assertThatThrownBy(() -> outputStream.write(1)).isInstanceOf(IOException.class);
+
+      //////////////////////////////////////////////
+      // closing after an abort doesn't write any //
+      //////////////////////////////////////////////
+      outputStream.close();
+      assertThat(destination.size()).isZero();
+   }
+
+}
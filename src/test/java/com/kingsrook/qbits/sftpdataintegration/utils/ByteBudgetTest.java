@@ -0,0 +1,181 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.sftpdataintegration.utils;
+
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import com.kingsrook.qbits.sftpdataintegration.BaseTest;
+import com.kingsrook.qqq.backend.core.actions.reporting.RecordPipe;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+import com.kingsrook.qqq.backend.core.model.data.QRecord;
+import org.junit.jupiter.api.Test;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+/*******************************************************************************
+ ** Unit test for ByteBudget
+ *******************************************************************************/
+class ByteBudgetTest extends BaseTest
+{
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testBudgetedPipeForwardsToWrappedPipe() throws Exception
+   {
+      String                 owner        = UUID.randomUUID().toString();
+      ByteBudget             byteBudget   = ByteBudget.open(owner, 100);
+      RecordPipe             wrappedPipe  = new RecordPipe();
+      ByteBudgetedRecordPipe budgetedPipe = new ByteBudgetedRecordPipe(wrappedPipe, byteBudget);
+      QRecord                record       = new QRecord().withValue("contents", "0123".getBytes(StandardCharsets.UTF_8));
+
+      budgetedPipe.addRecord(record);
+      assertEquals(4, byteBudget.getBytesInFlight());
+
+      ///////////////////////////////////////////////////////////////////
+      // the record is in the wrapped pipe - and counting or consuming //
+      // through the budgeted pipe reads from there too                //
+      ///////////////////////////////////////////////////////////////////
+      assertEquals(1, wrappedPipe.countAvailableRecords());
+      assertEquals(1, budgetedPipe.countAvailableRecords());
+      assertEquals(List.of(record), budgetedPipe.consumeAvailableRecords());
+      assertEquals(0, wrappedPipe.countAvailableRecords());
+
+      byteBudget.producerDone();
+      ByteBudget.release(owner, List.of(record));
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testBlocksWhenFullAndLetsOversizedThroughAlone() throws Exception
+   {
+      String     owner      = UUID.randomUUID().toString();
+      ByteBudget byteBudget = ByteBudget.open(owner, 10);
+
+      ///////////////////////////////////////////////////////////////////
+      // a record bigger than the whole budget gets through when empty //
+      ///////////////////////////////////////////////////////////////////
+      QRecord bigRecord = new QRecord().withValue("contents", "0123456789ABCDEF".getBytes(StandardCharsets.UTF_8));
+      byteBudget.acquire(ByteBudget.sizeOf(List.of(bigRecord)));
+      assertEquals(16, byteBudget.getBytesInFlight());
+
+      /////////////////////////////////////////////////////////////
+      // but then nothing else can get in until it's released... //
+      /////////////////////////////////////////////////////////////
+      CompletableFuture<Void> smallFuture = CompletableFuture.runAsync(() -> acquireUnchecked(byteBudget, 4));
+      assertThatThrownBy(() -> smallFuture.get(250, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+
+      ByteBudget.release(owner, List.of(bigRecord));
+      smallFuture.get(1, TimeUnit.SECONDS);
+      assertEquals(4, byteBudget.getBytesInFlight());
+
+      ///////////////////////////////////////////
+      // small ones fit together in the budget //
+      ///////////////////////////////////////////
+      byteBudget.acquire(4);
+      assertEquals(8, byteBudget.getBytesInFlight());
+
+      byteBudget.producerDone();
+      byteBudget.release(8);
+      assertEquals(0, byteBudget.getBytesInFlight());
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testBytesReleasedWhenConsumerFails() throws Exception
+   {
+      String     owner      = UUID.randomUUID().toString();
+      ByteBudget byteBudget = ByteBudget.open(owner, 10);
+
+      QRecord record = new QRecord().withValue("contents", "0123456789".getBytes(StandardCharsets.UTF_8));
+      byteBudget.acquire(ByteBudget.sizeOf(List.of(record)));
+
+      /////////////////////////////////////////////////////////////////
+      // a consumer that succeeds leaves the bytes for it to release //
+      // later (e.g., the load step, once the page is all staged)    //
+      /////////////////////////////////////////////////////////////////
+      ByteBudget.releaseIfConsumerFails(owner, List.of(record), () ->
+      {
+      });
+      assertEquals(10, byteBudget.getBytesInFlight());
+
+      ////////////////////////////////////////////////////////////////////////
+      // the producer is waiting for room - so when the consumer fails, the //
+      // bytes must still come back, or the producer would wait forever     //
+      ////////////////////////////////////////////////////////////////////////
+      CompletableFuture<Void> producerFuture = CompletableFuture.runAsync(() -> acquireUnchecked(byteBudget, 4));
+      assertThatThrownBy(() -> producerFuture.get(250, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+
+      assertThatThrownBy(() -> ByteBudget.releaseIfConsumerFails(owner, List.of(record), () ->
+      {
+         throw (new QException("consumer failed"));
+      })).isInstanceOf(QException.class).hasMessage("consumer failed");
+
+      producerFuture.get(1, TimeUnit.SECONDS);
+      assertEquals(4, byteBudget.getBytesInFlight());
+
+      /////////////////////////////////////////////
+      // and likewise for an unchecked exception //
+      /////////////////////////////////////////////
+      QRecord smallRecord = new QRecord().withValue("contents", "0123".getBytes(StandardCharsets.UTF_8));
+      assertThatThrownBy(() -> ByteBudget.releaseIfConsumerFails(owner, List.of(smallRecord), () ->
+      {
+         throw (new IllegalStateException("consumer failed"));
+      })).isInstanceOf(IllegalStateException.class);
+      assertEquals(0, byteBudget.getBytesInFlight());
+
+      byteBudget.producerDone();
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static void acquireUnchecked(ByteBudget byteBudget, long bytes)
+   {
+      try
+      {
+         byteBudget.acquire(bytes);
+      }
+      catch(Exception e)
+      {
+         throw (new RuntimeException(e));
+      }
+   }
+
+}
@@ -0,0 +1,195 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.sftpdataintegration.utils;
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import com.kingsrook.qbits.sftpdataintegration.BaseTest;
+import org.junit.jupiter.api.Test;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+
+/*******************************************************************************
+ ** Unit test for ConcurrencyLimiter
+ *******************************************************************************/
+class ConcurrencyLimiterTest extends BaseTest
+{
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testReEntrantPerOwnerAndLimitedAcrossOwners() throws Exception
+   {
+      String key = UUID.randomUUID().toString();
+
+      ConcurrencyLimiter.Permit outerPermit = ConcurrencyLimiter.acquire(key, 1, "ownerA");
+
+      //////////////////////////////////////////////////////////////
+      // the same owner can get the permit again without blocking //
+      //////////////////////////////////////////////////////////////
+      ConcurrencyLimiter.Permit innerPermit = CompletableFuture.supplyAsync(() -> acquireUnchecked(key, "ownerA")).get(1, TimeUnit.SECONDS);
+      innerPermit.close();
+
+      ///////////////////////////////////////////////////////////////////
+      // but another owner must wait until the first owner is all done //
+      ///////////////////////////////////////////////////////////////////
+      CompletableFuture<ConcurrencyLimiter.Permit> otherOwnerFuture = CompletableFuture.supplyAsync(() -> acquireUnchecked(key, "ownerB"));
+      assertThatThrownBy(() -> otherOwnerFuture.get(250, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+
+      outerPermit.close();
+      ConcurrencyLimiter.Permit otherOwnerPermit = otherOwnerFuture.get(1, TimeUnit.SECONDS);
+      otherOwnerPermit.close();
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testConcurrentSameOwnerTakesOnlyOnePermit() throws Exception
+   {
+      String key = UUID.randomUUID().toString();
+
+      //////////////////////////////////////////////////////////////////////////
+      // many threads of one owner racing to acquire (and release) the permit //
+      // must share one permit - so none is left over when they're all done   //
+      //////////////////////////////////////////////////////////////////////////
+      int             threads  = 8;
+      ExecutorService executor = Executors.newFixedThreadPool(threads);
+      for(int round = 0; round < 50; round++)
+      {
+         CountDownLatch                startLatch = new CountDownLatch(1);
+         List<CompletableFuture<Void>> futures    = new ArrayList<>();
+         for(int i = 0; i < threads; i++)
+         {
+            futures.add(CompletableFuture.runAsync(() ->
+            {
+               try
+               {
+                  startLatch.await();
+                  acquireUnchecked(key, "ownerA").close();
+               }
+               catch(InterruptedException e)
+               {
+                  throw (new RuntimeException(e));
+               }
+            }, executor));
+         }
+         startLatch.countDown();
+         CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(5, TimeUnit.SECONDS);
+      }
+      executor.shutdown();
+
+      ////////////////////////////////////////////////////
+      // so another owner can still get the only permit //
+      ////////////////////////////////////////////////////
+      CompletableFuture.supplyAsync(() -> acquireUnchecked(key, "ownerB")).get(1, TimeUnit.SECONDS).close();
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testLimitChangeTakesEffect() throws Exception
+   {
+      String key = UUID.randomUUID().toString();
+
+      ConcurrencyLimiter.Permit ownerAPermit = ConcurrencyLimiter.acquire(key, 1, "ownerA");
+
+      ///////////////////////////////////////////////////////////////
+      // with the limit raised, another owner doesn't need to wait //
+      ///////////////////////////////////////////////////////////////
+      ConcurrencyLimiter.Permit ownerBPermit = CompletableFuture.supplyAsync(() ->
+      {
+         try
+         {
+            return (ConcurrencyLimiter.acquire(key, 2, "ownerB"));
+         }
+         catch(Exception e)
+         {
+            throw (new RuntimeException(e));
+         }
+      }).get(1, TimeUnit.SECONDS);
+
+      ownerAPermit.close();
+      ownerBPermit.close();
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testTryAcquireGivesUpAfterTimeout() throws Exception
+   {
+      String key = UUID.randomUUID().toString();
+
+      ConcurrencyLimiter.Permit ownerAPermit = ConcurrencyLimiter.acquire(key, 1, "ownerA");
+      assertNull(ConcurrencyLimiter.tryAcquire(key, 1, "ownerB", 100));
+
+      ///////////////////////////////////////////////////////////////////
+      // giving up mustn't leave anything held - so once the permit is //
+      // released, another owner gets it straight away                 //
+      ///////////////////////////////////////////////////////////////////
+      ownerAPermit.close();
+      ConcurrencyLimiter.Permit ownerBPermit = ConcurrencyLimiter.tryAcquire(key, 1, "ownerB", 100);
+      assertNotNull(ownerBPermit);
+      ownerBPermit.close();
+
+      ConcurrencyLimiter.Permit ownerCPermit = ConcurrencyLimiter.tryAcquire(key, 1, "ownerC", 100);
+      assertNotNull(ownerCPermit);
+      ownerCPermit.close();
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static ConcurrencyLimiter.Permit acquireUnchecked(String key, String owner)
+   {
+      try
+      {
+         return (ConcurrencyLimiter.acquire(key, 1, owner));
+      }
+      catch(Exception e)
+      {
+         throw (new RuntimeException(e));
+      }
+   }
+
+}
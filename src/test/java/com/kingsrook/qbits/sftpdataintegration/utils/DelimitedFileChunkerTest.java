@@ -0,0 +1,134 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.sftpdataintegration.utils;
+
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import com.kingsrook.qbits.sftpdataintegration.BaseTest;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+/*******************************************************************************
+ ** Unit test for DelimitedFileChunker
+ *******************************************************************************/
+class DelimitedFileChunkerTest extends BaseTest
+{
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testSplitsWithHeaderAndQuotedNewlines() throws IOException
+   {
+      String                      csv    = "id,name\n1,\"Darin\nK\"\n2,Tim\n3,James\n";
+      List<ByteArrayOutputStream> chunks = new ArrayList<>();
+
+      int chunkCount = new DelimitedFileChunker(2, true).split(toInputStream(csv), chunkIndex ->
+      {
+         ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+         chunks.add(chunk);
+         return (chunk);
+      });
+
+      /////////////////////////////////////////////////////////////////////
+      // the quoted newline doesn't end a row - and the header is copied //
+      // into every chunk                                                //
+      /////////////////////////////////////////////////////////////////////
+      assertEquals(2, chunkCount);
+      assertEquals("id,name\n1,\"Darin\nK\"\n2,Tim\n", chunks.get(0).toString(StandardCharsets.UTF_8));
+      assertEquals("id,name\n3,James\n", chunks.get(1).toString(StandardCharsets.UTF_8));
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testSmallFileIsNotSplit() throws IOException
+   {
+      List<Integer> openedChunks = new ArrayList<>();
+      int chunkCount = new DelimitedFileChunker(5, true).split(toInputStream("id,name\n1,Darin\n2,Tim\n"), chunkIndex ->
+      {
+         openedChunks.add(chunkIndex);
+         return (new ByteArrayOutputStream());
+      });
+
+      assertEquals(0, chunkCount);
+      assertEquals(0, openedChunks.size());
+   }
+
+
+
+   /*******************************************************************************
+    ** once the first chunk outgrows the memory limit, it's written out as it's
+    ** read - even if it turns out to be the only chunk.
+    *******************************************************************************/
+   @Test
+   void testFirstChunkIsNotHeldPastMemoryLimit() throws IOException
+   {
+      String                      csv    = "id,name\n1,Darin\n2,Tim\n3,James\n";
+      List<ByteArrayOutputStream> chunks = new ArrayList<>();
+
+      int chunkCount = new DelimitedFileChunker(5, true, 10).split(toInputStream(csv), chunkIndex ->
+      {
+         ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+         chunks.add(chunk);
+         return (chunk);
+      });
+
+      assertEquals(1, chunkCount);
+      assertEquals(csv, chunks.get(0).toString(StandardCharsets.UTF_8));
+
+      ///////////////////////////////////////////////////////////////////
+      // and splitting with a small limit gives the same chunks as not //
+      ///////////////////////////////////////////////////////////////////
+      chunks.clear();
+      chunkCount = new DelimitedFileChunker(2, true, 10).split(toInputStream(csv), chunkIndex ->
+      {
+         ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+         chunks.add(chunk);
+         return (chunk);
+      });
+
+      assertEquals(2, chunkCount);
+      assertEquals("id,name\n1,Darin\n2,Tim\n", chunks.get(0).toString(StandardCharsets.UTF_8));
+      assertEquals("id,name\n3,James\n", chunks.get(1).toString(StandardCharsets.UTF_8));
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   private static ByteArrayInputStream toInputStream(String contents)
+   {
+      return (new ByteArrayInputStream(contents.getBytes(StandardCharsets.UTF_8)));
+   }
+
+}
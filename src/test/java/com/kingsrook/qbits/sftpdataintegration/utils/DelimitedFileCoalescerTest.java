@@ -0,0 +1,111 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.sftpdataintegration.utils;
+
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import com.kingsrook.qbits.sftpdataintegration.BaseTest;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+
+/*******************************************************************************
+ ** Unit test for DelimitedFileCoalescer
+ *******************************************************************************/
+class DelimitedFileCoalescerTest extends BaseTest
+{
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testKeepsFirstHeaderAndCountsRows() throws IOException
+   {
+      ByteArrayOutputStream  outputStream = new ByteArrayOutputStream();
+      DelimitedFileCoalescer coalescer    = new DelimitedFileCoalescer(outputStream, true);
+
+      ////////////////////////////////////////////////////////////////////////
+      // a quoted newline isn't a row - and a missing last newline is added //
+      ////////////////////////////////////////////////////////////////////////
+      assertEquals(2, coalescer.append(toInputStream("id,name\n1,\"Darin\nK\"\n2,Tim\n")));
+      assertEquals(1, coalescer.append(toInputStream("id,name\n3,James")));
+      assertEquals(1, coalescer.append(toInputStream("id,name\n4,Maes\n")));
+
+      assertEquals("id,name\n1,\"Darin\nK\"\n2,Tim\n3,James\n4,Maes\n", outputStream.toString(StandardCharsets.UTF_8));
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testWithoutHeaderRow() throws IOException
+   {
+      ByteArrayOutputStream  outputStream = new ByteArrayOutputStream();
+      DelimitedFileCoalescer coalescer    = new DelimitedFileCoalescer(outputStream, false);
+
+      assertEquals(1, coalescer.append(toInputStream("1,Darin\n")));
+      assertEquals(2, coalescer.append(toInputStream("2,Tim\n3,James\n")));
+
+      assertEquals("1,Darin\n2,Tim\n3,James\n", outputStream.toString(StandardCharsets.UTF_8));
+   }
+
+
+
+   /*******************************************************************************
+    ** a file whose header has the same columns, in a different order, can't be
+    ** appended (nothing of it is written) - and readHeader tells them apart.
+    *******************************************************************************/
+   @Test
+   void testReorderedColumnsAreRejected() throws IOException
+   {
+      ByteArrayOutputStream  outputStream = new ByteArrayOutputStream();
+      DelimitedFileCoalescer coalescer    = new DelimitedFileCoalescer(outputStream, true);
+
+      assertEquals(1, coalescer.append(toInputStream("id,name\n1,Darin\n")));
+      assertThrows(IOException.class, () -> coalescer.append(toInputStream("name,id\nTim,2\n")));
+      assertEquals("id,name\n1,Darin\n", outputStream.toString(StandardCharsets.UTF_8));
+
+      assertArrayEquals("id,name\n".getBytes(StandardCharsets.UTF_8), DelimitedFileCoalescer.readHeader(toInputStream("id,name\n1,Darin\n")));
+      assertArrayEquals("\"my\nid\",name\n".getBytes(StandardCharsets.UTF_8), DelimitedFileCoalescer.readHeader(toInputStream("\"my\nid\",name\n1,Darin\n")));
+      assertFalse(Arrays.equals(DelimitedFileCoalescer.readHeader(toInputStream("id,name\n")), DelimitedFileCoalescer.readHeader(toInputStream("name,id\n"))));
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   private static ByteArrayInputStream toInputStream(String contents)
+   {
+      return (new ByteArrayInputStream(contents.getBytes(StandardCharsets.UTF_8)));
+   }
+
+}
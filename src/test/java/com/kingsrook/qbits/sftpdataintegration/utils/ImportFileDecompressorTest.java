@@ -0,0 +1,290 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.sftpdataintegration.utils;
+
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import com.kingsrook.qbits.sftpdataintegration.BaseTest;
+import com.kingsrook.qbits.sftpdataintegration.metadata.SFTPImportSourceFileTableMetaDataProducer;
+import com.kingsrook.qbits.sftpdataintegration.metadata.SFTPImportStagingFileTableMetaDataProducer;
+import com.kingsrook.qqq.backend.core.actions.tables.QueryAction;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QQueryFilter;
+import org.junit.jupiter.api.Test;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+
+/*******************************************************************************
+ ** Unit test for ImportFileDecompressor
+ *******************************************************************************/
+class ImportFileDecompressorTest extends BaseTest
+{
+   private static final byte[] GZIP_MAGIC = new byte[] { 0x1f, (byte) 0x8b, 8, 0 };
+   private static final byte[] ZIP_MAGIC  = new byte[] { 'P', 'K', 3, 4 };
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testDetectCompression() throws IOException
+   {
+      ////////////////////////
+      // by extension first //
+      ////////////////////////
+      assertEquals(ImportFileDecompressor.Compression.GZIP, detect("orders.csv.GZ", "one,two"));
+      assertEquals(ImportFileDecompressor.Compression.ZIP, detect("orders.zip", "one,two"));
+
+      /////////////////////////
+      // else by magic bytes //
+      /////////////////////////
+      assertEquals(ImportFileDecompressor.Compression.GZIP, detect("orders.csv", GZIP_MAGIC));
+      assertEquals(ImportFileDecompressor.Compression.ZIP, detect("orders", ZIP_MAGIC));
+
+      //////////////////////////////////////////////////////
+      // but spreadsheets (which are zips) are left as-is //
+      //////////////////////////////////////////////////////
+      assertNull(detect("orders.xlsx", ZIP_MAGIC));
+      assertNull(detect("orders.csv", "one,two"));
+      assertNull(detect("empty.csv", ""));
+
+      //////////////////////////////////////////////////
+      // and detecting leaves the stream at its start //
+      //////////////////////////////////////////////////
+      InputStream inputStream = new BufferedInputStream(new ByteArrayInputStream(GZIP_MAGIC));
+      ImportFileDecompressor.detectCompression("orders.csv", inputStream);
+      assertEquals(0x1f, inputStream.read());
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testPaths() throws QException
+   {
+      assertEquals("abc/orders.csv", ImportFileDecompressor.getDecompressedPath("abc/orders.csv.gz"));
+      assertEquals("abc/orders.csv", ImportFileDecompressor.getDecompressedPath("abc/orders.csv"));
+
+      assertEquals("dir/orders.csv", ImportFileDecompressor.getSafeEntryName("a.zip", "/dir/orders.csv"));
+      assertEquals("dir/orders.csv", ImportFileDecompressor.getSafeEntryName("a.zip", "dir\\orders.csv"));
+      assertThatThrownBy(() -> ImportFileDecompressor.getSafeEntryName("a.zip", "../../etc/passwd")).isInstanceOf(QException.class);
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testArchiveWithinLimitsIsStaged() throws Exception
+   {
+      byte[] zip = zip(Map.of("a.csv", "one,two\n".getBytes(), "b.csv", "three,four\n".getBytes()));
+
+      List<ImportFileDecompressor.DecompressedFile> decompressedFiles = newDecompressor().stage(new ByteArrayInputStream(zip), "orders.zip", "staged/orders.zip");
+      assertEquals(2, decompressedFiles.size());
+      assertEquals(2, getStagedFileNames().size());
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testTooManyEntriesFailsAndDeletesStagedEntries()
+   {
+      Map<String, byte[]> entries = new LinkedHashMap<>();
+      for(int i = 0; i < 5; i++)
+      {
+         entries.put("file" + i + ".csv", "one,two\n".getBytes());
+      }
+
+      assertThatThrownBy(() -> newDecompressor().withMaxArchiveEntries(3).stage(new ByteArrayInputStream(zip(entries)), "orders.zip", "staged/orders.zip"))
+         .isInstanceOf(QException.class)
+         .hasMessageContaining("more than the limit of 3 entries");
+
+      assertThat(getStagedFileNames()).isEmpty();
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testTooManyExpandedBytesFailsAndDeletesStagedEntries()
+   {
+      //////////////////////////////////////////////////////////////////////////
+      // the first entry fits under the limit, the second takes it over - and //
+      // both are deleted                                                     //
+      //////////////////////////////////////////////////////////////////////////
+      Map<String, byte[]> entries = new LinkedHashMap<>();
+      entries.put("a.csv", randomBytes(6_000));
+      entries.put("b.csv", randomBytes(6_000));
+
+      assertThatThrownBy(() -> newDecompressor().withMaxExpandedBytes(10_000).stage(new ByteArrayInputStream(zip(entries)), "orders.zip", "staged/orders.zip"))
+         .isInstanceOf(QException.class)
+         .rootCause().hasMessageContaining("more than the limit of 10000 bytes");
+
+      assertThat(getStagedFileNames()).isEmpty();
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testCompressionRatioLimit() throws Exception
+   {
+      ///////////////////////////////////////////////////////////////////////
+      // a few MB of zeros compresses by far more than the default ratio - //
+      // for gzip and zip alike                                            //
+      ///////////////////////////////////////////////////////////////////////
+      byte[] zeros = new byte[4 * 1024 * 1024];
+
+      assertThatThrownBy(() -> newDecompressor().stage(new ByteArrayInputStream(gzip(zeros)), "zeros.csv.gz", "staged/zeros.csv.gz"))
+         .isInstanceOf(QException.class)
+         .rootCause().hasMessageContaining("times its compressed size");
+
+      assertThatThrownBy(() -> newDecompressor().stage(new ByteArrayInputStream(zip(Map.of("zeros.csv", zeros))), "zeros.zip", "staged/zeros.zip"))
+         .isInstanceOf(QException.class)
+         .rootCause().hasMessageContaining("times its compressed size");
+
+      assertThat(getStagedFileNames()).isEmpty();
+
+      ////////////////////////////////////////////////////////////////////
+      // but a small, very compressible file is fine (the ratio is only //
+      // checked past the first megabyte), as is a raised ratio         //
+      ////////////////////////////////////////////////////////////////////
+      newDecompressor().stage(new ByteArrayInputStream(gzip(new byte[100_000])), "small.csv.gz", "staged/small.csv.gz");
+      newDecompressor().withMaxCompressionRatio(100_000).stage(new ByteArrayInputStream(gzip(zeros)), "zeros.csv.gz", "staged/allowed.csv.gz");
+      assertEquals(2, getStagedFileNames().size());
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static ImportFileDecompressor newDecompressor()
+   {
+      return (new ImportFileDecompressor(new ImportFileStager(SFTPImportSourceFileTableMetaDataProducer.NAME, SFTPImportStagingFileTableMetaDataProducer.NAME)));
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static List<String> getStagedFileNames() throws QException
+   {
+      return (QueryAction.execute(SFTPImportStagingFileTableMetaDataProducer.NAME, new QQueryFilter()).stream()
+         .map(r -> r.getValueString("fileName"))
+         .toList());
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static byte[] randomBytes(int length)
+   {
+      byte[] bytes = new byte[length];
+      new Random(47).nextBytes(bytes);
+      return (bytes);
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static byte[] gzip(byte[] contents) throws IOException
+   {
+      ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+      try(GZIPOutputStream gzipOutputStream = new GZIPOutputStream(byteArrayOutputStream))
+      {
+         gzipOutputStream.write(contents);
+      }
+      return (byteArrayOutputStream.toByteArray());
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static byte[] zip(Map<String, byte[]> entries) throws IOException
+   {
+      ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+      try(ZipOutputStream zipOutputStream = new ZipOutputStream(byteArrayOutputStream))
+      {
+         for(Map.Entry<String, byte[]> entry : entries.entrySet())
+         {
+            zipOutputStream.putNextEntry(new ZipEntry(entry.getKey()));
+            zipOutputStream.write(entry.getValue());
+            zipOutputStream.closeEntry();
+         }
+      }
+      return (byteArrayOutputStream.toByteArray());
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static ImportFileDecompressor.Compression detect(String path, String contents) throws IOException
+   {
+      return (detect(path, contents.getBytes()));
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static ImportFileDecompressor.Compression detect(String path, byte[] contents) throws IOException
+   {
+      return (ImportFileDecompressor.detectCompression(path, new BufferedInputStream(new ByteArrayInputStream(contents))));
+   }
+
+}
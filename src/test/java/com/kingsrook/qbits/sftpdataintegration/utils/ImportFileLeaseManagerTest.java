@@ -0,0 +1,167 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.sftpdataintegration.utils;
+
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import com.kingsrook.qbits.sftpdataintegration.BaseTest;
+import com.kingsrook.qbits.sftpdataintegration.model.ImportFile;
+import com.kingsrook.qbits.sftpdataintegration.model.ImportFileLease;
+import com.kingsrook.qbits.sftpdataintegration.model.ImportFileStatusEnum;
+import com.kingsrook.qqq.backend.core.actions.tables.GetAction;
+import com.kingsrook.qqq.backend.core.actions.tables.InsertAction;
+import com.kingsrook.qqq.backend.core.actions.tables.QueryAction;
+import com.kingsrook.qqq.backend.core.context.QContext;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+import com.kingsrook.qqq.backend.core.model.actions.tables.insert.InsertInput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QQueryFilter;
+import com.kingsrook.qqq.backend.core.model.data.QRecord;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/*******************************************************************************
+ ** Unit test for ImportFileLeaseManager
+ *******************************************************************************/
+class ImportFileLeaseManagerTest extends BaseTest
+{
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testClaimAndRelease() throws QException
+   {
+      Integer pendingId  = insertImportFile(ImportFileStatusEnum.PENDING);
+      Integer completeId = insertImportFile(ImportFileStatusEnum.COMPLETE);
+
+      ImportFileLeaseManager leaseManagerA = new ImportFileLeaseManager("a", null);
+      ImportFileLeaseManager leaseManagerB = new ImportFileLeaseManager("b", null);
+
+      /////////////////////////////////////////////////////////////////////
+      // first claimer gets the pending file (but not the complete one), //
+      // and a second claimer can't get it until it's released           //
+      /////////////////////////////////////////////////////////////////////
+      assertEquals(Set.of(pendingId), leaseManagerA.claim(List.of(pendingId, completeId)));
+      assertEquals(Set.of(), leaseManagerB.claim(List.of(pendingId)));
+
+      leaseManagerA.release(List.of(pendingId));
+      assertEquals(Set.of(pendingId), leaseManagerB.claim(List.of(pendingId)));
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testClaimWithoutUniqueKeyKeepsFirstLeaseOnly() throws QException
+   {
+      ///////////////////////////////////////////////////////////////////////
+      // as if the backend didn't enforce the unique key - so a second run //
+      // racing for the same file gets its lease inserted too              //
+      ///////////////////////////////////////////////////////////////////////
+      QContext.getQInstance().getTable(ImportFileLease.TABLE_NAME).getUniqueKeys().clear();
+
+      Integer pendingId = insertImportFile(ImportFileStatusEnum.PENDING);
+      assertEquals(Set.of(pendingId), new ImportFileLeaseManager("a", null).claim(List.of(pendingId)));
+      assertEquals(Set.of(), new ImportFileLeaseManager("b", null).claim(List.of(pendingId)));
+
+      List<QRecord> leaseRecords = QueryAction.execute(ImportFileLease.TABLE_NAME, new QQueryFilter());
+      assertEquals(1, leaseRecords.size());
+      assertEquals("a", leaseRecords.get(0).getValueString("leaseOwner"));
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testReapExpiredLeases() throws QException
+   {
+      Integer processingId = insertImportFile(ImportFileStatusEnum.PROCESSING);
+      new InsertAction().execute(new InsertInput(ImportFileLease.TABLE_NAME).withRecordEntity(new ImportFileLease()
+         .withImportFileId(processingId)
+         .withLeaseOwner("dead-run")
+         .withLeaseExpiresAt(Instant.now().minusSeconds(1))));
+
+      ImportFileLeaseManager.reapExpiredLeases();
+
+      assertTrue(QueryAction.execute(ImportFileLease.TABLE_NAME, new QQueryFilter()).isEmpty());
+      assertEquals(ImportFileStatusEnum.PENDING.getId(), GetAction.execute(ImportFile.TABLE_NAME, processingId).getValueInteger("importFileStatusId"));
+      assertEquals(Set.of(processingId), new ImportFileLeaseManager("b", null).claim(List.of(processingId)));
+   }
+
+
+
+   /*******************************************************************************
+    ** a run that keeps loading its file for longer than a lease, keeps renewing
+    ** its lease - so the reaper doesn't take the file back for another run -
+    ** until it stops renewing.
+    *******************************************************************************/
+   @Test
+   void testLongRunningClaimIsNotStolen() throws Exception
+   {
+      Integer processingId = insertImportFile(ImportFileStatusEnum.PROCESSING);
+
+      ImportFileLeaseManager leaseManagerA = new ImportFileLeaseManager("a", 1);
+      ImportFileLeaseManager leaseManagerB = new ImportFileLeaseManager("b", 1);
+      assertEquals(Set.of(processingId), leaseManagerA.claim(List.of(processingId)));
+
+      try(ImportFileLeaseManager.Renewal renewal = leaseManagerA.keepRenewing(List.of(processingId)))
+      {
+         Thread.sleep(2500);
+         ImportFileLeaseManager.reapExpiredLeases();
+
+         assertEquals(Set.of(), leaseManagerB.claim(List.of(processingId)));
+         assertEquals(ImportFileStatusEnum.PROCESSING.getId(), GetAction.execute(ImportFile.TABLE_NAME, processingId).getValueInteger("importFileStatusId"));
+      }
+
+      ////////////////////////////////////////////////////////////////
+      // once it stops renewing, the lease expires, and is reaped - //
+      // and the holder can tell that it lost it                    //
+      ////////////////////////////////////////////////////////////////
+      Thread.sleep(1500);
+      ImportFileLeaseManager.reapExpiredLeases();
+
+      assertEquals(ImportFileStatusEnum.PENDING.getId(), GetAction.execute(ImportFile.TABLE_NAME, processingId).getValueInteger("importFileStatusId"));
+      assertEquals(Set.of(), leaseManagerA.renew(List.of(processingId)));
+      assertEquals(Set.of(processingId), leaseManagerB.claim(List.of(processingId)));
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static Integer insertImportFile(ImportFileStatusEnum status) throws QException
+   {
+      return (new InsertAction().execute(new InsertInput(ImportFile.TABLE_NAME).withRecordEntity(new ImportFile()
+         .withImportFileStatusId(status.getId())
+         .withStagedPath("file.csv"))).getRecords().get(0).getValueInteger("id"));
+   }
+
+}
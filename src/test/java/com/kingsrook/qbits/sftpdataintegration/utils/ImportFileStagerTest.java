@@ -0,0 +1,116 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package com.kingsrook.qbits.sftpdataintegration.utils;
+
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import com.kingsrook.qbits.sftpdataintegration.BaseTest;
+import com.kingsrook.qbits.sftpdataintegration.metadata.SFTPImportSourceFileTableMetaDataProducer;
+import com.kingsrook.qbits.sftpdataintegration.metadata.SFTPImportStagingFileTableMetaDataProducer;
+import com.kingsrook.qqq.backend.core.actions.tables.QueryAction;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+import com.kingsrook.qqq.backend.core.model.actions.tables.query.QQueryFilter;
+import org.junit.jupiter.api.Test;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/*******************************************************************************
+ ** Unit test for ImportFileStager
+ *******************************************************************************/
+class ImportFileStagerTest extends BaseTest
+{
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testFailedStageDeletesPartialFile() throws Exception
+   {
+      ImportFileStager stager = new ImportFileStager(SFTPImportSourceFileTableMetaDataProducer.NAME, SFTPImportStagingFileTableMetaDataProducer.NAME);
+
+      //////////////////////////////////////////////////////////////////////
+      // a stream that gives some bytes, then fails (e.g., a dropped sftp //
+      // connection) - none of what was written should be left staged     //
+      //////////////////////////////////////////////////////////////////////
+      assertThatThrownBy(() -> stager.stage(new FailingInputStream(10_000), "staged/orders.csv"))
+         .isInstanceOf(QException.class);
+
+      assertTrue(QueryAction.execute(SFTPImportStagingFileTableMetaDataProducer.NAME, new QQueryFilter()).isEmpty());
+   }
+
+
+
+   /***************************************************************************
+    ** input stream that reads some bytes, then throws.
+    ***************************************************************************/
+   private static class FailingInputStream extends InputStream
+   {
+      private int bytesBeforeFailure;
+
+
+
+      /*******************************************************************************
+       ** Constructor
+       **
+       *******************************************************************************/
+      private FailingInputStream(int bytesBeforeFailure)
+      {
+         this.bytesBeforeFailure = bytesBeforeFailure;
+      }
+
+
+
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      @Override
+      public int read() throws IOException
+      {
+         byte[] buffer = new byte[1];
+         return (read(buffer, 0, 1) == -1 ? -1 : buffer[0]);
+      }
+
+
+
+      /***************************************************************************
+       **
+       ***************************************************************************/
+      @Override
+      public int read(byte[] buffer, int offset, int length) throws IOException
+      {
+         if(bytesBeforeFailure <= 0)
+         {
+            throw (new IOException("Connection dropped"));
+         }
+
+         int count = Math.min(length, bytesBeforeFailure);
+         Arrays.fill(buffer, offset, offset + count, (byte) 'x');
+         bytesBeforeFailure -= count;
+         return (count);
+      }
+   }
+
+}
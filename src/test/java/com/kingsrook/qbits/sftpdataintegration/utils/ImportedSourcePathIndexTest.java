@@ -0,0 +1,169 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.sftpdataintegration.utils;
+
+
+import java.util.List;
+import java.util.Map;
+import com.kingsrook.qbits.sftpdataintegration.BaseTest;
+import com.kingsrook.qbits.sftpdataintegration.model.ImportFile;
+import com.kingsrook.qqq.backend.core.actions.tables.InsertAction;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+import com.kingsrook.qqq.backend.core.model.actions.tables.insert.InsertInput;
+import com.kingsrook.qqq.backend.core.modules.backend.implementations.memory.MemoryRecordStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+/*******************************************************************************
+ ** Unit test for ImportedSourcePathIndex
+ *******************************************************************************/
+class ImportedSourcePathIndexTest extends BaseTest
+{
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @AfterEach
+   void afterEach()
+   {
+      MemoryRecordStore.setCollectStatistics(false);
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testWarmIndexOnlyQueriesToConfirmHits() throws Exception
+   {
+      insertImportFile(1, "a.csv");
+      insertImportFile(1, "b.csv");
+
+      ImportedSourcePathIndex index = ImportedSourcePathIndex.getInstance();
+      MemoryRecordStore.setCollectStatistics(true);
+
+      ////////////////////////////////////////////////////////////////
+      // the first lookup loads the index cold, then confirms its 2 //
+      // hits against the ImportFile table                          //
+      ////////////////////////////////////////////////////////////////
+      MemoryRecordStore.resetStatistics();
+      assertEquals(Map.of("a.csv", 1, "b.csv", 2), index.getImportedFileIds(1, List.of("a.csv", "b.csv", "c.csv")));
+      assertEquals(2, MemoryRecordStore.getStatistics().get(MemoryRecordStore.STAT_QUERIES_RAN));
+
+      ////////////////////////////////////////////////////////////////
+      // once warm, a lookup with no hits doesn't query - so a file //
+      // imported elsewhere isn't seen until the index is caught up //
+      // (once per sync run) - and one with hits just confirms them //
+      ////////////////////////////////////////////////////////////////
+      insertImportFile(1, "c.csv");
+      MemoryRecordStore.resetStatistics();
+      assertEquals(Map.of(), index.getImportedFileIds(1, List.of("c.csv", "d.csv")));
+      assertEquals(0, MemoryRecordStore.getStatistics().getOrDefault(MemoryRecordStore.STAT_QUERIES_RAN, 0));
+      assertEquals(Map.of("a.csv", 1, "b.csv", 2), index.getImportedFileIds(1, List.of("a.csv", "b.csv", "c.csv")));
+      assertEquals(1, MemoryRecordStore.getStatistics().get(MemoryRecordStore.STAT_QUERIES_RAN));
+
+      MemoryRecordStore.resetStatistics();
+      index.catchUp(1);
+      assertEquals(1, MemoryRecordStore.getStatistics().get(MemoryRecordStore.STAT_QUERIES_RAN));
+      assertEquals(Map.of("a.csv", 1, "b.csv", 2, "c.csv", 3), index.getImportedFileIds(1, List.of("a.csv", "b.csv", "c.csv")));
+
+      //////////////////////////////////////////////////////////////
+      // catching up a config that was never loaded doesn't query //
+      //////////////////////////////////////////////////////////////
+      MemoryRecordStore.resetStatistics();
+      index.catchUp(2);
+      assertEquals(0, MemoryRecordStore.getStatistics().getOrDefault(MemoryRecordStore.STAT_QUERIES_RAN, 0));
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testStaleEntryIsNotTrusted() throws Exception
+   {
+      insertImportFile(1, "a.csv");
+
+      ImportedSourcePathIndex index = ImportedSourcePathIndex.getInstance();
+      assertEquals(Map.of("a.csv", 1), index.getImportedFileIds(1, List.of("a.csv", "b.csv")));
+
+      ///////////////////////////////////////////////////////////////////
+      // an entry with no ImportFile behind it (e.g., its file deleted //
+      // through another server) isn't reported as imported - and once //
+      // found to be stale, is dropped from the index                  //
+      ///////////////////////////////////////////////////////////////////
+      index.recordImported(1, "b.csv", 47);
+      assertEquals(Map.of("a.csv", 1), index.getImportedFileIds(1, List.of("a.csv", "b.csv")));
+
+      MemoryRecordStore.setCollectStatistics(true);
+      MemoryRecordStore.resetStatistics();
+      assertEquals(Map.of(), index.getImportedFileIds(1, List.of("b.csv")));
+      assertEquals(0, MemoryRecordStore.getStatistics().getOrDefault(MemoryRecordStore.STAT_QUERIES_RAN, 0));
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testClearOnlyAffectsGivenConfigs() throws Exception
+   {
+      insertImportFile(1, "a.csv");
+      insertImportFile(2, "b.csv");
+
+      ImportedSourcePathIndex index = ImportedSourcePathIndex.getInstance();
+      index.getImportedFileIds(1, List.of("a.csv"));
+      index.getImportedFileIds(2, List.of("b.csv"));
+
+      index.clear(List.of(1));
+
+      //////////////////////////////////////////////////////////////////
+      // config 1's index is reloaded on its next lookup - config 2's //
+      // is still warm, so a lookup with no hits doesn't query        //
+      //////////////////////////////////////////////////////////////////
+      MemoryRecordStore.setCollectStatistics(true);
+      MemoryRecordStore.resetStatistics();
+      assertEquals(Map.of(), index.getImportedFileIds(2, List.of("c.csv")));
+      assertEquals(0, MemoryRecordStore.getStatistics().getOrDefault(MemoryRecordStore.STAT_QUERIES_RAN, 0));
+      assertEquals(Map.of(), index.getImportedFileIds(1, List.of("c.csv")));
+      assertEquals(1, MemoryRecordStore.getStatistics().get(MemoryRecordStore.STAT_QUERIES_RAN));
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static void insertImportFile(Integer sftpImportConfigId, String sourcePath) throws QException
+   {
+      new InsertAction().execute(new InsertInput(ImportFile.TABLE_NAME).withRecordEntity(new ImportFile()
+         .withSftpImportConfigId(sftpImportConfigId)
+         .withSourcePath(sourcePath)
+         .withStagedPath("staged/" + sourcePath)));
+   }
+
+}
@@ -0,0 +1,442 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.sftpdataintegration.utils;
+
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import com.kingsrook.qbits.sftpdataintegration.BaseTest;
+import com.kingsrook.qbits.sftpdataintegration.model.SFTPConnection;
+import org.apache.commons.io.FileUtils;
+import org.apache.sshd.common.file.virtualfs.VirtualFileSystemFactory;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.apache.sshd.sftp.client.SftpClient;
+import org.apache.sshd.sftp.server.SftpSubsystemFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/*******************************************************************************
+ ** Unit test for SFTPSessionPool - against an embedded sftp server.
+ *******************************************************************************/
+class SFTPSessionPoolTest extends BaseTest
+{
+   private static final String PASSWORD = "password";
+
+   private Path            serverRoot;
+   private SshServer       sshServer;
+   private PublicKey       authorizedPublicKey;
+   private SFTPSessionPool sessionPool;
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @BeforeEach
+   void beforeEach() throws Exception
+   {
+      serverRoot = Files.createTempDirectory("sftpSessionPoolTest");
+
+      sshServer = SshServer.setUpDefaultServer();
+      sshServer.setPort(0);
+      sshServer.setKeyPairProvider(new SimpleGeneratorHostKeyProvider(serverRoot.resolve("hostkey.ser")));
+      sshServer.setPasswordAuthenticator((username, password, session) -> password.startsWith(PASSWORD));
+      sshServer.setPublickeyAuthenticator((username, key, session) -> authorizedPublicKey != null && Arrays.equals(key.getEncoded(), authorizedPublicKey.getEncoded()));
+      sshServer.setSubsystemFactories(List.of(new SftpSubsystemFactory()));
+      sshServer.setFileSystemFactory(new VirtualFileSystemFactory(serverRoot));
+      sshServer.start();
+
+      sessionPool = new SFTPSessionPool();
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @AfterEach
+   void afterEach() throws Exception
+   {
+      sessionPool.closeIdleSessions();
+      sshServer.stop(true);
+      FileUtils.deleteDirectory(serverRoot.toFile());
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testReleasedSessionIsReused() throws Exception
+   {
+      SFTPConnection sftpConnection = newConnection(1);
+
+      SftpClient sftpClient;
+      try(SFTPSessionPool.PooledSFTPSession pooledSession = sessionPool.borrow(sftpConnection, null, null))
+      {
+         sftpClient = pooledSession.getSftpClient();
+         sftpClient.readDir(".").iterator().hasNext();
+      }
+
+      try(SFTPSessionPool.PooledSFTPSession pooledSession = sessionPool.borrow(sftpConnection, null, null))
+      {
+         assertSame(sftpClient, pooledSession.getSftpClient());
+      }
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testChangedSettingsGetNewSession() throws Exception
+   {
+      SFTPConnection sftpConnection = newConnection(1);
+
+      SftpClient sftpClient;
+      try(SFTPSessionPool.PooledSFTPSession pooledSession = sessionPool.borrow(sftpConnection, null, null))
+      {
+         sftpClient = pooledSession.getSftpClient();
+      }
+
+      sftpConnection.setPassword(PASSWORD + "-changed");
+      try(SFTPSessionPool.PooledSFTPSession pooledSession = sessionPool.borrow(sftpConnection, null, null))
+      {
+         assertNotSame(sftpClient, pooledSession.getSftpClient());
+         assertFalse(sftpClient.isOpen());
+      }
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testBrokenSessionIsNotReused() throws Exception
+   {
+      SFTPConnection sftpConnection = newConnection(1);
+
+      SftpClient sftpClient;
+      try(SFTPSessionPool.PooledSFTPSession pooledSession = sessionPool.borrow(sftpConnection, null, null))
+      {
+         sftpClient = pooledSession.getSftpClient();
+         pooledSession.markBroken();
+      }
+      assertFalse(sftpClient.isOpen());
+
+      try(SFTPSessionPool.PooledSFTPSession pooledSession = sessionPool.borrow(sftpConnection, null, null))
+      {
+         assertNotSame(sftpClient, pooledSession.getSftpClient());
+      }
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testIdleSessionsAreEvicted() throws Exception
+   {
+      SFTPConnection sftpConnection = newConnection(1);
+      sessionPool.setIdleTimeoutSeconds(0);
+
+      SftpClient sftpClient;
+      try(SFTPSessionPool.PooledSFTPSession pooledSession = sessionPool.borrow(sftpConnection, null, null))
+      {
+         sftpClient = pooledSession.getSftpClient();
+      }
+
+      Thread.sleep(10);
+      sessionPool.evictIdleSessions();
+      assertFalse(sftpClient.isOpen());
+
+      try(SFTPSessionPool.PooledSFTPSession pooledSession = sessionPool.borrow(sftpConnection, null, null))
+      {
+         assertNotSame(sftpClient, pooledSession.getSftpClient());
+      }
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testPerHostCap() throws Exception
+   {
+      SFTPConnection connection1 = newConnection(1);
+      SFTPConnection connection2 = newConnection(2);
+
+      SFTPSessionPool.PooledSFTPSession session1   = sessionPool.borrow(connection1, null, 1);
+      SftpClient                        sftpClient = session1.getSftpClient();
+
+      ///////////////////////////////////////////////////////////////////////
+      // with the host at its cap, a session for another connection to the //
+      // same host must wait - until the first one comes back to the pool, //
+      // when it is closed to make room                                    //
+      ///////////////////////////////////////////////////////////////////////
+      CompletableFuture<SFTPSessionPool.PooledSFTPSession> session2Future = CompletableFuture.supplyAsync(() -> borrowUnchecked(connection2, 1));
+      assertThatThrownBy(() -> session2Future.get(1500, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+
+      session1.close();
+      SFTPSessionPool.PooledSFTPSession session2 = session2Future.get(5, TimeUnit.SECONDS);
+      assertNotSame(sftpClient, session2.getSftpClient());
+      assertFalse(sftpClient.isOpen());
+      session2.close();
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testPerHostCapIsSharedWithOtherPermits() throws Exception
+   {
+      SFTPConnection sftpConnection = newConnection(1);
+      String         hostKey        = ConcurrencyLimiter.getSFTPHostKey(sftpConnection.getHostname(), sftpConnection.getPort());
+
+      //////////////////////////////////////////////////////////////////
+      // while something else (e.g., a sync's extract step) holds the //
+      // host's only permit, the pool can't open a session against it //
+      //////////////////////////////////////////////////////////////////
+      ConcurrencyLimiter.Permit permit = ConcurrencyLimiter.acquire(hostKey, 1, "someOtherOwner");
+
+      CompletableFuture<SFTPSessionPool.PooledSFTPSession> sessionFuture = CompletableFuture.supplyAsync(() -> borrowUnchecked(sftpConnection, 1));
+      assertThatThrownBy(() -> sessionFuture.get(1500, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+
+      permit.close();
+      SFTPSessionPool.PooledSFTPSession pooledSession = sessionFuture.get(5, TimeUnit.SECONDS);
+      assertTrue(pooledSession.getSftpClient().isOpen());
+
+      ////////////////////////////////////////////////////////////////////
+      // and while the pool's session is open (even idle), it holds the //
+      // permit - until the session is closed                           //
+      ////////////////////////////////////////////////////////////////////
+      pooledSession.close();
+      assertNull(ConcurrencyLimiter.tryAcquire(hostKey, 1, "someOtherOwner", 500));
+
+      sessionPool.closeIdleSessions();
+      ConcurrencyLimiter.Permit permitAfterClose = ConcurrencyLimiter.tryAcquire(hostKey, 1, "someOtherOwner", 1000);
+      assertNotNull(permitAfterClose);
+      permitAfterClose.close();
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testAcquireHostPermitClosesIdleSession() throws Exception
+   {
+      SFTPConnection sftpConnection = newConnection(1);
+      String         hostKey        = ConcurrencyLimiter.getSFTPHostKey(sftpConnection.getHostname(), sftpConnection.getPort());
+
+      SftpClient sftpClient;
+      try(SFTPSessionPool.PooledSFTPSession pooledSession = sessionPool.borrow(sftpConnection, null, 1))
+      {
+         sftpClient = pooledSession.getSftpClient();
+      }
+
+      //////////////////////////////////////////////////////////////////////
+      // the idle session holds the host's only permit - acquiring one    //
+      // through the pool closes it to make room, rather than waiting for //
+      // it to be evicted                                                 //
+      //////////////////////////////////////////////////////////////////////
+      ConcurrencyLimiter.Permit permit = CompletableFuture.supplyAsync(() -> acquireHostPermitUnchecked(hostKey)).get(5, TimeUnit.SECONDS);
+      assertNotNull(permit);
+      assertFalse(sftpClient.isOpen());
+      permit.close();
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testECPrivateKey() throws Exception
+   {
+      KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("EC");
+      keyPairGenerator.initialize(new ECGenParameterSpec("secp256r1"));
+      KeyPair keyPair = keyPairGenerator.generateKeyPair();
+      authorizedPublicKey = keyPair.getPublic();
+
+      SFTPConnection sftpConnection = newConnection(1).withPassword(null);
+      try(SFTPSessionPool.PooledSFTPSession pooledSession = sessionPool.borrow(sftpConnection, toOpenSSLStylePKCS8(keyPair), null))
+      {
+         assertTrue(pooledSession.getSftpClient().isOpen());
+      }
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private SFTPConnection newConnection(Integer id)
+   {
+      return (new SFTPConnection()
+         .withId(id)
+         .withHostname("localhost")
+         .withPort(sshServer.getPort())
+         .withUsername("test")
+         .withPassword(PASSWORD));
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private SFTPSessionPool.PooledSFTPSession borrowUnchecked(SFTPConnection sftpConnection, Integer maxSessionsPerHost)
+   {
+      try
+      {
+         return (sessionPool.borrow(sftpConnection, null, maxSessionsPerHost));
+      }
+      catch(Exception e)
+      {
+         throw (new RuntimeException(e));
+      }
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private ConcurrencyLimiter.Permit acquireHostPermitUnchecked(String hostKey)
+   {
+      try
+      {
+         return (sessionPool.acquireHostPermit(hostKey, 1, "someOtherOwner"));
+      }
+      catch(Exception e)
+      {
+         throw (new RuntimeException(e));
+      }
+   }
+
+
+
+   /***************************************************************************
+    ** PKCS8-encode an EC key pair the way openssl does - with the public key
+    ** included in the private key structure.
+    ***************************************************************************/
+   private static byte[] toOpenSSLStylePKCS8(KeyPair keyPair)
+   {
+      ECPrivateKey privateKey = (ECPrivateKey) keyPair.getPrivate();
+      ECPublicKey  publicKey  = (ECPublicKey) keyPair.getPublic();
+
+      byte[] publicPoint  = concat(new byte[] { 0x04 }, toUnsigned32(publicKey.getW().getAffineX()), toUnsigned32(publicKey.getW().getAffineY()));
+      byte[] ecPrivateKey = der(0x30, concat(
+         der(0x02, new byte[] { 1 }),
+         der(0x04, toUnsigned32(privateKey.getS())),
+         der(0xA1, der(0x03, concat(new byte[] { 0 }, publicPoint)))));
+
+      byte[] ecPublicKeyOid = new byte[] { 0x06, 0x07, 0x2A, (byte) 0x86, 0x48, (byte) 0xCE, 0x3D, 0x02, 0x01 };
+      byte[] prime256v1Oid  = new byte[] { 0x06, 0x08, 0x2A, (byte) 0x86, 0x48, (byte) 0xCE, 0x3D, 0x03, 0x01, 0x07 };
+      byte[] algorithmId    = der(0x30, concat(ecPublicKeyOid, prime256v1Oid));
+      return (der(0x30, concat(der(0x02, new byte[] { 0 }), algorithmId, der(0x04, ecPrivateKey))));
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static byte[] toUnsigned32(BigInteger value)
+   {
+      byte[] bytes  = value.toByteArray();
+      byte[] result = new byte[32];
+      int    length = Math.min(bytes.length, 32);
+      System.arraycopy(bytes, bytes.length - length, result, 32 - length, length);
+      return (result);
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static byte[] der(int tag, byte[] content)
+   {
+      ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+      outputStream.write(tag);
+      if(content.length < 128)
+      {
+         outputStream.write(content.length);
+      }
+      else
+      {
+         outputStream.write(0x81);
+         outputStream.write(content.length);
+      }
+      outputStream.writeBytes(content);
+      return (outputStream.toByteArray());
+   }
+
+
+
+   /***************************************************************************
+    **
+    ***************************************************************************/
+   private static byte[] concat(byte[]... parts)
+   {
+      ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+      for(byte[] part : parts)
+      {
+         outputStream.writeBytes(part);
+      }
+      return (outputStream.toByteArray());
+   }
+
+}
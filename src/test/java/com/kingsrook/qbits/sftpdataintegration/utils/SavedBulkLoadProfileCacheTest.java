@@ -0,0 +1,140 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.sftpdataintegration.utils;
+
+
+import com.kingsrook.qbits.sftpdataintegration.BaseTest;
+import com.kingsrook.qbits.sftpdataintegration.model.ImportFile;
+import com.kingsrook.qqq.backend.core.actions.tables.InsertAction;
+import com.kingsrook.qqq.backend.core.actions.tables.UpdateAction;
+import com.kingsrook.qqq.backend.core.exceptions.QException;
+import com.kingsrook.qqq.backend.core.model.actions.tables.insert.InsertInput;
+import com.kingsrook.qqq.backend.core.model.actions.tables.update.UpdateInput;
+import com.kingsrook.qqq.backend.core.model.data.QRecord;
+import com.kingsrook.qqq.backend.core.model.savedbulkloadprofiles.SavedBulkLoadProfile;
+import com.kingsrook.qqq.backend.core.modules.backend.implementations.memory.MemoryRecordStore;
+import com.kingsrook.qqq.backend.core.processes.implementations.bulk.insert.model.BulkLoadProfile;
+import com.kingsrook.qqq.backend.core.utils.JsonUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+
+/*******************************************************************************
+ ** Unit test for SavedBulkLoadProfileCache
+ *******************************************************************************/
+class SavedBulkLoadProfileCacheTest extends BaseTest
+{
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @AfterEach
+   void afterEach()
+   {
+      MemoryRecordStore.setCollectStatistics(false);
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testProfileIsLookedUpOnce() throws QException
+   {
+      Integer id = insertProfile("First Label");
+
+      SavedBulkLoadProfileCache cache = new SavedBulkLoadProfileCache();
+      MemoryRecordStore.setCollectStatistics(true);
+      MemoryRecordStore.resetStatistics();
+
+      SavedBulkLoadProfileCache.CachedProfile profile = cache.getProfile(id);
+      assertEquals(ImportFile.TABLE_NAME, profile.getTableName());
+      assertEquals(ImportFile.TABLE_NAME + ".bulkInsert", profile.getBulkLoadProcessName());
+      assertFalse(profile.getHasHeaderRow());
+
+      assertSame(profile, cache.getProfile(id));
+      assertEquals(1, MemoryRecordStore.getStatistics().get(MemoryRecordStore.STAT_QUERIES_RAN));
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testMissingProfileIsCachedAsNotFound() throws QException
+   {
+      SavedBulkLoadProfileCache cache = new SavedBulkLoadProfileCache();
+      MemoryRecordStore.setCollectStatistics(true);
+      MemoryRecordStore.resetStatistics();
+
+      assertNull(cache.getProfile(404));
+      assertNull(cache.getProfile(404));
+      assertEquals(1, MemoryRecordStore.getStatistics().get(MemoryRecordStore.STAT_QUERIES_RAN));
+
+      assertNull(cache.getProfile(null));
+   }
+
+
+
+   /*******************************************************************************
+    ** a cache lives for one run - so an edit to a profile isn't seen by the
+    ** run's cache, but is by the next run's.
+    *******************************************************************************/
+   @Test
+   void testEditedProfileIsSeenByNextCache() throws QException
+   {
+      Integer id = insertProfile("First Label");
+
+      SavedBulkLoadProfileCache cache = new SavedBulkLoadProfileCache();
+      assertEquals("First Label", cache.getProfile(id).getRecord().getValueString("label"));
+
+      new UpdateAction().execute(new UpdateInput(SavedBulkLoadProfile.TABLE_NAME).withRecord(new QRecord()
+         .withValue("id", id)
+         .withValue("label", "Second Label")));
+
+      assertEquals("First Label", cache.getProfile(id).getRecord().getValueString("label"));
+      assertEquals("Second Label", new SavedBulkLoadProfileCache().getProfile(id).getRecord().getValueString("label"));
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   private static Integer insertProfile(String label) throws QException
+   {
+      return (new InsertAction().execute(new InsertInput(SavedBulkLoadProfile.TABLE_NAME).withRecordEntity(new SavedBulkLoadProfile()
+         .withLabel(label)
+         .withTableName(ImportFile.TABLE_NAME)
+         .withMappingJson(JsonUtils.toJson(new BulkLoadProfile()
+            .withHasHeaderRow(false)
+            .withVersion("v1")))
+      )).getRecords().get(0).getValueInteger("id"));
+   }
+
+}
@@ -0,0 +1,78 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.sftpdataintegration.utils;
+
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.StringWriter;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import com.kingsrook.qbits.sftpdataintegration.BaseTest;
+import com.kingsrook.qqq.backend.core.processes.implementations.bulk.insert.model.BulkLoadFileRow;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+
+/*******************************************************************************
+ ** Unit test for StagedFileCsvConverter
+ *******************************************************************************/
+class StagedFileCsvConverterTest extends BaseTest
+{
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testWriteCsv() throws IOException
+   {
+      List<BulkLoadFileRow> rows = List.of(
+         new BulkLoadFileRow(new Serializable[] { "Name", "Note", "Amount", "Date", "Time" }, 1),
+         new BulkLoadFileRow(new Serializable[] { "Darin", "says \"hi\", a lot", new BigDecimal("1E+3"), LocalDateTime.of(2025, 1, 31, 0, 0), LocalDateTime.of(2025, 1, 31, 8, 30) }, 2),
+         new BulkLoadFileRow(new Serializable[] { "Tim", null, new BigDecimal("0.50"), null, null }, 3));
+
+      StringWriter writer = new StringWriter();
+      assertEquals(3, StagedFileCsvConverter.writeCsv(rows.iterator(), writer));
+      assertEquals("""
+         Name,Note,Amount,Date,Time
+         Darin,"says ""hi"", a lot",1000,2025-01-31,2025-01-31T08:30
+         Tim,,0.50,,
+         """, writer.toString());
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testPaths()
+   {
+      assertTrue(StagedFileCsvConverter.isSpreadsheet("abc/orders.XLSX"));
+      assertFalse(StagedFileCsvConverter.isSpreadsheet("abc/orders.csv"));
+      assertEquals("abc/orders.xlsx.parsed.csv", StagedFileCsvConverter.getParsedPath("abc/orders.xlsx"));
+   }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * QQQ - Low-code Application Framework for Engineers.
+ * Copyright (C) 2021-2025.  Kingsrook, LLC
+ * 651 N Broad St Ste 205 # 6917 | Middletown DE 19709 | United States
+ * contact@kingsrook.com
+ * https://github.com/Kingsrook/
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.kingsrook.qbits.sftpdataintegration.utils;
+
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import com.kingsrook.qbits.sftpdataintegration.BaseTest;
+import com.kingsrook.qqq.backend.core.processes.implementations.bulk.insert.model.BulkLoadProfile;
+import com.kingsrook.qqq.backend.core.processes.implementations.bulk.insert.model.BulkLoadProfileField;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+
+/*******************************************************************************
+ ** Unit test for StagedFilePreflightValidator
+ *******************************************************************************/
+class StagedFilePreflightValidatorTest extends BaseTest
+{
+   private static final BulkLoadProfile PROFILE = new BulkLoadProfile()
+      .withHasHeaderRow(true)
+      .withFieldList(new ArrayList<>(List.of(
+         new BulkLoadProfileField().withFieldName("firstName").withHeaderName("First Name"),
+         new BulkLoadProfileField().withFieldName("lastName").withHeaderName("Last Name"),
+         new BulkLoadProfileField().withFieldName("state").withDefaultValue("MO")
+      )));
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testValidFiles()
+   {
+      assertNull(validate("First Name,Last Name,Age\nDarin,Kelkhoff,42\n", true, "people.csv"));
+      assertNull(validate("\uFEFF\"last name\",\"first name\"\r\nKelkhoff,Darin\r\n", true, "people.csv"));
+      assertNull(validate("First Name\tLast Name\nDarin\tKelkhoff\n", true, "people.tsv"));
+
+      ////////////////////////////////////////
+      // non-delimited files aren't checked //
+      ////////////////////////////////////////
+      assertNull(validate("not, really, a spreadsheet", true, "people.xlsx"));
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testInvalidFiles()
+   {
+      assertEquals("File is empty", validate("", true, "people.csv"));
+      assertEquals("Header row is missing column: Last Name", validate("First Name,Surname\nDarin,Kelkhoff\n", true, "people.csv"));
+      assertEquals("Header row is not delimited by commas (it appears to be delimited by semicolons)", validate("First Name;Last Name\nDarin;Kelkhoff\n", true, "people.csv"));
+
+      byte[] latin1 = "First Name,Last Name\nRené,Müller\n".getBytes(StandardCharsets.ISO_8859_1);
+      assertEquals("File is not valid UTF-8 text", StagedFilePreflightValidator.validate(latin1, true, "people.csv", PROFILE));
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   @Test
+   void testPartialHeadIgnoresCutOffCharacter()
+   {
+      /////////////////////////////////////////////////////////////////////////
+      // a head that ends part-way through a multibyte character is still ok //
+      /////////////////////////////////////////////////////////////////////////
+      byte[] bytes = "First Name,Last Name\nRené,Müller\n".getBytes(StandardCharsets.UTF_8);
+      byte[] head  = new byte["First Name,Last Name\nRené,M".getBytes(StandardCharsets.UTF_8).length + 1];
+      System.arraycopy(bytes, 0, head, 0, head.length);
+      assertNull(StagedFilePreflightValidator.validate(head, false, "people.csv", PROFILE));
+   }
+
+
+
+   /*******************************************************************************
+    **
+    *******************************************************************************/
+   private static String validate(String contents, boolean isWholeFile, String stagedPath)
+   {
+      return (StagedFilePreflightValidator.validate(contents.getBytes(StandardCharsets.UTF_8), isWholeFile, stagedPath, PROFILE));
+   }
+
+}